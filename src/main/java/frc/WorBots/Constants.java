@@ -16,9 +16,34 @@ public class Constants {
   /** Whether the robot is in competition mode */
   public static final boolean IS_COMP = DriverStation.isFMSAttached() && false;
 
+  /**
+   * Whether tunables can be changed from the dashboard. This is a compile-time constant so that
+   * competition builds can set it to false to compile out all of the NetworkTables code for them.
+   */
+  public static final boolean ENABLE_TUNING = true;
+
   /** Whether to enable debugging routines in the auto selector */
   public static final boolean ENABLE_DEBUG_ROUTINES = true;
 
+  /**
+   * Whether to count the reads from the loop context and publish them every loop, for measuring
+   * how many HAL calls it saves. This is a compile-time constant so that the counting costs nothing
+   * when it is off.
+   */
+  public static final boolean COUNT_LOOP_CONTEXT_READS = false;
+
+  /**
+   * Whether to run the superstructure's pose control on its motor controllers with Motion Magic
+   * instead of on the roboRIO
+   */
+  public static final boolean USE_ONBOARD_SUPERSTRUCTURE_CONTROL = false;
+
+  /**
+   * Whether to run the shooter's flywheel velocity control on its motor controllers instead of on
+   * the roboRIO
+   */
+  public static final boolean USE_ONBOARD_SHOOTER_CONTROL = false;
+
   /**
    * Gets whether the robot is running in a simulation or is real
    *
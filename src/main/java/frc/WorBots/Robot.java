@@ -15,12 +15,14 @@ import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
 import frc.WorBots.subsystems.lights.Lights;
 import frc.WorBots.subsystems.lights.Lights.LightsMode;
-import frc.WorBots.subsystems.superstructure.Superstructure.SuperstructureState;
+import frc.WorBots.util.LoopContext;
 import frc.WorBots.util.MatchTime;
 import frc.WorBots.util.RobotSimulator;
 import frc.WorBots.util.cache.Cache.AllianceCache;
 import frc.WorBots.util.cache.Cache.TimeCache;
+import frc.WorBots.util.cache.LoopCache;
 import frc.WorBots.util.debug.StatusPage;
+import frc.WorBots.util.debug.TunableDouble;
 
 public class Robot extends TimedRobot {
   private Command autonomousCommand;
@@ -45,21 +47,14 @@ public class Robot extends TimedRobot {
       DriverStation.silenceJoystickConnectionWarning(false);
     }
 
-    this.addPeriodic(
-        () -> {
-          // Simple status updates
-          StatusPage.periodic(pdp);
-          StatusPage.reportStatus(
-              StatusPage.DRIVE_CONTROLLER, robotContainer.driver.getHID().isConnected());
-          StatusPage.reportStatus(
-              StatusPage.OPERATOR_CONTROLLER, robotContainer.operator.getHID().isConnected());
-        },
-        kDefaultPeriod);
+    // Simple status updates
+    StatusPage.startPeriodic(pdp);
 
     // Run our robot code at a higher frequency
     this.addPeriodic(this::periodicFunction, Constants.ROBOT_PERIOD);
 
     // Ensure caches are updated at the beginning
+    LoopContext.capture();
     TimeCache.getInstance().update();
     AllianceCache.getInstance().update();
   }
@@ -70,14 +65,20 @@ public class Robot extends TimedRobot {
   /** Periodic function for the robot */
   private void periodicFunction() {
     // Update caches
+    LoopCache.advanceEpoch();
+    LoopContext.capture();
     TimeCache.getInstance().update();
     AllianceCache.getInstance().update();
+    TunableDouble.pollChanges();
 
     // Run the command scheduler
     CommandScheduler.getInstance().run();
 
     // Update simulator
     RobotSimulator.getInstance().periodic();
+
+    // Publish any statuses that changed this loop
+    StatusPage.publish();
   }
 
   @Override
@@ -106,7 +107,7 @@ public class Robot extends TimedRobot {
       autonomousCommand.schedule();
     }
 
-    stopSubsystems();
+    robotContainer.stopSubsystems();
 
     if (Constants.IS_COMP) {
       Lights.getInstance().setMode(LightsMode.Alliance);
@@ -133,7 +134,7 @@ public class Robot extends TimedRobot {
       autonomousCommand.cancel();
     }
 
-    stopSubsystems();
+    robotContainer.stopSubsystems();
 
     Lights.getInstance().setMode(LightsMode.Delivery);
   }
@@ -157,15 +158,4 @@ public class Robot extends TimedRobot {
 
   @Override
   public void simulationPeriodic() {}
-
-  /** Stops subsystems for robot state changes */
-  private void stopSubsystems() {
-    robotContainer.drive.stop();
-    robotContainer.intake.setVolts(0.0);
-    robotContainer.shooter.stopFlywheels();
-    robotContainer.shooter.setIdlingDisabled(false);
-    robotContainer.shooter.setRawFeederVolts(0.0);
-    robotContainer.superstructure.setModeVoid(SuperstructureState.DISABLED);
-    robotContainer.superstructure.setClimbLocked(false);
-  }
 }
@@ -10,7 +10,6 @@ package frc.WorBots;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
-import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.GenericHID.RumbleType;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.*;
@@ -29,10 +28,13 @@ import frc.WorBots.subsystems.lights.Lights;
 import frc.WorBots.subsystems.lights.Lights.LightsMode;
 import frc.WorBots.subsystems.shooter.*;
 import frc.WorBots.subsystems.superstructure.*;
+import frc.WorBots.subsystems.superstructure.Superstructure.SuperstructureState;
 import frc.WorBots.subsystems.superstructure.SuperstructurePose.Preset;
 import frc.WorBots.subsystems.vision.*;
+import frc.WorBots.util.LoopContext;
 import frc.WorBots.util.RobotSimulator;
 import frc.WorBots.util.debug.StatusPage;
+import frc.WorBots.util.trajectory.FieldPlanner;
 import java.util.*;
 
 public class RobotContainer {
@@ -84,25 +86,43 @@ public class RobotContainer {
               new ModuleIOTalon(2),
               new ModuleIOTalon(3));
       vision = new Vision(new NoteVisionIOPhoton(), new VisionIOCustom(0), new VisionIOCustom(1));
-      superstructure = new Superstructure(new SuperstructureIOTalon());
+      superstructure =
+          new Superstructure(
+              Constants.USE_ONBOARD_SUPERSTRUCTURE_CONTROL
+                  ? new SuperstructureIOTalonMotionMagic()
+                  : new SuperstructureIOTalon());
       intake = new Intake(new IntakeIOTalon());
-      shooter = new Shooter(new ShooterIOTalon());
+      shooter =
+          new Shooter(
+              Constants.USE_ONBOARD_SHOOTER_CONTROL
+                  ? new ShooterIOTalonVelocity()
+                  : new ShooterIOTalon());
       climber = new Climber(new ClimberIOTalon());
     } else { // Sim
+      final SwerveChassisSim chassis = new SwerveChassisSim();
+      final RobotSimulator simulator = RobotSimulator.getInstance();
+      simulator.setChassis(chassis);
       drive =
           new Drive(
-              new GyroIOSim(),
-              new ModuleIOSim(0),
-              new ModuleIOSim(1),
-              new ModuleIOSim(2),
-              new ModuleIOSim(3));
-      vision = new Vision(new NoteVisionIOPhoton(), new VisionIOCustom(0));
+              new GyroIOSim(chassis),
+              new ModuleIOSim(0, chassis),
+              new ModuleIOSim(1, chassis),
+              new ModuleIOSim(2, chassis),
+              new ModuleIOSim(3, chassis));
+      vision =
+          new Vision(
+              new NoteVisionIOPhoton(),
+              new VisionIOSim(0, simulator::getGroundTruthPose),
+              new VisionIOSim(1, simulator::getGroundTruthPose));
       superstructure = new Superstructure(new SuperstructureIOSim());
       intake = new Intake(new IntakeIOSim());
       shooter = new Shooter(new ShooterIOSim());
       climber = new Climber(new ClimberIOSim());
     }
 
+    // Build the planner grid now rather than on the first auto-drive
+    FieldPlanner.getInstance();
+
     checkAutos();
     createDataInterfaces();
     bindControls();
@@ -160,6 +180,17 @@ public class RobotContainer {
 
     selector.addRoutine("Long Five", List.of(), autos.fivePieceLong());
 
+    selector.addRoutine(
+        "Dynamic",
+        List.of(
+            new AutoQuestion(
+                "Starting Location?",
+                List.of(
+                    AutoQuestionResponse.AMP_SIDE,
+                    AutoQuestionResponse.CENTER,
+                    AutoQuestionResponse.WALL_SIDE))),
+        autos.dynamic());
+
     selector.addRoutine(
         "Mobility",
         List.of(
@@ -188,25 +219,30 @@ public class RobotContainer {
       selector.addRoutine("Characterize Odometry", List.of(), routines.characterizeOdometry());
       selector.addRoutine("Pit Test", List.of(), routines.pitTest(false, vision));
       selector.addRoutine("Full Pit Test", List.of(), routines.pitTest(true, vision));
+      selector.addRoutine(
+          "Benchmark Pose Estimators", List.of(), routines.benchmarkPoseEstimators());
+      selector.addRoutine(
+          "Benchmark Trajectory Followers", List.of(), routines.benchmarkTrajectoryFollowers());
     }
   }
 
   /** Check autos to make sure that good ones have been generated */
   public void checkAutos() {
     if (!validAutosGenerated) {
-      if (DriverStation.getAlliance().isPresent()) {
+      if (LoopContext.get().getAlliance().isPresent()) {
         registerAutos();
         validAutosGenerated = true;
         SmartDashboard.putBoolean("DB/LED 0", true);
         StatusPage.reportStatus(StatusPage.AUTOS, true);
       }
     }
-    SmartDashboard.putString("DB/String 5", "FMS Says: " + DriverStation.getAlliance().toString());
+    SmartDashboard.putString(
+        "DB/String 5", "FMS Says: " + LoopContext.get().getAlliance().toString());
   }
 
   /** Creates supplier data interfaces between robot systems */
   private void createDataInterfaces() {
-    vision.setDataInterfaces(drive::addVisionData);
+    vision.setDataInterfaces(drive::addVisionData, drive::getPoseAt, drive::getPoseCovariance);
     Lights.getInstance()
         .setDataInterfaces(
             drive::getPose,
@@ -323,6 +359,10 @@ public class RobotContainer {
                   climber.setClimbLocked(false);
                 }));
     driver.y().onTrue(Commands.runOnce(() -> drive.resetHeading(new Rotation2d())));
+    // Auto-drive around the stage
+    driver.a().whileTrue(PlannedDriveToPose.toAmp(drive));
+    driver.b().whileTrue(PlannedDriveToPose.toSubwoofer(drive));
+    driver.povRight().whileTrue(PlannedDriveToPose.toSource(drive));
     // driver
     //     .a()
     //     .toggleOnTrue(
@@ -476,4 +516,24 @@ public class RobotContainer {
   public Command getAutonomousCommand() {
     return selector.getCommand();
   }
+
+  /**
+   * Gets the auto selector
+   *
+   * @return The selector holding the registered routines
+   */
+  public AutoSelector getAutoSelector() {
+    return selector;
+  }
+
+  /** Stops subsystems for robot state changes */
+  public void stopSubsystems() {
+    drive.stop();
+    intake.setVolts(0.0);
+    shooter.stopFlywheels();
+    shooter.setIdlingDisabled(false);
+    shooter.setRawFeederVolts(0.0);
+    superstructure.setModeVoid(SuperstructureState.DISABLED);
+    superstructure.setClimbLocked(false);
+  }
 }
@@ -0,0 +1,107 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.auto;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.Commands;
+import frc.WorBots.auto.AutoUtil.CommandWithPose;
+import frc.WorBots.subsystems.shooter.Shooter;
+import frc.WorBots.subsystems.superstructure.Superstructure;
+import frc.WorBots.subsystems.superstructure.Superstructure.SuperstructureState;
+import frc.WorBots.util.math.ShooterMath;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Plans when to start mechanism actions during autos so that they overlap with driving. Each action
+ * is started once the predicted time until the robot arrives at its destination drops below the
+ * time the mechanisms need to settle, so that they are ready on arrival instead of starting after
+ * the drive ends.
+ */
+public class ActionPlanner {
+  /** Whether to overlap actions with driving at all. Useful for comparing with the benchmark */
+  private static final boolean ENABLED = true;
+
+  /** Extra time to start actions early by to account for estimation error, in seconds */
+  private static final double SETTLE_MARGIN = 0.15;
+
+  private final Superstructure superstructure;
+  private final Shooter shooter;
+
+  /**
+   * Constructs a new ActionPlanner
+   *
+   * @param superstructure The superstructure subsystem
+   * @param shooter The shooter subsystem
+   */
+  public ActionPlanner(Superstructure superstructure, Shooter shooter) {
+    this.superstructure = superstructure;
+    this.shooter = shooter;
+  }
+
+  /**
+   * Estimates how long the shooter and superstructure need to get ready for a shot from where they
+   * are now
+   *
+   * @param shotPose The pose the shot will be taken from
+   * @return The time in seconds
+   */
+  public double getShotPrepTime(Pose2d shotPose) {
+    final double spinUpTime = shooter.getSpinUpTime(ShooterMath.calculateShooterRPM(shotPose));
+    final double moveTime =
+        superstructure.getShootingMoveTime(ShooterMath.calculatePivotAngle(shotPose));
+    return Math.max(spinUpTime, moveTime) + SETTLE_MARGIN;
+  }
+
+  /**
+   * Returns a command that waits until the robot is close enough to arriving, then runs an action
+   *
+   * @param timeToArrival Supplier for the predicted time until arrival, in seconds
+   * @param leadTime Supplier for how long before arrival to start the action, in seconds
+   * @param action The action to run
+   * @return The command
+   */
+  public Command whenArriving(
+      DoubleSupplier timeToArrival, DoubleSupplier leadTime, Command action) {
+    if (!ENABLED) {
+      return Commands.waitUntil(() -> timeToArrival.getAsDouble() <= 0.0).andThen(action);
+    }
+    return Commands.waitUntil(() -> timeToArrival.getAsDouble() <= leadTime.getAsDouble())
+        .andThen(action);
+  }
+
+  /**
+   * Returns a command that starts spinning up the flywheels and moving the pivot for a shot just
+   * early enough to be ready when the robot arrives at the end of a drive. The command requires the
+   * superstructure and shooter, so it should be run alongside the drive in sequence with any other
+   * actions that use them. Shots from out of range are not prepared, so the superstructure is never
+   * raised far from the goal.
+   *
+   * @param drive The drive command and the pose it ends at
+   * @param shotPose The pose the shot will be taken from
+   * @return The command
+   */
+  public Command prepareShotBeforeArrival(CommandWithPose drive, Pose2d shotPose) {
+    if (!ShooterMath.inRange(shotPose)) {
+      return Commands.none();
+    }
+    final double rpm = ShooterMath.calculateShooterRPM(shotPose);
+    final double angle = ShooterMath.calculatePivotAngle(shotPose);
+    return whenArriving(
+        drive.timeToArrival(),
+        () -> getShotPrepTime(shotPose),
+        Commands.runOnce(
+            () -> {
+              superstructure.setModeVoid(SuperstructureState.SHOOTING);
+              shooter.setSpeedVoid(rpm);
+              superstructure.setShootingAngleRad(angle);
+            },
+            superstructure,
+            shooter));
+  }
+}
@@ -0,0 +1,400 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.auto;
+
+import edu.wpi.first.hal.AllianceStationID;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import edu.wpi.first.networktables.DoubleArraySubscriber;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.PubSubOption;
+import edu.wpi.first.networktables.TimestampedDoubleArray;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.WorBots.Constants;
+import frc.WorBots.RobotContainer;
+import frc.WorBots.util.LoopContext;
+import frc.WorBots.util.MatchTime;
+import frc.WorBots.util.RobotSimulator;
+import frc.WorBots.util.cache.Cache.AllianceCache;
+import frc.WorBots.util.cache.Cache.TimeCache;
+import frc.WorBots.util.cache.LoopCache;
+import frc.WorBots.util.debug.TunableDouble;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs every registered auto routine through the simulation, faster than real time, and reports
+ * how long each one takes. Time is stepped manually and all of the simulated sensors are seeded, so
+ * the same code always produces the same report and reports can be diffed between commits.
+ *
+ * <p>Run with {@code ./gradlew benchmarkAutos}, optionally with {@code -Proutines=Long,Close} to
+ * only run routines whose names contain one of the given strings. Writes auto_benchmark.json and
+ * auto_benchmark.csv to build/auto-benchmark.
+ */
+public class AutoBenchmark {
+  /** The length of the autonomous period, in seconds */
+  private static final double AUTO_LENGTH = 15.0;
+
+  /** The time to run disabled before each routine to select it and let mechanisms settle */
+  private static final double DISABLED_TIME = 1.0;
+
+  /** The speed under which the drivetrain is considered idle, in m/s and rad/s */
+  private static final double DRIVE_IDLE_SPEED = 0.05;
+
+  private static final String[] CSV_COLUMNS = {
+    "alliance",
+    "routine",
+    "completed",
+    "total_time",
+    "notes_scored",
+    "time_per_note",
+    "drive_idle",
+    "superstructure_idle",
+    "intake_idle",
+    "shooter_idle",
+    "max_tracking_error",
+    "max_estimation_error"
+  };
+
+  /**
+   * The results of running one routine. Idle times are the time that each subsystem spent not
+   * doing work: the drive stopped, the superstructure settled at its setpoint, the intake off, and
+   * the shooter settled with nothing being fed.
+   */
+  public static record Result(
+      String alliance,
+      String routine,
+      boolean completed,
+      double totalTime,
+      int notesScored,
+      double driveIdle,
+      double superstructureIdle,
+      double intakeIdle,
+      double shooterIdle,
+      double maxTrackingError,
+      double maxEstimationError) {
+    /**
+     * Gets the average time taken for each scored note
+     *
+     * @return The time in seconds, or NaN if no notes were scored
+     */
+    public double timePerNote() {
+      return notesScored == 0 ? Double.NaN : totalTime / notesScored;
+    }
+  }
+
+  private final RobotContainer container;
+  private final DoubleArraySubscriber trajectorySetpoint =
+      NetworkTableInstance.getDefault()
+          .getTable("Drive")
+          .getDoubleArrayTopic("Trajectory Setpoint")
+          .subscribe(new double[] {}, PubSubOption.keepDuplicates(true));
+
+  private AutoBenchmark() {
+    SimHooks.pauseTiming();
+    setDriverStation(AllianceStationID.Blue1, false);
+    container = new RobotContainer();
+  }
+
+  /**
+   * Runs the benchmark
+   *
+   * @param args The output directory, and an optional comma separated list of routine filters
+   */
+  public static void main(String[] args) throws IOException {
+    if (!HAL.initialize(500, 0)) {
+      throw new IllegalStateException("Failed to initialize the HAL");
+    }
+    final Path outputDirectory = Path.of(args.length > 0 ? args[0] : "auto-benchmark");
+    final String[] filters = args.length > 1 ? args[1].split(",") : new String[] {};
+
+    final List<Result> results = new AutoBenchmark().runAll(filters);
+
+    Files.createDirectories(outputDirectory);
+    Files.writeString(outputDirectory.resolve("auto_benchmark.json"), toJson(results));
+    Files.writeString(outputDirectory.resolve("auto_benchmark.csv"), toCsv(results));
+    System.out.println(
+        "Wrote " + results.size() + " results to " + outputDirectory.toAbsolutePath());
+
+    HAL.shutdown();
+    System.exit(0);
+  }
+
+  /**
+   * Runs every matching routine on both alliances
+   *
+   * @param filters Strings that a routine name must contain one of. Empty to run every routine
+   * @return The results
+   */
+  private List<Result> runAll(String[] filters) {
+    final List<Result> results = new ArrayList<>();
+    for (AllianceStationID station :
+        new AllianceStationID[] {AllianceStationID.Blue1, AllianceStationID.Red1}) {
+      // Autos flip their paths when they are created, so they have to be made again
+      setDriverStation(station, false);
+      container.registerAutos();
+
+      for (String answer : container.getAutoSelector().getAnswers()) {
+        if (!matchesFilters(answer, filters)) {
+          continue;
+        }
+        final Result result = runRoutine(station, answer);
+        System.out.println(
+            String.format(
+                Locale.ROOT,
+                "%s %s: %.2f s, %d notes%s",
+                result.alliance(),
+                result.routine(),
+                result.totalTime(),
+                result.notesScored(),
+                result.completed() ? "" : " (timed out)"));
+        results.add(result);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Runs a single routine through a simulated autonomous period
+   *
+   * @param station The driver station to run from
+   * @param answer The routine and question responses, in the format of the dashboard chooser
+   * @return The result
+   */
+  private Result runRoutine(AllianceStationID station, String answer) {
+    // Select the routine while disabled
+    setDriverStation(station, false);
+    SmartDashboard.putString("Auto Selector", answer);
+    for (double t = 0.0; t < DISABLED_TIME; t += Constants.ROBOT_PERIOD) {
+      step();
+    }
+    final Command command = container.getAutonomousCommand();
+    RobotSimulator.getInstance().reset();
+    trajectorySetpoint.readQueue();
+
+    // Start auto the same way that the robot does
+    setDriverStation(station, true);
+    MatchTime.getInstance().startAuto();
+    command.schedule();
+    container.stopSubsystems();
+
+    double time = 0.0;
+    double driveIdle = 0.0;
+    double superstructureIdle = 0.0;
+    double intakeIdle = 0.0;
+    double shooterIdle = 0.0;
+    double maxTrackingError = 0.0;
+    double maxEstimationError = 0.0;
+    while (command.isScheduled() && time < AUTO_LENGTH) {
+      step();
+      time += Constants.ROBOT_PERIOD;
+
+      final Twist2d velocity = container.drive.getFieldVelocity();
+      if (Math.hypot(velocity.dx, velocity.dy) < DRIVE_IDLE_SPEED
+          && Math.abs(velocity.dtheta) < DRIVE_IDLE_SPEED) {
+        driveIdle += Constants.ROBOT_PERIOD;
+      }
+      if (container.superstructure.isAtSetpoint()) {
+        superstructureIdle += Constants.ROBOT_PERIOD;
+      }
+      if (container.intake.getSetpointVolts() == 0.0) {
+        intakeIdle += Constants.ROBOT_PERIOD;
+      }
+      if (container.shooter.isAtSetpoint()
+          && RobotSimulator.getInstance().getFeederVolts() == 0.0) {
+        shooterIdle += Constants.ROBOT_PERIOD;
+      }
+
+      final Pose2d truePose = RobotSimulator.getInstance().getGroundTruthPose();
+      maxEstimationError =
+          Math.max(
+              maxEstimationError,
+              container.drive.getPose().getTranslation().getDistance(truePose.getTranslation()));
+
+      // Only trajectory followers publish setpoints, so other drive commands are not counted
+      final TimestampedDoubleArray[] setpoints = trajectorySetpoint.readQueue();
+      if (setpoints.length > 0) {
+        final double[] setpoint = setpoints[setpoints.length - 1].value;
+        if (setpoint.length >= 2) {
+          maxTrackingError =
+              Math.max(
+                  maxTrackingError,
+                  Math.hypot(setpoint[0] - truePose.getX(), setpoint[1] - truePose.getY()));
+        }
+      }
+    }
+
+    final boolean completed = !command.isScheduled();
+    command.cancel();
+    setDriverStation(station, false);
+    step();
+
+    return new Result(
+        station.name().startsWith("Blue") ? "Blue" : "Red",
+        answer,
+        completed,
+        time,
+        RobotSimulator.getInstance().getShotCount(),
+        driveIdle,
+        superstructureIdle,
+        intakeIdle,
+        shooterIdle,
+        maxTrackingError,
+        maxEstimationError);
+  }
+
+  /** Runs one robot loop, in the same order as the robot */
+  private void step() {
+    SimHooks.stepTiming(Constants.ROBOT_PERIOD);
+    DriverStationSim.notifyNewData();
+    LoopCache.advanceEpoch();
+    LoopContext.capture();
+    TimeCache.getInstance().update();
+    AllianceCache.getInstance().update();
+    TunableDouble.pollChanges();
+    CommandScheduler.getInstance().run();
+    RobotSimulator.getInstance().periodic();
+  }
+
+  /**
+   * Sets the simulated driver station state
+   *
+   * @param station The alliance station
+   * @param autonomousEnabled Whether to enable in autonomous, or to disable
+   */
+  static void setDriverStation(AllianceStationID station, boolean autonomousEnabled) {
+    DriverStationSim.setDsAttached(true);
+    DriverStationSim.setAllianceStationId(station);
+    DriverStationSim.setAutonomous(true);
+    DriverStationSim.setEnabled(autonomousEnabled);
+    DriverStationSim.notifyNewData();
+    DriverStation.refreshData();
+    LoopContext.capture();
+    AllianceCache.getInstance().update();
+  }
+
+  /**
+   * Checks if a routine matches any of the filters
+   *
+   * @param answer The routine answer
+   * @param filters The filters
+   * @return True if there are no filters or one matches
+   */
+  private static boolean matchesFilters(String answer, String[] filters) {
+    if (filters.length == 0) {
+      return true;
+    }
+    final String lower = answer.toLowerCase(Locale.ROOT);
+    for (String filter : filters) {
+      if (!filter.isBlank() && lower.contains(filter.trim().toLowerCase(Locale.ROOT))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Formats the results as a JSON array
+   *
+   * @param results The results
+   * @return The JSON text
+   */
+  private static String toJson(List<Result> results) {
+    final StringBuilder builder = new StringBuilder("[\n");
+    for (int i = 0; i < results.size(); i++) {
+      final Result result = results.get(i);
+      builder.append("  {\n");
+      builder.append("    \"alliance\": \"").append(result.alliance()).append("\",\n");
+      builder.append("    \"routine\": \"").append(escapeJson(result.routine())).append("\",\n");
+      builder.append("    \"completed\": ").append(result.completed()).append(",\n");
+      appendJsonNumber(builder, "total_time", result.totalTime(), false);
+      builder.append("    \"notes_scored\": ").append(result.notesScored()).append(",\n");
+      appendJsonNumber(builder, "time_per_note", result.timePerNote(), false);
+      appendJsonNumber(builder, "drive_idle", result.driveIdle(), false);
+      appendJsonNumber(builder, "superstructure_idle", result.superstructureIdle(), false);
+      appendJsonNumber(builder, "intake_idle", result.intakeIdle(), false);
+      appendJsonNumber(builder, "shooter_idle", result.shooterIdle(), false);
+      appendJsonNumber(builder, "max_tracking_error", result.maxTrackingError(), false);
+      appendJsonNumber(builder, "max_estimation_error", result.maxEstimationError(), true);
+      builder.append(i < results.size() - 1 ? "  },\n" : "  }\n");
+    }
+    return builder.append("]\n").toString();
+  }
+
+  private static void appendJsonNumber(
+      StringBuilder builder, String key, double value, boolean last) {
+    builder.append("    \"").append(key).append("\": ").append(formatNumber(value, "null"));
+    builder.append(last ? "\n" : ",\n");
+  }
+
+  private static String escapeJson(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"");
+  }
+
+  /**
+   * Formats the results as CSV with a header row
+   *
+   * @param results The results
+   * @return The CSV text
+   */
+  private static String toCsv(List<Result> results) {
+    final StringBuilder builder = new StringBuilder(String.join(",", CSV_COLUMNS)).append('\n');
+    for (Result result : results) {
+      builder
+          .append(result.alliance())
+          .append(",\"")
+          .append(result.routine().replace("\"", "\"\""))
+          .append("\",")
+          .append(result.completed())
+          .append(',')
+          .append(formatNumber(result.totalTime(), ""))
+          .append(',')
+          .append(result.notesScored())
+          .append(',')
+          .append(formatNumber(result.timePerNote(), ""))
+          .append(',')
+          .append(formatNumber(result.driveIdle(), ""))
+          .append(',')
+          .append(formatNumber(result.superstructureIdle(), ""))
+          .append(',')
+          .append(formatNumber(result.intakeIdle(), ""))
+          .append(',')
+          .append(formatNumber(result.shooterIdle(), ""))
+          .append(',')
+          .append(formatNumber(result.maxTrackingError(), ""))
+          .append(',')
+          .append(formatNumber(result.maxEstimationError(), ""))
+          .append('\n');
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Formats a number with fixed precision so that reports diff cleanly
+   *
+   * @param value The value
+   * @param nanValue The text to use for NaN
+   * @return The formatted number
+   */
+  private static String formatNumber(double value, String nanValue) {
+    if (Double.isNaN(value)) {
+      return nanValue;
+    }
+    return String.format(Locale.ROOT, "%.3f", value);
+  }
+}
@@ -0,0 +1,130 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.auto;
+
+import frc.WorBots.auto.AutoGraph.NodeType;
+import java.util.Arrays;
+
+/**
+ * Chooses where a dynamic auto goes next in an {@link AutoGraph}. The robot shoots whenever it
+ * holds a note, and otherwise drives to the first note in its priority order that it has not tried
+ * yet and still has time to pick up and shoot. A note that was missing is skipped because the
+ * robot arrives there without picking anything up, so the auto re-routes to the next note straight
+ * from where it is. Decisions only look up precomputed edge times, so they take microseconds and
+ * never allocate.
+ */
+public class AutoDecisionEngine {
+  /** The edge index returned when there is nothing left to do */
+  public static final int DONE = -1;
+
+  /** The time to take a shot once the robot has arrived, in seconds */
+  private static final double SHOT_TIME = 0.5;
+
+  private final AutoGraph graph;
+
+  /** Whether each node has been driven to yet */
+  private final boolean[] visited;
+
+  /** The indices of the notes to pick up, most wanted first */
+  private int[] pickupOrder = new int[] {};
+
+  private int currentNode = 0;
+  private boolean isDone = false;
+
+  /**
+   * Constructs a new AutoDecisionEngine
+   *
+   * @param graph The graph to choose edges from
+   */
+  public AutoDecisionEngine(AutoGraph graph) {
+    this.graph = graph;
+    this.visited = new boolean[graph.getNodeCount()];
+  }
+
+  /**
+   * Resets the engine at the start of an auto
+   *
+   * @param startNode The index of the node that the robot starts at
+   * @param pickupOrder The indices of the notes to pick up, most wanted first
+   */
+  public void reset(int startNode, int[] pickupOrder) {
+    this.currentNode = startNode;
+    this.pickupOrder = pickupOrder;
+    this.isDone = false;
+    Arrays.fill(visited, false);
+    visited[startNode] = true;
+  }
+
+  /**
+   * Chooses the next edge to drive along and moves to the node at its end. When the robot is
+   * holding a note at a starting location or shooting pose, the edge from the node to itself is
+   * returned, which means to shoot without driving.
+   *
+   * @param hasGamePiece Whether the robot is holding a note
+   * @param timeRemaining The time left in the auto, in seconds
+   * @return The index of the edge in the graph, or {@link #DONE} if there is nothing left to do
+   */
+  public int selectNextEdge(boolean hasGamePiece, double timeRemaining) {
+    final int next = hasGamePiece ? selectShot(timeRemaining) : selectPickup(timeRemaining);
+    if (next < 0) {
+      isDone = true;
+      return DONE;
+    }
+    final int edge = graph.getEdgeIndex(currentNode, next);
+    currentNode = next;
+    visited[next] = true;
+    return edge;
+  }
+
+  /**
+   * Checks whether the engine has run out of edges to choose
+   *
+   * @return True if the auto is done
+   */
+  public boolean isDone() {
+    return isDone;
+  }
+
+  /**
+   * Gets the node that the robot is at, or is driving to
+   *
+   * @return The index of the node
+   */
+  public int getCurrentNode() {
+    return currentNode;
+  }
+
+  /** Chooses where to shoot from, or -1 if there is no time */
+  private int selectShot(double timeRemaining) {
+    if (graph.getNode(currentNode).type() != NodeType.PICKUP) {
+      return timeRemaining >= SHOT_TIME ? currentNode : -1;
+    }
+    final int shot = graph.getNearestShot(currentNode);
+    if (shot < 0 || graph.getEdgeTime(currentNode, shot) + SHOT_TIME > timeRemaining) {
+      return -1;
+    }
+    return shot;
+  }
+
+  /** Chooses the next note to pick up, or -1 if there are none left that there is time for */
+  private int selectPickup(double timeRemaining) {
+    for (int i = 0; i < pickupOrder.length; i++) {
+      final int pickup = pickupOrder[i];
+      if (visited[pickup] || !graph.hasEdge(currentNode, pickup)) {
+        continue;
+      }
+      final int shot = graph.getNearestShot(pickup);
+      if (shot >= 0
+          && graph.getEdgeTime(currentNode, pickup) + graph.getEdgeTime(pickup, shot) + SHOT_TIME
+              <= timeRemaining) {
+        return pickup;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,212 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.auto;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.wpilibj.DriverStation;
+import frc.WorBots.commands.DriveTrajectory;
+import frc.WorBots.util.trajectory.FieldPlanner;
+import frc.WorBots.util.trajectory.ReferenceTrajectory;
+import frc.WorBots.util.trajectory.Waypoint;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A graph of the places that autos start, pick up notes, and shoot from, with a trajectory along
+ * every edge that an auto could drive. The trajectories are planned around the field elements and
+ * generated when the graph is created, so autos that choose where to go while running never
+ * generate anything. Creating the graph takes a while, but touches no robot state, so it can be
+ * done on the {@link FieldPlanner} worker thread. Edges are stored in flat arrays indexed by their
+ * start and end nodes.
+ */
+public class AutoGraph {
+  /** The kinds of nodes in the graph */
+  public enum NodeType {
+    /** A starting location, which is only driven away from */
+    START,
+    /** A note to pick up */
+    PICKUP,
+    /** A pose to shoot from */
+    SHOOT
+  }
+
+  /**
+   * A place on the field
+   *
+   * @param name The name of the node, for logging
+   * @param type The type of the node
+   * @param pose The field-relative pose of the robot at the node
+   */
+  public static record Node(String name, NodeType type, Pose2d pose) {}
+
+  private final Node[] nodes;
+
+  /** The trajectory along each edge, or null if there is no edge */
+  private final ReferenceTrajectory[] edges;
+
+  /** The time of each edge in seconds, or infinity if there is no edge */
+  private final double[] edgeTimes;
+
+  /** For each node, the shooting node that is quickest to drive to, or -1 if there is none */
+  private final int[] nearestShots;
+
+  /**
+   * Creates the graph, generating the trajectory along every edge. Every node connects to every
+   * note so that autos can re-route from anywhere, and notes also connect to every shooting pose.
+   * Each edge is passed to the {@link DriveTrajectory} generation listener like any other path.
+   *
+   * @param moduleTranslations The positions of the swerve modules relative to the robot center
+   * @param nodes The nodes of the graph, which are indexed in this order
+   */
+  public AutoGraph(Translation2d[] moduleTranslations, List<Node> nodes) {
+    this.nodes = nodes.toArray(new Node[0]);
+    final int count = this.nodes.length;
+    edges = new ReferenceTrajectory[count * count];
+    edgeTimes = new double[count * count];
+    nearestShots = new int[count];
+    Arrays.fill(edgeTimes, Double.POSITIVE_INFINITY);
+
+    final FieldPlanner planner = FieldPlanner.getInstance();
+    for (int from = 0; from < count; from++) {
+      for (int to = 0; to < count; to++) {
+        if (!isConnected(this.nodes[from], this.nodes[to])) {
+          continue;
+        }
+        final List<Waypoint> waypoints;
+        try {
+          waypoints = planner.plan(this.nodes[from].pose(), this.nodes[to].pose());
+        } catch (IllegalArgumentException exception) {
+          DriverStation.reportWarning(
+              "No auto graph edge from "
+                  + this.nodes[from].name()
+                  + " to "
+                  + this.nodes[to].name()
+                  + ": "
+                  + exception.getMessage(),
+              false);
+          continue;
+        }
+        final ReferenceTrajectory reference =
+            DriveTrajectory.generatePath(moduleTranslations, waypoints, List.of(), 0.0, false)
+                .reference();
+        if (reference.isValid()) {
+          edges[getEdgeIndex(from, to)] = reference;
+          edgeTimes[getEdgeIndex(from, to)] = reference.getTotalTime();
+        }
+      }
+    }
+
+    for (int from = 0; from < count; from++) {
+      nearestShots[from] = -1;
+      for (int to = 0; to < count; to++) {
+        if (this.nodes[to].type() == NodeType.SHOOT
+            && hasEdge(from, to)
+            && (nearestShots[from] < 0
+                || getEdgeTime(from, to) < getEdgeTime(from, nearestShots[from]))) {
+          nearestShots[from] = to;
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks whether an auto could drive from one node to another
+   *
+   * @param from The node to drive from
+   * @param to The node to drive to
+   * @return True if the nodes should have an edge between them
+   */
+  private static boolean isConnected(Node from, Node to) {
+    if (from == to) {
+      return false;
+    }
+    switch (to.type()) {
+      case SHOOT:
+        return from.type() == NodeType.PICKUP;
+      case PICKUP:
+        return true;
+      case START:
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Gets the number of nodes in the graph
+   *
+   * @return The number of nodes
+   */
+  public int getNodeCount() {
+    return nodes.length;
+  }
+
+  /**
+   * Gets a node
+   *
+   * @param index The index of the node
+   * @return The node
+   */
+  public Node getNode(int index) {
+    return nodes[index];
+  }
+
+  /**
+   * Gets the index of the edge between two nodes, which is unique for every pair of nodes
+   *
+   * @param from The index of the node to drive from
+   * @param to The index of the node to drive to
+   * @return The index of the edge
+   */
+  public int getEdgeIndex(int from, int to) {
+    return from * nodes.length + to;
+  }
+
+  /**
+   * Checks whether there is a trajectory between two nodes
+   *
+   * @param from The index of the node to drive from
+   * @param to The index of the node to drive to
+   * @return True if there is an edge
+   */
+  public boolean hasEdge(int from, int to) {
+    return edges[getEdgeIndex(from, to)] != null;
+  }
+
+  /**
+   * Gets the trajectory between two nodes
+   *
+   * @param from The index of the node to drive from
+   * @param to The index of the node to drive to
+   * @return The trajectory, or null if there is no edge
+   */
+  public ReferenceTrajectory getEdge(int from, int to) {
+    return edges[getEdgeIndex(from, to)];
+  }
+
+  /**
+   * Gets the time to drive between two nodes
+   *
+   * @param from The index of the node to drive from
+   * @param to The index of the node to drive to
+   * @return The time in seconds, or infinity if there is no edge
+   */
+  public double getEdgeTime(int from, int to) {
+    return edgeTimes[getEdgeIndex(from, to)];
+  }
+
+  /**
+   * Gets the shooting node that is quickest to drive to from a node
+   *
+   * @param from The index of the node to drive from
+   * @return The index of the shooting node, or -1 if none can be driven to
+   */
+  public int getNearestShot(int from) {
+    return nearestShots[from];
+  }
+}
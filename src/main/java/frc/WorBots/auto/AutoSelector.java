@@ -9,15 +9,16 @@ package frc.WorBots.auto;
 
 import edu.wpi.first.networktables.NetworkTableInstance;
 import edu.wpi.first.networktables.StringPublisher;
-import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.WorBots.util.LoopContext;
 import frc.WorBots.util.debug.StatusPage;
 import frc.WorBots.util.debug.SwitchableChooser;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Subsystem for running a persistent auto selector on the dashboard. Can either display multiple
@@ -33,6 +34,9 @@ public class AutoSelector extends SubsystemBase {
   private static final AutoRoutine defaultRoutine =
       new AutoRoutine("Do Nothing", List.of(), Commands.none());
 
+  /** Listener for added routines, used for reports */
+  private static Consumer<String> routineListener = null;
+
   private SwitchableChooser routineChooser;
   private List<StringPublisher> questionPublishers;
   private List<SwitchableChooser> questionChoosers;
@@ -90,6 +94,9 @@ public class AutoSelector extends SubsystemBase {
       throw new IllegalArgumentException(
           "Auto routine contained more than " + MAX_QUESTIONS + " questions: " + routine.name);
     }
+    if (routineListener != null) {
+      routineListener.accept(routine.name);
+    }
     names.add(routine.name);
     routines.add(
         new AutoRoutine(routine.name, routine.questions, createRoutineCommand(routine.command)));
@@ -100,6 +107,17 @@ public class AutoSelector extends SubsystemBase {
     }
   }
 
+  /**
+   * Sets a listener that is called with the name of each routine as it is added. Since routines
+   * are created right before they are added, this lets reports attribute work done while creating
+   * them
+   *
+   * @param listener The listener, or null to remove it
+   */
+  public static void setRoutineListener(Consumer<String> listener) {
+    routineListener = listener;
+  }
+
   /**
    * Gets a routine from it's name
    *
@@ -141,6 +159,16 @@ public class AutoSelector extends SubsystemBase {
     }
   }
 
+  /**
+   * Gets every selectable routine and question response combination, in the format used by the
+   * dashboard chooser
+   *
+   * @return The answers
+   */
+  public List<String> getAnswers() {
+    return List.copyOf(answers);
+  }
+
   /**
    * Gets the current chosen auto.
    *
@@ -152,8 +180,9 @@ public class AutoSelector extends SubsystemBase {
 
   public void periodic() {
     // Don't run expensive periodic code if we are enabled
-    if (DriverStation.isAutonomousEnabled()
-        || DriverStation.isTeleopEnabled() && lastRoutine != null && lastResponses == null) {
+    final LoopContext context = LoopContext.get();
+    if (context.isAutonomousEnabled()
+        || context.isTeleopEnabled() && lastRoutine != null && lastResponses == null) {
       return;
     }
     if (useDriverStation) {
@@ -35,6 +35,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
 import java.util.function.Supplier;
 
 /** Utility methods, commands, poses, and values for autos to use */
@@ -85,11 +86,14 @@ public class AutoUtil {
   private final Intake intake;
   private final Shooter shooter;
 
+  private final ActionPlanner planner;
+
   public AutoUtil(Drive drive, Superstructure superstructure, Intake intake, Shooter shooter) {
     this.drive = drive;
     this.superstructure = superstructure;
     this.intake = intake;
     this.shooter = shooter;
+    this.planner = new ActionPlanner(superstructure, shooter);
 
     startingLocations =
         new Pose2d[] {
@@ -245,9 +249,9 @@ public class AutoUtil {
     List<TrajectoryConstraint> allConstraints = new ArrayList<>();
     allConstraints.addAll(extraConstraints);
 
+    final DriveTrajectory trajectory = new DriveTrajectory(drive, waypoints, allConstraints, 0.0);
     return new CommandWithPose(
-        new DriveTrajectory(drive, waypoints, allConstraints, 0.0),
-        waypoints.get(waypoints.size() - 1).getPose());
+        trajectory, waypoints.get(waypoints.size() - 1).getPose(), trajectory::getTimeRemaining);
   }
 
   /** Drives to a single pose */
@@ -332,10 +336,16 @@ public class AutoUtil {
    * @param wrapToPickup Wether or not the robot will not pick up from center, and will wrap around
    *     the game piece to pick it up.
    * @param wingPosition The position of the game piece, left being 0, right being 2.
+   * @param shootFromPickup Whether the next shot is taken from where the game piece is picked up.
+   *     If it is, the shot is prepared while driving once the piece is intook.
    * @return The command and pose.
    */
   public CommandWithPose driveAndIntakeWing(
-      Pose2d startingPosition, boolean fromCenter, boolean wrapToPickup, int wingPosition) {
+      Pose2d startingPosition,
+      boolean fromCenter,
+      boolean wrapToPickup,
+      int wingPosition,
+      boolean shootFromPickup) {
     List<Waypoint> waypoints = new ArrayList<>();
     waypoints.add(Waypoint.fromHolonomicPose(startingPosition));
     if (fromCenter) {
@@ -398,26 +408,52 @@ public class AutoUtil {
     }
     final var handoff = new Handoff(intake, superstructure, shooter).withTimeout(2.0);
     if (!shooter.hasGamePiece()) {
+      final Pose2d endPose = waypoints.get(waypoints.size() - 1).getPose();
+      final CommandWithPose path = path(waypoints);
+      // Get ready for the handoff while driving, and get ready to shoot from the end pose once the
+      // piece is intook if that is where the next shot is, just early enough to be ready on arrival
+      final Command prepareShot =
+          shootFromPickup ? planner.prepareShotBeforeArrival(path, endPose) : Commands.none();
       return new CommandWithPose(
           UtilCommands.namedSequence(
               "Auto Intake Wing Progress",
-              prepareHandoff(),
-              path(waypoints)
-                  .command()
+              path.command()
                   .alongWith(
                       UtilCommands.optimalSequence(
+                          prepareHandoff(),
                           Commands.waitUntil(
                               () -> {
                                 return AllianceFlipUtil.apply(drive.getPose().getX())
                                     >= FieldConstants.StartingZone.endX;
                               }),
-                          handoff))),
-          waypoints.get(waypoints.size() - 1).getPose());
+                          handoff,
+                          prepareShot))),
+          endPose,
+          path.timeToArrival());
     } else {
       return new CommandWithPose(Commands.none(), startingPosition);
     }
   }
 
+  /**
+   * Drives to a shot pose while handing off the game piece, and gets ready for the shot once the
+   * handoff is done, just early enough to be ready on arrival
+   *
+   * @param startingPosition The pose to drive from
+   * @param shotPose The pose the shot will be taken from
+   * @return The command and pose
+   */
+  public CommandWithPose driveToShotWithHandoff(Pose2d startingPosition, Pose2d shotPose) {
+    final CommandWithPose path =
+        path(Waypoint.fromHolonomicPose(startingPosition), Waypoint.fromHolonomicPose(shotPose));
+    return new CommandWithPose(
+        Commands.deadline(
+            path.command(),
+            fullHandoff().andThen(planner.prepareShotBeforeArrival(path, shotPose))),
+        shotPose,
+        path.timeToArrival());
+  }
+
   /**
    * Drives to the specified game piece in the center of the field and intakes it.
    *
@@ -441,18 +477,19 @@ public class AutoUtil {
     }
     waypoints.add(Waypoint.fromHolonomicPose(centerGamePieceLocations[centerPosition]));
     if (!shooter.hasGamePiece()) {
+      final CommandWithPose path = path(waypoints);
       return new CommandWithPose(
           UtilCommands.namedSequence(
               "Auto Intake Center Progress",
-              prepareHandoff(),
-              path(waypoints)
-                  .command()
+              path.command()
                   .alongWith(
                       UtilCommands.optimalSequence(
+                          prepareHandoff(),
                           Commands.waitUntil(
                               () -> AllianceFlipUtil.apply(drive.getPose().getX()) > 4.5),
                           handoff.withTimeout(2.0)))),
-          centerGamePieceLocations[centerPosition]);
+          centerGamePieceLocations[centerPosition],
+          path.timeToArrival());
     } else {
       return new CommandWithPose(Commands.none(), startingPosition);
     }
@@ -739,6 +776,23 @@ public class AutoUtil {
     return posePlus(pose, transformRotate(rotation));
   }
 
-  /** A command with a pose that it will end at */
-  public static record CommandWithPose(Command command, Pose2d pose) {}
+  /**
+   * Gets the planner for overlapping mechanism actions with driving
+   *
+   * @return The planner
+   */
+  public ActionPlanner getPlanner() {
+    return planner;
+  }
+
+  /**
+   * A command with a pose that it will end at, and a prediction of the time until it gets there
+   * once it is running
+   */
+  public static record CommandWithPose(Command command, Pose2d pose, DoubleSupplier timeToArrival) {
+    /** Creates a command with a pose that has no arrival time prediction */
+    public CommandWithPose(Command command, Pose2d pose) {
+      this(command, pose, () -> 0.0);
+    }
+  }
 }
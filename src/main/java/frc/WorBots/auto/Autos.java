@@ -10,14 +10,19 @@ package frc.WorBots.auto;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Transform2d;
+import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Commands;
 import frc.WorBots.FieldConstants;
+import frc.WorBots.auto.AutoGraph.Node;
+import frc.WorBots.auto.AutoGraph.NodeType;
 import frc.WorBots.auto.AutoSelector.AutoQuestionResponse;
 import frc.WorBots.auto.AutoUtil.CommandWithPose;
 import frc.WorBots.commands.DriveToPose;
+import frc.WorBots.commands.DriveTrajectory;
 import frc.WorBots.subsystems.drive.Drive;
 import frc.WorBots.subsystems.intake.Intake;
 import frc.WorBots.subsystems.shooter.Shooter;
@@ -25,15 +30,34 @@ import frc.WorBots.subsystems.superstructure.Superstructure;
 import frc.WorBots.util.RobotSimulator;
 import frc.WorBots.util.UtilCommands;
 import frc.WorBots.util.math.AllianceFlipUtil;
+import frc.WorBots.util.math.ShooterMath;
+import frc.WorBots.util.trajectory.FieldPlanner;
 import frc.WorBots.util.trajectory.Waypoint;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 /** Holder for the autos we want to run */
 public class Autos {
+  /** The length of the auto period, in seconds */
+  private static final double AUTO_LENGTH = 15.0;
+
+  /** How close to a note to start intaking it in dynamic autos, in meters */
+  private static final double DYNAMIC_INTAKE_DISTANCE = 1.0;
+
+  /** How long to wait at a note for it to be intook in dynamic autos, in seconds */
+  private static final double DYNAMIC_PICKUP_WAIT = 0.3;
+
   // Subsystems
   private final Drive drive;
+  private final Superstructure superstructure;
+  private final Intake intake;
   private final Shooter shooter;
 
   // Supplier for question responses, from the AutoSelector
@@ -49,6 +73,8 @@ public class Autos {
       Shooter shooter,
       Supplier<List<AutoQuestionResponse>> responses) {
     this.drive = drive;
+    this.superstructure = superstructure;
+    this.intake = intake;
     this.shooter = shooter;
 
     this.responses = responses;
@@ -111,7 +137,9 @@ public class Autos {
     final var turn1 = util.turnTo(autoShoot1.pose(), AllianceFlipUtil.apply(new Rotation2d()));
 
     // Intake the piece right behind us
-    final var intake1 = util.driveAndIntakeWing(turn1.pose(), false, false, startingLocation);
+    final var intake1 =
+        util.driveAndIntakeWing(
+            turn1.pose(), false, false, startingLocation, startingLocation != 2);
 
     // Drive to the better spot before the second shot for the wall side, so that we
     // don't run into the stage while targeting
@@ -144,12 +172,13 @@ public class Autos {
     final var autoShoot1 = util.moveAndShoot(startingPose, true, false, false, 0.1);
 
     // Move back, intake, and shoot
-    final var intake1 = util.driveAndIntakeWing(autoShoot1.pose(), false, false, 1);
+    final var intake1 = util.driveAndIntakeWing(autoShoot1.pose(), false, false, 1, true);
     final var autoShoot2 = util.moveAndShoot(intake1.pose(), false, false, true, 1.0);
 
     // Intake the third piece, then move to the center and shoot it
     final int thirdPiecePosition = isWallSide ? 2 : 0;
-    final var intake2 = util.driveAndIntakeWing(autoShoot2.pose(), true, false, thirdPiecePosition);
+    final var intake2 =
+        util.driveAndIntakeWing(autoShoot2.pose(), true, false, thirdPiecePosition, false);
     final var autoShoot3 =
         util.moveAndShoot(util.wingGamePieceLocations[1], false, false, true, 3.0);
     return createSequence(
@@ -158,12 +187,7 @@ public class Autos {
         intake1.command(),
         autoShoot2.command(),
         intake2.command(),
-        Commands.deadline(
-            util.path(
-                    Waypoint.fromHolonomicPose(intake2.pose()),
-                    Waypoint.fromHolonomicPose(util.wingGamePieceLocations[1]))
-                .command(),
-            util.fullHandoff()),
+        util.driveToShotWithHandoff(intake2.pose(), util.wingGamePieceLocations[1]).command(),
         autoShoot3.command());
   }
 
@@ -173,14 +197,14 @@ public class Autos {
     final var autoShoot1 = util.moveAndShoot(startingPose, true, false, false, 0.1);
 
     // Move back, intake, and shoot
-    final var intake1 = util.driveAndIntakeWing(autoShoot1.pose(), false, false, 1);
+    final var intake1 = util.driveAndIntakeWing(autoShoot1.pose(), false, false, 1, true);
     final var autoShoot2 = util.moveAndShoot(intake1.pose(), false, false, false, 0.5);
 
     // Intake the third piece, then move to the center and shoot it
-    final var intake2 = util.driveAndIntakeWing(autoShoot2.pose(), true, false, 0);
+    final var intake2 = util.driveAndIntakeWing(autoShoot2.pose(), true, false, 0, false);
     final var autoShoot3 =
         util.moveAndShoot(util.wingGamePieceLocations[1], false, false, true, 1.0);
-    final var intake3 = util.driveAndIntakeWing(autoShoot3.pose(), true, false, 2);
+    final var intake3 = util.driveAndIntakeWing(autoShoot3.pose(), true, false, 2, false);
     final var autoShoot4 =
         util.moveAndShoot(util.wingGamePieceLocations[1], false, false, true, 2.0);
     return createSequence(
@@ -189,21 +213,12 @@ public class Autos {
         intake1.command(),
         autoShoot2.command(),
         intake2.command().withTimeout(4.0),
-        Commands.deadline(
-            util.path(
-                    Waypoint.fromHolonomicPose(intake2.pose()),
-                    Waypoint.fromHolonomicPose(util.wingGamePieceLocations[1]))
-                .command(),
-            util.fullHandoff()),
+        util.driveToShotWithHandoff(intake2.pose(), util.wingGamePieceLocations[1]).command(),
         autoShoot3.command(),
         intake3.command().withTimeout(4.0),
-        Commands.deadline(
-            util.path(
-                    Waypoint.fromHolonomicPose(intake3.pose()),
-                    Waypoint.fromHolonomicPose(util.wingGamePieceLocations[1]))
-                .command()
-                .withTimeout(4.5),
-            util.fullHandoff()),
+        util.driveToShotWithHandoff(intake3.pose(), util.wingGamePieceLocations[1])
+            .command()
+            .withTimeout(4.5),
         autoShoot4.command());
   }
 
@@ -213,14 +228,14 @@ public class Autos {
     final var autoShoot1 = util.moveAndShoot(startingPose, true, false, false, 0.1);
 
     // Move back, intake, and shoot
-    final var intake1 = util.driveAndIntakeWing(autoShoot1.pose(), false, false, 1);
+    final var intake1 = util.driveAndIntakeWing(autoShoot1.pose(), false, false, 1, true);
     final var autoShoot2 = util.moveAndShoot(intake1.pose(), false, false, false, 0.5);
 
     // Intake the third piece, then move to the center and shoot it
-    final var intake2 = util.driveAndIntakeWing(autoShoot2.pose(), true, false, 2);
+    final var intake2 = util.driveAndIntakeWing(autoShoot2.pose(), true, false, 2, false);
     final var autoShoot3 =
         util.moveAndShoot(util.wingGamePieceLocations[1], false, false, true, 1.0);
-    final var intake3 = util.driveAndIntakeWing(autoShoot3.pose(), true, false, 0);
+    final var intake3 = util.driveAndIntakeWing(autoShoot3.pose(), true, false, 0, false);
     final var autoShoot4 =
         util.moveAndShoot(util.wingGamePieceLocations[1], false, false, true, 2.0);
     return createSequence(
@@ -229,21 +244,12 @@ public class Autos {
         intake1.command(),
         autoShoot2.command(),
         intake2.command().withTimeout(4.0),
-        Commands.deadline(
-            util.path(
-                    Waypoint.fromHolonomicPose(intake2.pose()),
-                    Waypoint.fromHolonomicPose(util.wingGamePieceLocations[1]))
-                .command(),
-            util.fullHandoff()),
+        util.driveToShotWithHandoff(intake2.pose(), util.wingGamePieceLocations[1]).command(),
         autoShoot3.command(),
         intake3.command().withTimeout(4.0),
-        Commands.deadline(
-            util.path(
-                    Waypoint.fromHolonomicPose(intake3.pose()),
-                    Waypoint.fromHolonomicPose(util.wingGamePieceLocations[1]))
-                .command()
-                .withTimeout(4.5),
-            util.fullHandoff()),
+        util.driveToShotWithHandoff(intake3.pose(), util.wingGamePieceLocations[1])
+            .command()
+            .withTimeout(4.5),
         autoShoot4.command());
   }
 
@@ -705,7 +711,7 @@ public class Autos {
     final var turn1 = util.turnTo(shoot1.pose(), AllianceFlipUtil.apply(new Rotation2d()));
 
     // Intake the piece right behind us
-    final var intake1 = util.driveAndIntakeWing(turn1.pose(), false, false, 0);
+    final var intake1 = util.driveAndIntakeWing(turn1.pose(), false, false, 0, true);
 
     // Shoot the second piece
     final var shoot2 = util.moveAndShoot(intake1.pose(), true, false, true, 2.5);
@@ -749,7 +755,7 @@ public class Autos {
     final var turn1 = util.turnTo(shoot1.pose(), AllianceFlipUtil.apply(new Rotation2d()));
 
     // Intake the piece right behind us
-    final var intake1 = util.driveAndIntakeWing(turn1.pose(), false, false, 0);
+    final var intake1 = util.driveAndIntakeWing(turn1.pose(), false, false, 0, true);
 
     // Shoot the second piece
     final var shoot2 = util.moveAndShoot(intake1.pose(), true, false, true, 2.5);
@@ -801,6 +807,155 @@ public class Autos {
         shoot4.command());
   }
 
+  /**
+   * An auto that shoots the preloaded note and then picks up and shoots as many notes as it can,
+   * choosing where to go next from an {@link AutoGraph} while it runs. Notes that are missing are
+   * skipped instead of wasting the rest of the auto.
+   *
+   * @return The command
+   */
+  public Command dynamic() {
+    final List<Node> nodes = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      nodes.add(new Node("Start " + i, NodeType.START, util.startingLocations[i]));
+    }
+    final int firstWing = nodes.size();
+    for (int i = 0; i < util.wingGamePieceLocations.length; i++) {
+      nodes.add(new Node("Wing " + i, NodeType.PICKUP, util.wingGamePieceLocations[i]));
+    }
+    final int firstCenter = nodes.size();
+    for (int i = 0; i < util.centerGamePieceLocations.length; i++) {
+      nodes.add(new Node("Center " + i, NodeType.PICKUP, util.centerGamePieceLocations[i]));
+    }
+    final int firstShot = nodes.size();
+    for (int i = 0; i < util.shootingPositions.length; i++) {
+      final Pose2d pose = util.shootingPositions[i];
+      nodes.add(
+          new Node(
+              "Shoot " + i,
+              NodeType.SHOOT,
+              new Pose2d(pose.getTranslation(), ShooterMath.getGoalTheta(pose))));
+    }
+
+    // Generating every edge takes too long for the robot loop, so the graph is built on the
+    // planning thread. Reports listen for generated paths while the autos are created and don't run
+    // a loop, so it is built right away for them instead
+    final Translation2d[] moduleTranslations = drive.getModuleTranslations();
+    final CompletableFuture<AutoGraph> graph =
+        DriveTrajectory.hasGenerationListener()
+            ? CompletableFuture.completedFuture(new AutoGraph(moduleTranslations, nodes))
+            : FieldPlanner.getInstance().submit(() -> new AutoGraph(moduleTranslations, nodes));
+
+    // The graph should be ready long before the auto starts, but the auto waits for it if not
+    return createSequence(
+        Commands.defer(
+            () -> createDynamic(graph.join(), firstWing, firstCenter, firstShot),
+            Set.of(drive, superstructure, intake, shooter)));
+  }
+
+  /**
+   * Creates the dynamic auto from its graph
+   *
+   * @param graph The graph
+   * @param firstWing The index of the first wing note node
+   * @param firstCenter The index of the first center note node
+   * @param firstShot The index of the first shooting node, which comes after all of the notes
+   * @return The command
+   */
+  private Command createDynamic(AutoGraph graph, int firstWing, int firstCenter, int firstShot) {
+    final AutoDecisionEngine engine = new AutoDecisionEngine(graph);
+
+    // Create a command for every edge ahead of time so that only the choice is made while running
+    final Map<Integer, Command> edgeCommands = new HashMap<>();
+    edgeCommands.put(AutoDecisionEngine.DONE, Commands.none());
+    for (int from = 0; from < graph.getNodeCount(); from++) {
+      if (graph.getNode(from).type() != NodeType.PICKUP) {
+        // Shooting without driving
+        final Pose2d pose = graph.getNode(from).pose();
+        edgeCommands.put(
+            graph.getEdgeIndex(from, from),
+            util.moveAndShoot(pose, true, false, true, 0.1).command());
+      }
+      for (int to = 0; to < graph.getNodeCount(); to++) {
+        if (graph.hasEdge(from, to)) {
+          edgeCommands.put(graph.getEdgeIndex(from, to), createEdgeCommand(graph, from, to));
+        }
+      }
+    }
+
+    // Prioritize the notes closest to each starting location, wing notes first
+    final int[][] pickupOrders = new int[3][];
+    for (int start = 0; start < 3; start++) {
+      final Translation2d startingPosition = graph.getNode(start).pose().getTranslation();
+      pickupOrders[start] =
+          IntStream.range(firstWing, firstShot)
+              .boxed()
+              .sorted(
+                  Comparator.comparing((Integer node) -> node >= firstCenter)
+                      .thenComparingDouble(
+                          node ->
+                              graph
+                                  .getNode(node)
+                                  .pose()
+                                  .getTranslation()
+                                  .getDistance(startingPosition)))
+              .mapToInt(Integer::intValue)
+              .toArray();
+    }
+
+    final Timer timer = new Timer();
+    final AutoWithStartingLocation resetToStart =
+        (int startingLocation) ->
+            Commands.sequence(
+                util.reset(graph.getNode(startingLocation).pose()).command(),
+                Commands.runOnce(
+                    () -> {
+                      engine.reset(startingLocation, pickupOrders[startingLocation]);
+                      timer.restart();
+                    }));
+    return Commands.sequence(
+        selectFromStartingLocation(resetToStart),
+        Commands.select(
+                edgeCommands,
+                () ->
+                    engine.selectNextEdge(
+                        intake.hasGamePiece() || shooter.hasGamePiece(), AUTO_LENGTH - timer.get()))
+            .repeatedly()
+            .until(engine::isDone));
+  }
+
+  /**
+   * Creates the command for driving along an edge of a dynamic auto graph. Edges to notes intake
+   * while driving and wait briefly at the note, and edges to shooting poses get ready to shoot on
+   * the way and then shoot.
+   *
+   * @param graph The graph
+   * @param from The index of the node to drive from
+   * @param to The index of the node to drive to
+   * @return The command
+   */
+  private Command createEdgeCommand(AutoGraph graph, int from, int to) {
+    final Pose2d pose = graph.getNode(to).pose();
+    final DriveTrajectory trajectory = new DriveTrajectory(drive, graph.getEdge(from, to));
+    final CommandWithPose path =
+        new CommandWithPose(trajectory, pose, trajectory::getTimeRemaining);
+    if (graph.getNode(to).type() == NodeType.PICKUP) {
+      return Commands.deadline(
+          path.command()
+              .andThen(
+                  Commands.waitUntil(() -> intake.hasGamePiece() || shooter.hasGamePiece())
+                      .withTimeout(DYNAMIC_PICKUP_WAIT)),
+          util.prepareHandoff().andThen(util.intakeWhenNear(pose, DYNAMIC_INTAKE_DISTANCE)));
+    }
+    return Commands.sequence(
+        path.command()
+            .alongWith(
+                UtilCommands.optimalSequence(
+                    util.fullHandoff().withTimeout(2.0),
+                    util.getPlanner().prepareShotBeforeArrival(path, pose))),
+        util.moveAndShoot(pose, true, false, true, 0.1).command());
+  }
+
   public Command mobility() {
     return selectFromStartingLocation(this::mobility);
   }
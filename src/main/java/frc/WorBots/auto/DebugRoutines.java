@@ -23,6 +23,8 @@ import frc.WorBots.subsystems.superstructure.Superstructure;
 import frc.WorBots.subsystems.superstructure.SuperstructurePose.Preset;
 import frc.WorBots.subsystems.vision.Vision;
 import frc.WorBots.util.UtilCommands;
+import frc.WorBots.util.math.PoseEstimatorBenchmark;
+import frc.WorBots.util.trajectory.TrajectoryFollowerBenchmark;
 
 /** Debugging, test, and characterization routines */
 public class DebugRoutines {
@@ -81,6 +83,40 @@ public class DebugRoutines {
         .andThen(() -> drive.runVelocity(new ChassisSpeeds()));
   }
 
+  /**
+   * Benchmarks the CPU cost and accuracy of the pose estimator engines on a synthetic drive. Does
+   * not move the robot.
+   */
+  public Command benchmarkPoseEstimators() {
+    return Commands.runOnce(
+        () -> {
+          for (PoseEstimatorBenchmark.Result result : PoseEstimatorBenchmark.run()) {
+            final String prefix = "Benchmark/Pose Estimator/" + result.type() + "/";
+            SmartDashboard.putNumber(prefix + "Micros Per Update", result.averageMicros());
+            SmartDashboard.putNumber(prefix + "RMS Error", result.rmsErrorMeters());
+            SmartDashboard.putNumber(prefix + "Max Error", result.maxErrorMeters());
+          }
+        });
+  }
+
+  /**
+   * Benchmarks the CPU cost and tracking error of the trajectory follower control laws on a
+   * simulated drivetrain. Does not move the robot.
+   */
+  public Command benchmarkTrajectoryFollowers() {
+    return Commands.runOnce(
+        () -> {
+          for (TrajectoryFollowerBenchmark.Result result : TrajectoryFollowerBenchmark.run()) {
+            final String prefix =
+                "Benchmark/Trajectory Follower/" + result.law() + "/" + result.source() + "/";
+            SmartDashboard.putNumber(prefix + "Micros Per Update", result.averageMicros());
+            SmartDashboard.putNumber(prefix + "RMS Error", result.rmsErrorMeters());
+            SmartDashboard.putNumber(prefix + "Max Error", result.maxErrorMeters());
+            SmartDashboard.putNumber(prefix + "Settle Time", result.settleTime());
+          }
+        });
+  }
+
   private static Rotation2d odometryStartingRotation = new Rotation2d();
   private static double[] odometryStartingPositions = new double[4];
 
@@ -0,0 +1,225 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.auto;
+
+import edu.wpi.first.hal.AllianceStationID;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import frc.WorBots.RobotContainer;
+import frc.WorBots.commands.DriveTrajectory;
+import frc.WorBots.commands.DriveTrajectory.GeneratedPath;
+import frc.WorBots.util.trajectory.ReferenceTrajectory;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reports how much time the time-optimal trajectory generator saves over the old fixed-limit
+ * generator for every path of every auto routine. The autos are created the same way that the
+ * robot creates them, and each path is generated again with the fixed limits to compare against.
+ *
+ * <p>Run with {@code ./gradlew reportTrajectoryTimes}. Writes trajectory_times.csv to
+ * build/trajectory-report.
+ */
+public class TrajectoryTimeReport {
+  /**
+   * The result for one path
+   *
+   * @param routine The name of the routine that the path is in
+   * @param index The index of the path in the routine
+   * @param waypointCount The number of waypoints in the path
+   * @param fixedLimitTime The time of the path with fixed limits, or NaN if it failed
+   * @param timeOptimalTime The time of the path with module limits, or NaN if it failed
+   * @param failure Why either generator failed, or null if both succeeded
+   */
+  public static record PathResult(
+      String routine,
+      int index,
+      int waypointCount,
+      double fixedLimitTime,
+      double timeOptimalTime,
+      String failure) {
+    /**
+     * Gets the time saved by the time-optimal generator
+     *
+     * @return The time in seconds, or NaN if either generator failed
+     */
+    public double secondsSaved() {
+      return fixedLimitTime - timeOptimalTime;
+    }
+
+    /**
+     * Checks whether both generators made a trajectory for the path
+     *
+     * @return True if both times are known
+     */
+    public boolean succeeded() {
+      return failure == null;
+    }
+  }
+
+  /**
+   * Runs the report
+   *
+   * @param args The output directory
+   */
+  public static void main(String[] args) throws IOException {
+    if (!HAL.initialize(500, 0)) {
+      throw new IllegalStateException("Failed to initialize the HAL");
+    }
+    final Path outputDirectory = Path.of(args.length > 0 ? args[0] : "trajectory-report");
+
+    SimHooks.pauseTiming();
+    AutoBenchmark.setDriverStation(AllianceStationID.Blue1, false);
+    final RobotContainer container = new RobotContainer();
+
+    // Attribute the paths generated while creating each routine to it
+    final List<GeneratedPath> pending = new ArrayList<>();
+    final List<PathResult> results = new ArrayList<>();
+    DriveTrajectory.setGenerationListener(pending::add);
+    AutoSelector.setRoutineListener(
+        name -> {
+          for (int i = 0; i < pending.size(); i++) {
+            results.add(evaluate(name, i, pending.get(i)));
+          }
+          pending.clear();
+        });
+    container.registerAutos();
+    DriveTrajectory.setGenerationListener(null);
+    AutoSelector.setRoutineListener(null);
+
+    printSummary(results);
+    Files.createDirectories(outputDirectory);
+    Files.writeString(outputDirectory.resolve("trajectory_times.csv"), toCsv(results));
+    System.out.println(
+        "Wrote " + results.size() + " results to " + outputDirectory.toAbsolutePath());
+
+    HAL.shutdown();
+    System.exit(0);
+  }
+
+  /**
+   * Compares the generators on one path
+   *
+   * @param routine The routine the path is in
+   * @param index The index of the path in the routine
+   * @param path The path
+   * @return The result
+   */
+  private static PathResult evaluate(String routine, int index, GeneratedPath path) {
+    double fixedLimitTime = Double.NaN;
+    String failure = null;
+    try {
+      final ReferenceTrajectory fixedLimit =
+          DriveTrajectory.generateFixedLimitReference(
+              path.moduleTranslations(),
+              path.waypoints(),
+              path.constraints(),
+              path.startVelocity());
+      if (fixedLimit.isValid()) {
+        fixedLimitTime = fixedLimit.getTotalTime();
+      } else {
+        failure = "Fixed-limit trajectory was empty";
+      }
+    } catch (Exception exception) {
+      failure = "Fixed-limit generation failed: " + exception;
+    }
+
+    double timeOptimalTime = Double.NaN;
+    if (path.reference().isValid()) {
+      timeOptimalTime = path.reference().getTotalTime();
+    } else {
+      failure = (failure == null ? "" : failure + "; ") + "Time-optimal trajectory was empty";
+    }
+    return new PathResult(
+        routine, index, path.waypoints().size(), fixedLimitTime, timeOptimalTime, failure);
+  }
+
+  /**
+   * Prints the total time saved for each routine. Paths that either generator failed on are left
+   * out of the totals and printed separately
+   *
+   * @param results The results, grouped by routine
+   */
+  private static void printSummary(List<PathResult> results) {
+    int start = 0;
+    while (start < results.size()) {
+      final String routine = results.get(start).routine();
+      double fixedLimitTotal = 0.0;
+      double timeOptimalTotal = 0.0;
+      int compared = 0;
+      int end = start;
+      while (end < results.size() && results.get(end).routine().equals(routine)) {
+        final PathResult result = results.get(end);
+        if (result.succeeded()) {
+          fixedLimitTotal += result.fixedLimitTime();
+          timeOptimalTotal += result.timeOptimalTime();
+          compared++;
+        }
+        end++;
+      }
+      System.out.println(
+          String.format(
+              Locale.ROOT,
+              "%s: %.2f s -> %.2f s over %d paths, saved %.2f s",
+              routine,
+              fixedLimitTotal,
+              timeOptimalTotal,
+              compared,
+              fixedLimitTotal - timeOptimalTotal));
+      for (int i = start; i < end; i++) {
+        final PathResult result = results.get(i);
+        if (!result.succeeded()) {
+          System.out.println("  path " + result.index() + " failed: " + result.failure());
+        }
+      }
+      start = end;
+    }
+  }
+
+  /**
+   * Formats the results as CSV with a header row
+   *
+   * @param results The results
+   * @return The CSV text
+   */
+  private static String toCsv(List<PathResult> results) {
+    final StringBuilder builder =
+        new StringBuilder(
+            "routine,path,waypoints,fixed_limit_time,time_optimal_time,seconds_saved,failure\n");
+    for (PathResult result : results) {
+      builder
+          .append('"')
+          .append(result.routine().replace("\"", "\"\""))
+          .append("\",")
+          .append(result.index())
+          .append(',')
+          .append(result.waypointCount())
+          .append(',')
+          .append(formatNumber(result.fixedLimitTime()))
+          .append(',')
+          .append(formatNumber(result.timeOptimalTime()))
+          .append(',')
+          .append(formatNumber(result.secondsSaved()))
+          .append(",\"")
+          .append(result.succeeded() ? "" : result.failure().replace("\"", "\"\""))
+          .append("\"\n");
+    }
+    return builder.toString();
+  }
+
+  private static String formatNumber(double value) {
+    if (Double.isNaN(value)) {
+      return "";
+    }
+    return String.format(Locale.ROOT, "%.3f", value);
+  }
+}
@@ -0,0 +1,349 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.auto;
+
+import edu.wpi.first.hal.AllianceStationID;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import frc.WorBots.Constants;
+import frc.WorBots.FieldConstants;
+import frc.WorBots.RobotContainer;
+import frc.WorBots.commands.DriveTrajectory;
+import frc.WorBots.commands.DriveTrajectory.GeneratedPath;
+import frc.WorBots.util.trajectory.FieldPlanner;
+import frc.WorBots.util.trajectory.ReferenceTrajectory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Checks that every trajectory of every auto routine can actually be driven. Each routine is
+ * created on both alliances the same way that the robot creates it, and each of its trajectories
+ * is stepped through at the robot period to check the speed, acceleration, and steering rate of
+ * every module, and that the bumpers stay inside the field and clear of the stage legs. Runs on a
+ * desktop JVM without any hardware.
+ *
+ * <p>Run with {@code ./gradlew validateTrajectories}. Prints a report for each path and exits with
+ * an error if any of them fail.
+ */
+public class TrajectoryValidator {
+  /** How far over a limit a path can go before it fails, as a fraction of the limit */
+  private static final double TOLERANCE = 0.05;
+
+  /** The fastest that a module can steer, in radians per second */
+  private static final double MAX_STEER_RATE =
+      DCMotor.getKrakenX60(1).withReduction(150.0 / 7.0).freeSpeedRadPerSec * 0.8;
+
+  /** The wheel speed under which steering is not checked, since the direction is meaningless */
+  private static final double STEER_CHECK_SPEED = 0.1;
+
+  /** How far the bumpers can touch into the walls before a path fails, in meters */
+  private static final double WALL_TOLERANCE = 0.02;
+
+  /** The stage feet on both alliances */
+  private static final Translation2d[] STAGE_FEET =
+      new Translation2d[] {
+        FieldConstants.Stage.foot1Center,
+        FieldConstants.Stage.foot2Center,
+        FieldConstants.Stage.foot3Center,
+        mirror(FieldConstants.Stage.foot1Center),
+        mirror(FieldConstants.Stage.foot2Center),
+        mirror(FieldConstants.Stage.foot3Center),
+      };
+
+  /**
+   * The result of checking one path
+   *
+   * @param alliance The alliance that the routine was created for
+   * @param routine The name of the routine
+   * @param index The index of the path in the routine
+   * @param time The length of the path, in seconds
+   * @param maxWheelSpeed The fastest any module went, in meters per second
+   * @param maxAccelerationRatio The highest module acceleration as a fraction of what it could do
+   * @param maxSteerRate The fastest any module steered, in radians per second
+   * @param minWallClearance The closest the bumpers came to the walls, in meters
+   * @param minStageClearance The closest the bumpers came to the stage legs, in meters
+   * @param failures Descriptions of each limit that was exceeded
+   */
+  public static record PathResult(
+      String alliance,
+      String routine,
+      int index,
+      double time,
+      double maxWheelSpeed,
+      double maxAccelerationRatio,
+      double maxSteerRate,
+      double minWallClearance,
+      double minStageClearance,
+      List<String> failures) {
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.ROOT,
+          "%s %s #%d: %s, %.2f s, wheel %.2f m/s, accel %.0f%%, steer %.1f rad/s,"
+              + " wall %.2f m, stage %.2f m%s",
+          alliance,
+          routine,
+          index,
+          failures.isEmpty() ? "OK" : "FAILED",
+          time,
+          maxWheelSpeed,
+          maxAccelerationRatio * 100.0,
+          maxSteerRate,
+          minWallClearance,
+          minStageClearance,
+          failures.isEmpty() ? "" : "\n    " + String.join("\n    ", failures));
+    }
+  }
+
+  /**
+   * Runs the validator
+   *
+   * @param args Unused
+   */
+  public static void main(String[] args) {
+    if (!HAL.initialize(500, 0)) {
+      throw new IllegalStateException("Failed to initialize the HAL");
+    }
+    SimHooks.pauseTiming();
+    AutoBenchmark.setDriverStation(AllianceStationID.Blue1, false);
+    final RobotContainer container = new RobotContainer();
+    final double maxWheelSpeed = container.drive.getMaxLinearSpeedMetersPerSec();
+
+    final List<PathResult> results = new ArrayList<>();
+    final List<GeneratedPath> pending = new ArrayList<>();
+    for (AllianceStationID station :
+        new AllianceStationID[] {AllianceStationID.Blue1, AllianceStationID.Red1}) {
+      final String alliance = station.name().startsWith("Blue") ? "Blue" : "Red";
+      AutoBenchmark.setDriverStation(station, false);
+      DriveTrajectory.setGenerationListener(pending::add);
+      AutoSelector.setRoutineListener(
+          name -> {
+            for (int i = 0; i < pending.size(); i++) {
+              results.add(validate(alliance, name, i, pending.get(i), maxWheelSpeed));
+            }
+            pending.clear();
+          });
+      container.registerAutos();
+    }
+    DriveTrajectory.setGenerationListener(null);
+    AutoSelector.setRoutineListener(null);
+
+    int failed = 0;
+    for (PathResult result : results) {
+      System.out.println(result);
+      if (!result.failures().isEmpty()) {
+        failed++;
+      }
+    }
+    System.out.println(results.size() + " paths checked, " + failed + " failed");
+
+    HAL.shutdown();
+    System.exit(failed > 0 ? 1 : 0);
+  }
+
+  /**
+   * Steps through a path and checks it against the limits
+   *
+   * @param alliance The alliance the routine was created for
+   * @param routine The name of the routine
+   * @param index The index of the path in the routine
+   * @param path The path
+   * @param maxWheelSpeed The free speed of the wheels, in meters per second
+   * @return The result
+   */
+  private static PathResult validate(
+      String alliance, String routine, int index, GeneratedPath path, double maxWheelSpeed) {
+    final List<String> failures = new ArrayList<>();
+    final ReferenceTrajectory reference = path.reference();
+    if (!reference.isValid()) {
+      failures.add("Generation failed for " + path.waypoints().size() + " waypoints");
+      return new PathResult(
+          alliance, routine, index, 0.0, 0.0, 0.0, 0.0, Double.NaN, Double.NaN, failures);
+    }
+
+    final Translation2d[] modules = path.moduleTranslations();
+    final double[] lastVx = new double[modules.length];
+    final double[] lastVy = new double[modules.length];
+    final ReferenceTrajectory.State state = new ReferenceTrajectory.State();
+    final double dt = Constants.ROBOT_PERIOD;
+
+    double worstWheelSpeed = 0.0;
+    double worstAccelerationRatio = 0.0;
+    double worstSteerRate = 0.0;
+    double minWallClearance = Double.POSITIVE_INFINITY;
+    double minStageClearance = Double.POSITIVE_INFINITY;
+    double wheelSpeedFailTime = Double.NaN;
+    double accelerationFailTime = Double.NaN;
+    double steerFailTime = Double.NaN;
+    double wallFailTime = Double.NaN;
+    double stageFailTime = Double.NaN;
+
+    for (double time = 0.0; time <= reference.getTotalTime() + dt; time += dt) {
+      reference.sample(time, state);
+      final double cos = Math.cos(state.theta);
+      final double sin = Math.sin(state.theta);
+
+      for (int j = 0; j < modules.length; j++) {
+        final double qx = modules[j].getX() * cos - modules[j].getY() * sin;
+        final double qy = modules[j].getX() * sin + modules[j].getY() * cos;
+        final double vx = state.vx - state.omega * qy;
+        final double vy = state.vy + state.omega * qx;
+        final double speed = Math.hypot(vx, vy);
+
+        worstWheelSpeed = Math.max(worstWheelSpeed, speed);
+        if (speed > maxWheelSpeed * (1.0 + TOLERANCE) && Double.isNaN(wheelSpeedFailTime)) {
+          wheelSpeedFailTime = time;
+        }
+
+        if (time > 0.0) {
+          final double acceleration = Math.hypot(vx - lastVx[j], vy - lastVy[j]) / dt;
+          final double available =
+              DriveTrajectory.MODULE_LIMITS.getMaxAcceleration(speed)
+                  / DriveTrajectory.MODULE_LIMITS.margin();
+          final double ratio = acceleration / available;
+          worstAccelerationRatio = Math.max(worstAccelerationRatio, ratio);
+          if (ratio > 1.0 + TOLERANCE && Double.isNaN(accelerationFailTime)) {
+            accelerationFailTime = time;
+          }
+
+          // Modules can drive backwards, so only the change in the axis of the wheel counts
+          final double lastSpeed = Math.hypot(lastVx[j], lastVy[j]);
+          if (speed > STEER_CHECK_SPEED && lastSpeed > STEER_CHECK_SPEED) {
+            double steer = Math.atan2(vy, vx) - Math.atan2(lastVy[j], lastVx[j]);
+            steer = MathUtil.inputModulus(steer, -Math.PI / 2.0, Math.PI / 2.0);
+            final double steerRate = Math.abs(steer) / dt;
+            worstSteerRate = Math.max(worstSteerRate, steerRate);
+            if (steerRate > MAX_STEER_RATE * (1.0 + TOLERANCE) && Double.isNaN(steerFailTime)) {
+              steerFailTime = time;
+            }
+          }
+        }
+        lastVx[j] = vx;
+        lastVy[j] = vy;
+      }
+
+      // Bumper clearance
+      final double wallClearance = getWallClearance(state.x, state.y, cos, sin);
+      minWallClearance = Math.min(minWallClearance, wallClearance);
+      if (wallClearance < -WALL_TOLERANCE && Double.isNaN(wallFailTime)) {
+        wallFailTime = time;
+      }
+      final double stageClearance = getStageClearance(state.x, state.y, cos, sin);
+      minStageClearance = Math.min(minStageClearance, stageClearance);
+      if (stageClearance < 0.0 && Double.isNaN(stageFailTime)) {
+        stageFailTime = time;
+      }
+    }
+
+    if (!Double.isNaN(wheelSpeedFailTime)) {
+      failures.add(
+          String.format(
+              Locale.ROOT,
+              "Wheel speed %.2f m/s is over the free speed of %.2f m/s, first at %.2f s",
+              worstWheelSpeed,
+              maxWheelSpeed,
+              wheelSpeedFailTime));
+    }
+    if (!Double.isNaN(accelerationFailTime)) {
+      failures.add(
+          String.format(
+              Locale.ROOT,
+              "Module acceleration reaches %.0f%% of what the motor allows, first at %.2f s",
+              worstAccelerationRatio * 100.0,
+              accelerationFailTime));
+    }
+    if (!Double.isNaN(steerFailTime)) {
+      failures.add(
+          String.format(
+              Locale.ROOT,
+              "Steering rate %.1f rad/s is over the limit of %.1f rad/s, first at %.2f s",
+              worstSteerRate,
+              MAX_STEER_RATE,
+              steerFailTime));
+    }
+    if (!Double.isNaN(wallFailTime)) {
+      failures.add(
+          String.format(
+              Locale.ROOT,
+              "Bumpers go %.2f m past the field boundary, first at %.2f s",
+              -minWallClearance,
+              wallFailTime));
+    }
+    if (!Double.isNaN(stageFailTime)) {
+      failures.add(
+          String.format(
+              Locale.ROOT,
+              "Bumpers hit a stage leg by %.2f m, first at %.2f s",
+              -minStageClearance,
+              stageFailTime));
+    }
+
+    return new PathResult(
+        alliance,
+        routine,
+        index,
+        reference.getTotalTime(),
+        worstWheelSpeed,
+        worstAccelerationRatio,
+        worstSteerRate,
+        minWallClearance,
+        minStageClearance,
+        failures);
+  }
+
+  /**
+   * Gets the distance from the closest bumper corner to the field boundary
+   *
+   * @return The distance in meters, negative if a corner is outside of the field
+   */
+  private static double getWallClearance(double x, double y, double cos, double sin) {
+    double clearance = Double.POSITIVE_INFINITY;
+    for (int corner = 0; corner < 4; corner++) {
+      final double localX = (corner < 2 ? 0.5 : -0.5) * Constants.ROBOT_LENGTH;
+      final double localY = (corner % 2 == 0 ? 0.5 : -0.5) * Constants.ROBOT_WIDTH;
+      final double cornerX = x + localX * cos - localY * sin;
+      final double cornerY = y + localX * sin + localY * cos;
+      clearance =
+          Math.min(
+              clearance,
+              Math.min(
+                  Math.min(cornerX, FieldConstants.fieldLength - cornerX),
+                  Math.min(cornerY, FieldConstants.fieldWidth - cornerY)));
+    }
+    return clearance;
+  }
+
+  /**
+   * Gets the distance from the bumpers to the closest stage leg
+   *
+   * @return The distance in meters, negative if the bumpers overlap a leg
+   */
+  private static double getStageClearance(double x, double y, double cos, double sin) {
+    double clearance = Double.POSITIVE_INFINITY;
+    for (Translation2d foot : STAGE_FEET) {
+      // Move the foot into the robot frame and find the distance to the bumper rectangle
+      final double dx = foot.getX() - x;
+      final double dy = foot.getY() - y;
+      final double localX = dx * cos + dy * sin;
+      final double localY = -dx * sin + dy * cos;
+      final double outsideX = Math.max(Math.abs(localX) - Constants.ROBOT_LENGTH / 2.0, 0.0);
+      final double outsideY = Math.max(Math.abs(localY) - Constants.ROBOT_WIDTH / 2.0, 0.0);
+      clearance =
+          Math.min(clearance, Math.hypot(outsideX, outsideY) - FieldPlanner.STAGE_FOOT_RADIUS);
+    }
+    return clearance;
+  }
+
+  private static Translation2d mirror(Translation2d translation) {
+    return new Translation2d(FieldConstants.fieldLength - translation.getX(), translation.getY());
+  }
+}
@@ -7,17 +7,17 @@
 
 package frc.WorBots.commands;
 
-import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
-import edu.wpi.first.math.trajectory.Trajectory;
+import edu.wpi.first.math.system.plant.DCMotor;
 import edu.wpi.first.math.trajectory.TrajectoryConfig;
 import edu.wpi.first.math.trajectory.constraint.CentripetalAccelerationConstraint;
 import edu.wpi.first.math.trajectory.constraint.TrajectoryConstraint;
 import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
@@ -25,36 +25,131 @@ import frc.WorBots.Constants;
 import frc.WorBots.subsystems.drive.Drive;
 import frc.WorBots.util.debug.Logger;
 import frc.WorBots.util.trajectory.*;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
-/** Command that drives along a custom holonomic trajectory. Credit to team 6328. */
+/**
+ * Command that drives along a custom holonomic trajectory. The trajectory is generated by a {@link
+ * SwerveTrajectoryGenerator} within the limits of each module and followed by a {@link
+ * TrajectoryFollower} with a selectable control law. Trajectories from suppliers are generated on
+ * the {@link FieldPlanner} worker thread while the robot drives straight toward the end of the
+ * path, and are reused when the waypoints have barely moved since the last run. Credit to team
+ * 6328.
+ */
 public class DriveTrajectory extends Command {
-  private static double maxVelocityMetersPerSec;
-  private static double maxAccelerationMetersPerSec2;
-  private static double maxCentripetalAccelerationMetersPerSec2;
+  /** The control laws available for following trajectories */
+  public enum ControlLawType {
+    /** Time-indexed feedforward with proportional feedback */
+    TIME_INDEXED,
+    /** Lookahead feedforward with along-track and cross-track feedback */
+    LOOKAHEAD,
+    /** Latency-compensated linear-quadratic regulator */
+    LQR
+  }
+
+  /** The control law used when one is not specified */
+  public static final ControlLawType DEFAULT_CONTROL_LAW = ControlLawType.TIME_INDEXED;
+
+  /** Maximum velocity of generated trajectories, in meters per second */
+  public static final double MAX_VELOCITY =
+      Constants.getSim() ? Units.inchesToMeters(180.0) : Units.inchesToMeters(160.0);
+
+  /** Maximum acceleration of generated trajectories, in meters per second squared */
+  public static final double MAX_ACCELERATION =
+      Constants.getSim() ? Units.inchesToMeters(155.0) : Units.inchesToMeters(600.0);
+
+  /** Maximum centripetal acceleration of generated trajectories, in meters per second squared */
+  public static final double MAX_CENTRIPETAL_ACCELERATION =
+      Constants.getSim() ? Units.inchesToMeters(170.0) : Units.inchesToMeters(130.0);
+
+  /**
+   * Limits of each swerve module for generating trajectories. The wheel speed is capped below the
+   * free speed and only part of the acceleration is used so that feedback has room to correct
+   */
+  public static final SwerveTrajectoryGenerator.ModuleLimits MODULE_LIMITS =
+      new SwerveTrajectoryGenerator.ModuleLimits(
+          MAX_VELOCITY,
+          1.1 * 9.81,
+          DCMotor.getKrakenX60(1).withReduction(Constants.getSim() ? 6.75 : 6.12),
+          Units.inchesToMeters(2.0),
+          52.0 / 4.0,
+          25.0,
+          12.0,
+          Constants.getSim() ? 0.85 : 0.75);
+
+  /** A trajectory that was generated from a static set of waypoints */
+  public static record GeneratedPath(
+      List<Waypoint> waypoints,
+      List<TrajectoryConstraint> constraints,
+      double startVelocity,
+      Translation2d[] moduleTranslations,
+      ReferenceTrajectory reference) {}
+
+  /** Listener for generated trajectories, used for reports */
+  private static Consumer<GeneratedPath> generationListener = null;
+
+  /** Allowed error on each translation axis at the end of the trajectory, in meters */
+  private static final double TRANSLATION_TOLERANCE = Units.inchesToMeters(2.7);
 
-  private PIDController xController = new PIDController(2.5, 0.0, 0.0, Constants.ROBOT_PERIOD);
-  private PIDController yController = new PIDController(2.5, 0.0, 0.0, Constants.ROBOT_PERIOD);
-  private PIDController thetaController = new PIDController(4.5, 0.0, 0.0, Constants.ROBOT_PERIOD);
+  /** Allowed rotation error at the end of the trajectory, in radians */
+  private static final double ROTATION_TOLERANCE = Units.degreesToRadians(1.0);
 
-  private final CustomHolonomicDriveController customHolonomicDriveController =
-      new CustomHolonomicDriveController(xController, yController, thetaController);
+  /** How far a supplied waypoint can move before the trajectory is generated again, in meters */
+  private static final double REUSE_TRANSLATION_TOLERANCE = Units.inchesToMeters(2.0);
+
+  /** How far a supplied holonomic rotation can turn before the trajectory is generated again */
+  private static final double REUSE_ROTATION_TOLERANCE = Units.degreesToRadians(2.0);
+
+  /** How much the supplied start velocity can change before the trajectory is generated again */
+  private static final double REUSE_VELOCITY_TOLERANCE = 0.05;
 
   private final Drive drive;
   private final Timer timer = new Timer();
+  private final TrajectoryFollower follower;
+
+  /** Whether the trajectory is currently being followed */
+  private boolean isRunning = false;
+
+  /** Whether the trajectory has been followed to completion */
+  private boolean hasFinished = false;
 
   private Supplier<List<Waypoint>> waypointsSupplier = null;
   private Supplier<List<TrajectoryConstraint>> constraintsSupplier = null;
   private Supplier<Double> startVelocitySupplier = null;
-  private CustomTrajectoryGenerator customGenerator = new CustomTrajectoryGenerator();
+  private ReferenceTrajectory reference = null;
+
+  /** The trajectory being generated from the suppliers, or null if there is none */
+  private CompletableFuture<ReferenceTrajectory> pendingReference = null;
+
+  /** The waypoints, constraints, and start velocity that the held trajectory was generated from */
+  private List<Waypoint> lastWaypoints = null;
 
-  /** Creates a DriveTrajectory command with a dynamic set of waypoints. */
+  private double[] lastConstraintsKey = null;
+  private double lastStartVelocity = 0.0;
+
+  /** Drives toward the end of the path while the trajectory is being generated */
+  private DriveToPose fallback = null;
+
+  /** Whether the fallback has been initialized and not ended yet */
+  private boolean isFallbackRunning = false;
+
+  private Pose2d fallbackGoal = new Pose2d();
+
+  /**
+   * Creates a DriveTrajectory command with a dynamic set of waypoints. The command holds the end of
+   * the path until it is interrupted.
+   */
   public DriveTrajectory(Drive drive, Supplier<List<Waypoint>> waypointsSupplier) {
     this(drive, waypointsSupplier, () -> List.of(), () -> 0.0);
   }
 
-  /** Creates a DriveTrajectory command with a dynamic set of waypoints and constraints. */
+  /**
+   * Creates a DriveTrajectory command with a dynamic set of waypoints and constraints. The command
+   * holds the end of the path until it is interrupted.
+   */
   public DriveTrajectory(
       Drive drive,
       Supplier<List<Waypoint>> waypointsSupplier,
@@ -62,9 +157,13 @@ public class DriveTrajectory extends Command {
       Supplier<Double> startVelocitySupplier) {
     this.drive = drive;
     addRequirements(drive);
+    // Trajectories from suppliers have always been followed without a tolerance, so they never
+    // finish on their own and callers rely on them holding the end of the path
+    this.follower = new TrajectoryFollower(createControlLaw(DEFAULT_CONTROL_LAW), 0.0, 0.0);
     this.waypointsSupplier = waypointsSupplier;
     this.constraintsSupplier = constraintsSupplier;
     this.startVelocitySupplier = startVelocitySupplier;
+    this.fallback = new DriveToPose(drive, () -> fallbackGoal);
   }
 
   /** Creates a DriveTrajectory command with a static set of waypoints. */
@@ -78,124 +177,357 @@ public class DriveTrajectory extends Command {
       List<Waypoint> waypoints,
       List<TrajectoryConstraint> constraints,
       double startVelocity) {
+    this(drive, waypoints, constraints, startVelocity, DEFAULT_CONTROL_LAW);
+  }
+
+  /**
+   * Creates a DriveTrajectory command with a static set of waypoints and constraints, followed with
+   * a specific control law
+   */
+  public DriveTrajectory(
+      Drive drive,
+      List<Waypoint> waypoints,
+      List<TrajectoryConstraint> constraints,
+      double startVelocity,
+      ControlLawType controlLaw) {
+    this.drive = drive;
+    addRequirements(drive);
+    this.follower = createFollower(controlLaw);
+    reference =
+        generatePath(drive.getModuleTranslations(), waypoints, constraints, startVelocity, true)
+            .reference();
+    follower.setTrajectory(reference);
+  }
+
+  /**
+   * Creates a DriveTrajectory command that follows a reference that was already generated, such
+   * as one from an {@link frc.WorBots.auto.AutoGraph}
+   */
+  public DriveTrajectory(Drive drive, ReferenceTrajectory reference) {
     this.drive = drive;
     addRequirements(drive);
-    if (Constants.getSim()) {
-      maxVelocityMetersPerSec = Units.inchesToMeters(180.0);
-      maxAccelerationMetersPerSec2 = Units.inchesToMeters(155.0);
-      maxCentripetalAccelerationMetersPerSec2 = Units.inchesToMeters(170.0);
-
-      xController = new PIDController(2.7, 0, 0.0, Constants.ROBOT_PERIOD);
-      yController = new PIDController(2.7, 0, 0.0, Constants.ROBOT_PERIOD);
-      thetaController = new PIDController(6.5, 0, 0.0, Constants.ROBOT_PERIOD);
-      customHolonomicDriveController.setFeedforwardCoefficients(1.0, 1.0);
-    } else {
-      maxVelocityMetersPerSec = Units.inchesToMeters(160.0);
-      maxAccelerationMetersPerSec2 = Units.inchesToMeters(600.0);
-      maxCentripetalAccelerationMetersPerSec2 = Units.inchesToMeters(130.0);
-
-      xController = new PIDController(8.9, 0, 0.0, Constants.ROBOT_PERIOD);
-      yController = new PIDController(8.9, 0, 0.0, Constants.ROBOT_PERIOD);
-      thetaController = new PIDController(6.4, 0, 0.03, Constants.ROBOT_PERIOD);
-      customHolonomicDriveController.setFeedforwardCoefficients(1.0, 0.48);
-    }
-    customHolonomicDriveController.setTolerance(
-        new Pose2d(
-            new Translation2d(Units.inchesToMeters(2.7), Units.inchesToMeters(2.7)),
-            Rotation2d.fromDegrees(1.0)));
-    generate(waypoints, constraints, startVelocity, true);
-  }
-
-  /** Generates the trajectory. */
-  private void generate(
+    this.follower = createFollower(DEFAULT_CONTROL_LAW);
+    this.reference = reference;
+    follower.setTrajectory(reference);
+  }
+
+  /**
+   * Sets a listener that is called whenever a trajectory is generated from a static set of
+   * waypoints, such as when autos are created. Used by reports that compare generators
+   *
+   * @param listener The listener, or null to remove it
+   */
+  public static void setGenerationListener(Consumer<GeneratedPath> listener) {
+    generationListener = listener;
+  }
+
+  /**
+   * Checks whether a generation listener is set
+   *
+   * @return True if a listener is set
+   */
+  public static boolean hasGenerationListener() {
+    return generationListener != null;
+  }
+
+  /**
+   * Generates a reference from a static set of waypoints and passes it to the generation listener,
+   * the same way that the static constructors do. Safe to call from another thread when no
+   * listener is set.
+   *
+   * @param moduleTranslations The positions of the swerve modules relative to the robot center
+   * @param waypoints The waypoints of the path
+   * @param constraints Additional constraints on the trajectory
+   * @param startVelocity The velocity at the start of the trajectory, in meters per second
+   * @param alertOnFail Whether to print the stack trace if generation fails
+   * @return The generated path, whose reference is not valid if generation failed
+   */
+  public static GeneratedPath generatePath(
+      Translation2d[] moduleTranslations,
       List<Waypoint> waypoints,
       List<TrajectoryConstraint> constraints,
       double startVelocity,
       boolean alertOnFail) {
-    // Set up trajectory configuration
-    final TrajectoryConfig config =
-        new TrajectoryConfig(maxVelocityMetersPerSec, maxAccelerationMetersPerSec2)
-            .setKinematics(new SwerveDriveKinematics(drive.getModuleTranslations()))
-            .setStartVelocity(startVelocity)
-            .setEndVelocity(0.0)
-            .addConstraints(constraints);
+    final GeneratedPath path =
+        new GeneratedPath(
+            waypoints,
+            constraints,
+            startVelocity,
+            moduleTranslations,
+            generateReference(
+                moduleTranslations, waypoints, constraints, startVelocity, alertOnFail));
+    if (generationListener != null) {
+      generationListener.accept(path);
+    }
+    return path;
+  }
+
+  /**
+   * Creates a control law with the gains tuned for this robot
+   *
+   * @param type The type of control law
+   * @return The control law
+   */
+  public static FollowerControlLaw createControlLaw(ControlLawType type) {
+    switch (type) {
+      case LOOKAHEAD:
+        return Constants.getSim()
+            ? new FollowerControlLaw.Lookahead(0.1, 5.0, 6.8, 6.4)
+            : new FollowerControlLaw.Lookahead(0.1, 2.0, 2.0, 6.4);
+      case LQR:
+        return new FollowerControlLaw.Lqr(0.15, 1.0, 0.15, 1.0, Constants.ROBOT_PERIOD * 2.0);
+      case TIME_INDEXED:
+      default:
+        return Constants.getSim()
+            ? new FollowerControlLaw.TimeIndexed(2.5, 4.5, 1.0, 1.0)
+            : new FollowerControlLaw.TimeIndexed(2.5, 4.5, 1.0, 0.48);
+    }
+  }
 
-    final TrajectoryConfig constrainedConfig =
-        config.addConstraint(
-            new CentripetalAccelerationConstraint(maxCentripetalAccelerationMetersPerSec2));
+  /**
+   * Creates a follower with the tolerances used for trajectories
+   *
+   * @param type The type of control law
+   * @return The follower
+   */
+  public static TrajectoryFollower createFollower(ControlLawType type) {
+    return new TrajectoryFollower(
+        createControlLaw(type), TRANSLATION_TOLERANCE, ROTATION_TOLERANCE);
+  }
 
-    // Generate trajectory
-    customGenerator = new CustomTrajectoryGenerator(); // Reset generator
+  /**
+   * Generates a time-optimal reference within the limits of the swerve modules. Does not touch any
+   * command or subsystem state, so it is safe to call from another thread. Failures are always
+   * reported to the driver station rather than replaced with a different trajectory.
+   *
+   * @param moduleTranslations The positions of the swerve modules relative to the robot center
+   * @param waypoints The waypoints of the path
+   * @param constraints Additional constraints on the trajectory
+   * @param startVelocity The velocity at the start of the trajectory, in meters per second
+   * @param alertOnFail Whether to print the stack trace if generation fails
+   * @return The reference, which is not valid if generation failed
+   */
+  public static ReferenceTrajectory generateReference(
+      Translation2d[] moduleTranslations,
+      List<Waypoint> waypoints,
+      List<TrajectoryConstraint> constraints,
+      double startVelocity,
+      boolean alertOnFail) {
     try {
-      customGenerator.generate(constrainedConfig, waypoints);
+      return new SwerveTrajectoryGenerator(moduleTranslations, MODULE_LIMITS)
+          .generate(waypoints, constraints, startVelocity, 0.0);
     } catch (Exception exception) {
+      DriverStation.reportError(
+          "Failed to generate trajectory through " + waypoints.size() + " waypoints: " + exception,
+          alertOnFail);
+      return ReferenceTrajectory.empty();
     }
+  }
+
+  /**
+   * Generates a reference with fixed chassis velocity, acceleration, and centripetal limits, the
+   * way that trajectories were generated before the limits of each module were used. Kept for
+   * comparing against.
+   *
+   * @param moduleTranslations The positions of the swerve modules relative to the robot center
+   * @param waypoints The waypoints of the path
+   * @param constraints Additional constraints on the trajectory
+   * @param startVelocity The velocity at the start of the trajectory, in meters per second
+   * @return The reference, which is not valid if generation failed
+   */
+  public static ReferenceTrajectory generateFixedLimitReference(
+      Translation2d[] moduleTranslations,
+      List<Waypoint> waypoints,
+      List<TrajectoryConstraint> constraints,
+      double startVelocity) {
+    final TrajectoryConfig config =
+        new TrajectoryConfig(MAX_VELOCITY, MAX_ACCELERATION)
+            .setKinematics(new SwerveDriveKinematics(moduleTranslations))
+            .setStartVelocity(startVelocity)
+            .setEndVelocity(0.0)
+            .addConstraints(constraints)
+            .addConstraint(new CentripetalAccelerationConstraint(MAX_CENTRIPETAL_ACCELERATION));
 
-    // Generate unconstrained trajectory if the constrained one fails
-    if (customGenerator.getDriveTrajectory().getTotalTimeSeconds() < 0.05) {
-      customGenerator = new CustomTrajectoryGenerator();
-      try {
-        customGenerator.generate(config, waypoints);
-      } catch (Exception exception) {
-        if (alertOnFail) {
-          exception.printStackTrace();
-        }
+    final CustomTrajectoryGenerator customGenerator = new CustomTrajectoryGenerator();
+    customGenerator.generate(config, waypoints);
+    return ReferenceTrajectory.fromTrajectory(
+        customGenerator.getDriveTrajectory(), customGenerator.getHolonomicRotationSequence());
+  }
+
+  /**
+   * Checks whether supplied waypoints are close enough to the ones that the held trajectory was
+   * generated from that it can be followed again
+   *
+   * @param waypoints The supplied waypoints
+   * @param constraintsKey The key of the supplied constraints
+   * @param startVelocity The supplied start velocity
+   * @return True if the held trajectory can be reused
+   */
+  private boolean canReuse(
+      List<Waypoint> waypoints, double[] constraintsKey, double startVelocity) {
+    if (!isTrajectoryValid()
+        || lastWaypoints == null
+        || lastWaypoints.size() != waypoints.size()
+        || !Arrays.equals(constraintsKey, lastConstraintsKey)
+        || Math.abs(startVelocity - lastStartVelocity) > REUSE_VELOCITY_TOLERANCE) {
+      return false;
+    }
+    for (int i = 0; i < waypoints.size(); i++) {
+      final Waypoint waypoint = waypoints.get(i);
+      final Waypoint last = lastWaypoints.get(i);
+      if (waypoint.getTranslation().getDistance(last.getTranslation())
+          > REUSE_TRANSLATION_TOLERANCE) {
+        return false;
+      }
+      if (waypoint.getHolonomicRotation().isPresent() != last.getHolonomicRotation().isPresent()
+          || waypoint.getDriveRotation().isPresent() != last.getDriveRotation().isPresent()) {
+        return false;
+      }
+      if (waypoint.getHolonomicRotation().isPresent()
+          && Math.abs(
+                  waypoint
+                      .getHolonomicRotation()
+                      .get()
+                      .minus(last.getHolonomicRotation().get())
+                      .getRadians())
+              > REUSE_ROTATION_TOLERANCE) {
+        return false;
       }
     }
+    return true;
   }
 
-  @Override
-  public void initialize() {
-    // Generate trajectory if supplied
-    if (waypointsSupplier != null && constraintsSupplier != null) {
-      generate(
-          waypointsSupplier.get(), constraintsSupplier.get(), startVelocitySupplier.get(), false);
+  /**
+   * Creates a key for a set of constraints that can be compared between runs. Constraints don't
+   * implement equals, so they are compared by the limits they place at each waypoint and halfway
+   * between them instead. Freshly created constraints with the same limits give the same key.
+   *
+   * @param waypoints The waypoints the constraints are applied to
+   * @param constraints The constraints
+   * @return The key
+   */
+  private static double[] getConstraintsKey(
+      List<Waypoint> waypoints, List<TrajectoryConstraint> constraints) {
+    final int samples = Math.max(waypoints.size() * 2 - 1, 0);
+    final double[] key = new double[constraints.size() * samples * 3];
+    int index = 0;
+    for (TrajectoryConstraint constraint : constraints) {
+      for (int i = 0; i < samples; i++) {
+        final Translation2d translation =
+            i % 2 == 0
+                ? waypoints.get(i / 2).getTranslation()
+                : waypoints
+                    .get(i / 2)
+                    .getTranslation()
+                    .interpolate(waypoints.get(i / 2 + 1).getTranslation(), 0.5);
+        final Pose2d pose = new Pose2d(translation, new Rotation2d());
+        final TrajectoryConstraint.MinMax acceleration =
+            constraint.getMinMaxAccelerationMetersPerSecondSq(pose, 0.0, MAX_VELOCITY);
+        key[index++] = constraint.getMaxVelocityMetersPerSecond(pose, 0.0, MAX_VELOCITY);
+        key[index++] = acceleration.minAccelerationMetersPerSecondSq;
+        key[index++] = acceleration.maxAccelerationMetersPerSecondSq;
+      }
     }
+    return key;
+  }
 
+  /** Starts following the held trajectory */
+  private void startFollowing() {
     // Log trajectory
-    Logger.getInstance()
-        .setDriveTrajectory(
-            customGenerator.getDriveTrajectory().getStates().stream()
-                .map(state -> state.poseMeters)
-                .toArray(Pose2d[]::new));
+    Logger.getInstance().setDriveTrajectory(reference.getLoggablePoses());
 
-    // Reset all controllers
+    // Reset the follower
     timer.reset();
     timer.start();
-    xController.reset();
-    yController.reset();
-    thetaController.reset();
+    isRunning = true;
+    follower.setTrajectory(reference);
+  }
+
+  @Override
+  public void initialize() {
+    hasFinished = false;
+    isRunning = false;
+
+    // Generate trajectory in the background if supplied
+    if (waypointsSupplier != null && constraintsSupplier != null) {
+      final List<Waypoint> waypoints = waypointsSupplier.get();
+      final List<TrajectoryConstraint> constraints = constraintsSupplier.get();
+      final double startVelocity = startVelocitySupplier.get();
+      if (waypoints.isEmpty()) {
+        // There is nothing to follow, so finish right away
+        reference = ReferenceTrajectory.empty();
+        lastWaypoints = null;
+        return;
+      }
+      final double[] constraintsKey = getConstraintsKey(waypoints, constraints);
+      if (!canReuse(waypoints, constraintsKey, startVelocity)) {
+        final Translation2d[] moduleTranslations = drive.getModuleTranslations();
+        reference = null;
+        lastWaypoints = waypoints;
+        lastConstraintsKey = constraintsKey;
+        lastStartVelocity = startVelocity;
+        pendingReference =
+            FieldPlanner.getInstance()
+                .submit(
+                    () ->
+                        generateReference(
+                            moduleTranslations, waypoints, constraints, startVelocity, false));
+
+        // Head toward the end of the path until the trajectory is ready
+        final Waypoint goal = waypoints.get(waypoints.size() - 1);
+        fallbackGoal =
+            new Pose2d(
+                goal.getTranslation(), goal.getHolonomicRotation().orElse(drive.getRotation()));
+        fallback.initialize();
+        isFallbackRunning = true;
+        return;
+      }
+    }
+
+    startFollowing();
   }
 
   @Override
   public void execute() {
+    // Drive toward the goal until the trajectory is generated
+    if (pendingReference != null) {
+      if (!pendingReference.isDone()) {
+        fallback.execute();
+        return;
+      }
+      reference =
+          pendingReference.isCompletedExceptionally()
+              ? ReferenceTrajectory.empty()
+              : pendingReference.join();
+      pendingReference = null;
+      endFallback(false);
+      startFollowing();
+    }
+
     // Exit if trajectory generation failed
     if (!isTrajectoryValid()) {
       return;
     }
 
-    // Get setpoint
-    final Trajectory.State driveState = customGenerator.getDriveTrajectory().sample(timer.get());
-    final RotationSequence.State holonomicRotationState =
-        customGenerator.getHolonomicRotationSequence().sample(timer.get());
+    final ChassisSpeeds speeds = follower.calculate(drive.getPose(), timer.get());
 
-    // Log Setpoint
-    Logger.getInstance()
-        .setDriveTrajSetpoint(
-            new Pose2d(driveState.poseMeters.getTranslation(), holonomicRotationState.position));
+    // Log setpoint and errors
+    Logger.getInstance().setDriveTrajSetpoint(follower.getSetpoint().toPose());
+    SmartDashboard.putNumberArray("Traj Errors", follower.getErrors());
 
-    // Log Errors
-    SmartDashboard.putNumberArray("Traj Errors", customHolonomicDriveController.getErrors());
-
-    // Calculate velocity
-    final ChassisSpeeds nextDriveState =
-        customHolonomicDriveController.calculate(
-            drive.getPose(), driveState, holonomicRotationState);
-    drive.runVelocity(nextDriveState);
+    drive.runVelocity(speeds);
   }
 
   @Override
   public void end(boolean interrupted) {
+    if (pendingReference != null) {
+      pendingReference.cancel(false);
+      pendingReference = null;
+      lastWaypoints = null;
+    }
+    endFallback(interrupted);
+    isRunning = false;
+    hasFinished = true;
     Logger.getInstance().setDriveTrajectory(new Pose2d());
     drive.stop();
   }
@@ -203,16 +535,53 @@ public class DriveTrajectory extends Command {
   // Returns true when the command should end.
   @Override
   public boolean isFinished() {
+    if (pendingReference != null) {
+      return false;
+    }
     if (!isTrajectoryValid()) {
       return true;
     }
 
-    return timer.hasElapsed(customGenerator.getDriveTrajectory().getTotalTimeSeconds())
-        && customHolonomicDriveController.atReference();
+    return timer.hasElapsed(reference.getTotalTime()) && follower.atReference();
+  }
+
+  /**
+   * Gets the predicted time until the robot arrives at the end of the trajectory. Before the
+   * trajectory starts this is the full length of the trajectory, which may change if it is
+   * generated from suppliers. While the trajectory is being generated this is estimated from the
+   * distance to the end of the path.
+   *
+   * @return The remaining time in seconds
+   */
+  public double getTimeRemaining() {
+    if (pendingReference != null && !hasFinished) {
+      return drive.getPose().getTranslation().getDistance(fallbackGoal.getTranslation())
+          / MAX_VELOCITY;
+    }
+    if (hasFinished || !isTrajectoryValid()) {
+      return 0.0;
+    }
+    final double totalTime = reference.getTotalTime();
+    if (!isRunning) {
+      return totalTime;
+    }
+    return Math.max(totalTime - timer.get(), 0.0);
+  }
+
+  /**
+   * Ends the fallback if it is running
+   *
+   * @param interrupted Whether the fallback was interrupted
+   */
+  private void endFallback(boolean interrupted) {
+    if (isFallbackRunning) {
+      isFallbackRunning = false;
+      fallback.end(interrupted);
+    }
   }
 
   /** Checks if the held trajectory is valid */
   private boolean isTrajectoryValid() {
-    return customGenerator.getDriveTrajectory().getStates().size() > 1;
+    return reference != null && reference.isValid();
   }
 }
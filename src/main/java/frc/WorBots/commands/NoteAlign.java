@@ -230,8 +230,6 @@ public class NoteAlign extends Command {
     if (approachSupplier.get() && !hasPickedUpNote) {
       hasStartedApproach = true;
 
-      NOTE_APPROACH_SPEED.update();
-      MIN_APPROACH_SPEED.update();
       double speed =
           noteLocation.isPresent()
               ? drive.getPose().getTranslation().getDistance(noteLocation.get())
@@ -0,0 +1,192 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.commands;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
+import frc.WorBots.Constants;
+import frc.WorBots.FieldConstants;
+import frc.WorBots.subsystems.drive.Drive;
+import frc.WorBots.util.debug.Logger;
+import frc.WorBots.util.math.AllianceFlipUtil;
+import frc.WorBots.util.math.ShooterMath;
+import frc.WorBots.util.trajectory.FieldPlanner;
+import frc.WorBots.util.trajectory.ReferenceTrajectory;
+import frc.WorBots.util.trajectory.TrajectoryFollower;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Command for teleop that drives to a pose on the field along a path around the stage, subwoofer,
+ * and amp. The path is planned and turned into a trajectory on the {@link FieldPlanner} worker
+ * thread, and the robot holds still until it is ready.
+ */
+public class PlannedDriveToPose extends Command {
+  /** How far from the source tags to stop, in meters */
+  private static final double SOURCE_DISTANCE = Constants.ROBOT_LENGTH / 2.0 + 0.3;
+
+  /** How far from the subwoofer to stop for a subwoofer shot, in meters */
+  private static final double SUBWOOFER_DISTANCE = Constants.ROBOT_LENGTH / 2.0 + 0.1;
+
+  /** How far from the wall to stop at the amp, in meters */
+  private static final double AMP_DISTANCE = Constants.ROBOT_WIDTH / 2.0 + 0.1;
+
+  private final Drive drive;
+  private final Supplier<Pose2d> goalSupplier;
+  private final TrajectoryFollower follower =
+      DriveTrajectory.createFollower(DriveTrajectory.DEFAULT_CONTROL_LAW);
+  private final Timer timer = new Timer();
+
+  private CompletableFuture<ReferenceTrajectory> pendingReference = null;
+  private ReferenceTrajectory reference = null;
+  private boolean planningFailed = false;
+
+  /**
+   * Drives to a pose around the field elements
+   *
+   * @param drive The drive subsystem
+   * @param goalSupplier Supplier for the field-relative pose to drive to, read when the command
+   *     starts
+   */
+  public PlannedDriveToPose(Drive drive, Supplier<Pose2d> goalSupplier) {
+    this.drive = drive;
+    this.goalSupplier = goalSupplier;
+    addRequirements(drive);
+  }
+
+  /**
+   * Drives up against the amp, keeping the current heading
+   *
+   * @param drive The drive subsystem
+   * @return The command
+   */
+  public static PlannedDriveToPose toAmp(Drive drive) {
+    return new PlannedDriveToPose(
+        drive,
+        () ->
+            new Pose2d(
+                AllianceFlipUtil.apply(FieldConstants.Amp.x),
+                FieldConstants.fieldWidth - AMP_DISTANCE,
+                drive.getRotation()));
+  }
+
+  /**
+   * Drives in front of the source, keeping the current heading
+   *
+   * @param drive The drive subsystem
+   * @return The command
+   */
+  public static PlannedDriveToPose toSource(Drive drive) {
+    // The blue source is on the red side of the field, marked by tags 1 and 2
+    final Pose2d tag1 = FieldConstants.aprilTags.getTagPose(1).get().toPose2d();
+    final Pose2d tag2 = FieldConstants.aprilTags.getTagPose(2).get().toPose2d();
+    final Translation2d source =
+        tag1.getTranslation()
+            .interpolate(tag2.getTranslation(), 0.5)
+            .plus(new Translation2d(SOURCE_DISTANCE, tag1.getRotation()));
+    return new PlannedDriveToPose(
+        drive, () -> new Pose2d(AllianceFlipUtil.apply(source), drive.getRotation()));
+  }
+
+  /**
+   * Drives in front of the subwoofer, facing the speaker
+   *
+   * @param drive The drive subsystem
+   * @return The command
+   */
+  public static PlannedDriveToPose toSubwoofer(Drive drive) {
+    return new PlannedDriveToPose(
+        drive,
+        () -> {
+          final Translation2d position =
+              AllianceFlipUtil.apply(
+                  new Translation2d(
+                      FieldConstants.Speaker.subwooferDepth + SUBWOOFER_DISTANCE,
+                      FieldConstants.Speaker.speakerY));
+          return new Pose2d(
+              position, ShooterMath.getGoalTheta(new Pose2d(position, new Rotation2d())));
+        });
+  }
+
+  @Override
+  public void initialize() {
+    reference = null;
+    planningFailed = false;
+    follower.setTrajectory(null);
+
+    // Plan and generate on the worker so that the scheduler isn't held up
+    final Pose2d start = drive.getPose();
+    final Pose2d goal = goalSupplier.get();
+    final Translation2d[] moduleTranslations = drive.getModuleTranslations();
+    final FieldPlanner planner = FieldPlanner.getInstance();
+    pendingReference =
+        planner.submit(
+            () ->
+                DriveTrajectory.generateReference(
+                    moduleTranslations, planner.plan(start, goal), List.of(), 0.0, false));
+  }
+
+  @Override
+  public void execute() {
+    // Wait for the trajectory
+    if (reference == null) {
+      if (!pendingReference.isDone()) {
+        drive.stop();
+        return;
+      }
+      if (pendingReference.isCompletedExceptionally()) {
+        planningFailed = true;
+        pendingReference.exceptionally(
+            exception -> {
+              DriverStation.reportWarning("Failed to plan a drive: " + exception, false);
+              return null;
+            });
+        drive.stop();
+        return;
+      }
+      reference = pendingReference.join();
+      follower.setTrajectory(reference);
+      Logger.getInstance().setDriveTrajectory(reference.getLoggablePoses());
+      timer.reset();
+      timer.start();
+    }
+
+    final ChassisSpeeds speeds = follower.calculate(drive.getPose(), timer.get());
+    Logger.getInstance().setDriveTrajSetpoint(follower.getSetpoint().toPose());
+    drive.runVelocity(speeds);
+  }
+
+  @Override
+  public void end(boolean interrupted) {
+    if (pendingReference != null) {
+      pendingReference.cancel(false);
+    }
+    Logger.getInstance().setDriveTrajectory(new Pose2d());
+    drive.stop();
+  }
+
+  @Override
+  public boolean isFinished() {
+    if (planningFailed) {
+      return true;
+    }
+    if (reference == null) {
+      return false;
+    }
+    if (!reference.isValid()) {
+      return true;
+    }
+    return timer.hasElapsed(reference.getTotalTime()) && follower.atReference();
+  }
+}
@@ -10,6 +10,7 @@ package frc.WorBots.subsystems.climber;
 import edu.wpi.first.wpilibj.*;
 import edu.wpi.first.wpilibj2.command.*;
 import frc.WorBots.subsystems.climber.ClimberIO.ClimberIOInputs;
+import frc.WorBots.util.LoopContext;
 import java.util.Optional;
 import java.util.function.Supplier;
 
@@ -58,7 +59,7 @@ public class Climber extends SubsystemBase {
   public void periodic() {
     io.updateInputs(inputs);
 
-    if (DriverStation.isDisabled()) {
+    if (LoopContext.get().isDisabled()) {
       setClimberVoltageRaw(0.0);
       manualClimberVolts = () -> 0.0;
     } else {
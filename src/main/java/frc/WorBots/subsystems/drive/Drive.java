@@ -7,20 +7,27 @@
 
 package frc.WorBots.subsystems.drive;
 
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.Nat;
 import edu.wpi.first.math.VecBuilder;
 import edu.wpi.first.math.geometry.*;
 import edu.wpi.first.math.kinematics.*;
+import edu.wpi.first.math.numbers.N3;
 import edu.wpi.first.math.util.Units;
 import edu.wpi.first.networktables.*;
 import edu.wpi.first.wpilibj.*;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.WorBots.Constants;
 import frc.WorBots.subsystems.drive.GyroIO.GyroIOInputs;
+import frc.WorBots.util.LoopContext;
+import frc.WorBots.util.cache.LoopCache;
 import frc.WorBots.util.debug.Logger;
 import frc.WorBots.util.debug.StatusPage;
 import frc.WorBots.util.math.AllianceFlipUtil;
 import frc.WorBots.util.math.GeomUtil;
 import frc.WorBots.util.math.PoseEstimator;
 import frc.WorBots.util.math.PoseEstimator.*;
+import frc.WorBots.util.math.PoseHistory;
 import java.util.List;
 
 public class Drive extends SubsystemBase {
@@ -30,14 +37,26 @@ public class Drive extends SubsystemBase {
   /** The drift rate of the robot when driving, in radians per second */
   private static final double DRIFT_RATE = 0.0;
 
+  /** The estimation engine to use for the pose estimator */
+  private static final EstimatorType ESTIMATOR_TYPE = EstimatorType.STEADY_STATE;
+
+  /** The length of time to keep estimated poses for latency compensation, in seconds */
+  private static final double POSE_HISTORY_LENGTH = 3.0;
+
   private final Module[] modules = new Module[4];
   private final GyroIO gyroIO;
   private final GyroIOInputs gyroInputs = new GyroIOInputs();
 
-  private final SwerveDriveKinematics kinematics =
-      new SwerveDriveKinematics(getModuleTranslations());
+  private final Translation2d[] moduleTranslations = getModuleTranslations();
+  private final SwerveDriveKinematics kinematics = new SwerveDriveKinematics(moduleTranslations);
   private final PoseEstimator poseEstimator =
-      new PoseEstimator(VecBuilder.fill(0.003, 0.003, 0.0002));
+      new PoseEstimator(VecBuilder.fill(0.003, 0.003, 0.0002), ESTIMATOR_TYPE);
+
+  /** Filled with the covariance of the pose estimate each time it is requested */
+  private final Matrix<N3, N3> poseCovariance = new Matrix<>(Nat.N3(), Nat.N3());
+
+  private final PoseHistory poseHistory =
+      new PoseHistory(POSE_HISTORY_LENGTH, Constants.ROBOT_PERIOD);
 
   /** The setpoint speeds for the drivetrain */
   private ChassisSpeeds setpointSpeeds = new ChassisSpeeds();
@@ -51,6 +70,12 @@ public class Drive extends SubsystemBase {
   /** The last yaw of the gyro, used for delta calculation */
   private Rotation2d lastGyroYaw = new Rotation2d();
 
+  /** The field-relative setpoint speeds, which many commands use each loop */
+  private final LoopCache<ChassisSpeeds> fieldRelativeSpeeds =
+      new LoopCache<>(
+          "Field Relative Speeds",
+          () -> ChassisSpeeds.fromRobotRelativeSpeeds(setpointSpeeds, lastGyroYaw));
+
   /** The last positions of the modules, used for delta calculations */
   private double[] lastModulePositionsMeters = new double[] {0.0, 0.0, 0.0, 0.0};
 
@@ -97,7 +122,7 @@ public class Drive extends SubsystemBase {
       module.periodic();
     }
 
-    updateOdometry(Timer.getFPGATimestamp());
+    updateOdometry(LoopContext.get().getTimestamp());
 
     speedSetpointPublisher.set(Logger.chassisSpeedsToArray(setpointSpeeds));
     yawPublisher.set(gyroInputs.yawPositionRad);
@@ -108,7 +133,7 @@ public class Drive extends SubsystemBase {
 
   /** Drives the drivetrain at the setpoint speeds */
   private void drive() {
-    if (DriverStation.isDisabled()) {
+    if (LoopContext.get().isDisabled()) {
       for (Module module : modules) {
         module.stop();
       }
@@ -166,9 +191,10 @@ public class Drive extends SubsystemBase {
       twist.dtheta = gyroYaw.minus(lastGyroYaw).getRadians();
     }
     lastGyroYaw = gyroYaw;
+    fieldRelativeSpeeds.invalidate();
 
     // Add to pose estimator
-    poseEstimator.addDriveData(timestamp, twist);
+    poseEstimator.addDriveData(timestamp, twist, calculateWheelSlip(wheelDeltas, twist));
     posePublisher.set(Logger.pose2dToArray(getPose()));
 
     // Update field velocity
@@ -177,9 +203,6 @@ public class Drive extends SubsystemBase {
         new Translation2d(measuredSpeeds.vxMetersPerSecond, measuredSpeeds.vyMetersPerSecond)
             .rotateBy(getRotation());
 
-    // Update for simulated gyro
-    gyroIO.setExpectedYawVelocity(measuredSpeeds.omegaRadiansPerSecond);
-
     // Update field velocity twist
     fieldVelocity =
         new Twist2d(
@@ -188,6 +211,34 @@ public class Drive extends SubsystemBase {
             gyroInputs.connected
                 ? gyroInputs.yawVelocityRadPerSec
                 : measuredSpeeds.omegaRadiansPerSecond);
+
+    // Record for latency compensation
+    poseHistory.addSample(timestamp, getPose(), fieldVelocity);
+  }
+
+  /**
+   * Calculates how much the wheel movements disagree with the robot twist. Wheels that are slipping
+   * or being pushed will not match the movement that the kinematics and gyro agree on.
+   *
+   * @param wheelDeltas The measured movement of each module
+   * @param twist The calculated twist of the robot
+   * @return The RMS distance between the measured and expected wheel movements, in meters
+   */
+  private double calculateWheelSlip(SwerveModulePosition[] wheelDeltas, Twist2d twist) {
+    double sumSquared = 0.0;
+    for (int i = 0; i < 4; i++) {
+      // The movement of the module from the twist, the same as the inverse kinematics but without
+      // allocating module states
+      final Translation2d module = moduleTranslations[i];
+      final double expectedX = twist.dx - twist.dtheta * module.getY();
+      final double expectedY = twist.dy + twist.dtheta * module.getX();
+      final double errorX =
+          expectedX - wheelDeltas[i].distanceMeters * wheelDeltas[i].angle.getCos();
+      final double errorY =
+          expectedY - wheelDeltas[i].distanceMeters * wheelDeltas[i].angle.getSin();
+      sumSquared += errorX * errorX + errorY * errorY;
+    }
+    return Math.sqrt(sumSquared / 4.0);
   }
 
   /**
@@ -217,6 +268,41 @@ public class Drive extends SubsystemBase {
     return poseEstimator.getLatestPose();
   }
 
+  /**
+   * Gets the estimated pose of the robot at a point in the recent past. Used to compare sensor
+   * readings against where the robot actually was when they were taken.
+   *
+   * @param timestamp The FPGA timestamp in seconds
+   * @return The interpolated field-relative robot pose. Times outside of the stored history are
+   *     clamped to the oldest or latest pose.
+   */
+  public Pose2d getPoseAt(double timestamp) {
+    final Pose2d pose = poseHistory.getPoseAt(timestamp);
+    return pose == null ? getPose() : pose;
+  }
+
+  /**
+   * Gets the measured field velocity of the robot at a point in the recent past
+   *
+   * @param timestamp The FPGA timestamp in seconds
+   * @return The interpolated field velocity as a twist. Times outside of the stored history are
+   *     clamped to the oldest or latest velocity.
+   */
+  public Twist2d getVelocityAt(double timestamp) {
+    final Twist2d velocity = poseHistory.getVelocityAt(timestamp);
+    return velocity == null ? getFieldVelocity() : velocity;
+  }
+
+  /**
+   * Gets the covariance of the latest pose estimate. The matrix is reused, so it is only valid
+   * until the next call.
+   *
+   * @return The 3x3 covariance of x, y, and theta
+   */
+  public Matrix<N3, N3> getPoseCovariance() {
+    return poseEstimator.getLatestCovariance(poseCovariance);
+  }
+
   /** Enable or disable vision updates on the PoseEstimator */
   public void enableVisionUpdates(boolean enabled) {
     poseEstimator.enableVisionUpdates(enabled);
@@ -232,12 +318,15 @@ public class Drive extends SubsystemBase {
   }
 
   /**
-   * Gets the setpoint field-relative ChassisSpeeds of the robot
+   * Gets the setpoint field-relative ChassisSpeeds of the robot. The speeds are computed once per
+   * loop, and each caller gets its own copy so that changing it can't affect anyone else.
    *
    * @return The speed of the robot
    */
   public ChassisSpeeds getFieldRelativeSpeeds() {
-    return ChassisSpeeds.fromRobotRelativeSpeeds(setpointSpeeds, lastGyroYaw);
+    final ChassisSpeeds speeds = fieldRelativeSpeeds.get();
+    return new ChassisSpeeds(
+        speeds.vxMetersPerSecond, speeds.vyMetersPerSecond, speeds.omegaRadiansPerSecond);
   }
 
   /**
@@ -274,6 +363,8 @@ public class Drive extends SubsystemBase {
    */
   public void setPose(Pose2d pose) {
     poseEstimator.resetPose(pose);
+    poseHistory.clear();
+    gyroIO.resetPose(pose);
   }
 
   /**
@@ -286,6 +377,7 @@ public class Drive extends SubsystemBase {
     final Pose2d currentPose = poseEstimator.getLatestPose();
     poseEstimator.resetPose(
         new Pose2d(currentPose.getX(), currentPose.getY(), AllianceFlipUtil.apply(heading)));
+    poseHistory.clear();
   }
 
   /**
@@ -311,6 +403,7 @@ public class Drive extends SubsystemBase {
     // Adjust the velocity only once here to reduce calculations
     final ChassisSpeeds adjusted = GeomUtil.driftCorrectChassisSpeeds(speeds, DRIFT_RATE);
     setpointSpeeds = adjusted;
+    fieldRelativeSpeeds.invalidate();
   }
 
   /** Stops the drive train by clearing the chassis speeds */
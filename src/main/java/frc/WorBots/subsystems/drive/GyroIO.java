@@ -7,6 +7,7 @@
 
 package frc.WorBots.subsystems.drive;
 
+import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 
 public interface GyroIO {
@@ -24,12 +25,14 @@ public interface GyroIO {
    */
   public default void updateInputs(GyroIOInputs inputs) {}
 
-  /**
-   * Set the rotational velocity (in rads/sec) that the drive is expected to be moving at so that
-   * the simulated gyro can work
-   */
-  public default void setExpectedYawVelocity(double vYaw) {}
-
   /** Resets the gyroscope to a heading (yaw) */
   public default void resetHeading(Rotation2d heading) {}
+
+  /**
+   * Called when the drive pose is reset. Only simulated IO uses this, to teleport the simulated
+   * robot so that odometry doesn't disagree with the ground truth.
+   *
+   * @param pose The new pose
+   */
+  public default void resetPose(Pose2d pose) {}
 }
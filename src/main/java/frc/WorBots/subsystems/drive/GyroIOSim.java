@@ -7,53 +7,41 @@
 
 package frc.WorBots.subsystems.drive;
 
+import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
-import edu.wpi.first.wpilibj.Timer;
 
+/** Simulated gyro that measures the true rotation of the {@link SwerveChassisSim} */
 public class GyroIOSim implements GyroIO {
-  private SimAxis yawAxis = new SimAxis();
+  private final SwerveChassisSim chassis;
 
-  public GyroIOSim() {}
+  /** The offset from the chassis rotation to the reported yaw, set by heading resets */
+  private double yawOffsetRad = 0.0;
+
+  /**
+   * Creates a simulated gyro
+   *
+   * @param chassis The chassis simulation that the gyro is mounted to
+   */
+  public GyroIOSim(SwerveChassisSim chassis) {
+    this.chassis = chassis;
+  }
 
   public void updateInputs(GyroIOInputs inputs) {
-    yawAxis.update();
+    chassis.update();
 
-    inputs.yawPositionRad = yawAxis.angle.getRadians();
-    inputs.yawVelocityRadPerSec = yawAxis.velocity;
+    inputs.yawPositionRad = chassis.getIntegratedYaw() + yawOffsetRad;
+    inputs.yawVelocityRadPerSec = chassis.getYawVelocity();
 
     inputs.connected = true;
   }
 
-  @Override
-  public void setExpectedYawVelocity(double vYaw) {
-    yawAxis.velocity = vYaw;
-  }
-
   @Override
   public void resetHeading(Rotation2d heading) {
-    yawAxis.angle = heading;
+    yawOffsetRad = heading.getRadians() - chassis.getIntegratedYaw();
   }
 
-  /**
-   * Simulation for one axis of the gyroscope. It basically just applies a rotational velocity to a
-   * stored rotation every update, with compensation for time difference
-   */
-  private static class SimAxis {
-    private Rotation2d angle = new Rotation2d();
-    // Current velocity in radians per second
-    private double velocity = 0.0;
-    // Timestamp when update() was last called
-    private double lastTimestamp = 0.0;
-
-    public void update() {
-      final double timestamp = Timer.getFPGATimestamp();
-      final double diff = timestamp - lastTimestamp;
-      // Scale the velocity in radians per second to match the time period
-      final double motion = velocity * diff;
-
-      angle = angle.plus(Rotation2d.fromRadians(motion));
-
-      lastTimestamp = timestamp;
-    }
+  @Override
+  public void resetPose(Pose2d pose) {
+    chassis.resetPose(pose);
   }
 }
@@ -16,6 +16,7 @@ import frc.WorBots.util.math.GeneralMath;
 public class Module {
   private final int index;
   private final ModuleIO io;
+  private final int statusId;
   private SwerveModuleState lastSetpoint = new SwerveModuleState();
   private final SwerveSetpointFilter filter = new SwerveSetpointFilter();
 
@@ -33,13 +34,14 @@ public class Module {
   public Module(ModuleIO io, int index) {
     this.io = io;
     this.index = index;
+    this.statusId = StatusPage.register(StatusPage.SMODULE_PREFIX + index);
   }
 
   public void periodic() {
     io.updateInputs();
     io.getInputs().drive.publish();
     io.getInputs().turn.publish();
-    StatusPage.reportStatus(StatusPage.SMODULE_PREFIX + index, io.getInputs().isConnected);
+    StatusPage.reportStatus(statusId, io.getInputs().isConnected);
   }
 
   /**
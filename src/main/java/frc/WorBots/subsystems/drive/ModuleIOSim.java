@@ -7,17 +7,18 @@
 
 package frc.WorBots.subsystems.drive;
 
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.SimpleMotorFeedforward;
-import edu.wpi.first.math.system.plant.DCMotor;
 import edu.wpi.first.math.util.Units;
-import edu.wpi.first.wpilibj.simulation.FlywheelSim;
-import frc.WorBots.Constants;
 import frc.WorBots.util.debug.TunablePIDController;
 import frc.WorBots.util.debug.TunablePIDController.TunablePIDGains;
 import frc.WorBots.util.math.GeneralMath;
 
+/** Simulated swerve module, backed by a module of the shared {@link SwerveChassisSim} */
 public class ModuleIOSim implements ModuleIO {
   private ModuleIOInputs inputs;
+  private final int index;
+  private final SwerveChassisSim chassis;
 
   private final SimpleMotorFeedforward driveFeedforward =
       new SimpleMotorFeedforward(0.116970, 0.133240);
@@ -28,17 +29,25 @@ public class ModuleIOSim implements ModuleIO {
       new TunablePIDGains("Drive/Gains", "SModule Turn Feedback");
   private final TunablePIDController turnFeedback = new TunablePIDController(turnFeedbackGains);
 
-  private final FlywheelSim driveSim = new FlywheelSim(DCMotor.getKrakenX60(1), 6.75, 0.025);
-  private final FlywheelSim turnSim = new FlywheelSim(DCMotor.getKrakenX60(1), 150.0 / 7.0, 0.004);
   private final double wheelRadius = Units.inchesToMeters(2.0);
 
-  private double turnRelativePositionRad = 0.0;
-  private double turnAbsolutePositionRad = Math.random() * 2.0 * Math.PI;
+  /** The steering angle at startup, used to zero the relative turn position */
+  private final double initialSteerAngle;
+
   private double driveAppliedVolts = 0.0;
   private double turnAppliedVolts = 0.0;
 
-  public ModuleIOSim(int index) {
+  /**
+   * Creates a simulated module
+   *
+   * @param index The index of the module from 0-3
+   * @param chassis The chassis simulation that the module belongs to
+   */
+  public ModuleIOSim(int index, SwerveChassisSim chassis) {
     this.inputs = new ModuleIOInputs(index);
+    this.index = index;
+    this.chassis = chassis;
+    this.initialSteerAngle = chassis.getSteerAngle(index);
     driveFeedbackGains.setGains(0.08, 0.0, 0.0);
     turnFeedbackGains.setGains(9.5, 0.0, 0.0);
     turnFeedback.pid.enableContinuousInput(-Math.PI, Math.PI);
@@ -48,34 +57,24 @@ public class ModuleIOSim implements ModuleIO {
     driveFeedback.update();
     turnFeedback.update();
 
-    driveSim.update(Constants.ROBOT_PERIOD);
-    turnSim.update(Constants.ROBOT_PERIOD);
-
-    final double angleDiffRad = turnSim.getAngularVelocityRadPerSec() * Constants.ROBOT_PERIOD;
-    turnRelativePositionRad += angleDiffRad;
-    turnAbsolutePositionRad += angleDiffRad;
-    while (turnAbsolutePositionRad < 0) {
-      turnAbsolutePositionRad += 2.0 * Math.PI;
-    }
-    while (turnAbsolutePositionRad > 2.0 * Math.PI) {
-      turnAbsolutePositionRad -= 2.0 * Math.PI;
-    }
+    chassis.update();
 
     inputs.turnPositionErrorRad = turnFeedback.pid.getPositionError();
 
-    inputs.drive.positionRads += (driveSim.getAngularVelocityRadPerSec() * Constants.ROBOT_PERIOD);
-    inputs.drive.velocityRadsPerSec = driveSim.getAngularVelocityRadPerSec();
+    inputs.drive.positionRads = chassis.getWheelPosition(index);
+    inputs.drive.velocityRadsPerSec = chassis.getWheelVelocity(index);
     inputs.driveDistanceMeters = inputs.drive.positionRads * wheelRadius;
     inputs.driveVelocityMetersPerSec = inputs.drive.velocityRadsPerSec * wheelRadius;
     inputs.drive.appliedPowerVolts = driveAppliedVolts;
-    inputs.drive.currentDrawAmps = Math.abs(driveSim.getCurrentDrawAmps());
+    inputs.drive.currentDrawAmps = Math.abs(chassis.getDriveCurrent(index));
     inputs.drive.temperatureCelsius = 30.0;
 
-    inputs.turnAbsolutePositionRad = turnAbsolutePositionRad;
-    inputs.turn.positionRads = turnRelativePositionRad;
-    inputs.turn.velocityRadsPerSec = turnSim.getAngularVelocityRadPerSec();
+    final double steerAngle = chassis.getSteerAngle(index);
+    inputs.turnAbsolutePositionRad = MathUtil.inputModulus(steerAngle, 0.0, 2.0 * Math.PI);
+    inputs.turn.positionRads = steerAngle - initialSteerAngle;
+    inputs.turn.velocityRadsPerSec = chassis.getSteerVelocity(index);
     inputs.turn.appliedPowerVolts = turnAppliedVolts;
-    inputs.turn.currentDrawAmps = Math.abs(turnSim.getCurrentDrawAmps());
+    inputs.turn.currentDrawAmps = Math.abs(chassis.getTurnCurrent(index));
     inputs.turn.temperatureCelsius = 30.0;
     inputs.isConnected = true;
   }
@@ -98,11 +97,11 @@ public class ModuleIOSim implements ModuleIO {
 
   public void setDriveVoltage(double volts) {
     driveAppliedVolts = GeneralMath.clampMagnitude(volts, 11.0);
-    driveSim.setInputVoltage(driveAppliedVolts);
+    chassis.setDriveVoltage(index, driveAppliedVolts);
   }
 
   public void setTurnVoltage(double volts) {
     turnAppliedVolts = GeneralMath.clampMagnitude(volts, 11.0);
-    turnSim.setInputVoltage(turnAppliedVolts);
+    chassis.setTurnVoltage(index, turnAppliedVolts);
   }
 }
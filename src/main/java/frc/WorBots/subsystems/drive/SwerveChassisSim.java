@@ -0,0 +1,429 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.subsystems.drive;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.simulation.RoboRioSim;
+import frc.WorBots.Constants;
+import frc.WorBots.FieldConstants;
+import frc.WorBots.util.cache.Cache.TimeCache;
+import java.util.Random;
+
+/**
+ * Rigid body simulation of the swerve chassis. The four modules are coupled through the chassis:
+ * each wheel pushes on the carpet with a force limited by the friction circle of its tire, so
+ * wheels can slip when accelerating too hard or when fighting each other. Motor current is limited
+ * like the real Talon configuration, and the combined draw of all of the motors sags the simulated
+ * battery voltage. The robot stops against the field walls.
+ *
+ * <p>The simulation is stepped once per robot loop by whichever of the module or gyro IOs reads it
+ * first, using the voltages that were applied during the last loop.
+ */
+public class SwerveChassisSim {
+  /** The mass of the robot, including bumpers and battery, in kilograms */
+  private static final double MASS = 52.0;
+
+  /** The moment of inertia of the robot about its center, in kg m^2 */
+  private static final double MOI =
+      MASS
+          * (Constants.ROBOT_LENGTH * Constants.ROBOT_LENGTH
+              + Constants.ROBOT_WIDTH * Constants.ROBOT_WIDTH)
+          / 12.0;
+
+  /** The coefficient of friction between the tread and the carpet */
+  private static final double FRICTION_COEFFICIENT = 1.1;
+
+  /**
+   * The force that a tire makes per unit of slip velocity before it saturates, in N/(m/s). Higher
+   * values behave more like a perfect no-slip wheel, but need smaller steps.
+   */
+  private static final double TIRE_STIFFNESS = 1000.0;
+
+  private static final double WHEEL_RADIUS = Units.inchesToMeters(2.0);
+
+  /** The moment of inertia of a wheel and its drive gearing, reflected to the wheel, in kg m^2 */
+  private static final double WHEEL_MOI = 0.003;
+
+  /** The moment of inertia of a module about its steering axis, in kg m^2 */
+  private static final double STEER_MOI = 0.004;
+
+  /** The fraction of drive motor torque that makes it through the gearing */
+  private static final double DRIVE_EFFICIENCY = 0.9;
+
+  /** Supply current limits, matching ModuleIOTalon */
+  private static final double DRIVE_SUPPLY_LIMIT = 25.0;
+
+  private static final double TURN_SUPPLY_LIMIT = 40.0;
+
+  /** The resting voltage of the battery */
+  private static final double BATTERY_VOLTAGE = 12.0;
+
+  /** The internal resistance of the battery and wiring, in ohms */
+  private static final double BATTERY_RESISTANCE = 0.02;
+
+  /** The number of physics steps to take per robot loop */
+  private static final int SUBSTEPS = 5;
+
+  private static final DCMotor DRIVE_MOTOR = DCMotor.getKrakenX60(1).withReduction(6.75);
+  private static final DCMotor TURN_MOTOR = DCMotor.getKrakenX60(1).withReduction(150.0 / 7.0);
+
+  /** The normal force on each wheel, in newtons */
+  private static final double NORMAL_FORCE = MASS * 9.81 / 4.0;
+
+  // Module positions relative to the robot center
+  private final double[] moduleX = {
+    Drive.WHEELBASE, Drive.WHEELBASE, -Drive.WHEELBASE, -Drive.WHEELBASE
+  };
+  private final double[] moduleY = {
+    Drive.WHEELBASE, -Drive.WHEELBASE, Drive.WHEELBASE, -Drive.WHEELBASE
+  };
+
+  // Module state
+  private final double[] steerAngle = new double[4];
+  private final double[] steerVelocity = new double[4];
+  private final double[] wheelVelocity = new double[4];
+  private final double[] wheelPosition = new double[4];
+  private final double[] driveVolts = new double[4];
+  private final double[] turnVolts = new double[4];
+  private final double[] driveCurrent = new double[4];
+  private final double[] turnCurrent = new double[4];
+
+  // Chassis state, field relative
+  private double x = 0.0;
+  private double y = 0.0;
+  private double theta = 0.0;
+  private double vx = 0.0;
+  private double vy = 0.0;
+  private double omega = 0.0;
+
+  /** The total rotation of the chassis, which is not affected by pose resets */
+  private double integratedYaw = 0.0;
+
+  private double batteryVoltage = BATTERY_VOLTAGE;
+
+  /** The timestamp of the last step, used to only step once per loop */
+  private double lastStepTimestamp = Double.NaN;
+
+  /**
+   * Constructs a new SwerveChassisSim with the modules at random angles. The angles are seeded so
+   * that simulation runs are repeatable.
+   */
+  public SwerveChassisSim() {
+    final Random random = new Random(4145);
+    for (int i = 0; i < 4; i++) {
+      steerAngle[i] = random.nextDouble() * 2.0 * Math.PI;
+    }
+  }
+
+  /** Steps the simulation forward by one robot period, if it has not already been this loop */
+  public void update() {
+    final double timestamp = TimeCache.getInstance().get();
+    if (timestamp == lastStepTimestamp) {
+      return;
+    }
+    lastStepTimestamp = timestamp;
+
+    final double dt = Constants.ROBOT_PERIOD / SUBSTEPS;
+    for (int i = 0; i < SUBSTEPS; i++) {
+      step(dt);
+    }
+    RoboRioSim.setVInVoltage(batteryVoltage);
+  }
+
+  /**
+   * Steps the physics
+   *
+   * @param dt The length of the step, in seconds
+   */
+  private void step(double dt) {
+    final double cos = Math.cos(theta);
+    final double sin = Math.sin(theta);
+    double forceX = 0.0;
+    double forceY = 0.0;
+    double torque = 0.0;
+    double supplyCurrent = 0.0;
+
+    for (int i = 0; i < 4; i++) {
+      // Steering, which is not loaded by the carpet
+      final double appliedTurn = MathUtil.clamp(turnVolts[i], -batteryVoltage, batteryVoltage);
+      final double turnLimit = statorLimit(TURN_SUPPLY_LIMIT, appliedTurn);
+      steerVelocity[i] =
+          stepMotor(TURN_MOTOR, STEER_MOI, steerVelocity[i], appliedTurn, turnLimit, dt);
+      turnCurrent[i] =
+          MathUtil.clamp(
+              TURN_MOTOR.getCurrent(steerVelocity[i], appliedTurn), -turnLimit, turnLimit);
+      steerAngle[i] += steerVelocity[i] * dt;
+
+      // Velocity of the contact patch in the field frame
+      final double offsetX = moduleX[i] * cos - moduleY[i] * sin;
+      final double offsetY = moduleX[i] * sin + moduleY[i] * cos;
+      final double contactVx = vx - omega * offsetY;
+      final double contactVy = vy + omega * offsetX;
+
+      // Split into rolling and sideways components
+      final double wheelCos = Math.cos(theta + steerAngle[i]);
+      final double wheelSin = Math.sin(theta + steerAngle[i]);
+      final double rollingVelocity = contactVx * wheelCos + contactVy * wheelSin;
+      final double lateralVelocity = -contactVx * wheelSin + contactVy * wheelCos;
+
+      // Solve the wheel speed implicitly against the motor back-EMF and tire stiffness, since both
+      // are much stiffer than the step size can handle explicitly
+      final double appliedDrive = MathUtil.clamp(driveVolts[i], -batteryVoltage, batteryVoltage);
+      final double driveLimit = statorLimit(DRIVE_SUPPLY_LIMIT, appliedDrive);
+      final double motorGain = DRIVE_MOTOR.KtNMPerAmp / DRIVE_MOTOR.rOhms * DRIVE_EFFICIENCY;
+      final double tireGain = TIRE_STIFFNESS * WHEEL_RADIUS;
+      double newWheelVelocity =
+          (WHEEL_MOI * wheelVelocity[i]
+                  + dt * (motorGain * appliedDrive + tireGain * rollingVelocity))
+              / (WHEEL_MOI
+                  + dt * (motorGain / DRIVE_MOTOR.KvRadPerSecPerVolt + tireGain * WHEEL_RADIUS));
+      double current = DRIVE_MOTOR.getCurrent(newWheelVelocity, appliedDrive);
+      double motorTorque = 0.0;
+      if (Math.abs(current) > driveLimit) {
+        // Current limited, so the motor torque is constant
+        current = Math.copySign(driveLimit, current);
+        motorTorque = DRIVE_MOTOR.getTorque(current) * DRIVE_EFFICIENCY;
+        newWheelVelocity =
+            (WHEEL_MOI * wheelVelocity[i] + dt * (motorTorque + tireGain * rollingVelocity))
+                / (WHEEL_MOI + dt * tireGain * WHEEL_RADIUS);
+      } else {
+        motorTorque = DRIVE_MOTOR.getTorque(current) * DRIVE_EFFICIENCY;
+      }
+
+      // Limit the tire force to the friction circle
+      double rollingForce = TIRE_STIFFNESS * (newWheelVelocity * WHEEL_RADIUS - rollingVelocity);
+      double lateralForce = -TIRE_STIFFNESS * lateralVelocity;
+      final double maxForce = FRICTION_COEFFICIENT * NORMAL_FORCE;
+      final double forceMagnitude = Math.hypot(rollingForce, lateralForce);
+      if (forceMagnitude > maxForce) {
+        // Sliding, so the wheel spins against constant kinetic friction
+        final double scale = maxForce / forceMagnitude;
+        rollingForce *= scale;
+        lateralForce *= scale;
+        newWheelVelocity =
+            wheelVelocity[i] + dt * (motorTorque - rollingForce * WHEEL_RADIUS) / WHEEL_MOI;
+      }
+
+      wheelVelocity[i] = newWheelVelocity;
+      wheelPosition[i] += newWheelVelocity * dt;
+      driveCurrent[i] = current;
+
+      // Push on the chassis
+      final double wheelForceX = rollingForce * wheelCos - lateralForce * wheelSin;
+      final double wheelForceY = rollingForce * wheelSin + lateralForce * wheelCos;
+      forceX += wheelForceX;
+      forceY += wheelForceY;
+      torque += offsetX * wheelForceY - offsetY * wheelForceX;
+
+      supplyCurrent += supplyCurrent(driveCurrent[i], appliedDrive);
+      supplyCurrent += supplyCurrent(turnCurrent[i], appliedTurn);
+    }
+
+    // Integrate the chassis
+    vx += forceX / MASS * dt;
+    vy += forceY / MASS * dt;
+    omega += torque / MOI * dt;
+    x += vx * dt;
+    y += vy * dt;
+    theta = MathUtil.angleModulus(theta + omega * dt);
+    integratedYaw += omega * dt;
+    collideWithWalls();
+
+    batteryVoltage = Math.max(0.0, BATTERY_VOLTAGE - BATTERY_RESISTANCE * supplyCurrent);
+  }
+
+  /** Stops the robot against the field perimeter */
+  private void collideWithWalls() {
+    final double halfLength = Constants.ROBOT_LENGTH / 2.0;
+    final double halfWidth = Constants.ROBOT_WIDTH / 2.0;
+    final double cos = Math.abs(Math.cos(theta));
+    final double sin = Math.abs(Math.sin(theta));
+    final double extentX = halfLength * cos + halfWidth * sin;
+    final double extentY = halfLength * sin + halfWidth * cos;
+
+    if (x < extentX) {
+      x = extentX;
+      vx = Math.max(vx, 0.0);
+    } else if (x > FieldConstants.fieldLength - extentX) {
+      x = FieldConstants.fieldLength - extentX;
+      vx = Math.min(vx, 0.0);
+    }
+    if (y < extentY) {
+      y = extentY;
+      vy = Math.max(vy, 0.0);
+    } else if (y > FieldConstants.fieldWidth - extentY) {
+      y = FieldConstants.fieldWidth - extentY;
+      vy = Math.min(vy, 0.0);
+    }
+  }
+
+  /**
+   * Steps an unloaded motor implicitly, which stays stable when the back-EMF time constant is
+   * shorter than the step
+   *
+   * @param motor The motor, with its reduction
+   * @param moi The moment of inertia at the output
+   * @param velocity The current output velocity
+   * @param volts The applied voltage
+   * @param currentLimit The stator current limit
+   * @param dt The length of the step
+   * @return The new output velocity
+   */
+  private static double stepMotor(
+      DCMotor motor, double moi, double velocity, double volts, double currentLimit, double dt) {
+    final double gain = motor.KtNMPerAmp / motor.rOhms;
+    final double newVelocity =
+        (moi * velocity + dt * gain * volts) / (moi + dt * gain / motor.KvRadPerSecPerVolt);
+    final double current = motor.getCurrent(newVelocity, volts);
+    if (Math.abs(current) > currentLimit) {
+      return velocity + dt * motor.getTorque(Math.copySign(currentLimit, current)) / moi;
+    }
+    return newVelocity;
+  }
+
+  /**
+   * Gets the stator current that a Talon supply current limit allows at an applied voltage
+   *
+   * @param supplyLimit The supply current limit
+   * @param appliedVolts The voltage applied to the motor
+   * @return The stator current limit
+   */
+  private double statorLimit(double supplyLimit, double appliedVolts) {
+    // Supply power equals motor power, so the stator current scales by the inverse of the duty
+    // cycle
+    return supplyLimit * batteryVoltage / Math.max(Math.abs(appliedVolts), 1e-3);
+  }
+
+  /**
+   * Gets the current drawn from the battery by a motor
+   *
+   * @param statorCurrent The motor current
+   * @param appliedVolts The voltage applied to the motor
+   * @return The supply current
+   */
+  private double supplyCurrent(double statorCurrent, double appliedVolts) {
+    if (batteryVoltage <= 0.0) {
+      return 0.0;
+    }
+    return Math.abs(statorCurrent * appliedVolts / batteryVoltage);
+  }
+
+  /**
+   * Teleports the robot and brings it to rest, used to follow pose resets in simulation
+   *
+   * @param pose The new pose
+   */
+  public void resetPose(Pose2d pose) {
+    x = pose.getX();
+    y = pose.getY();
+    theta = pose.getRotation().getRadians();
+    vx = 0.0;
+    vy = 0.0;
+    omega = 0.0;
+    for (int i = 0; i < 4; i++) {
+      wheelVelocity[i] = 0.0;
+    }
+  }
+
+  /**
+   * Sets the voltage of a drive motor
+   *
+   * @param module The index of the module
+   * @param volts The voltage
+   */
+  public void setDriveVoltage(int module, double volts) {
+    driveVolts[module] = volts;
+  }
+
+  /**
+   * Sets the voltage of a turn motor
+   *
+   * @param module The index of the module
+   * @param volts The voltage
+   */
+  public void setTurnVoltage(int module, double volts) {
+    turnVolts[module] = volts;
+  }
+
+  /**
+   * Gets the true pose of the robot
+   *
+   * @return The pose
+   */
+  public Pose2d getPose() {
+    return new Pose2d(x, y, new Rotation2d(theta));
+  }
+
+  /**
+   * Gets the total rotation of the chassis since the simulation started. Unlike the pose, this is
+   * continuous through pose resets, just like a real gyro.
+   *
+   * @return The rotation in radians
+   */
+  public double getIntegratedYaw() {
+    return integratedYaw;
+  }
+
+  /**
+   * Gets the rotational velocity of the chassis
+   *
+   * @return The velocity in radians per second
+   */
+  public double getYawVelocity() {
+    return omega;
+  }
+
+  /**
+   * Gets the steering angle of a module
+   *
+   * @param module The index of the module
+   * @return The angle in radians, not wrapped
+   */
+  public double getSteerAngle(int module) {
+    return steerAngle[module];
+  }
+
+  public double getSteerVelocity(int module) {
+    return steerVelocity[module];
+  }
+
+  /**
+   * Gets the rotation of a wheel
+   *
+   * @param module The index of the module
+   * @return The total rotation of the wheel in radians
+   */
+  public double getWheelPosition(int module) {
+    return wheelPosition[module];
+  }
+
+  public double getWheelVelocity(int module) {
+    return wheelVelocity[module];
+  }
+
+  public double getDriveCurrent(int module) {
+    return driveCurrent[module];
+  }
+
+  public double getTurnCurrent(int module) {
+    return turnCurrent[module];
+  }
+
+  /**
+   * Gets the loaded battery voltage from the drive's draw
+   *
+   * @return The voltage
+   */
+  public double getBatteryVoltage() {
+    return batteryVoltage;
+  }
+}
@@ -11,9 +11,9 @@ import edu.wpi.first.networktables.BooleanPublisher;
 import edu.wpi.first.networktables.DoublePublisher;
 import edu.wpi.first.networktables.NetworkTable;
 import edu.wpi.first.networktables.NetworkTableInstance;
-import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj2.command.*;
 import frc.WorBots.subsystems.intake.IntakeIO.IntakeIOInputs;
+import frc.WorBots.util.LoopContext;
 import frc.WorBots.util.debug.StatusPage;
 import frc.WorBots.util.debug.TunableDouble;
 
@@ -69,7 +69,7 @@ public class Intake extends SubsystemBase {
 
     hasGamepiece = inputs.timeOfFlightDistanceMeters <= DISTANCE_THRESHOLD;
 
-    if (inputs.motor.temperatureCelsius > MAX_TEMP || DriverStation.isDisabled()) {
+    if (inputs.motor.temperatureCelsius > MAX_TEMP || LoopContext.get().isDisabled()) {
       setpointVolts = 0.0;
     }
 
@@ -13,7 +13,8 @@ public interface IntakeIO {
   /** The inputs to the intake. */
   public static class IntakeIOInputs {
     TalonInputsPositional motor = new TalonInputsPositional("Intake", "Motor");
-    double timeOfFlightDistanceMeters = 0.0;
+    /** Starts far away so that no game piece is seen before the sensor is first read */
+    double timeOfFlightDistanceMeters = 1.3;
     double currentDraw = 0.0;
     boolean isConnected = false;
   }
@@ -13,6 +13,9 @@ import com.ctre.phoenix6.signals.NeutralModeValue;
 import com.playingwithfusion.TimeOfFlight;
 import com.playingwithfusion.TimeOfFlight.RangingMode;
 import edu.wpi.first.math.filter.LinearFilter;
+import frc.WorBots.util.DeviceSampler;
+import frc.WorBots.util.DeviceSampler.DoubleSample;
+import frc.WorBots.util.DeviceSampler.SampledDouble;
 import frc.WorBots.util.HardwareUtils.TalonSignalsPositional;
 
 public class IntakeIOTalon implements IntakeIO {
@@ -24,10 +27,22 @@ public class IntakeIOTalon implements IntakeIO {
 
   private final LinearFilter tofFilter = LinearFilter.movingAverage(1);
 
+  /** The time of flight range, read in the background */
+  private final SampledDouble tofRange;
+
+  /** How long the time of flight takes to measure, in milliseconds */
+  private static final double TOF_SAMPLE_TIME = 24;
+
+  /** How old the time of flight range can be before it is treated as missing, in seconds */
+  private static final double TOF_MAX_AGE = TOF_SAMPLE_TIME * 3.0 / 1000.0;
+
   public IntakeIOTalon() {
     intakeMotor = new TalonFX(1);
     timeOfFlight = new TimeOfFlight(13);
-    timeOfFlight.setRangingMode(RangingMode.Short, 24);
+    timeOfFlight.setRangingMode(RangingMode.Short, TOF_SAMPLE_TIME);
+    tofRange =
+        DeviceSampler.getInstance()
+            .sampleDouble("Intake ToF", timeOfFlight::getRange, 1000.0 / TOF_SAMPLE_TIME);
     intakeMotor.setNeutralMode(NeutralModeValue.Brake);
     intakeMotor.setInverted(false);
 
@@ -41,9 +56,15 @@ public class IntakeIOTalon implements IntakeIO {
   public void updateInputs(IntakeIOInputs inputs) {
     motorSignals.update(inputs.motor, intakeMotor);
     StatusSignal.refreshAll(currentDrawSignal);
-    inputs.isConnected = inputs.motor.isConnected;
 
-    inputs.timeOfFlightDistanceMeters = tofFilter.calculate(timeOfFlight.getRange()) / 1000;
+    // Keep the last range if there is no recent reading, so that a missing sensor isn't seen as a
+    // game piece right in front of it
+    final DoubleSample range = tofRange.get();
+    final boolean hasRange = range.getAge() <= TOF_MAX_AGE;
+    if (hasRange) {
+      inputs.timeOfFlightDistanceMeters = tofFilter.calculate(range.value()) / 1000;
+    }
+    inputs.isConnected = inputs.motor.isConnected && hasRange;
     inputs.currentDraw = currentDrawSignal.getValue();
   }
 
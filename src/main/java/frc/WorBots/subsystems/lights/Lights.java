@@ -20,16 +20,19 @@ import edu.wpi.first.wpilibj.util.Color;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.Commands;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
-import frc.WorBots.subsystems.lights.LightsUtil.ColorSequence;
 import frc.WorBots.subsystems.lights.LightsUtil.Lava;
 import frc.WorBots.util.StateMachine;
 import frc.WorBots.util.StateMachine.State;
 import frc.WorBots.util.StateMachine.StateTransition;
 import frc.WorBots.util.cache.Cache.TimeCache;
+import frc.WorBots.util.debug.ErrorReporter;
 import frc.WorBots.util.debug.StatusPage;
 import frc.WorBots.util.math.ShooterMath;
 import frc.WorBots.util.math.ShooterMath.ShotConfidence;
 import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 public class Lights extends SubsystemBase {
@@ -43,30 +46,28 @@ public class Lights extends SubsystemBase {
   /** The time to wait when targeting before showing green */
   private static final double TARGETING_TIME = 0.5;
 
-  private static final ColorSequence LAVA_COLORS =
-      new ColorSequence(Color.kBlack, Color.kDarkBlue, Color.kBlue, Color.kRed);
+  /** The rate that the renderer draws and sends frames at, in Hz */
+  private static final double FRAME_RATE = 50.0;
 
-  private static final ColorSequence WORBOTS_FLAME_COLORS =
-      new ColorSequence(
-          Color.kWhite,
-          Color.kCadetBlue,
-          Color.kBlue,
-          Color.kBlue,
-          Color.kIndigo,
-          Color.kIndigo,
-          Color.kRed,
-          Color.kRed,
-          Color.kRed,
-          Color.kRed,
-          Color.kRed,
-          Color.kBlack);
-
-  private static final ColorSequence FLAME_COLORS =
-      new ColorSequence(Color.kCadetBlue, Color.kOrangeRed, Color.kRed);
+  /** The shortest time between reports of renderer failures, in seconds */
+  private static final double ERROR_REPORT_INTERVAL = 5.0;
 
   private final LightsIO io;
   private LightsMode mode = LightsMode.RedBlue;
 
+  /**
+   * Draws the lights at their own rate so that patterns never run on the robot loop. Everything
+   * that it reads from the rest of the robot is posted by periodic into the volatile fields below.
+   */
+  private final ScheduledExecutorService renderer;
+
+  /** The mode for the renderer to draw */
+  private volatile LightsMode renderMode = mode;
+
+  /** Reports renderer failures without flooding the console when every frame fails */
+  private final ErrorReporter rendererErrors =
+      new ErrorReporter("Lights renderer failed: ", ERROR_REPORT_INTERVAL);
+
   /** The override for the current mode */
   private Optional<LightsMode> modeOverride = Optional.empty();
 
@@ -87,6 +88,13 @@ public class Lights extends SubsystemBase {
   /** State of the delivery mode */
   private final StateMachine<Lights> deliveryState;
 
+  // Indices of the delivery states, in the order they are registered
+  private static final int DEFAULT = 0;
+  private static final int START_OF_INTAKE = 1;
+  private static final int STILL_IN_INTAKE = 2;
+  private static final int READY = 3;
+  private static final int SHOT = 4;
+
   /** Timestamp when intaking started */
   private double startOfIntakeTime = 0.0;
 
@@ -94,7 +102,27 @@ public class Lights extends SubsystemBase {
   private final Lava lava = new Lava();
 
   /** Color for the solid state */
-  private Color solidColor = Color.kBlack;
+  private volatile Color solidColor = Color.kBlack;
+
+  /** Color for the shooting state, which is calculated on the robot loop */
+  private volatile Color shootingColor = Color.kOrange;
+
+  /** Whether the start of intake state wants the controller to rumble */
+  private volatile boolean rumbleRequested = false;
+
+  /** The name of the current delivery state, for logging */
+  private volatile String deliveryStateName = "";
+
+  // Latest values of the data interfaces, for the renderer
+  private volatile boolean latestInHandoff = false;
+  private volatile boolean latestAtShootSetpoint = false;
+  private volatile boolean latestHasGamePieceBottom = false;
+  private volatile boolean latestHasGamePieceTop = false;
+  private volatile double latestElevatorPercentageRaised = 0.0;
+  private volatile boolean latestIsClimbLocked = false;
+  private volatile boolean latestNearClimbLimit = true;
+  private volatile long latestStatuses = 0;
+  private volatile int latestStatusCount = 0;
 
   // Data interfaces
   private Supplier<Boolean> isTargeted = () -> false;
@@ -111,13 +139,13 @@ public class Lights extends SubsystemBase {
   private Command rumbleCommand = Commands.none();
 
   /** Step in the pit test */
-  private int pitTestStep = 0;
+  private volatile int pitTestStep = 0;
 
   /** Amount of steps in the pit test */
-  private int pitTestStepCount = 0;
+  private volatile int pitTestStepCount = 0;
 
   /** Whether the pit test mode is flashing */
-  private boolean pitTestFlashing = false;
+  private volatile boolean pitTestFlashing = false;
 
   /** Modes for light control */
   public enum LightsMode {
@@ -154,7 +182,20 @@ public class Lights extends SubsystemBase {
     StatusPage.reportStatus(StatusPage.LIGHTS_SUBSYSTEM, true);
 
     // Initialize states
-    deliveryState = new StateMachine<>(defaultState);
+    deliveryState =
+        new StateMachine<>(
+            defaultState, startOfIntakeState, stillInIntakeState, readyState, shotState);
+
+    renderer =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              final Thread thread = new Thread(runnable, "Lights Renderer");
+              thread.setDaemon(true);
+              thread.setPriority(Thread.MIN_PRIORITY);
+              return thread;
+            });
+    renderer.scheduleAtFixedRate(
+        this::renderSafely, 0, (long) (1e6 / FRAME_RATE), TimeUnit.MICROSECONDS);
   }
 
   public void periodic() {
@@ -166,12 +207,47 @@ public class Lights extends SubsystemBase {
     setModePub.set(mode.ordinal());
     SmartDashboard.putString("Lights/Mode", mode.toString());
 
-    // Run the current mode or the override
+    // Post the current mode or the override and its inputs for the renderer
     LightsMode modeToRun = this.mode;
     if (modeOverride.isPresent()) {
       modeToRun = modeOverride.get();
     }
-    switch (modeToRun) {
+    latestInHandoff = inHandoff.get();
+    latestAtShootSetpoint = atShootSetpoint.get();
+    latestHasGamePieceBottom = hasGamePieceBottom.get();
+    latestHasGamePieceTop = hasGamePieceTop.get();
+    latestElevatorPercentageRaised = elevatorPercentageRaised.get();
+    latestIsClimbLocked = isClimbLocked.get();
+    latestNearClimbLimit = nearClimbLimit.get();
+    latestStatusCount = StatusPage.getSystemCount();
+    latestStatuses = StatusPage.getStatuses();
+    if (modeToRun == LightsMode.Shooting) {
+      shootingColor = calculateShootingColor();
+    }
+    renderMode = modeToRun;
+
+    // Commands can only be scheduled from the robot loop
+    if (rumbleRequested) {
+      rumbleRequested = false;
+      rumbleCommand.schedule();
+    }
+    if (modeToRun == LightsMode.Delivery) {
+      SmartDashboard.putString("Lights/Delivery State", deliveryStateName);
+    }
+  }
+
+  /** Renders a frame, reporting errors instead of stopping the renderer */
+  private void renderSafely() {
+    try {
+      render();
+    } catch (RuntimeException exception) {
+      rendererErrors.report(exception);
+    }
+  }
+
+  /** Draws the posted mode and sends it to the LEDs. Only runs on the renderer thread */
+  private void render() {
+    switch (renderMode) {
       case Rainbow:
         LightsUtil.rainbow(io, 50.0, 1.5);
         break;
@@ -188,14 +264,13 @@ public class Lights extends SubsystemBase {
         LightsUtil.solid(io, Color.kPurple);
         break;
       case Shooting:
-        shooting();
+        LightsUtil.solid(io, shootingColor);
         break;
       case Delivery:
         delivery();
         break;
       case RedBlue:
-        LightsUtil.wave(
-            io, new ColorSequence(Color.kRed, Color.kBlack, Color.kBlue), 14.0, 1.2, 0.3);
+        LightsUtil.wave(io, LightsUtil.RED_BLUE_COLORS, 14.0, 1.2, 0.3);
         break;
       case Indicator:
         LightsUtil.solid(io, Color.kRed);
@@ -204,8 +279,7 @@ public class Lights extends SubsystemBase {
         elevator();
         break;
       case Field:
-        final boolean hasGamePieceTop =
-            hasGamePieceTopDebouncer.calculate(this.hasGamePieceTop.get());
+        final boolean hasGamePieceTop = hasGamePieceTopDebouncer.calculate(latestHasGamePieceTop);
         if (hasGamePieceTop) {
           LightsUtil.solid(io, Color.kRed);
         } else {
@@ -213,24 +287,23 @@ public class Lights extends SubsystemBase {
         }
         break;
       case ShootReady:
-        final boolean atShootSetpoint = this.atShootSetpoint.get();
-        final Color color = atShootSetpoint ? Color.kGreen : Color.kOrangeRed;
+        final Color color = latestAtShootSetpoint ? Color.kGreen : Color.kOrangeRed;
         LightsUtil.solid(io, color);
         break;
       case PitTest:
         pitTest();
         break;
       case Lava:
-        lava.run(io, LAVA_COLORS);
+        lava.run(io, LightsUtil.LAVA_COLORS);
         break;
       case WorbotsFlame:
-        LightsUtil.flame(io, 0.95, WORBOTS_FLAME_COLORS);
+        LightsUtil.flame(io, 0.95, LightsUtil.WORBOTS_FLAME_COLORS);
         break;
       case Ripple:
-        LightsUtil.ripple(io, LAVA_COLORS, 5.0, 2.0, 7.0, 0.0);
+        LightsUtil.ripple(io, LightsUtil.LAVA_COLORS, 5.0, 2.0, 7.0, 0.0);
         break;
       case Flame:
-        LightsUtil.flame(io, 0.75, FLAME_COLORS);
+        LightsUtil.flame(io, 0.75, LightsUtil.FLAME_COLORS);
         break;
       case Climbing:
         climbing();
@@ -240,7 +313,7 @@ public class Lights extends SubsystemBase {
         break;
     }
 
-    io.periodic();
+    io.present();
   }
 
   public void setTargetedSupplier(Supplier<Boolean> supplier) {
@@ -248,16 +321,18 @@ public class Lights extends SubsystemBase {
   }
 
   private void status() {
-    final int len = MathUtil.clamp(StatusPage.ALL_SYSTEMS.length, 0, io.getCount());
+    // Systems are shown in the order they were registered, which is their priority
+    final int count = latestStatusCount;
+    final int len = MathUtil.clamp(count, 0, io.getCount());
+    final long statuses = latestStatuses;
     for (int i = 0; i < len; i++) {
-      final String system = StatusPage.ALL_SYSTEMS[i];
       // Some statuses are not necessarily errors and
       // we want to display them as yellow
       boolean isWarning = false;
-      if (system.equals(StatusPage.LAUNCHPAD) || system.equals(StatusPage.IDEAL_BATTERY)) {
+      if (i == StatusPage.LAUNCHPAD || i == StatusPage.IDEAL_BATTERY) {
         isWarning = true;
       }
-      final boolean status = StatusPage.getStatus(system);
+      final boolean status = (statuses & (1L << i)) != 0;
       if (status) {
         io.setLED(i, Color.kGreen);
       } else {
@@ -270,15 +345,14 @@ public class Lights extends SubsystemBase {
     }
 
     // Clear additional lights
-    for (int i = StatusPage.ALL_SYSTEMS.length; i < io.getCount(); i++) {
+    for (int i = count; i < io.getCount(); i++) {
       io.setLED(i, Color.kBlack);
     }
   }
 
-  private void shooting() {
+  private Color calculateShootingColor() {
     if (!targetingTimer.hasElapsed(TARGETING_TIME)) {
-      LightsUtil.solid(io, Color.kOrange);
-      return;
+      return Color.kOrange;
     }
 
     final Pose2d pose = drivePoseSupplier.get();
@@ -288,20 +362,20 @@ public class Lights extends SubsystemBase {
     final ShotConfidence confidence = ShooterMath.calculateConfidence(pose, speeds);
 
     if (!targeted || confidence.equals(ShotConfidence.LOW)) {
-      LightsUtil.solid(io, Color.kRed);
-      return;
+      return Color.kRed;
     }
 
     if (confidence.equals(ShotConfidence.MEDIUM)) {
-      LightsUtil.solid(io, Color.kOrange);
+      return Color.kOrange;
     } else if (confidence.equals(ShotConfidence.HIGH)) {
-      LightsUtil.solid(io, Color.kGreen);
+      return Color.kGreen;
     }
+    return shootingColor;
   }
 
   private void delivery() {
     deliveryState.run(this);
-    if (inHandoff.get() && !deliveryState.isInState(startOfIntakeState)) {
+    if (latestInHandoff && !deliveryState.isInState(START_OF_INTAKE)) {
       // LightsUtil.blink(
       //     io,
       //     Color.kWhite,
@@ -309,7 +383,7 @@ public class Lights extends SubsystemBase {
       //     intakeBlinkInterval,
       //     TimeCache.getInstance().get() - startOfIntakeTime);
     }
-    SmartDashboard.putString("Lights/Delivery State", deliveryState.getState().getName());
+    deliveryStateName = deliveryState.getState().getName();
   }
 
   private static final double intakeBlinkInterval = 0.23;
@@ -319,26 +393,26 @@ public class Lights extends SubsystemBase {
     /** Whether we had a game piece in the bottom in the last period */
     private boolean hadGamePieceBottomBefore = false;
 
-    public Optional<State<Lights>> getTransition(Lights inputs) {
+    public int getTransitionIndex(StateMachine<Lights> machine, Lights inputs) {
       final boolean hasGamePieceBottom =
-          hasGamePieceBottomDebouncer.calculate(Lights.this.hasGamePieceBottom.get());
+          hasGamePieceBottomDebouncer.calculate(latestHasGamePieceBottom);
       if (!hadGamePieceBottomBefore && hasGamePieceBottom) {
-        return Optional.of(startOfIntakeState);
+        return START_OF_INTAKE;
       }
       hadGamePieceBottomBefore =
-          hasGamePieceBottom && !hasGamePieceTopDebouncer.calculate(hasGamePieceTop.get());
-      return Optional.empty();
+          hasGamePieceBottom && !hasGamePieceTopDebouncer.calculate(latestHasGamePieceTop);
+      return StateMachine.NO_TRANSITION;
     }
   }
 
   private final IntakeTransition intakeTransition = new IntakeTransition();
 
   private class ReadyTransition implements StateTransition<Lights> {
-    public Optional<State<Lights>> getTransition(Lights inputs) {
-      if (hasGamePieceTopDebouncer.calculate(hasGamePieceTop.get())) {
-        return Optional.of(readyState);
+    public int getTransitionIndex(StateMachine<Lights> machine, Lights inputs) {
+      if (hasGamePieceTopDebouncer.calculate(latestHasGamePieceTop)) {
+        return READY;
       }
-      return Optional.empty();
+      return StateMachine.NO_TRANSITION;
     }
   }
 
@@ -354,10 +428,10 @@ public class Lights extends SubsystemBase {
     }
 
     @Override
-    public Optional<State<Lights>> run(Lights input) {
+    public int runIndexed(StateMachine<Lights> machine, Lights input) {
       // LightsUtil.alliance(io);
       LightsUtil.solid(io, Color.kBlack);
-      return Optional.empty();
+      return StateMachine.NO_TRANSITION;
     }
   }
 
@@ -371,17 +445,17 @@ public class Lights extends SubsystemBase {
     public void initialize() {
       startOfIntakeTime = TimeCache.getInstance().get();
       intakeTimer.restart();
-      rumbleCommand.schedule();
+      rumbleRequested = true;
     }
 
     @Override
-    public Optional<State<Lights>> run(Lights input) {
+    public int runIndexed(StateMachine<Lights> machine, Lights input) {
       final double halfInterval = intakeBlinkInterval / 2.0;
       if (TimeCache.getInstance().get() - startOfIntakeTime >= (halfInterval * 6)) {
-        if (hasGamePieceTopDebouncer.calculate(hasGamePieceTop.get())) {
-          return Optional.of(readyState);
+        if (hasGamePieceTopDebouncer.calculate(latestHasGamePieceTop)) {
+          return READY;
         }
-        return Optional.of(stillInIntakeState);
+        return STILL_IN_INTAKE;
       }
       LightsUtil.blink(
           io,
@@ -389,7 +463,7 @@ public class Lights extends SubsystemBase {
           Color.kBlack,
           halfInterval,
           TimeCache.getInstance().get() - startOfIntakeTime);
-      return Optional.empty();
+      return StateMachine.NO_TRANSITION;
     }
   }
 
@@ -405,9 +479,9 @@ public class Lights extends SubsystemBase {
     }
 
     @Override
-    public Optional<State<Lights>> run(Lights input) {
-      if (!hasGamePieceBottomDebouncer.calculate(hasGamePieceBottom.get())) {
-        return Optional.of(defaultState);
+    public int runIndexed(StateMachine<Lights> machine, Lights input) {
+      if (!hasGamePieceBottomDebouncer.calculate(latestHasGamePieceBottom)) {
+        return DEFAULT;
       }
       // Notify a note is still in the intake
       LightsUtil.solid(io, Color.kOrangeRed);
@@ -417,7 +491,7 @@ public class Lights extends SubsystemBase {
       //     Color.kBlack,
       //     intakeBlinkInterval,
       //     TimeCache.getInstance().get() - startOfIntakeTime);
-      return Optional.empty();
+      return StateMachine.NO_TRANSITION;
     }
   }
 
@@ -433,13 +507,13 @@ public class Lights extends SubsystemBase {
     }
 
     @Override
-    public Optional<State<Lights>> run(Lights input) {
+    public int runIndexed(StateMachine<Lights> machine, Lights input) {
       LightsUtil.solid(io, Color.kWhite);
-      if (!hasGamePieceTopDebouncer.calculate(hasGamePieceTop.get())
-          && !hasGamePieceBottomDebouncer.calculate(hasGamePieceBottom.get())) {
-        return Optional.of(shotState);
+      if (!hasGamePieceTopDebouncer.calculate(latestHasGamePieceTop)
+          && !hasGamePieceBottomDebouncer.calculate(latestHasGamePieceBottom)) {
+        return SHOT;
       }
-      return Optional.empty();
+      return StateMachine.NO_TRANSITION;
     }
   }
 
@@ -449,7 +523,7 @@ public class Lights extends SubsystemBase {
     private double startTime;
 
     public String getName() {
-      return "Ready";
+      return "Shot";
     }
 
     public void initialize() {
@@ -457,7 +531,7 @@ public class Lights extends SubsystemBase {
     }
 
     @Override
-    public Optional<State<Lights>> run(Lights input) {
+    public int runIndexed(StateMachine<Lights> machine, Lights input) {
       LightsUtil.blink(
           io,
           Color.kGreen,
@@ -465,16 +539,16 @@ public class Lights extends SubsystemBase {
           intakeBlinkInterval,
           TimeCache.getInstance().get() - startTime);
       if (TimeCache.getInstance().get() - startTime >= intakeBlinkInterval * 2.0) {
-        return Optional.of(defaultState);
+        return DEFAULT;
       }
-      return Optional.empty();
+      return StateMachine.NO_TRANSITION;
     }
   }
 
   private final ShotState shotState = new ShotState();
 
   private void elevator() {
-    final double percent = elevatorPercentageRaised.get();
+    final double percent = latestElevatorPercentageRaised;
     LightsUtil.solid(io, Color.kBlack);
     LightsUtil.solid(io, Color.kOrangeRed, percent);
   }
@@ -488,10 +562,10 @@ public class Lights extends SubsystemBase {
 
   private void climbing() {
     Color color = Color.kSeaGreen;
-    if (nearClimbLimit.get()) {
+    if (latestNearClimbLimit) {
       color = Color.kOrangeRed;
     }
-    if (isClimbLocked.get()) {
+    if (latestIsClimbLocked) {
       LightsUtil.solid(io, color);
     } else {
       LightsUtil.blink(io, color, Color.kBlack, intakeBlinkInterval, TimeCache.getInstance().get());
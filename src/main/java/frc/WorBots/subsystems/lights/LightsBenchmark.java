@@ -0,0 +1,89 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.subsystems.lights;
+
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.wpilibj.util.Color;
+import frc.WorBots.subsystems.lights.LightsUtil.Lava;
+import frc.WorBots.util.LoopContext;
+import frc.WorBots.util.cache.Cache.TimeCache;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Measures how long each lights pattern takes to render a frame and how much it allocates, not
+ * counting sending the frame to the LEDs, which is measured separately. Every frame also captures
+ * the loop context and updates the time cache like the robot loop does, which allocates a little.
+ *
+ * <p>Run with {@code ./gradlew benchmarkLights}.
+ */
+public class LightsBenchmark {
+  /** Frames to render before measuring, so that the JIT has compiled the patterns */
+  private static final int WARMUP_FRAMES = 20000;
+
+  /** Frames to measure for each pattern */
+  private static final int MEASURED_FRAMES = 20000;
+
+  public static void main(String[] args) {
+    if (!HAL.initialize(500, 0)) {
+      throw new IllegalStateException("Failed to initialize the HAL");
+    }
+
+    final LightsIO io = new LightsIO();
+    final Lava lava = new Lava();
+    final Map<String, Consumer<LightsIO>> patterns = new LinkedHashMap<>();
+    patterns.put("Solid", lights -> LightsUtil.solid(lights, Color.kPurple));
+    patterns.put("Rainbow", lights -> LightsUtil.rainbow(lights, 50.0, 1.5));
+    patterns.put(
+        "RedBlue", lights -> LightsUtil.wave(lights, LightsUtil.RED_BLUE_COLORS, 14.0, 1.2, 0.3));
+    patterns.put("Alliance", LightsUtil::alliance);
+    patterns.put("MatchTime", LightsUtil::matchTime);
+    patterns.put("Field", LightsUtil::worbotsBounce);
+    patterns.put("Lava", lights -> lava.run(lights, LightsUtil.LAVA_COLORS));
+    patterns.put(
+        "WorbotsFlame", lights -> LightsUtil.flame(lights, 0.95, LightsUtil.WORBOTS_FLAME_COLORS));
+    patterns.put(
+        "Ripple", lights -> LightsUtil.ripple(lights, LightsUtil.LAVA_COLORS, 5.0, 2.0, 7.0, 0.0));
+    patterns.put("Flame", lights -> LightsUtil.flame(lights, 0.75, LightsUtil.FLAME_COLORS));
+    patterns.put("Present", LightsIO::present);
+
+    System.out.println(
+        String.format(Locale.ROOT, "%-14s %12s %14s", "pattern", "ns/frame", "B/frame"));
+    for (Map.Entry<String, Consumer<LightsIO>> pattern : patterns.entrySet()) {
+      run(io, pattern.getValue(), WARMUP_FRAMES);
+      final long startBytes = getAllocatedBytes();
+      final long startTime = System.nanoTime();
+      run(io, pattern.getValue(), MEASURED_FRAMES);
+      final double nanosPerFrame = (double) (System.nanoTime() - startTime) / MEASURED_FRAMES;
+      final double bytesPerFrame = (double) (getAllocatedBytes() - startBytes) / MEASURED_FRAMES;
+      System.out.println(
+          String.format(
+              Locale.ROOT, "%-14s %12.0f %14.1f", pattern.getKey(), nanosPerFrame, bytesPerFrame));
+    }
+  }
+
+  /** Renders a number of frames of a pattern, advancing the time like the robot loop would */
+  private static void run(LightsIO io, Consumer<LightsIO> pattern, int frames) {
+    for (int i = 0; i < frames; i++) {
+      LoopContext.capture();
+      TimeCache.getInstance().update();
+      pattern.accept(io);
+    }
+  }
+
+  /** Gets the bytes allocated by this thread so far, or zero if the JVM can't measure it */
+  private static long getAllocatedBytes() {
+    if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean) {
+      return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return 0;
+  }
+}
@@ -11,7 +11,11 @@ import edu.wpi.first.wpilibj.AddressableLED;
 import edu.wpi.first.wpilibj.AddressableLEDBuffer;
 import edu.wpi.first.wpilibj.util.Color;
 
-/** Simple hardware wrapper around a set of addressable LEDs */
+/**
+ * Simple hardware wrapper around a set of addressable LEDs. Patterns draw into a framebuffer of
+ * packed RGB values, which is corrected through a lookup table and sent to the LEDs when it is
+ * presented. Drawing never allocates.
+ */
 public class LightsIO {
   /** The number of LEDs */
   public static final int LIGHT_COUNT = 27;
@@ -22,9 +26,24 @@ public class LightsIO {
   /** Dimming factor to apply to the LED colors */
   private static final double DIMMING_FACTOR = 0.9;
 
+  /** Gamma to apply to the LED colors. One leaves them linear */
+  private static final double GAMMA = 1.0;
+
+  /** Corrected output for each 8-bit channel value, with gamma and dimming applied */
+  private static final int[] CORRECTION_TABLE = new int[256];
+
+  static {
+    for (int i = 0; i < CORRECTION_TABLE.length; i++) {
+      CORRECTION_TABLE[i] = (int) Math.round(255.0 * Math.pow(i / 255.0, GAMMA) * DIMMING_FACTOR);
+    }
+  }
+
   private final AddressableLED leds;
   private final AddressableLEDBuffer buffer;
 
+  /** The colors of the LEDs, packed as 0xRRGGBB */
+  private final int[] frame = new int[LIGHT_COUNT];
+
   public LightsIO() {
     // Initialize lights and buffer
     leds = new AddressableLED(LIGHTS_ID);
@@ -33,19 +52,17 @@ public class LightsIO {
     leds.start();
   }
 
-  public void periodic() {
-    // Dim all the LEDs
+  /** Corrects the framebuffer and sends it to the LEDs */
+  public void present() {
     for (int i = 0; i < LIGHT_COUNT; i++) {
-      final Color color = buffer.getLED(i);
-      final Color dimmed =
-          new Color(
-              color.red * DIMMING_FACTOR,
-              color.green * DIMMING_FACTOR,
-              color.blue * DIMMING_FACTOR);
-      buffer.setLED(i, dimmed);
+      final int rgb = frame[i];
+      buffer.setRGB(
+          i,
+          CORRECTION_TABLE[(rgb >> 16) & 0xFF],
+          CORRECTION_TABLE[(rgb >> 8) & 0xFF],
+          CORRECTION_TABLE[rgb & 0xFF]);
     }
 
-    // Set the LEDs
     leds.setData(buffer);
   }
 
@@ -56,11 +73,37 @@ public class LightsIO {
    * @param color The desired color
    */
   public void setLED(int index, Color color) {
-    if (index >= LIGHT_COUNT) {
+    setRGB(index, toChannel(color.red), toChannel(color.green), toChannel(color.blue));
+  }
+
+  /**
+   * Sets an LED from 8-bit channels
+   *
+   * @param index The index of the LED
+   * @param r The red channel, from 0 to 255
+   * @param g The green channel, from 0 to 255
+   * @param b The blue channel, from 0 to 255
+   */
+  public void setRGB(int index, int r, int g, int b) {
+    if (index < 0 || index >= LIGHT_COUNT) {
+      return;
+    }
+
+    frame[index] = (clampChannel(r) << 16) | (clampChannel(g) << 8) | clampChannel(b);
+  }
+
+  /**
+   * Sets an LED from a packed color
+   *
+   * @param index The index of the LED
+   * @param rgb The color, packed as 0xRRGGBB
+   */
+  public void setPacked(int index, int rgb) {
+    if (index < 0 || index >= LIGHT_COUNT) {
       return;
     }
 
-    buffer.setLED(index, color);
+    frame[index] = rgb & 0xFFFFFF;
   }
 
   /**
@@ -72,15 +115,49 @@ public class LightsIO {
    * @param v The value of LED
    */
   public void setHSV(int index, int h, int s, int v) {
-    if (index >= LIGHT_COUNT) {
+    if (s == 0) {
+      setRGB(index, v, v, v);
       return;
     }
 
-    buffer.setHSV(index, h, s, v);
+    // Same integer conversion as AddressableLEDBuffer, without going through a Color
+    final int chroma = (s * v) / 255;
+    final int region = (h / 30) % 6;
+    final int remainder = (int) Math.round((h % 30) * (255 / 30.0));
+    final int m = v - chroma;
+    final int x = (chroma * remainder) >> 8;
+    switch (region) {
+      case 0:
+        setRGB(index, v, x + m, m);
+        break;
+      case 1:
+        setRGB(index, v - x, v, m);
+        break;
+      case 2:
+        setRGB(index, m, v, x + m);
+        break;
+      case 3:
+        setRGB(index, m, v - x, v);
+        break;
+      case 4:
+        setRGB(index, x + m, m, v);
+        break;
+      default:
+        setRGB(index, v, m, v - x);
+        break;
+    }
   }
 
   /** Gets the number of LEDs in the strip */
   public int getCount() {
     return LIGHT_COUNT;
   }
+
+  private static int toChannel(double value) {
+    return (int) (value * 255.0);
+  }
+
+  private static int clampChannel(int value) {
+    return Math.max(0, Math.min(255, value));
+  }
 }
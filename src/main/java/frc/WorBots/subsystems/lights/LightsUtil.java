@@ -9,9 +9,9 @@ package frc.WorBots.subsystems.lights;
 
 import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.filter.LinearFilter;
-import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.DriverStation.Alliance;
 import edu.wpi.first.wpilibj.util.Color;
+import frc.WorBots.util.LoopContext;
 import frc.WorBots.util.MatchTime;
 import frc.WorBots.util.cache.Cache.AllianceCache;
 import frc.WorBots.util.cache.Cache.TimeCache;
@@ -75,8 +75,7 @@ public class LightsUtil {
         if (Double.isNaN(ratio)) {
           ratio = 0.5;
         }
-        final Color color = colors.sample(ratio);
-        io.setLED(i, color);
+        io.setPacked(i, colors.sampleRGB(ratio));
       }
     }
   }
@@ -124,9 +123,10 @@ public class LightsUtil {
       if (pos > 1.0) {
         io.setLED(i, Color.kBlack);
       } else {
-        Color color = colors.sample(pos);
-        color = new Color(color.red - flow, color.green - flow, color.blue - flow);
-        io.setLED(i, color);
+        final int rgb = colors.sampleRGB(pos);
+        final int darken = (int) (flow * 255.0);
+        io.setRGB(
+            i, ((rgb >> 16) & 0xFF) - darken, ((rgb >> 8) & 0xFF) - darken, (rgb & 0xFF) - darken);
       }
     }
   }
@@ -181,7 +181,7 @@ public class LightsUtil {
       scalarPosition *= io.getCount();
 
       final double value = Math.abs(TrigLookup.sin(scalarPosition - time) / scalarPosition);
-      io.setLED(i, colors.sample(value * 0.3 * intensity));
+      io.setPacked(i, colors.sampleRGB(value * 0.3 * intensity));
     }
   }
 
@@ -225,6 +225,31 @@ public class LightsUtil {
     }
   }
 
+  // Palettes used by the lights modes
+  public static final ColorSequence RED_BLUE_COLORS =
+      new ColorSequence(Color.kRed, Color.kBlack, Color.kBlue);
+
+  public static final ColorSequence LAVA_COLORS =
+      new ColorSequence(Color.kBlack, Color.kDarkBlue, Color.kBlue, Color.kRed);
+
+  public static final ColorSequence WORBOTS_FLAME_COLORS =
+      new ColorSequence(
+          Color.kWhite,
+          Color.kCadetBlue,
+          Color.kBlue,
+          Color.kBlue,
+          Color.kIndigo,
+          Color.kIndigo,
+          Color.kRed,
+          Color.kRed,
+          Color.kRed,
+          Color.kRed,
+          Color.kRed,
+          Color.kBlack);
+
+  public static final ColorSequence FLAME_COLORS =
+      new ColorSequence(Color.kCadetBlue, Color.kOrangeRed, Color.kRed);
+
   private static final ColorSequence ALLIANCE_COLOR_SEQUENCE_RED =
       new ColorSequence(Color.kRed, Color.kBlack);
   private static final ColorSequence ALLIANCE_COLOR_SEQUENCE_BLUE =
@@ -244,9 +269,10 @@ public class LightsUtil {
     final double teleopSeconds = 135.0;
     final double remaining = MatchTime.getInstance().getTimeRemaining();
     double ratio = remaining;
-    if (DriverStation.isAutonomous()) {
+    final LoopContext context = LoopContext.get();
+    if (context.isAutonomous()) {
       ratio /= autoSeconds;
-    } else if (DriverStation.isTeleop()) {
+    } else if (context.isTeleop()) {
       ratio /= teleopSeconds;
     } else {
       ratio = 1.0;
@@ -356,8 +382,7 @@ public class LightsUtil {
                   point.magnitude - DISTANCE_SCALING * Math.pow(distance, 2.0), 0.0, 1.0);
           sum += value * BIAS;
         }
-        final Color color = colors.sample(sum);
-        io.setLED(i, color);
+        io.setPacked(i, colors.sampleRGB(sum));
       }
     }
   }
@@ -380,13 +405,33 @@ public class LightsUtil {
     return new Color(r, g, b);
   }
 
-  /** A sequence of two or more colors that can be linearly interpolated between */
+  /**
+   * A sequence of two or more colors that can be linearly interpolated between. The sequence is
+   * compiled into a palette of packed RGB values when it is created, so sampling it is a single
+   * array lookup.
+   */
   public static class ColorSequence {
+    /** The default number of entries in the palette */
+    public static final int DEFAULT_PALETTE_SIZE = 256;
+
     private final InterpolatingTable red;
     private final InterpolatingTable green;
     private final InterpolatingTable blue;
 
+    /** The colors of the sequence at evenly spaced positions, packed as 0xRRGGBB */
+    private final int[] palette;
+
     public ColorSequence(Color... colors) {
+      this(DEFAULT_PALETTE_SIZE, colors);
+    }
+
+    /**
+     * Creates a sequence with a custom palette size
+     *
+     * @param paletteSize The number of entries in the palette, at least two
+     * @param colors The colors of the sequence
+     */
+    public ColorSequence(int paletteSize, Color... colors) {
       final int colorCount = colors.length;
 
       double[][] redTable = new double[colorCount][2];
@@ -403,11 +448,60 @@ public class LightsUtil {
       red = new InterpolatingTable(redTable);
       green = new InterpolatingTable(greenTable);
       blue = new InterpolatingTable(blueTable);
+
+      palette = new int[Math.max(paletteSize, 2)];
+      for (int i = 0; i < palette.length; i++) {
+        final double t = (double) i / (palette.length - 1);
+        palette[i] =
+            ((int) (red.get(t) * 255.0) << 16)
+                | ((int) (green.get(t) * 255.0) << 8)
+                | (int) (blue.get(t) * 255.0);
+      }
     }
 
+    /**
+     * Samples the exact color of the sequence. This allocates, so patterns should use {@link
+     * #sampleRGB} instead
+     *
+     * @param t The position in the sequence, from 0 to 1
+     * @return The color
+     */
     public Color sample(double t) {
       t = MathUtil.clamp(t, 0.0, 1.0);
       return new Color(red.get(t), green.get(t), blue.get(t));
     }
+
+    /**
+     * Samples the palette
+     *
+     * @param t The position in the sequence, from 0 to 1
+     * @return The nearest palette color, packed as 0xRRGGBB
+     */
+    public int sampleRGB(double t) {
+      if (!(t > 0.0)) {
+        return palette[0];
+      }
+      return sampleIndex((int) (t * (palette.length - 1) + 0.5));
+    }
+
+    /**
+     * Samples the palette with a fixed-point position, for pattern math that works in integers
+     *
+     * @param index The index in the palette, from 0 to {@link #getPaletteSize()} - 1. Indices out
+     *     of range are clamped
+     * @return The palette color, packed as 0xRRGGBB
+     */
+    public int sampleIndex(int index) {
+      return palette[Math.max(0, Math.min(palette.length - 1, index))];
+    }
+
+    /**
+     * Gets the number of entries in the palette
+     *
+     * @return The palette size
+     */
+    public int getPaletteSize() {
+      return palette.length;
+    }
   }
 }
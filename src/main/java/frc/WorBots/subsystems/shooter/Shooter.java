@@ -16,6 +16,7 @@ import edu.wpi.first.wpilibj.*;
 import edu.wpi.first.wpilibj2.command.*;
 import frc.WorBots.Constants;
 import frc.WorBots.subsystems.shooter.ShooterIO.ShooterIOInputs;
+import frc.WorBots.util.LoopContext;
 import frc.WorBots.util.debug.StatusPage;
 import frc.WorBots.util.debug.TunableDouble;
 import frc.WorBots.util.debug.TunablePIDController;
@@ -32,6 +33,26 @@ public class Shooter extends SubsystemBase {
   private double feederWheelVolts = 0.0;
   private boolean idlingDisabled = false;
 
+  /** Whether the flywheels were at their setpoints last cycle, with the same setpoints */
+  private boolean wasAtSetpoint = false;
+
+  private double lastTopFlywheelRPM = 0.0;
+  private double lastBottomFlywheelRPM = 0.0;
+
+  /** Whether the flywheels are recovering from the dip of a shot */
+  private boolean isRecovering = false;
+
+  /** The timestamp when the current shot was detected, in seconds */
+  private double shotTimestamp = 0.0;
+
+  /** How long the flywheels took to recover from the last shot, in seconds */
+  private double lastRecoveryTime = 0.0;
+
+  private int shotCount = 0;
+
+  /** The version of the gains that were last sent to the onboard controllers */
+  private int onboardGainsVersion = -1;
+
   // Logging classes
   private final NetworkTable shooterTable = NetworkTableInstance.getDefault().getTable(TABLE_NAME);
   private final DoublePublisher topFlywheelSpeedPub =
@@ -50,6 +71,11 @@ public class Shooter extends SubsystemBase {
       shooterTable.getBooleanTopic("Has Game Piece").publish();
   private final DoublePublisher noteDistancePub =
       shooterTable.getDoubleTopic("Note Distance").publish();
+  private final BooleanPublisher shotDetectedPub =
+      shooterTable.getBooleanTopic("Shot Detected").publish();
+  private final DoublePublisher shotRecoveryTimePub =
+      shooterTable.getDoubleTopic("Shot Recovery Time").publish();
+  private final DoublePublisher shotCountPub = shooterTable.getDoubleTopic("Shot Count").publish();
 
   // Constants
 
@@ -76,12 +102,24 @@ public class Shooter extends SubsystemBase {
   /** Error threshold for the shooter wheels, in RPM */
   private static final double RPM_THRESHOLD = 100.0;
 
+  /** Approximate rate at which the flywheels accelerate towards a new speed, in RPM per second */
+  private static final TunableDouble SPIN_UP_RATE =
+      new TunableDouble("Shooter", "Tuning", "Spin Up Rate", 5000.0);
+
+  /** How far a flywheel has to dip below its setpoint for a shot to be detected, in RPM */
+  private static final TunableDouble SHOT_DIP_THRESHOLD =
+      new TunableDouble("Shooter", "Tuning", "Shot Dip Threshold", 250.0);
+
   private static final String TABLE_NAME = "Shooter";
 
+  private final TunablePIDGains topFlywheelGains =
+      new TunablePIDGains(TABLE_NAME, "Top Flywheel Gains");
+  private final TunablePIDGains bottomFlywheelGains =
+      new TunablePIDGains(TABLE_NAME, "Bottom Flywheel Gains");
   private final TunablePIDController topFlywheelController =
-      new TunablePIDController(new TunablePIDGains(TABLE_NAME, "Top Flywheel Gains"));
+      new TunablePIDController(topFlywheelGains);
   private final TunablePIDController bottomFlywheelController =
-      new TunablePIDController(new TunablePIDGains(TABLE_NAME, "Bottom Flywheel Gains"));
+      new TunablePIDController(bottomFlywheelGains);
   private final TunablePIDController feederWheelController =
       new TunablePIDController(new TunablePIDGains(TABLE_NAME, "Feeder Wheel Gains"));
   private final SimpleMotorFeedforward topFlywheelFeedForward;
@@ -113,6 +151,7 @@ public class Shooter extends SubsystemBase {
       bottomFlywheelController.pid.setTolerance(RPM_THRESHOLD);
     }
 
+    updateOnboardGains();
     StatusPage.reportStatus(StatusPage.SHOOTER_SUBSYSTEM, true);
   }
 
@@ -136,8 +175,9 @@ public class Shooter extends SubsystemBase {
     topFlywheelController.update();
     bottomFlywheelController.update();
     feederWheelController.update();
+    updateOnboardGains();
 
-    if (DriverStation.isDisabled()) { // Set voltages to 0 if we are disabled.
+    if (LoopContext.get().isDisabled()) { // Set voltages to 0 if we are disabled.
       io.setTopFlywheelVolts(0.0);
       io.setBottomFlywheelVolts(0.0);
       io.setFeederWheelVoltage(0.0);
@@ -146,6 +186,21 @@ public class Shooter extends SubsystemBase {
       topFlywheelRPM = 0.0;
       bottomFlywheelRPM = 0.0;
       feederWheelVolts = 0.0;
+    } else if (io.hasOnboardControl()) {
+      // Let the motor controllers run the flywheels at the setpoints themselves
+      if (topFlywheelRPM != 0.0) {
+        io.setTopFlywheelVelocity(topFlywheelRPM);
+      } else {
+        io.setTopFlywheelVolts(0.0);
+      }
+      if (bottomFlywheelRPM != 0.0) {
+        io.setBottomFlywheelVelocity(bottomFlywheelRPM);
+      } else {
+        io.setBottomFlywheelVolts(0.0);
+      }
+
+      io.setFeederWheelVoltage(feederWheelVolts);
+      feederWheelSetpointPub.set(feederWheelVolts);
     } else {
       // Calculate the desired voltages based on the setpoints
       if (topFlywheelRPM != 0.0) {
@@ -176,6 +231,8 @@ public class Shooter extends SubsystemBase {
       feederWheelSetpointPub.set(feederWheelVolts);
     }
 
+    updateShotDetection();
+
     // Publish data
     inputs.feederWheel.publish();
     inputs.top.publish();
@@ -184,6 +241,65 @@ public class Shooter extends SubsystemBase {
     StatusPage.reportStatus(StatusPage.SHOOTER_CONNECTED, inputs.isConnected);
   }
 
+  /** Sends the gains to the onboard controllers when they have changed */
+  private void updateOnboardGains() {
+    if (!io.hasOnboardControl()) {
+      return;
+    }
+    final int version = topFlywheelGains.getVersion() + bottomFlywheelGains.getVersion();
+    if (version == onboardGainsVersion) {
+      return;
+    }
+    onboardGainsVersion = version;
+    io.configureOnboardControl(
+        topFlywheelGains.kP.get(),
+        topFlywheelFeedForward.kv,
+        bottomFlywheelGains.kP.get(),
+        bottomFlywheelFeedforward.kv);
+  }
+
+  /**
+   * Detects shots from the dip in flywheel speed when a note passes through them, and measures how
+   * long the flywheels take to get back to their setpoints afterwards
+   */
+  private void updateShotDetection() {
+    final boolean isSpinning = topFlywheelRPM > 0.0 && bottomFlywheelRPM > 0.0;
+    final boolean setpointChanged =
+        topFlywheelRPM != lastTopFlywheelRPM || bottomFlywheelRPM != lastBottomFlywheelRPM;
+    lastTopFlywheelRPM = topFlywheelRPM;
+    lastBottomFlywheelRPM = bottomFlywheelRPM;
+
+    // A new setpoint isn't a shot, so start over until the flywheels reach it
+    if (!isSpinning || setpointChanged) {
+      isRecovering = false;
+      wasAtSetpoint = false;
+      shotDetectedPub.set(false);
+      return;
+    }
+
+    final double timestamp = LoopContext.get().getTimestamp();
+    final double threshold = SHOT_DIP_THRESHOLD.get();
+    final boolean isDipped =
+        inputs.velocityRPMTop < topFlywheelRPM - threshold
+            || inputs.velocityRPMBottom < bottomFlywheelRPM - threshold;
+    final boolean isShotDetected = wasAtSetpoint && isDipped && !isRecovering;
+    if (isShotDetected) {
+      isRecovering = true;
+      shotTimestamp = timestamp;
+      shotCount++;
+      shotCountPub.set(shotCount);
+    }
+
+    final boolean isAtSetpoint = isAtSetpoint();
+    if (isRecovering && isAtSetpoint) {
+      isRecovering = false;
+      lastRecoveryTime = timestamp - shotTimestamp;
+      shotRecoveryTimePub.set(lastRecoveryTime);
+    }
+    wasAtSetpoint = isAtSetpoint;
+    shotDetectedPub.set(isShotDetected);
+  }
+
   public double getToFDistanceMeters() {
     return inputs.timeOfFlightDistanceMeters;
   }
@@ -329,6 +445,19 @@ public class Shooter extends SubsystemBase {
         && GeneralMath.checkError(inputs.velocityRPMBottom, bottomFlywheelRPM, RPM_THRESHOLD);
   }
 
+  /**
+   * Estimates how long the flywheels will take to reach a speed from where they are now
+   *
+   * @param rpm The desired speed of the flywheels
+   * @return The estimated time in seconds, or 0 if they are already within the threshold
+   */
+  public double getSpinUpTime(double rpm) {
+    final double error =
+        Math.max(
+            Math.abs(rpm - inputs.velocityRPMTop), Math.abs(rpm - inputs.velocityRPMBottom));
+    return Math.max(error - RPM_THRESHOLD, 0.0) / SPIN_UP_RATE.get();
+  }
+
   /**
    * Reads the time of flight to detect if the robot has a game piece in the shooter.
    *
@@ -347,6 +476,33 @@ public class Shooter extends SubsystemBase {
     return inputs.timeOfFlightDistanceMeters - NOTE_POSITION.get();
   }
 
+  /**
+   * Gets whether the flywheels are recovering from the dip of a shot
+   *
+   * @return True if a shot was detected and the flywheels aren't back at their setpoints yet
+   */
+  public boolean isRecoveringFromShot() {
+    return isRecovering;
+  }
+
+  /**
+   * Gets how long the flywheels took to get back to their setpoints after the last shot
+   *
+   * @return The recovery time in seconds, or 0 if no shots have recovered yet
+   */
+  public double getLastShotRecoveryTime() {
+    return lastRecoveryTime;
+  }
+
+  /**
+   * Gets the number of shots that have been detected
+   *
+   * @return The shot count
+   */
+  public int getShotCount() {
+    return shotCount;
+  }
+
   /** Enable / disable idling */
   public void setIdlingDisabled(boolean disable) {
     this.idlingDisabled = disable;
@@ -24,7 +24,8 @@ public interface ShooterIO {
     public final TalonInputsPositional feederWheel =
         new TalonInputsPositional("Shooter", "Feeder Motor");
 
-    public double timeOfFlightDistanceMeters = 0.0;
+    /** Starts far away so that no game piece is seen before the sensor is first read */
+    public double timeOfFlightDistanceMeters = 1.3;
   }
 
   /**
@@ -54,4 +55,41 @@ public interface ShooterIO {
    * @param inputs The inputs to be modified.
    */
   public default void updateInputs(ShooterIOInputs inputs) {}
+
+  /**
+   * Checks whether the IO runs velocity control on the motor controllers. If it does, the shooter
+   * sends flywheel speeds with {@link #setTopFlywheelVelocity} and {@link
+   * #setBottomFlywheelVelocity} instead of running its own controllers.
+   *
+   * @return True if onboard control is supported
+   */
+  public default boolean hasOnboardControl() {
+    return false;
+  }
+
+  /**
+   * Configures the onboard velocity controllers. Gains are in the same units as the shooter's own
+   * controllers.
+   *
+   * @param topKp The P gain of the top flywheel, in volts per RPM
+   * @param topKv The velocity feedforward of the top flywheel, in volts per RPM
+   * @param bottomKp The P gain of the bottom flywheel, in volts per RPM
+   * @param bottomKv The velocity feedforward of the bottom flywheel, in volts per RPM
+   */
+  public default void configureOnboardControl(
+      double topKp, double topKv, double bottomKp, double bottomKv) {}
+
+  /**
+   * Runs the top flywheel at a speed with onboard control
+   *
+   * @param rpm The desired speed, in RPM
+   */
+  public default void setTopFlywheelVelocity(double rpm) {}
+
+  /**
+   * Runs the bottom flywheel at a speed with onboard control
+   *
+   * @param rpm The desired speed, in RPM
+   */
+  public default void setBottomFlywheelVelocity(double rpm) {}
 }
@@ -13,11 +13,14 @@ import com.playingwithfusion.TimeOfFlight;
 import com.playingwithfusion.TimeOfFlight.RangingMode;
 import edu.wpi.first.math.filter.LinearFilter;
 import edu.wpi.first.math.util.Units;
+import frc.WorBots.util.DeviceSampler;
+import frc.WorBots.util.DeviceSampler.DoubleSample;
+import frc.WorBots.util.DeviceSampler.SampledDouble;
 import frc.WorBots.util.HardwareUtils.TalonSignalsPositional;
 
 public class ShooterIOTalon implements ShooterIO {
-  private final TalonFX topFlywheel;
-  private final TalonFX bottomFlywheel;
+  protected final TalonFX topFlywheel;
+  protected final TalonFX bottomFlywheel;
   private final TalonFX feederWheel;
   private final TimeOfFlight timeOfFlight;
 
@@ -29,12 +32,24 @@ public class ShooterIOTalon implements ShooterIO {
   private final LinearFilter bottomFilter = LinearFilter.movingAverage(3);
   private final LinearFilter tofFilter = LinearFilter.movingAverage(1);
 
+  /** The time of flight range, read in the background */
+  private final SampledDouble tofRange;
+
+  /** How long the time of flight takes to measure, in milliseconds */
+  private static final double TOF_SAMPLE_TIME = 24;
+
+  /** How old the time of flight range can be before it is treated as missing, in seconds */
+  private static final double TOF_MAX_AGE = TOF_SAMPLE_TIME * 3.0 / 1000.0;
+
   public ShooterIOTalon() {
     topFlywheel = new TalonFX(7);
     bottomFlywheel = new TalonFX(6);
     feederWheel = new TalonFX(8);
     timeOfFlight = new TimeOfFlight(12);
-    timeOfFlight.setRangingMode(RangingMode.Short, 24);
+    timeOfFlight.setRangingMode(RangingMode.Short, TOF_SAMPLE_TIME);
+    tofRange =
+        DeviceSampler.getInstance()
+            .sampleDouble("Shooter ToF", timeOfFlight::getRange, 1000.0 / TOF_SAMPLE_TIME);
 
     topFlywheel.setNeutralMode(NeutralModeValue.Coast);
     bottomFlywheel.setNeutralMode(NeutralModeValue.Coast);
@@ -62,10 +77,19 @@ public class ShooterIOTalon implements ShooterIO {
         topFilter.calculate(
             Units.radiansPerSecondToRotationsPerMinute(inputs.top.velocityRadsPerSec));
 
-    inputs.timeOfFlightDistanceMeters = tofFilter.calculate(timeOfFlight.getRange()) / 1000.0;
+    // Keep the last range if there is no recent reading, so that a missing sensor isn't seen as a
+    // game piece right in front of it
+    final DoubleSample range = tofRange.get();
+    final boolean hasRange = range.getAge() <= TOF_MAX_AGE;
+    if (hasRange) {
+      inputs.timeOfFlightDistanceMeters = tofFilter.calculate(range.value()) / 1000.0;
+    }
 
     inputs.isConnected =
-        inputs.top.isConnected && inputs.bottom.isConnected && inputs.feederWheel.isConnected;
+        inputs.top.isConnected
+            && inputs.bottom.isConnected
+            && inputs.feederWheel.isConnected
+            && hasRange;
   }
 
   @Override
@@ -0,0 +1,95 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.subsystems.shooter;
+
+import com.ctre.phoenix6.configs.Slot0Configs;
+import com.ctre.phoenix6.configs.VoltageConfigs;
+import com.ctre.phoenix6.controls.VelocityVoltage;
+import com.ctre.phoenix6.hardware.TalonFX;
+import edu.wpi.first.math.util.Units;
+
+/**
+ * Shooter IO that runs the flywheel velocity controllers on the TalonFXs, so that they update at 1
+ * kHz on the motor controllers and react to the dip from a shot without waiting for the robot
+ * loop. The flywheel speeds are also read without the moving average filter, which would otherwise
+ * delay seeing the dip.
+ */
+public class ShooterIOTalonVelocity extends ShooterIOTalon {
+  private final VelocityVoltage topRequest = new VelocityVoltage(0.0).withSlot(0);
+  private final VelocityVoltage bottomRequest = new VelocityVoltage(0.0).withSlot(0);
+  private final Slot0Configs topSlot = new Slot0Configs();
+  private final Slot0Configs bottomSlot = new Slot0Configs();
+
+  /** Whether the gains have been applied once */
+  private boolean isConfigured = false;
+
+  // Constants
+  /** The most the flywheels can be driven forwards, in volts */
+  private static final double PEAK_FORWARD_VOLTS = 11.0;
+
+  /**
+   * The most the flywheels can be driven backwards, in volts. Kept small so that the flywheels
+   * coast down to a lower speed instead of violently braking, like the roboRIO controller does
+   */
+  private static final double PEAK_REVERSE_VOLTS = -0.3;
+
+  /** How long to wait for the motors to take the first configuration, in seconds */
+  private static final double CONFIG_TIMEOUT = 0.1;
+
+  /** Constructs a new ShooterIOTalonVelocity, limiting the output voltage of the flywheels */
+  public ShooterIOTalonVelocity() {
+    final VoltageConfigs voltage = new VoltageConfigs();
+    voltage.PeakForwardVoltage = PEAK_FORWARD_VOLTS;
+    voltage.PeakReverseVoltage = PEAK_REVERSE_VOLTS;
+    topFlywheel.getConfigurator().apply(voltage);
+    bottomFlywheel.getConfigurator().apply(voltage);
+  }
+
+  @Override
+  public boolean hasOnboardControl() {
+    return true;
+  }
+
+  @Override
+  public void configureOnboardControl(
+      double topKp, double topKv, double bottomKp, double bottomKv) {
+    // The first call is at construction, where waiting for the motors is fine. Later calls come
+    // from tuning on the loop, so they don't wait.
+    final double timeout = isConfigured ? 0.0 : CONFIG_TIMEOUT;
+    configureFlywheel(topFlywheel, topSlot, topKp, topKv, timeout);
+    configureFlywheel(bottomFlywheel, bottomSlot, bottomKp, bottomKv, timeout);
+    isConfigured = true;
+  }
+
+  /** Sends the velocity gains to a flywheel, converting them from per RPM to per RPS */
+  private static void configureFlywheel(
+      TalonFX flywheel, Slot0Configs slot, double kP, double kV, double timeout) {
+    slot.kP = kP * 60.0;
+    slot.kV = kV * 60.0;
+    flywheel.getConfigurator().apply(slot, timeout);
+  }
+
+  @Override
+  public void setTopFlywheelVelocity(double rpm) {
+    topFlywheel.setControl(topRequest.withVelocity(rpm / 60.0));
+  }
+
+  @Override
+  public void setBottomFlywheelVelocity(double rpm) {
+    bottomFlywheel.setControl(bottomRequest.withVelocity(rpm / 60.0));
+  }
+
+  @Override
+  public void updateInputs(ShooterIOInputs inputs) {
+    super.updateInputs(inputs);
+    inputs.velocityRPMTop =
+        Units.radiansPerSecondToRotationsPerMinute(inputs.top.velocityRadsPerSec);
+    inputs.velocityRPMBottom =
+        Units.radiansPerSecondToRotationsPerMinute(inputs.bottom.velocityRadsPerSec);
+  }
+}
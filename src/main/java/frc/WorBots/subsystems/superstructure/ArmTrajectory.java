@@ -0,0 +1,224 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.subsystems.superstructure;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.ArmFeedforward;
+import edu.wpi.first.math.controller.ElevatorFeedforward;
+import frc.WorBots.Constants;
+import java.util.List;
+
+/**
+ * A coordinated trajectory of the elevator and pivot, made of straight segments in joint space.
+ * Both joints move along each segment together so that they start and stop at the same time, and
+ * each segment is timed with the fastest trapezoid profile that keeps both joints within their
+ * velocity and acceleration limits. The trajectory is sampled at a fixed rate with feedforward
+ * voltages when it is created, so following it never allocates.
+ */
+public class ArmTrajectory {
+  /** A sampled state of the trajectory. Reused by callers to avoid allocating */
+  public static class State {
+    /** Elevator position, in meters */
+    public double elevatorPosition;
+
+    /** Elevator velocity, in meters per second */
+    public double elevatorVelocity;
+
+    /** Elevator feedforward, in volts */
+    public double elevatorVolts;
+
+    /** Pivot angle, in radians */
+    public double pivotPosition;
+
+    /** Pivot velocity, in radians per second */
+    public double pivotVelocity;
+
+    /** Pivot feedforward, in volts */
+    public double pivotVolts;
+  }
+
+  /**
+   * A straight move in joint space from rest to rest. The progress along the segment follows a
+   * trapezoid profile from zero to one
+   *
+   * @param startElevator The elevator position at the start, in meters
+   * @param startPivot The pivot angle at the start, in radians
+   * @param endElevator The elevator position at the end, in meters
+   * @param endPivot The pivot angle at the end, in radians
+   * @param maxVelocity The max rate of progress along the segment, per second
+   * @param maxAcceleration The max acceleration of progress along the segment, per second squared
+   */
+  public static record Segment(
+      double startElevator,
+      double startPivot,
+      double endElevator,
+      double endPivot,
+      double maxVelocity,
+      double maxAcceleration) {
+    /**
+     * Gets the time to move along the segment
+     *
+     * @return The time in seconds
+     */
+    public double getDuration() {
+      // Triangular profile if we never reach the max velocity
+      if (maxVelocity * maxVelocity / maxAcceleration > 1.0) {
+        return 2.0 * Math.sqrt(1.0 / maxAcceleration);
+      }
+      return 1.0 / maxVelocity + maxVelocity / maxAcceleration;
+    }
+
+    /**
+     * Samples the progress along the segment
+     *
+     * @param time The time since the start of the segment, in seconds
+     * @param out The progress, rate of progress, and acceleration of progress to write to
+     */
+    private void sampleProgress(double time, double[] out) {
+      final double duration = getDuration();
+      final double accelTime =
+          Math.min(maxVelocity / maxAcceleration, Math.sqrt(1.0 / maxAcceleration));
+      final double peakVelocity = maxAcceleration * accelTime;
+      time = MathUtil.clamp(time, 0.0, duration);
+      if (time < accelTime) {
+        out[0] = 0.5 * maxAcceleration * time * time;
+        out[1] = maxAcceleration * time;
+        out[2] = maxAcceleration;
+      } else if (time <= duration - accelTime) {
+        out[0] = 0.5 * maxAcceleration * accelTime * accelTime + peakVelocity * (time - accelTime);
+        out[1] = peakVelocity;
+        out[2] = 0.0;
+      } else {
+        final double remaining = duration - time;
+        out[0] = 1.0 - 0.5 * maxAcceleration * remaining * remaining;
+        out[1] = maxAcceleration * remaining;
+        out[2] = -maxAcceleration;
+      }
+    }
+  }
+
+  private final List<Segment> segments;
+  private final double totalTime;
+  private final int length;
+  private final double[] elevatorPosition;
+  private final double[] elevatorVelocity;
+  private final double[] elevatorVolts;
+  private final double[] pivotPosition;
+  private final double[] pivotVelocity;
+  private final double[] pivotVolts;
+
+  /**
+   * Creates a trajectory from segments, sampling it with feedforward
+   *
+   * @param segments The segments, each starting where the last one ended
+   * @param elevatorFeedforward The feedforward for the elevator
+   * @param pivotFeedforward The feedforward for the pivot, relative to horizontal
+   * @throws IllegalArgumentException If there are no segments
+   */
+  public ArmTrajectory(
+      List<Segment> segments,
+      ElevatorFeedforward elevatorFeedforward,
+      ArmFeedforward pivotFeedforward) {
+    if (segments.isEmpty()) {
+      throw new IllegalArgumentException("Arm trajectories need at least one segment");
+    }
+    this.segments = List.copyOf(segments);
+    double duration = 0.0;
+    for (Segment segment : segments) {
+      duration += segment.getDuration();
+    }
+    this.totalTime = duration;
+    this.length = Math.max((int) Math.ceil(totalTime / Constants.ROBOT_PERIOD) + 1, 2);
+    this.elevatorPosition = new double[length];
+    this.elevatorVelocity = new double[length];
+    this.elevatorVolts = new double[length];
+    this.pivotPosition = new double[length];
+    this.pivotVelocity = new double[length];
+    this.pivotVolts = new double[length];
+
+    final double[] progress = new double[3];
+    int segmentIndex = 0;
+    double segmentStart = 0.0;
+    for (int i = 0; i < length; i++) {
+      final double time = getSampleTime(i);
+      while (segmentIndex < segments.size() - 1
+          && time > segmentStart + segments.get(segmentIndex).getDuration()) {
+        segmentStart += segments.get(segmentIndex).getDuration();
+        segmentIndex++;
+      }
+
+      final Segment segment = segments.get(segmentIndex);
+      segment.sampleProgress(time - segmentStart, progress);
+      final double elevatorDistance = segment.endElevator() - segment.startElevator();
+      final double pivotDistance = segment.endPivot() - segment.startPivot();
+      elevatorPosition[i] = segment.startElevator() + elevatorDistance * progress[0];
+      elevatorVelocity[i] = elevatorDistance * progress[1];
+      final double elevatorAcceleration = elevatorDistance * progress[2];
+      pivotPosition[i] = segment.startPivot() + pivotDistance * progress[0];
+      pivotVelocity[i] = pivotDistance * progress[1];
+      final double pivotAcceleration = pivotDistance * progress[2];
+
+      elevatorVolts[i] = elevatorFeedforward.calculate(elevatorVelocity[i], elevatorAcceleration);
+      pivotVolts[i] =
+          pivotFeedforward.calculate(
+              pivotPosition[i] - Superstructure.PIVOT_HORIZONTAL_OFFSET,
+              pivotVelocity[i],
+              pivotAcceleration);
+    }
+  }
+
+  /**
+   * Gets the segments that the trajectory was created from
+   *
+   * @return The segments
+   */
+  public List<Segment> getSegments() {
+    return segments;
+  }
+
+  /**
+   * Gets the total time of the trajectory
+   *
+   * @return The time in seconds
+   */
+  public double getTotalTime() {
+    return totalTime;
+  }
+
+  /**
+   * Samples the trajectory at a time by interpolating between the stored samples. Times outside of
+   * the trajectory are clamped to the start or end
+   *
+   * @param time The time in seconds
+   * @param out The state to write to
+   */
+  public void sample(double time, State out) {
+    final int i0 =
+        MathUtil.clamp((int) (Math.max(time, 0.0) / Constants.ROBOT_PERIOD), 0, length - 2);
+    final int i1 = i0 + 1;
+    final double t0 = getSampleTime(i0);
+    final double t = MathUtil.clamp((time - t0) / (getSampleTime(i1) - t0), 0.0, 1.0);
+    out.elevatorPosition = MathUtil.interpolate(elevatorPosition[i0], elevatorPosition[i1], t);
+    out.elevatorVelocity = MathUtil.interpolate(elevatorVelocity[i0], elevatorVelocity[i1], t);
+    out.elevatorVolts = MathUtil.interpolate(elevatorVolts[i0], elevatorVolts[i1], t);
+    out.pivotPosition = MathUtil.interpolate(pivotPosition[i0], pivotPosition[i1], t);
+    out.pivotVelocity = MathUtil.interpolate(pivotVelocity[i0], pivotVelocity[i1], t);
+    out.pivotVolts = MathUtil.interpolate(pivotVolts[i0], pivotVolts[i1], t);
+  }
+
+  /**
+   * Gets the time of a sample. The last sample is at the end of the trajectory, which may be closer
+   * than one period to the sample before it
+   *
+   * @param index The index of the sample
+   * @return The time in seconds
+   */
+  private double getSampleTime(int index) {
+    return Math.min(index * Constants.ROBOT_PERIOD, totalTime);
+  }
+}
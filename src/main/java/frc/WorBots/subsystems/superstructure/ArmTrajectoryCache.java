@@ -0,0 +1,401 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.subsystems.superstructure;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import edu.wpi.first.math.controller.ArmFeedforward;
+import edu.wpi.first.math.controller.ElevatorFeedforward;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import frc.WorBots.subsystems.superstructure.ArmTrajectory.Segment;
+import frc.WorBots.subsystems.superstructure.SuperstructurePose.Preset;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Coordinated trajectories of the elevator and pivot between every pair of presets. The segments
+ * of each trajectory are planned ahead of time and stored in the deploy directory, and are checked
+ * against the current limits and presets when they are loaded. If the file is missing or out of
+ * date, the trajectories are planned again at startup instead.
+ *
+ * <p>Run {@code ./gradlew generateArmTrajectories} to write the file after changing the presets or
+ * the limits of the real robot.
+ */
+public class ArmTrajectoryCache {
+  /** The name of the cache file in the deploy directory */
+  public static final String FILE_NAME = "arm_trajectory_cache.json";
+
+  /** The version of the file format */
+  private static final int VERSION = 1;
+
+  /** How far cached values can be from the current ones and still be used */
+  private static final double MATCH_TOLERANCE = 1e-5;
+
+  /**
+   * The elevator can only be raised above this height, in meters, once the pivot is above {@link
+   * #KEEP_OUT_PIVOT}, so that the shooter is never lifted into the intake
+   */
+  private static final double KEEP_OUT_ELEVATOR = 0.02;
+
+  /** The pivot angle that the elevator needs to be above to raise, in radians */
+  private static final double KEEP_OUT_PIVOT = Preset.HANDOFF.getPivot();
+
+  /**
+   * The motion limits and feedforward gains of the superstructure
+   *
+   * @param elevatorMaxVelocity The max velocity of the elevator, in meters per second
+   * @param elevatorMaxAcceleration The max acceleration of the elevator, in meters per second
+   *     squared
+   * @param pivotMaxVelocity The max velocity of the pivot, in radians per second
+   * @param pivotMaxAcceleration The max acceleration of the pivot, in radians per second squared
+   * @param elevatorKs The static gain of the elevator
+   * @param elevatorKg The gravity gain of the elevator
+   * @param elevatorKv The velocity gain of the elevator
+   * @param pivotKs The static gain of the pivot
+   * @param pivotKg The gravity gain of the pivot
+   * @param pivotKv The velocity gain of the pivot
+   */
+  public static record Limits(
+      double elevatorMaxVelocity,
+      double elevatorMaxAcceleration,
+      double pivotMaxVelocity,
+      double pivotMaxAcceleration,
+      double elevatorKs,
+      double elevatorKg,
+      double elevatorKv,
+      double pivotKs,
+      double pivotKg,
+      double pivotKv) {
+    /**
+     * Creates the feedforward for the elevator
+     *
+     * @return The feedforward
+     */
+    public ElevatorFeedforward createElevatorFeedforward() {
+      return new ElevatorFeedforward(elevatorKs, elevatorKg, elevatorKv);
+    }
+
+    /**
+     * Creates the feedforward for the pivot, relative to horizontal
+     *
+     * @return The feedforward
+     */
+    public ArmFeedforward createPivotFeedforward() {
+      return new ArmFeedforward(pivotKs, pivotKg, pivotKv);
+    }
+
+    /**
+     * Gets the limits as an array, in the order of the record components
+     *
+     * @return The values
+     */
+    private double[] toArray() {
+      return new double[] {
+        elevatorMaxVelocity,
+        elevatorMaxAcceleration,
+        pivotMaxVelocity,
+        pivotMaxAcceleration,
+        elevatorKs,
+        elevatorKg,
+        elevatorKv,
+        pivotKs,
+        pivotKg,
+        pivotKv
+      };
+    }
+  }
+
+  private static final Preset[] PRESETS = Preset.values();
+
+  /** The trajectory between each pair of presets, indexed by the start and end preset */
+  private final ArmTrajectory[] trajectories;
+
+  private ArmTrajectoryCache(ArmTrajectory[] trajectories) {
+    this.trajectories = trajectories;
+  }
+
+  /**
+   * Gets the trajectory between two presets
+   *
+   * @param from The preset to start at
+   * @param to The preset to end at
+   * @return The trajectory, or null if the presets are the same
+   */
+  public ArmTrajectory get(Preset from, Preset to) {
+    return trajectories[from.ordinal() * PRESETS.length + to.ordinal()];
+  }
+
+  /**
+   * Loads the trajectories from the deploy directory, or plans them if the file can't be used
+   *
+   * @param limits The current limits of the superstructure
+   * @return The trajectories
+   */
+  public static ArmTrajectoryCache load(Limits limits) {
+    final Path path = Filesystem.getDeployDirectory().toPath().resolve(FILE_NAME);
+    try {
+      final ArmTrajectoryCache cache = read(path, limits);
+      if (cache != null) {
+        return cache;
+      }
+      DriverStation.reportWarning(
+          "Arm trajectory cache is out of date, run generateArmTrajectories", false);
+    } catch (IOException | RuntimeException exception) {
+      DriverStation.reportWarning("Failed to read arm trajectory cache: " + exception, false);
+    }
+    return generate(limits);
+  }
+
+  /**
+   * Plans the trajectories between every pair of presets
+   *
+   * @param limits The limits of the superstructure
+   * @return The trajectories
+   */
+  public static ArmTrajectoryCache generate(Limits limits) {
+    final ArmTrajectory[] trajectories = new ArmTrajectory[PRESETS.length * PRESETS.length];
+    final ElevatorFeedforward elevatorFeedforward = limits.createElevatorFeedforward();
+    final ArmFeedforward pivotFeedforward = limits.createPivotFeedforward();
+    for (Preset from : PRESETS) {
+      for (Preset to : PRESETS) {
+        final List<Segment> segments =
+            plan(from.getElevator(), from.getPivot(), to.getElevator(), to.getPivot(), limits);
+        if (!segments.isEmpty()) {
+          trajectories[from.ordinal() * PRESETS.length + to.ordinal()] =
+              new ArmTrajectory(segments, elevatorFeedforward, pivotFeedforward);
+        }
+      }
+    }
+    return new ArmTrajectoryCache(trajectories);
+  }
+
+  /**
+   * Plans the segments between two poses of the superstructure. The pose moves in a straight line
+   * unless that would raise the elevator while the pivot is too low, in which case it goes through
+   * the corner of the keep-out region instead. Each segment is timed with the fastest profile that
+   * keeps both joints within their limits.
+   *
+   * @param startElevator The elevator position to start at, in meters
+   * @param startPivot The pivot angle to start at, in radians
+   * @param endElevator The elevator position to end at, in meters
+   * @param endPivot The pivot angle to end at, in radians
+   * @param limits The limits of the superstructure
+   * @return The segments, which are empty if the poses are the same
+   */
+  public static List<Segment> plan(
+      double startElevator, double startPivot, double endElevator, double endPivot, Limits limits) {
+    final List<Segment> segments = new ArrayList<>();
+    if (crossesKeepOut(startElevator, startPivot, endElevator, endPivot)) {
+      addSegment(segments, startElevator, startPivot, KEEP_OUT_ELEVATOR, KEEP_OUT_PIVOT, limits);
+      addSegment(segments, KEEP_OUT_ELEVATOR, KEEP_OUT_PIVOT, endElevator, endPivot, limits);
+    } else {
+      addSegment(segments, startElevator, startPivot, endElevator, endPivot, limits);
+    }
+    return segments;
+  }
+
+  /** Adds a timed segment if it has any length */
+  private static void addSegment(
+      List<Segment> segments,
+      double startElevator,
+      double startPivot,
+      double endElevator,
+      double endPivot,
+      Limits limits) {
+    final double elevatorDistance = Math.abs(endElevator - startElevator);
+    final double pivotDistance = Math.abs(endPivot - startPivot);
+    if (elevatorDistance < 1e-9 && pivotDistance < 1e-9) {
+      return;
+    }
+    // The joint that would take longest at each limit limits the progress along the segment
+    final double maxVelocity =
+        Math.min(
+            limits.elevatorMaxVelocity() / elevatorDistance,
+            limits.pivotMaxVelocity() / pivotDistance);
+    final double maxAcceleration =
+        Math.min(
+            limits.elevatorMaxAcceleration() / elevatorDistance,
+            limits.pivotMaxAcceleration() / pivotDistance);
+    segments.add(
+        new Segment(
+            startElevator, startPivot, endElevator, endPivot, maxVelocity, maxAcceleration));
+  }
+
+  /** Checks if a straight move passes through the keep-out region */
+  private static boolean crossesKeepOut(
+      double startElevator, double startPivot, double endElevator, double endPivot) {
+    // The region is convex, so check where the move crosses into the raised part of it
+    if (Math.max(startElevator, endElevator) <= KEEP_OUT_ELEVATOR) {
+      return false;
+    }
+    if (startElevator > KEEP_OUT_ELEVATOR && startPivot < KEEP_OUT_PIVOT) {
+      return true;
+    }
+    if (endElevator > KEEP_OUT_ELEVATOR && endPivot < KEEP_OUT_PIVOT) {
+      return true;
+    }
+    if (Math.min(startElevator, endElevator) > KEEP_OUT_ELEVATOR) {
+      return false;
+    }
+    // The move enters or leaves the raised part at the keep-out height, so check the pivot there
+    final double t = (KEEP_OUT_ELEVATOR - startElevator) / (endElevator - startElevator);
+    return startPivot + (endPivot - startPivot) * t < KEEP_OUT_PIVOT;
+  }
+
+  /**
+   * Reads the trajectories from a file
+   *
+   * @param path The path of the file
+   * @param limits The current limits, which the file must match
+   * @return The trajectories, or null if the file doesn't match the limits and presets
+   * @throws IOException If the file can't be read
+   */
+  private static ArmTrajectoryCache read(Path path, Limits limits) throws IOException {
+    final JsonNode root = new ObjectMapper().readTree(path.toFile());
+    if (root.path("version").asInt() != VERSION
+        || !matches(root.path("limits"), limits.toArray())) {
+      return null;
+    }
+
+    final ArmTrajectory[] trajectories = new ArmTrajectory[PRESETS.length * PRESETS.length];
+    final ElevatorFeedforward elevatorFeedforward = limits.createElevatorFeedforward();
+    final ArmFeedforward pivotFeedforward = limits.createPivotFeedforward();
+    int count = 0;
+    for (JsonNode entry : root.path("trajectories")) {
+      final Preset from = Preset.valueOf(entry.path("from").asText());
+      final Preset to = Preset.valueOf(entry.path("to").asText());
+      final List<Segment> segments = new ArrayList<>();
+      for (JsonNode segment : entry.path("segments")) {
+        segments.add(
+            new Segment(
+                segment.path("start").path(0).asDouble(),
+                segment.path("start").path(1).asDouble(),
+                segment.path("end").path(0).asDouble(),
+                segment.path("end").path(1).asDouble(),
+                segment.path("maxVelocity").asDouble(),
+                segment.path("maxAcceleration").asDouble()));
+      }
+
+      // The presets may have changed since the file was written
+      if (segments.isEmpty()
+          || !matches(segments.get(0).startElevator(), from.getElevator())
+          || !matches(segments.get(0).startPivot(), from.getPivot())
+          || !matches(segments.get(segments.size() - 1).endElevator(), to.getElevator())
+          || !matches(segments.get(segments.size() - 1).endPivot(), to.getPivot())) {
+        return null;
+      }
+      trajectories[from.ordinal() * PRESETS.length + to.ordinal()] =
+          new ArmTrajectory(segments, elevatorFeedforward, pivotFeedforward);
+      count++;
+    }
+
+    // Every pair of different presets needs a trajectory
+    if (count != PRESETS.length * (PRESETS.length - 1)) {
+      return null;
+    }
+    return new ArmTrajectoryCache(trajectories);
+  }
+
+  private static boolean matches(JsonNode values, double[] expected) {
+    if (values.size() != expected.length) {
+      return false;
+    }
+    for (int i = 0; i < expected.length; i++) {
+      if (!matches(values.path(i).asDouble(), expected[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean matches(double value, double expected) {
+    return Math.abs(value - expected) <= MATCH_TOLERANCE;
+  }
+
+  /**
+   * Formats the trajectories as JSON
+   *
+   * @param limits The limits that the trajectories were planned with
+   * @return The JSON text
+   */
+  private String toJson(Limits limits) {
+    final StringBuilder builder = new StringBuilder();
+    builder.append("{\n");
+    builder.append("  \"version\": ").append(VERSION).append(",\n");
+    builder.append("  \"limits\": ").append(formatArray(limits.toArray())).append(",\n");
+    builder.append("  \"trajectories\": [");
+    boolean first = true;
+    for (Preset from : PRESETS) {
+      for (Preset to : PRESETS) {
+        final ArmTrajectory trajectory = get(from, to);
+        if (trajectory == null) {
+          continue;
+        }
+        builder.append(first ? "\n" : ",\n");
+        first = false;
+        builder.append("    {\n");
+        builder.append("      \"from\": \"").append(from.name()).append("\",\n");
+        builder.append("      \"to\": \"").append(to.name()).append("\",\n");
+        builder.append("      \"segments\": [\n");
+        final List<Segment> segments = trajectory.getSegments();
+        for (int i = 0; i < segments.size(); i++) {
+          final Segment segment = segments.get(i);
+          builder
+              .append("        {\"start\": ")
+              .append(formatArray(new double[] {segment.startElevator(), segment.startPivot()}))
+              .append(", \"end\": ")
+              .append(formatArray(new double[] {segment.endElevator(), segment.endPivot()}))
+              .append(", \"maxVelocity\": ")
+              .append(formatNumber(segment.maxVelocity()))
+              .append(", \"maxAcceleration\": ")
+              .append(formatNumber(segment.maxAcceleration()))
+              .append(i < segments.size() - 1 ? "},\n" : "}\n");
+        }
+        builder.append("      ]\n");
+        builder.append("    }");
+      }
+    }
+    builder.append("\n  ]\n");
+    builder.append("}\n");
+    return builder.toString();
+  }
+
+  private static String formatArray(double[] values) {
+    final StringBuilder builder = new StringBuilder("[");
+    for (int i = 0; i < values.length; i++) {
+      if (i > 0) {
+        builder.append(", ");
+      }
+      builder.append(formatNumber(values[i]));
+    }
+    return builder.append(']').toString();
+  }
+
+  private static String formatNumber(double value) {
+    return String.format(Locale.ROOT, "%.6f", value);
+  }
+
+  /**
+   * Plans the trajectories with the limits of the real robot and writes them to the cache file
+   *
+   * @param args The deploy directory to write to
+   */
+  public static void main(String[] args) throws IOException {
+    final Path directory = Path.of(args.length > 0 ? args[0] : "src/main/deploy");
+    final ArmTrajectoryCache cache = generate(Superstructure.REAL_LIMITS);
+    Files.createDirectories(directory);
+    Files.writeString(directory.resolve(FILE_NAME), cache.toJson(Superstructure.REAL_LIMITS));
+    System.out.println(
+        "Wrote arm trajectories to " + directory.resolve(FILE_NAME).toAbsolutePath());
+  }
+}
@@ -9,6 +9,7 @@ package frc.WorBots.subsystems.superstructure;
 
 import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.controller.*;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.math.util.Units;
 import edu.wpi.first.networktables.BooleanPublisher;
 import edu.wpi.first.networktables.DoublePublisher;
@@ -19,8 +20,10 @@ import edu.wpi.first.wpilibj.*;
 import edu.wpi.first.wpilibj2.command.*;
 import frc.WorBots.subsystems.superstructure.SuperstructureIO.SuperstructureIOInputs;
 import frc.WorBots.subsystems.superstructure.SuperstructurePose.Preset;
+import frc.WorBots.util.LoopContext;
 import frc.WorBots.util.UtilCommands;
 import frc.WorBots.util.debug.StatusPage;
+import frc.WorBots.util.debug.TunablePIDController;
 import frc.WorBots.util.debug.TunablePIDController.TunablePIDGains;
 import frc.WorBots.util.debug.TunablePIDController.TunableProfiledPIDController;
 import frc.WorBots.util.debug.TunablePIDController.TunableTrapezoidConstraints;
@@ -61,17 +64,39 @@ public class Superstructure extends SubsystemBase {
   /** Whether to do climb locking */
   private boolean isClimbLocked = false;
 
+  private final TunablePIDGains pivotGains = new TunablePIDGains(TABLE_NAME, "Pivot Gains");
+  private final TunablePIDGains elevatorGains = new TunablePIDGains(TABLE_NAME, "Elevator Gains");
   private final TunableProfiledPIDController pivotController =
       new TunableProfiledPIDController(
-          new TunablePIDGains(TABLE_NAME, "Pivot Gains"),
-          new TunableTrapezoidConstraints(TABLE_NAME, "Pivot Constraints"));
+          pivotGains, new TunableTrapezoidConstraints(TABLE_NAME, "Pivot Constraints"));
   private final TunableProfiledPIDController elevatorController =
       new TunableProfiledPIDController(
-          new TunablePIDGains(TABLE_NAME, "Elevator Gains"),
-          new TunableTrapezoidConstraints(TABLE_NAME, "Elevator Constraints"));
+          elevatorGains, new TunableTrapezoidConstraints(TABLE_NAME, "Elevator Constraints"));
   private ElevatorFeedforward elevatorFeedForward;
   private ArmFeedforward pivotFeedForward;
 
+  /** Controllers for following arm trajectories, which share gains with the profiled ones */
+  private final TunablePIDController pivotTrajectoryController =
+      new TunablePIDController(pivotGains);
+
+  private final TunablePIDController elevatorTrajectoryController =
+      new TunablePIDController(elevatorGains);
+
+  /** Coordinated trajectories between presets */
+  private final ArmTrajectoryCache armTrajectories;
+
+  /** The motion limits for the current robot */
+  private final ArmTrajectoryCache.Limits limits;
+
+  /** The version of the gains that were last sent to the onboard controllers */
+  private int onboardGainsVersion = -1;
+
+  /** The trajectory being followed to the setpoint, or null to use the profiled controllers */
+  private ArmTrajectory armTrajectory = null;
+
+  private final ArmTrajectory.State armTrajectoryState = new ArmTrajectory.State();
+  private final Timer armTrajectoryTimer = new Timer();
+
   // Constants
   private static final String TABLE_NAME = "Superstructure";
 
@@ -113,6 +138,23 @@ public class Superstructure extends SubsystemBase {
 
   private static final double PIVOT_OSCILLATION_RANGE = 0.05;
 
+  /** Whether to follow arm trajectories when moving between presets */
+  private static final boolean USE_ARM_TRAJECTORIES = true;
+
+  /** How close the elevator needs to be to a preset to start a trajectory from it, in meters */
+  private static final double TRAJECTORY_START_ELEVATOR_TOLERANCE = 0.03;
+
+  /** How close the pivot needs to be to a preset to start a trajectory from it, in radians */
+  private static final double TRAJECTORY_START_PIVOT_TOLERANCE = Units.degreesToRadians(5.0);
+
+  /** Motion limits and feedforward gains of the real robot */
+  public static final ArmTrajectoryCache.Limits REAL_LIMITS =
+      new ArmTrajectoryCache.Limits(2.5, 4.0, 18.0, 45.0, 0.0, 0.2, 0.0, 0.0, 0.3613565, 0.4);
+
+  /** Motion limits and feedforward gains of the simulated robot */
+  public static final ArmTrajectoryCache.Limits SIM_LIMITS =
+      new ArmTrajectoryCache.Limits(1.0, 1.65, 12.0, 8.0, 0.1, 0.0, 0.0, 0.1, 0.3, 0.0);
+
   /** The states that the superstructure can be in. */
   public enum SuperstructureState {
     POSE,
@@ -162,23 +204,21 @@ public class Superstructure extends SubsystemBase {
     this.io = io;
     if (RobotBase.isReal()) { // Real
       pivotController.setGains(9.7, 0.0, 0);
-      pivotController.setConstraints(18, 45);
-      pivotFeedForward = new ArmFeedforward(0.00, 0.3613565, 0.4);
-
       elevatorController.setGains(130, 0.2, 0);
-      elevatorController.setConstraints(2.5, 4.0);
-      elevatorFeedForward = new ElevatorFeedforward(0.0, 0.2, 0.0);
     } else { // Sim
       pivotController.setGains(50, 0.25, 0);
-      pivotController.setConstraints(12, 8);
-      pivotFeedForward = new ArmFeedforward(0.1, 0.3, 0.0);
-
       elevatorController.setGains(160, 0.00, 0);
-      elevatorController.setConstraints(1.0, 1.65);
-      elevatorFeedForward = new ElevatorFeedforward(0.1, 0.0, 0.0);
     }
+    limits = RobotBase.isReal() ? REAL_LIMITS : SIM_LIMITS;
+    pivotController.setConstraints(limits.pivotMaxVelocity(), limits.pivotMaxAcceleration());
+    pivotFeedForward = limits.createPivotFeedforward();
+    elevatorController.setConstraints(
+        limits.elevatorMaxVelocity(), limits.elevatorMaxAcceleration());
+    elevatorFeedForward = limits.createElevatorFeedforward();
     pivotController.pid.setTolerance(PIVOT_THRESHOLD);
     elevatorController.pid.setTolerance(ELEVATOR_THRESHOLD);
+    armTrajectories = ArmTrajectoryCache.load(limits);
+    updateOnboardGains();
     StatusPage.reportStatus(StatusPage.SUPERSTRUCTURE_SUBSYSTEM, true);
   }
 
@@ -204,10 +244,16 @@ public class Superstructure extends SubsystemBase {
     // Update tunables
     pivotController.update();
     elevatorController.update();
+    pivotTrajectoryController.update();
+    elevatorTrajectoryController.update();
+    updateOnboardGains();
 
-    if (DriverStation.isDisabled()) {
+    if (LoopContext.get().isDisabled()) {
       setElevatorVoltageRaw(0.0);
       setPivotVoltageRaw(0.0);
+      if (io.hasOnboardControl()) {
+        io.syncPivotPosition(getPivotPoseRads());
+      }
     } else {
       switch (state) {
         case DISABLED:
@@ -215,7 +261,11 @@ public class Superstructure extends SubsystemBase {
           setPivotVoltageRaw(0.0);
           break;
         case POSE:
-          runPose(setpoint.getElevator(), setpoint.getPivot());
+          if (armTrajectory != null) {
+            runArmTrajectory();
+          } else {
+            runPose(setpoint.getElevator(), setpoint.getPivot());
+          }
           break;
         case SHOOTING:
           // Shoot with the elevator at the bottom and the pivot where it needs to be
@@ -279,7 +329,22 @@ public class Superstructure extends SubsystemBase {
   private double calculatePivot(double setpoint) {
     // Clamp the setpoint
     setpoint = MathUtil.clamp(setpoint, 0.0, PIVOT_MAX_ANGLE);
-    double feedback = pivotController.pid.calculate(getPivotPoseRads(), setpoint);
+    final double feedback =
+        shapePivotFeedback(pivotController.pid.calculate(getPivotPoseRads(), setpoint));
+    final double pivotVoltage =
+        feedback + calculatePivotFeedforward(setpoint, pivotController.pid.getSetpoint().velocity);
+
+    return pivotVoltage;
+  }
+
+  /**
+   * Reduces the pivot feedback near the amp pose to stop it oscillating, and while falling from a
+   * high pose to soften the landing
+   *
+   * @param feedback The feedback voltage
+   * @return The reduced feedback voltage
+   */
+  private double shapePivotFeedback(double feedback) {
     // Anti-oscillation for the amp pose by reducing output
     if (atAmpPose()) {
       feedback *= PIVOT_OSCILLATION_MULTIPLIER;
@@ -290,10 +355,25 @@ public class Superstructure extends SubsystemBase {
         feedback *= 0.75;
       }
     }
-    final double pivotVoltage =
-        feedback + calculatePivotFeedforward(setpoint, pivotController.pid.getSetpoint().velocity);
+    return feedback;
+  }
 
-    return pivotVoltage;
+  /** Sends the gains to the onboard controllers when they have changed */
+  private void updateOnboardGains() {
+    if (!io.hasOnboardControl()) {
+      return;
+    }
+    final int version = pivotGains.getVersion() + elevatorGains.getVersion();
+    if (version == onboardGainsVersion) {
+      return;
+    }
+    onboardGainsVersion = version;
+    io.configureOnboardControl(
+        limits,
+        elevatorGains.kP.get(),
+        elevatorGains.kD.get(),
+        pivotGains.kP.get(),
+        pivotGains.kD.get());
   }
 
   /**
@@ -316,12 +396,67 @@ public class Superstructure extends SubsystemBase {
   private void runPose(double elevatorPose, double pivotPose) {
     elevatorSetpointPub.set(elevatorPose);
     pivotSetpointPub.set(pivotPose);
+    // Let the motor controllers profile to the pose themselves if they can
+    if (io.hasOnboardControl()) {
+      io.setElevatorGoal(MathUtil.clamp(elevatorPose, 0.0, ELEVATOR_MAX_METERS));
+      io.setPivotGoal(MathUtil.clamp(pivotPose, 0.0, PIVOT_MAX_ANGLE), getPivotPoseRads());
+      return;
+    }
     final double elevatorVoltage = calculateElevator(elevatorPose);
     final double pivotVoltage = calculatePivot(pivotPose);
     setElevatorVoltage(elevatorVoltage);
     setPivotVoltageRaw(pivotVoltage);
   }
 
+  /**
+   * Follows the arm trajectory to the setpoint, then switches back to the profiled controllers to
+   * hold it
+   */
+  private void runArmTrajectory() {
+    if (armTrajectoryTimer.hasElapsed(armTrajectory.getTotalTime())) {
+      armTrajectory = null;
+      // Start the profiles from where the trajectory ended so that they don't move again
+      pivotController.pid.reset(getPivotPoseRads());
+      elevatorController.pid.reset(inputs.elevatorPositionMeters);
+      runPose(setpoint.getElevator(), setpoint.getPivot());
+      return;
+    }
+
+    armTrajectory.sample(armTrajectoryTimer.get(), armTrajectoryState);
+    elevatorSetpointPub.set(armTrajectoryState.elevatorPosition);
+    pivotSetpointPub.set(armTrajectoryState.pivotPosition);
+    final double elevatorVoltage =
+        elevatorTrajectoryController.pid.calculate(
+                inputs.elevatorPositionMeters, armTrajectoryState.elevatorPosition)
+            + armTrajectoryState.elevatorVolts;
+    final double pivotVoltage =
+        shapePivotFeedback(
+                pivotTrajectoryController.pid.calculate(
+                    getPivotPoseRads(), armTrajectoryState.pivotPosition))
+            + armTrajectoryState.pivotVolts;
+    setElevatorVoltage(elevatorVoltage);
+    setPivotVoltageRaw(pivotVoltage);
+  }
+
+  /**
+   * Starts following the trajectory between two presets if the superstructure is at the first one
+   *
+   * @param from The preset that the superstructure was set to
+   * @param to The preset to move to
+   */
+  private void startArmTrajectory(Preset from, Preset to) {
+    armTrajectory = null;
+    if (!USE_ARM_TRAJECTORIES
+        || !isNearPose(
+            from, TRAJECTORY_START_ELEVATOR_TOLERANCE, TRAJECTORY_START_PIVOT_TOLERANCE)) {
+      return;
+    }
+    armTrajectory = armTrajectories.get(from, to);
+    pivotTrajectoryController.pid.reset();
+    elevatorTrajectoryController.pid.reset();
+    armTrajectoryTimer.restart();
+  }
+
   /**
    * Sets the elevator voltage in the IO and also logs it
    *
@@ -489,6 +624,46 @@ public class Superstructure extends SubsystemBase {
     return GeneralMath.checkError(getPivotPoseRads(), setpoint, PIVOT_THRESHOLD);
   }
 
+  /**
+   * Estimates how long the superstructure will take to reach a shooting angle from where it is now,
+   * using the motion profile constraints of the pivot and elevator
+   *
+   * @param angle The shooting angle of the pivot, in radians
+   * @return The estimated time in seconds
+   */
+  public double getShootingMoveTime(double angle) {
+    final double pivotTime =
+        getProfileTime(
+            Math.abs(angle - getPivotPoseRads()) - PIVOT_THRESHOLD,
+            pivotController.pid.getConstraints());
+    // The elevator is always fully lowered when shooting
+    final double elevatorTime =
+        getProfileTime(
+            Math.abs(inputs.elevatorPositionMeters) - ELEVATOR_THRESHOLD,
+            elevatorController.pid.getConstraints());
+    return Math.max(pivotTime, elevatorTime);
+  }
+
+  /**
+   * Calculates the time for a trapezoid profile to travel a distance from rest to rest
+   *
+   * @param distance The distance to travel
+   * @param constraints The constraints of the profile
+   * @return The time in seconds
+   */
+  private static double getProfileTime(double distance, TrapezoidProfile.Constraints constraints) {
+    if (distance <= 0.0 || constraints.maxAcceleration <= 0.0 || constraints.maxVelocity <= 0.0) {
+      return 0.0;
+    }
+    final double velocity = constraints.maxVelocity;
+    final double acceleration = constraints.maxAcceleration;
+    // Triangular profile if we never reach the max velocity
+    if (distance < velocity * velocity / acceleration) {
+      return 2.0 * Math.sqrt(distance / acceleration);
+    }
+    return distance / velocity + velocity / acceleration;
+  }
+
   /**
    * Sets the desired pose of the subsystem and waits for it to get there. Also sets the
    * superstructure to pose mode.
@@ -524,6 +699,7 @@ public class Superstructure extends SubsystemBase {
       if (wasHighPose && isLowPose) {
         softenFall = true;
       }
+      startArmTrajectory(this.setpoint, pose);
     }
     this.setpoint = pose;
   }
@@ -557,6 +733,7 @@ public class Superstructure extends SubsystemBase {
 
       // Reset controller integral and derivative term
       pivotController.pid.reset(getPivotPoseRads());
+      armTrajectory = null;
     }
     this.state = state;
   }
@@ -47,4 +47,57 @@ public interface SuperstructureIO {
 
   /** Resets the elevator zero to the current position */
   public default void resetElevator() {}
+
+  /**
+   * Checks whether the IO runs pose control on the motor controllers. If it does, the
+   * superstructure sends goals with {@link #setElevatorGoal} and {@link #setPivotGoal} instead of
+   * running its own profiled controllers.
+   *
+   * @return True if onboard control is supported
+   */
+  public default boolean hasOnboardControl() {
+    return false;
+  }
+
+  /**
+   * Configures the onboard motion profiles and controllers. Gains are in the same units as the
+   * superstructure's own controllers. This is first called at construction, and again from the loop
+   * whenever the gains are tuned, so later calls should only send the gains and must not block.
+   *
+   * @param limits The motion limits and feedforward gains
+   * @param elevatorKp The P gain of the elevator, in volts per meter
+   * @param elevatorKd The D gain of the elevator, in volts per meter per second
+   * @param pivotKp The P gain of the pivot, in volts per radian
+   * @param pivotKd The D gain of the pivot, in volts per radian per second
+   */
+  public default void configureOnboardControl(
+      ArmTrajectoryCache.Limits limits,
+      double elevatorKp,
+      double elevatorKd,
+      double pivotKp,
+      double pivotKd) {}
+
+  /**
+   * Runs the elevator to a position with onboard control
+   *
+   * @param meters The goal position, in meters
+   */
+  public default void setElevatorGoal(double meters) {}
+
+  /**
+   * Runs the pivot to an angle with onboard control
+   *
+   * @param angleRad The goal angle, in radians
+   * @param fusedAngleRad The current angle of the pivot from the encoders, which the motor
+   *     controller's position is kept in sync with
+   */
+  public default void setPivotGoal(double angleRad, double fusedAngleRad) {}
+
+  /**
+   * Keeps the onboard pivot position in sync with the encoders while nothing is driving the pivot,
+   * such as when the robot is disabled
+   *
+   * @param fusedAngleRad The current angle of the pivot from the encoders, in radians
+   */
+  public default void syncPivotPosition(double fusedAngleRad) {}
 }
@@ -14,10 +14,10 @@ import edu.wpi.first.wpilibj.Encoder;
 import frc.WorBots.util.HardwareUtils.TalonSignalsPositional;
 
 public class SuperstructureIOTalon implements SuperstructureIO {
-  private final TalonFX elevator;
+  protected final TalonFX elevator;
   private final boolean isPivotInverted = true;
 
-  private final TalonFX pivot;
+  protected final TalonFX pivot;
   private final DutyCycleEncoder pivotAbsEncoder;
   private final Encoder pivotRelEncoder;
 
@@ -29,7 +29,7 @@ public class SuperstructureIOTalon implements SuperstructureIO {
   private static final double MAX_ELEVATION_ROTATIONS = (158.1 * 0.97) / 3.0;
 
   /** Gearing ratio for the elevator, in meters per encoder rotation */
-  private static final double ELEVATOR_GEARING = 591.156 / 3.0;
+  protected static final double ELEVATOR_GEARING = 591.156 / 3.0;
 
   public SuperstructureIOTalon() {
     elevator = new TalonFX(3);
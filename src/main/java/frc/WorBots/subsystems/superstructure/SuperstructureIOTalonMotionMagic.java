@@ -0,0 +1,169 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.subsystems.superstructure;
+
+import com.ctre.phoenix6.configs.Slot0Configs;
+import com.ctre.phoenix6.configs.TalonFXConfiguration;
+import com.ctre.phoenix6.controls.MotionMagicVoltage;
+import com.ctre.phoenix6.signals.GravityTypeValue;
+import edu.wpi.first.math.util.Units;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Superstructure IO that runs the pose controllers on the TalonFXs with Motion Magic, so that they
+ * update at 1 kHz on the motor controllers and only a goal is sent over CAN each cycle. The pivot
+ * motor's position is seeded from the fused encoder angle, measured from horizontal so that the
+ * Talon's cosine gravity feedforward lines up with the pivot's. Seeding is a blocking config call
+ * that moves Motion Magic's idea of where the pivot is, so after the first time it is only redone
+ * while disabled or settled at a goal, and at most once a second.
+ */
+public class SuperstructureIOTalonMotionMagic extends SuperstructureIOTalon {
+  private final MotionMagicVoltage elevatorRequest = new MotionMagicVoltage(0.0).withSlot(0);
+  private final MotionMagicVoltage pivotRequest = new MotionMagicVoltage(0.0).withSlot(0);
+  private final Slot0Configs elevatorSlot = new Slot0Configs();
+  private final Slot0Configs pivotSlot = new Slot0Configs();
+
+  /** Whether the full motor configuration has been applied */
+  private boolean isConfigured = false;
+
+  /** The pivot position reported by the motor, in radians from horizontal */
+  private double pivotMotorPositionRad = 0.0;
+
+  /** The pivot velocity from the encoders, in radians per second */
+  private double pivotVelocityRadPerSec = 0.0;
+
+  /** The last goal sent to the pivot, in radians from horizontal */
+  private double pivotGoalRad = Double.NaN;
+
+  private boolean isPivotSeeded = false;
+  private final Timer pivotReseedTimer = new Timer();
+
+  // Constants
+  /** Gearing ratio for the pivot, in motor rotations per pivot rotation */
+  private static final double PIVOT_GEARING = 112.5;
+
+  /** How far the motor's pivot position can drift from the fused angle before it is reseeded */
+  private static final double PIVOT_RESEED_TOLERANCE = Units.degreesToRadians(1.5);
+
+  /** How slowly the pivot has to be moving to be reseeded while enabled, in radians per second */
+  private static final double PIVOT_RESEED_MAX_VELOCITY = Units.degreesToRadians(2.0);
+
+  /** The shortest time between reseeds of the pivot position, in seconds */
+  private static final double PIVOT_RESEED_INTERVAL = 1.0;
+
+  @Override
+  public boolean hasOnboardControl() {
+    return true;
+  }
+
+  @Override
+  public void configureOnboardControl(
+      ArmTrajectoryCache.Limits limits,
+      double elevatorKp,
+      double elevatorKd,
+      double pivotKp,
+      double pivotKd) {
+    // The elevator stays in motor rotations so that its position inputs don't change
+    elevatorSlot.GravityType = GravityTypeValue.Elevator_Static;
+    elevatorSlot.kP = elevatorKp / ELEVATOR_GEARING;
+    elevatorSlot.kD = elevatorKd / ELEVATOR_GEARING;
+    elevatorSlot.kS = limits.elevatorKs();
+    elevatorSlot.kG = limits.elevatorKg();
+    elevatorSlot.kV = limits.elevatorKv() / ELEVATOR_GEARING;
+
+    // The pivot is in pivot rotations so that the cosine feedforward is correct
+    pivotSlot.GravityType = GravityTypeValue.Arm_Cosine;
+    pivotSlot.kP = pivotKp * 2 * Math.PI;
+    pivotSlot.kD = pivotKd * 2 * Math.PI;
+    pivotSlot.kS = limits.pivotKs();
+    pivotSlot.kG = limits.pivotKg();
+    pivotSlot.kV = limits.pivotKv() * 2 * Math.PI;
+
+    // Only the gains can change after the first call, which happens at construction. They are sent
+    // without waiting for the motors so that the loop isn't held up.
+    if (isConfigured) {
+      elevator.getConfigurator().apply(elevatorSlot, 0.0);
+      pivot.getConfigurator().apply(pivotSlot, 0.0);
+      return;
+    }
+
+    final TalonFXConfiguration elevatorConfig = new TalonFXConfiguration();
+    elevator.getConfigurator().refresh(elevatorConfig);
+    elevatorConfig.Slot0 = elevatorSlot;
+    elevatorConfig.MotionMagic.MotionMagicCruiseVelocity =
+        limits.elevatorMaxVelocity() * ELEVATOR_GEARING;
+    elevatorConfig.MotionMagic.MotionMagicAcceleration =
+        limits.elevatorMaxAcceleration() * ELEVATOR_GEARING;
+    elevatorConfig.Voltage.PeakForwardVoltage = 9.0;
+    elevatorConfig.Voltage.PeakReverseVoltage = -9.0;
+    elevator.getConfigurator().apply(elevatorConfig);
+
+    final TalonFXConfiguration pivotConfig = new TalonFXConfiguration();
+    pivot.getConfigurator().refresh(pivotConfig);
+    pivotConfig.Feedback.SensorToMechanismRatio = PIVOT_GEARING;
+    pivotConfig.Slot0 = pivotSlot;
+    pivotConfig.MotionMagic.MotionMagicCruiseVelocity =
+        Units.radiansToRotations(limits.pivotMaxVelocity());
+    pivotConfig.MotionMagic.MotionMagicAcceleration =
+        Units.radiansToRotations(limits.pivotMaxAcceleration());
+    pivotConfig.Voltage.PeakForwardVoltage = 11.0;
+    pivotConfig.Voltage.PeakReverseVoltage = -11.0;
+    pivot.getConfigurator().apply(pivotConfig);
+    isConfigured = true;
+  }
+
+  @Override
+  public void setElevatorGoal(double meters) {
+    elevator.setControl(elevatorRequest.withPosition(meters * ELEVATOR_GEARING));
+  }
+
+  @Override
+  public void setPivotGoal(double angleRad, double fusedAngleRad) {
+    // Keep the motor's position in sync with the encoders that the rest of the robot uses, but
+    // only once the pivot has settled at its last goal so that a move isn't disturbed
+    final boolean isSettled =
+        Math.abs(pivotVelocityRadPerSec) < PIVOT_RESEED_MAX_VELOCITY
+            && Math.abs(pivotGoalRad - pivotMotorPositionRad) < PIVOT_RESEED_TOLERANCE;
+    if (!isPivotSeeded || isSettled) {
+      reseedPivot(fusedAngleRad);
+    }
+    pivotGoalRad = angleRad - Superstructure.PIVOT_HORIZONTAL_OFFSET;
+    pivot.setControl(pivotRequest.withPosition(Units.radiansToRotations(pivotGoalRad)));
+  }
+
+  @Override
+  public void syncPivotPosition(double fusedAngleRad) {
+    reseedPivot(fusedAngleRad);
+  }
+
+  /**
+   * Sets the motor's pivot position to the fused angle if it has drifted too far from it and hasn't
+   * been set too recently
+   *
+   * @param fusedAngleRad The angle of the pivot from the encoders, in radians
+   */
+  private void reseedPivot(double fusedAngleRad) {
+    final double fusedFromHorizontal = fusedAngleRad - Superstructure.PIVOT_HORIZONTAL_OFFSET;
+    if (isPivotSeeded
+        && (Math.abs(fusedFromHorizontal - pivotMotorPositionRad) <= PIVOT_RESEED_TOLERANCE
+            || !pivotReseedTimer.hasElapsed(PIVOT_RESEED_INTERVAL))) {
+      return;
+    }
+    pivot.setPosition(Units.radiansToRotations(fusedFromHorizontal));
+    pivotMotorPositionRad = fusedFromHorizontal;
+    isPivotSeeded = true;
+    pivotReseedTimer.restart();
+  }
+
+  @Override
+  public void updateInputs(SuperstructureIOInputs inputs) {
+    super.updateInputs(inputs);
+    pivotMotorPositionRad = inputs.pivot.positionRads;
+    pivotVelocityRadPerSec = inputs.pivot.velocityRadsPerSec;
+  }
+}
@@ -7,8 +7,11 @@
 
 package frc.WorBots.subsystems.vision;
 
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.math.Matrix;
 import edu.wpi.first.math.VecBuilder;
 import edu.wpi.first.math.geometry.*;
+import edu.wpi.first.math.numbers.N3;
 import edu.wpi.first.math.util.Units;
 import edu.wpi.first.networktables.BooleanPublisher;
 import edu.wpi.first.networktables.DoubleArrayPublisher;
@@ -16,7 +19,6 @@ import edu.wpi.first.networktables.DoublePublisher;
 import edu.wpi.first.networktables.IntegerPublisher;
 import edu.wpi.first.networktables.NetworkTable;
 import edu.wpi.first.networktables.NetworkTableInstance;
-import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.WorBots.FieldConstants;
 import frc.WorBots.subsystems.vision.NoteVisionIO.NoteVisionIOInputs;
@@ -37,14 +39,39 @@ import java.util.function.*;
 public class Vision extends SubsystemBase {
   private final VisionIO[] io;
   private final VisionIOInputs[] inputs;
+
+  /** Status page IDs of the cameras */
+  private final int[] cameraStatusIds;
+
   private final NoteVisionIO noteIo;
   private final NoteVisionIOInputs noteInputs;
 
   /** Consumer that receives vision updates out of the subsystem */
   private Consumer<List<TimestampedVisionUpdate>> visionConsumer = (x) -> {};
 
-  /** Times of last detections for tags */
-  private Map<Integer, Double> lastTagDetectionTimes = new HashMap<>();
+  /** Supplier for the estimated robot pose at a timestamp, used for gating */
+  private DoubleFunction<Pose2d> historicalPoseSupplier = null;
+
+  /** Supplier for the covariance of the pose estimate, used for gating */
+  private Supplier<Matrix<N3, N3>> covarianceSupplier = null;
+
+  /** Outlier rejection for vision updates */
+  private final VisionGate gate;
+
+  /** Times of last detections for tags, indexed by tag ID */
+  private final double[] lastTagDetectionTimes = new double[TAG_ID_COUNT];
+
+  /** Reader for decoding frames in place */
+  private final VisionFrame frameReader = new VisionFrame();
+
+  /** Scratch robot pose (x, y, z, qw, qx, qy, qz) for the frame being decoded */
+  private final double[] robotPoseScratch = new double[7];
+
+  /** Robot poses observed this cycle, used for logging */
+  private final ObservationPool observations;
+
+  /** Vision updates accepted this cycle. Cleared and reused every cycle */
+  private final List<TimestampedVisionUpdate> visionUpdates = new ArrayList<>();
 
   /** The amount of detections that have been made */
   private int detectionCount = 0;
@@ -71,6 +98,23 @@ public class Vision extends SubsystemBase {
   private static final Transform3d[] CAMERA_TRANSFORMS =
       new Transform3d[] {RIGHT_SWERVE_MODULE_TRANSFORM, CENTER_TRANSFORM};
 
+  /** The camera to robot translations (x, y, z), unpacked for allocation-free decoding */
+  private static final double[][] CAMERA_TRANSLATIONS = new double[CAMERA_TRANSFORMS.length][];
+
+  /** The camera to robot rotations (w, x, y, z), unpacked for allocation-free decoding */
+  private static final double[][] CAMERA_QUATERNIONS = new double[CAMERA_TRANSFORMS.length][];
+
+  static {
+    for (int i = 0; i < CAMERA_TRANSFORMS.length; i++) {
+      final Translation3d translation = CAMERA_TRANSFORMS[i].getTranslation();
+      final Quaternion quaternion = CAMERA_TRANSFORMS[i].getRotation().getQuaternion();
+      CAMERA_TRANSLATIONS[i] =
+          new double[] {translation.getX(), translation.getY(), translation.getZ()};
+      CAMERA_QUATERNIONS[i] =
+          new double[] {quaternion.getW(), quaternion.getX(), quaternion.getY(), quaternion.getZ()};
+    }
+  }
+
   /** Latency for vision updates */
   private static final TunableDouble LATENCY =
       new TunableDouble("Vision", "Tuning", "AprilTag Latency", 0.001);
@@ -120,6 +164,25 @@ public class Vision extends SubsystemBase {
   /** The amount of time to log tag poses for */
   private static final double TARGET_LOG_TIME_SECS = 0.1;
 
+  /** One more than the largest AprilTag ID on the field */
+  private static final int TAG_ID_COUNT = TAG_WEIGHTS.length + 1;
+
+  /** Tag translations (x, y, z) indexed by tag ID, or null if the tag is not on the field */
+  private static final double[][] TAG_TRANSLATIONS = new double[TAG_ID_COUNT][];
+
+  /** Tag poses in the logged array format, indexed by tag ID */
+  private static final double[][] TAG_POSE_ARRAYS = new double[TAG_ID_COUNT][];
+
+  static {
+    for (AprilTag tag : FieldConstants.aprilTags.getTags()) {
+      if (tag.ID > 0 && tag.ID < TAG_ID_COUNT) {
+        TAG_TRANSLATIONS[tag.ID] =
+            new double[] {tag.pose.getX(), tag.pose.getY(), tag.pose.getZ()};
+        TAG_POSE_ARRAYS[tag.ID] = Logger.pose3dToArray(tag.pose);
+      }
+    }
+  }
+
   private final NetworkTable visionTable = NetworkTableInstance.getDefault().getTable("Vision");
   private final DoubleArrayPublisher robotPosesPublisher =
       visionTable.getDoubleArrayTopic("RobotPoses").publish();
@@ -147,9 +210,14 @@ public class Vision extends SubsystemBase {
     this.noteIo = noteIo;
     noteInputs = new NoteVisionIOInputs();
     inputs = new VisionIOInputs[io.length];
+    cameraStatusIds = new int[io.length];
     for (int i = 0; i < io.length; i++) {
       inputs[i] = new VisionIOInputs();
+      cameraStatusIds[i] = StatusPage.register(StatusPage.CAM_PREFIX + i);
     }
+    gate = new VisionGate(io.length);
+    observations = new ObservationPool(io.length * VisionIOInputs.MAX_FRAMES);
+    Arrays.fill(lastTagDetectionTimes, Double.NEGATIVE_INFINITY);
     StatusPage.reportStatus(StatusPage.VISION_SUBSYSTEM, true);
   }
 
@@ -157,7 +225,7 @@ public class Vision extends SubsystemBase {
     // Update inputs
     for (int i = 0; i < io.length; i++) {
       io[i].updateInputs(inputs[i]);
-      StatusPage.reportStatus(StatusPage.CAM_PREFIX + i, inputs[i].isConnected);
+      StatusPage.reportStatus(cameraStatusIds[i], inputs[i].isConnected);
     }
     noteIo.updateInputs(noteInputs);
     noteThetaPublisher.set(noteInputs.noteTheta);
@@ -165,149 +233,144 @@ public class Vision extends SubsystemBase {
 
     seesTag = false;
 
-    // Loop over instances
-    List<Pose2d> allRobotPoses = new ArrayList<>();
-    List<Pose3d> allRobotPoses3d = new ArrayList<>();
-    List<TimestampedVisionUpdate> visionUpdates = new ArrayList<>();
+    // Get the pose uncertainty once for gating all frames this cycle
+    final Matrix<N3, N3> covariance =
+        covarianceSupplier == null ? null : covarianceSupplier.get();
+
+    visionUpdates.clear();
+    observations.clear();
+    final double now = TimeCache.getInstance().get();
+    final double latency = LATENCY.get();
 
+    // Loop over instances
     for (int camIndex = 0; camIndex < io.length; camIndex++) {
       final VisionIOInputs camInputs = inputs[camIndex];
-      for (int frame = 0; frame < camInputs.timestamps.length; frame++) {
-        final double timestamp = camInputs.timestamps[frame] - LATENCY.get();
-        final double[] values = camInputs.frames[frame];
+      for (int frame = 0; frame < camInputs.frameCount; frame++) {
+        final double timestamp = camInputs.timestamps[frame] - latency;
+        frameReader.wrap(camInputs.frames[frame], camInputs.frameLengths[frame]);
 
-        if (values.length == 0 || values[0] == 0) {
+        if (!frameReader.isValid()) {
           continue;
         }
 
-        Pose3d cameraPose = null;
-        Pose3d robotPose3d = null;
-
-        // Switch based on the number of detections
-        switch ((int) values[0]) {
-          case 1:
-            // Multiple tags
-            cameraPose =
-                new Pose3d(
-                    values[2],
-                    values[3],
-                    values[4],
-                    new Rotation3d(new Quaternion(values[5], values[6], values[7], values[8])));
-            break;
-          case 2:
-            // One tag that needs to be disambiguated
-            final double error0 = values[1];
-            final double error1 = values[9];
-
-            error0Publisher.set(error0);
-            error1Publisher.set(error1);
-
-            // Select pose using reprojection error
-            if (error0 < error1) {
-              cameraPose =
-                  new Pose3d(
-                      values[2],
-                      values[3],
-                      values[4],
-                      new Rotation3d(new Quaternion(values[5], values[6], values[7], values[8])));
-            } else {
-              cameraPose =
-                  new Pose3d(
-                      values[10],
-                      values[11],
-                      values[12],
-                      new Rotation3d(
-                          new Quaternion(values[13], values[14], values[15], values[16])));
-            }
-            break;
-        }
-
-        // Set robot pose
-        if (cameraPose != null) {
-          robotPose3d = cameraPose.transformBy(CAMERA_TRANSFORMS[camIndex]);
+        if (frameReader.getMode() == VisionFrame.MODE_SINGLE_TAG) {
+          // One tag that needs to be disambiguated by reprojection error
+          error0Publisher.set(frameReader.getError0());
+          error1Publisher.set(frameReader.getError1());
         }
+        final int poseIndex = frameReader.getSelectedPose();
 
-        // Exit if no data
-        if (cameraPose == null || robotPose3d == null) {
+        // Set robot pose, exiting if there is no valid rotation
+        if (!transformToRobot(frameReader, poseIndex, camIndex, robotPoseScratch)) {
           continue;
         }
 
         // Exit if the pose is invalid
-        if (!isPoseValid(robotPose3d)) {
+        if (!isPoseValid(robotPoseScratch)) {
           continue;
         }
 
         seesTag = true;
 
-        // Get 2D robot pose
-        final Pose2d robotPose = robotPose3d.toPose2d();
-
-        // Get tag poses and update last detection times
-        List<Pose3d> tagPoses = new ArrayList<>();
-        List<Integer> tagIds = new ArrayList<>();
-        for (int i = (values[0] == 1 ? 9 : 17); i < values.length; i++) {
-          final int tagId = (int) values[i];
-          tagIds.add(tagId);
-
-          lastTagDetectionTimes.put(tagId, Timer.getFPGATimestamp());
-
-          final Optional<Pose3d> tagPose = FieldConstants.aprilTags.getTagPose(tagId);
-          if (tagPose.isPresent()) {
-            tagPoses.add(tagPose.get());
+        // Update last detection times and calculate average score from all tag detections
+        final int cameraTranslation = poseIndex + VisionFrame.TRANSLATION_OFFSET;
+        final double cameraX = frameReader.get(cameraTranslation);
+        final double cameraY = frameReader.get(cameraTranslation + 1);
+        final double cameraZ = frameReader.get(cameraTranslation + 2);
+        double averageScore = 0.0;
+        int scoredTags = 0;
+        for (int i = 0; i < frameReader.getTagCount(); i++) {
+          final int tagId = frameReader.getTagId(i);
+          if (tagId <= 0 || tagId >= TAG_ID_COUNT || TAG_TRANSLATIONS[tagId] == null) {
+            continue;
           }
+          lastTagDetectionTimes[tagId] = now;
+
+          final double[] tag = TAG_TRANSLATIONS[tagId];
+          final double dx = tag[0] - cameraX;
+          final double dy = tag[1] - cameraY;
+          final double dz = tag[2] - cameraZ;
+          final double dist = Math.sqrt(dx * dx + dy * dy + dz * dz);
+          averageScore += scoreDetection(1.0, dist, camIndex, tagId);
+          scoredTags++;
         }
-
-        // Calculate average score from all tag detections
-        double averageScore = 0.0;
-        for (int i = 0; i < tagPoses.size(); i++) {
-          final double dist =
-              tagPoses.get(i).getTranslation().getDistance(cameraPose.getTranslation());
-          final double score = scoreDetection(1.0, dist, camIndex, tagIds.get(i));
-          averageScore += score;
+        if (scoredTags == 0) {
+          continue;
         }
-        averageScore /= tagPoses.size();
+        averageScore /= scoredTags;
         finalScorePublisher.set(averageScore);
 
+        // Get 2D robot pose
+        final double yaw = quaternionYaw(robotPoseScratch);
+        final Pose2d robotPose =
+            new Pose2d(robotPoseScratch[0], robotPoseScratch[1], new Rotation2d(yaw));
+
         // Add to vision updates with the calculated standard deviation of the update
         final double xyStdDev = XY_STD_DEV_COEFFICIENT / averageScore;
         final double thetaStdDev = THETA_STD_DEV_COEFFICIENT / averageScore;
-        visionUpdates.add(
+        final TimestampedVisionUpdate update =
             new TimestampedVisionUpdate(
-                timestamp, robotPose, VecBuilder.fill(xyStdDev, xyStdDev, thetaStdDev)));
+                timestamp, robotPose, VecBuilder.fill(xyStdDev, xyStdDev, thetaStdDev));
 
-        allRobotPoses.add(robotPose);
-        allRobotPoses3d.add(robotPose3d);
+        // Drop updates that disagree with where the robot was when the frame was taken
+        if (historicalPoseSupplier != null && covariance != null) {
+          final Pose2d historicalPose = historicalPoseSupplier.apply(timestamp);
+          if (!gate.test(camIndex, update, historicalPose, covariance)) {
+            continue;
+          }
+        }
+        visionUpdates.add(update);
+        observations.add(robotPoseScratch, yaw);
 
         detectionCount++;
         detectionCountPublisher.set(detectionCount);
       }
+    }
 
-      // Collect all tag poses, log them, and update whether we have seen a tag
-      List<Pose3d> allTagPoses = new ArrayList<>();
-      for (Map.Entry<Integer, Double> detectionEntry : lastTagDetectionTimes.entrySet()) {
-        if (TimeCache.getInstance().get() - detectionEntry.getValue() < TARGET_LOG_TIME_SECS) {
-          allTagPoses.add(FieldConstants.aprilTags.getTagPose(detectionEntry.getKey()).get());
-          seesTag = true;
-        }
+    // Collect all tag poses, log them, and update whether we have seen a tag
+    int recentTagCount = 0;
+    for (int tagId = 0; tagId < TAG_ID_COUNT; tagId++) {
+      if (now - lastTagDetectionTimes[tagId] < TARGET_LOG_TIME_SECS) {
+        recentTagCount++;
       }
-      seesTag = true;
+    }
+    final double[] tagData = new double[recentTagCount * 7];
+    int tagDataIndex = 0;
+    for (int tagId = 0; tagId < TAG_ID_COUNT; tagId++) {
+      if (now - lastTagDetectionTimes[tagId] < TARGET_LOG_TIME_SECS) {
+        System.arraycopy(TAG_POSE_ARRAYS[tagId], 0, tagData, tagDataIndex * 7, 7);
+        tagDataIndex++;
+        seesTag = true;
+      }
+    }
+    seesTag = true;
 
-      // Log poses
-      setRobotPoses(allRobotPoses);
-      setRobotPoses3d(allRobotPoses3d);
-      setTagPoses(allTagPoses);
+    // Log poses
+    robotPosesPublisher.set(observations.toPose2dArray());
+    robotPoses3dPublisher.set(observations.toPose3dArray());
+    tagsPosesPublisher.set(tagData);
 
-      // Send vision data to consumer
-      visionConsumer.accept(visionUpdates);
-    }
+    // Send vision data to consumer
+    visionConsumer.accept(visionUpdates);
+
+    gate.publish();
   }
 
   /**
    * This function accepts the interfaces in and out of the vision system, such as giving out vision
    * updates, and recieving poses.
+   *
+   * @param visionConsumer Consumer for accepted vision updates
+   * @param historicalPoseSupplier Gets the estimated robot pose at a timestamp
+   * @param covarianceSupplier Gets the current covariance of the pose estimate
    */
-  public void setDataInterfaces(Consumer<List<TimestampedVisionUpdate>> visionConsumer) {
+  public void setDataInterfaces(
+      Consumer<List<TimestampedVisionUpdate>> visionConsumer,
+      DoubleFunction<Pose2d> historicalPoseSupplier,
+      Supplier<Matrix<N3, N3>> covarianceSupplier) {
     this.visionConsumer = visionConsumer;
+    this.historicalPoseSupplier = historicalPoseSupplier;
+    this.covarianceSupplier = covarianceSupplier;
   }
 
   /** Checks if the vision can currently see a tag */
@@ -335,20 +398,41 @@ public class Vision extends SubsystemBase {
     return this.noteInputs.hasTarget;
   }
 
+  /**
+   * Gets the transform from a camera to the robot center
+   *
+   * @param camIndex The index of the camera
+   * @return The transform
+   */
+  static Transform3d getCameraTransform(int camIndex) {
+    return CAMERA_TRANSFORMS[getMountIndex(camIndex)];
+  }
+
+  /**
+   * Gets the index of the physical camera mount for a camera. Cameras past the number of mounts
+   * share them, which lets simulation load test with more cameras than the robot has.
+   *
+   * @param camIndex The index of the camera
+   * @return The index into the per-mount constants
+   */
+  private static int getMountIndex(int camIndex) {
+    return camIndex % CAMERA_TRANSFORMS.length;
+  }
+
   /**
    * Gets whether a 3D pose from vision should be considered valid
    *
-   * @param pose The pose from vision
+   * @param pose The pose from vision as (x, y, z, qw, qx, qy, qz)
    * @return Whether the pose should be used
    */
-  private boolean isPoseValid(Pose3d pose) {
-    if (pose.getX() < -FIELD_BORDER_MARGIN
-        || pose.getX() > FieldConstants.fieldLength + FIELD_BORDER_MARGIN
-        || pose.getY() < -FIELD_BORDER_MARGIN
-        || pose.getY() > FieldConstants.fieldWidth + FIELD_BORDER_MARGIN
-        || pose.getZ() < -Z_MARGIN
-        || pose.getZ() > Z_MARGIN) {
-      invalidPosePublisher.set(Logger.pose3dToArray(pose));
+  private boolean isPoseValid(double[] pose) {
+    if (pose[0] < -FIELD_BORDER_MARGIN
+        || pose[0] > FieldConstants.fieldLength + FIELD_BORDER_MARGIN
+        || pose[1] < -FIELD_BORDER_MARGIN
+        || pose[1] > FieldConstants.fieldWidth + FIELD_BORDER_MARGIN
+        || pose[2] < -Z_MARGIN
+        || pose[2] > Z_MARGIN) {
+      invalidPosePublisher.set(Arrays.copyOf(pose, 7));
       isPoseValidPublisher.set(false);
       return false;
     }
@@ -357,6 +441,66 @@ public class Vision extends SubsystemBase {
     return true;
   }
 
+  /**
+   * Transforms a camera pose from a frame into the robot pose, the same as {@link
+   * Pose3d#transformBy} with the camera transform but without allocating
+   *
+   * @param frame The frame to read from
+   * @param poseIndex The index of the pose block in the frame
+   * @param camIndex The index of the camera
+   * @param out The output robot pose as (x, y, z, qw, qx, qy, qz)
+   * @return False if the frame quaternion is degenerate
+   */
+  private static boolean transformToRobot(
+      VisionFrame frame, int poseIndex, int camIndex, double[] out) {
+    final int t = poseIndex + VisionFrame.TRANSLATION_OFFSET;
+    final int q = poseIndex + VisionFrame.QUATERNION_OFFSET;
+    double qw = frame.get(q);
+    double qx = frame.get(q + 1);
+    double qy = frame.get(q + 2);
+    double qz = frame.get(q + 3);
+    final double norm = Math.sqrt(qw * qw + qx * qx + qy * qy + qz * qz);
+    if (norm < 1e-9) {
+      return false;
+    }
+    qw /= norm;
+    qx /= norm;
+    qy /= norm;
+    qz /= norm;
+
+    // Rotate the camera to robot translation into the field frame
+    // v' = v + 2w(u x v) + 2u x (u x v)
+    final double[] v = CAMERA_TRANSLATIONS[getMountIndex(camIndex)];
+    final double cx = qy * v[2] - qz * v[1];
+    final double cy = qz * v[0] - qx * v[2];
+    final double cz = qx * v[1] - qy * v[0];
+    out[0] = frame.get(t) + v[0] + 2.0 * (qw * cx + qy * cz - qz * cy);
+    out[1] = frame.get(t + 1) + v[1] + 2.0 * (qw * cy + qz * cx - qx * cz);
+    out[2] = frame.get(t + 2) + v[2] + 2.0 * (qw * cz + qx * cy - qy * cx);
+
+    // Compose the rotations (camera rotation * transform rotation)
+    final double[] r = CAMERA_QUATERNIONS[getMountIndex(camIndex)];
+    out[3] = qw * r[0] - qx * r[1] - qy * r[2] - qz * r[3];
+    out[4] = qw * r[1] + qx * r[0] + qy * r[3] - qz * r[2];
+    out[5] = qw * r[2] - qx * r[3] + qy * r[0] + qz * r[1];
+    out[6] = qw * r[3] + qx * r[2] - qy * r[1] + qz * r[0];
+    return true;
+  }
+
+  /**
+   * Gets the yaw of a pose, the same as {@link Rotation3d#getZ}
+   *
+   * @param pose The pose as (x, y, z, qw, qx, qy, qz)
+   * @return The yaw in radians
+   */
+  private static double quaternionYaw(double[] pose) {
+    final double w = pose[3];
+    final double x = pose[4];
+    final double y = pose[5];
+    final double z = pose[6];
+    return Math.atan2(2.0 * (w * z + x * y), 1.0 - 2.0 * (y * y + z * z));
+  }
+
   /**
    * Scores a single tag detection
    *
@@ -376,7 +520,7 @@ public class Vision extends SubsystemBase {
     score /= GeneralMath.curve(distance, DISTANCE_GAIN);
 
     // Weigh based on the camera
-    final double camWeight = CAMERA_WEIGHTS[camID];
+    final double camWeight = CAMERA_WEIGHTS[getMountIndex(camID)];
     score *= camWeight;
 
     // Weigh based on the tag
@@ -388,47 +532,52 @@ public class Vision extends SubsystemBase {
     return score;
   }
 
-  /** Set the robot poses publisher */
-  private void setRobotPoses(List<Pose2d> poses) {
-    double[] data = new double[poses.size() * 3];
-    for (int i = 0; i < poses.size(); i++) {
-      final Pose2d pose = poses.get(i);
-      data[i * 3] = pose.getX();
-      data[i * 3 + 1] = pose.getY();
-      data[i * 3 + 2] = pose.getRotation().getRadians();
+  /** Preallocated storage for the robot poses observed in one cycle */
+  private static final class ObservationPool {
+    private final int capacity;
+    private final double[] poses3d;
+    private final double[] yaws;
+    private int count = 0;
+
+    public ObservationPool(int capacity) {
+      this.capacity = capacity;
+      poses3d = new double[capacity * 7];
+      yaws = new double[capacity];
     }
-    robotPosesPublisher.set(data);
-  }
 
-  /** Set the 3D robot poses publisher */
-  private void setRobotPoses3d(List<Pose3d> poses) {
-    double[] data = new double[poses.size() * 7];
-    for (int i = 0; i < poses.size(); i++) {
-      final Pose3d pose = poses.get(i);
-      data[i * 7] = pose.getX();
-      data[i * 7 + 1] = pose.getY();
-      data[i * 7 + 2] = pose.getZ();
-      data[i * 7 + 3] = pose.getRotation().getQuaternion().getW();
-      data[i * 7 + 4] = pose.getRotation().getQuaternion().getX();
-      data[i * 7 + 5] = pose.getRotation().getQuaternion().getY();
-      data[i * 7 + 6] = pose.getRotation().getQuaternion().getZ();
+    public void clear() {
+      count = 0;
+    }
+
+    /**
+     * Adds an observation to the pool. Observations past the capacity are dropped.
+     *
+     * @param pose The robot pose as (x, y, z, qw, qx, qy, qz)
+     * @param yaw The yaw of the pose in radians
+     */
+    public void add(double[] pose, double yaw) {
+      if (count >= capacity) {
+        return;
+      }
+      System.arraycopy(pose, 0, poses3d, count * 7, 7);
+      yaws[count] = yaw;
+      count++;
+    }
+
+    /** Gets the observed poses in the logged Pose2d array format */
+    public double[] toPose2dArray() {
+      final double[] data = new double[count * 3];
+      for (int i = 0; i < count; i++) {
+        data[i * 3] = poses3d[i * 7];
+        data[i * 3 + 1] = poses3d[i * 7 + 1];
+        data[i * 3 + 2] = yaws[i];
+      }
+      return data;
     }
-    robotPoses3dPublisher.set(data);
-  }
 
-  /** Set the tag poses publisher */
-  private void setTagPoses(List<Pose3d> poses) {
-    double[] data = new double[poses.size() * 7];
-    for (int i = 0; i < poses.size(); i++) {
-      final Pose3d pose = poses.get(i);
-      data[i * 7] = pose.getX();
-      data[i * 7 + 1] = pose.getY();
-      data[i * 7 + 2] = pose.getZ();
-      data[i * 7 + 3] = pose.getRotation().getQuaternion().getW();
-      data[i * 7 + 4] = pose.getRotation().getQuaternion().getX();
-      data[i * 7 + 5] = pose.getRotation().getQuaternion().getY();
-      data[i * 7 + 6] = pose.getRotation().getQuaternion().getZ();
+    /** Gets the observed poses in the logged Pose3d array format */
+    public double[] toPose3dArray() {
+      return Arrays.copyOf(poses3d, count * 7);
     }
-    tagsPosesPublisher.set(data);
   }
 }
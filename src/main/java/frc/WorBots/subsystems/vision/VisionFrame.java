@@ -0,0 +1,157 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.subsystems.vision;
+
+/**
+ * A flyweight reader over one AprilTag frame from the coprocessor. The reader is re-pointed at a
+ * reused buffer for each frame so that decoding never allocates.
+ *
+ * <p>Frames are a flat array of doubles with a fixed layout:
+ *
+ * <pre>
+ * [0]       Mode: 0 = no detection, 1 = multi-tag solve, 2 = single tag with two candidate poses
+ * [1]       Reprojection error of pose 0
+ * [2..4]    Pose 0 camera translation in the field (x, y, z) in meters
+ * [5..8]    Pose 0 camera rotation quaternion (w, x, y, z)
+ * Mode 1:
+ * [9..]     Detected tag IDs
+ * Mode 2:
+ * [9]       Reprojection error of pose 1
+ * [10..12]  Pose 1 camera translation in the field (x, y, z) in meters
+ * [13..16]  Pose 1 camera rotation quaternion (w, x, y, z)
+ * [17..]    Detected tag IDs
+ * </pre>
+ *
+ * <p>When sent over the raw NT topic, the same doubles are packed as consecutive little-endian
+ * IEEE 754 binary64 values.
+ */
+public final class VisionFrame {
+  public static final int MODE = 0;
+  public static final int ERROR_0 = 1;
+  public static final int POSE_0 = 2;
+  public static final int ERROR_1 = 9;
+  public static final int POSE_1 = 10;
+  public static final int MULTI_TAG_IDS = 9;
+  public static final int SINGLE_TAG_IDS = 17;
+
+  /** Offset of the translation within a pose block */
+  public static final int TRANSLATION_OFFSET = 0;
+
+  /** Offset of the quaternion within a pose block */
+  public static final int QUATERNION_OFFSET = 3;
+
+  public static final int MODE_NONE = 0;
+  public static final int MODE_MULTI_TAG = 1;
+  public static final int MODE_SINGLE_TAG = 2;
+
+  private double[] data = new double[0];
+  private int length = 0;
+
+  /**
+   * Points this reader at a frame
+   *
+   * @param data The buffer holding the frame
+   * @param length The number of valid values in the buffer
+   * @return This reader
+   */
+  public VisionFrame wrap(double[] data, int length) {
+    this.data = data;
+    this.length = length;
+    return this;
+  }
+
+  /**
+   * Gets whether the frame is long enough to hold a solved pose for its mode
+   *
+   * @return True if the frame can be read
+   */
+  public boolean isValid() {
+    switch (getMode()) {
+      case MODE_MULTI_TAG:
+        return length >= MULTI_TAG_IDS;
+      case MODE_SINGLE_TAG:
+        return length >= SINGLE_TAG_IDS;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Gets the detection mode of the frame
+   *
+   * @return One of the MODE constants
+   */
+  public int getMode() {
+    return length == 0 ? MODE_NONE : (int) data[MODE];
+  }
+
+  /**
+   * Gets the reprojection error of pose 0
+   *
+   * @return The error
+   */
+  public double getError0() {
+    return data[ERROR_0];
+  }
+
+  /**
+   * Gets the reprojection error of pose 1. Only valid for single tag frames.
+   *
+   * @return The error
+   */
+  public double getError1() {
+    return data[ERROR_1];
+  }
+
+  /**
+   * Gets the index of the pose block to use. For single tag frames this is the candidate with the
+   * lowest reprojection error.
+   *
+   * @return The index of the first value of the pose block
+   */
+  public int getSelectedPose() {
+    if (getMode() == MODE_SINGLE_TAG && getError1() <= getError0()) {
+      return POSE_1;
+    }
+    return POSE_0;
+  }
+
+  /**
+   * Gets a raw value from the frame
+   *
+   * @param index The index of the value
+   * @return The value
+   */
+  public double get(int index) {
+    return data[index];
+  }
+
+  /**
+   * Gets the number of tags detected in this frame
+   *
+   * @return The number of tag IDs
+   */
+  public int getTagCount() {
+    return Math.max(0, length - getTagStart());
+  }
+
+  /**
+   * Gets a detected tag ID
+   *
+   * @param i The index of the tag in this frame
+   * @return The AprilTag ID
+   */
+  public int getTagId(int i) {
+    return (int) data[getTagStart() + i];
+  }
+
+  /** Gets the index of the first tag ID */
+  private int getTagStart() {
+    return getMode() == MODE_SINGLE_TAG ? SINGLE_TAG_IDS : MULTI_TAG_IDS;
+  }
+}
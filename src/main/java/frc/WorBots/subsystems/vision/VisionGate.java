@@ -0,0 +1,205 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.subsystems.vision;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.Matrix;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.numbers.N3;
+import edu.wpi.first.math.util.Units;
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.IntegerArrayPublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import frc.WorBots.util.math.PoseEstimator.TimestampedVisionUpdate;
+
+/**
+ * Rejects vision updates that are statistically inconsistent with where the robot was when the
+ * frame was captured. Each update is compared against the historical pose at its timestamp using
+ * the Mahalanobis distance, with the innovation covariance built from the pose estimate covariance
+ * and the observed innovation spread of that camera.
+ */
+public class VisionGate {
+  /** The squared Mahalanobis distance above which to reject updates (chi-squared, 3 DOF, 99%) */
+  private static final double CHI_SQUARED_THRESHOLD = 11.34;
+
+  /** The minimum translational measurement std dev used for gating, in meters */
+  private static final double MIN_XY_STD_DEV = 0.08;
+
+  /** The minimum rotational measurement std dev used for gating, in radians */
+  private static final double MIN_THETA_STD_DEV = Units.degreesToRadians(4.0);
+
+  /** The smoothing factor for the per-camera innovation statistics, from 0-1 */
+  private static final double INNOVATION_FILTER_ALPHA = 0.05;
+
+  /**
+   * The number of consecutive rejections from a camera after which the next update is accepted
+   * anyway. This lets the estimate recover if the pose itself is what was wrong.
+   */
+  private static final int MAX_CONSECUTIVE_REJECTIONS = 15;
+
+  private final int cameraCount;
+
+  // Per-camera innovation statistics, indexed by [camera * 3 + axis]
+  private final double[] innovationMeans;
+  private final double[] innovationVariances;
+
+  private final long[] acceptedCounts;
+  private final long[] rejectedCounts;
+  private final int[] consecutiveRejections;
+
+  /** The innovation of the update being tested, reused between tests */
+  private final double[] innovation = new double[3];
+
+  /** Row-major 3x3 innovation covariance of the update being tested, reused between tests */
+  private final double[] s = new double[9];
+
+  private final NetworkTable gateTable =
+      NetworkTableInstance.getDefault().getTable("Vision").getSubTable("Gate");
+  private final IntegerArrayPublisher rejectedPublisher =
+      gateTable.getIntegerArrayTopic("Rejected Counts").publish();
+  private final IntegerArrayPublisher acceptedPublisher =
+      gateTable.getIntegerArrayTopic("Accepted Counts").publish();
+  private final DoubleArrayPublisher innovationMeanPublisher =
+      gateTable.getDoubleArrayTopic("Innovation Means").publish();
+  private final DoubleArrayPublisher innovationStdDevPublisher =
+      gateTable.getDoubleArrayTopic("Innovation Std Devs").publish();
+
+  /**
+   * Constructs a new VisionGate
+   *
+   * @param cameraCount The number of cameras to track statistics for
+   */
+  public VisionGate(int cameraCount) {
+    this.cameraCount = cameraCount;
+    innovationMeans = new double[cameraCount * 3];
+    innovationVariances = new double[cameraCount * 3];
+    acceptedCounts = new long[cameraCount];
+    rejectedCounts = new long[cameraCount];
+    consecutiveRejections = new int[cameraCount];
+    for (int i = 0; i < cameraCount; i++) {
+      innovationVariances[i * 3] = MIN_XY_STD_DEV * MIN_XY_STD_DEV;
+      innovationVariances[i * 3 + 1] = MIN_XY_STD_DEV * MIN_XY_STD_DEV;
+      innovationVariances[i * 3 + 2] = MIN_THETA_STD_DEV * MIN_THETA_STD_DEV;
+    }
+  }
+
+  /**
+   * Tests whether a vision update should be used
+   *
+   * @param camIndex The index of the camera that produced the update
+   * @param update The vision update
+   * @param historicalPose The estimated robot pose at the timestamp of the update
+   * @param covariance The current covariance of the pose estimate
+   * @return True if the update should be accepted
+   */
+  public boolean test(
+      int camIndex,
+      TimestampedVisionUpdate update,
+      Pose2d historicalPose,
+      Matrix<N3, N3> covariance) {
+    innovation[0] = update.pose().getX() - historicalPose.getX();
+    innovation[1] = update.pose().getY() - historicalPose.getY();
+    innovation[2] =
+        MathUtil.angleModulus(
+            update.pose().getRotation().getRadians() - historicalPose.getRotation().getRadians());
+
+    // S = P + R, where R is the largest of the reported, observed, and minimum measurement noise
+    for (int i = 0; i < 9; i++) {
+      s[i] = covariance.get(i / 3, i % 3);
+    }
+    for (int i = 0; i < 3; i++) {
+      final double minStdDev = i < 2 ? MIN_XY_STD_DEV : MIN_THETA_STD_DEV;
+      final double reportedStdDev = update.stdDevs().get(i, 0);
+      final double r =
+          Math.max(
+              Math.max(minStdDev * minStdDev, reportedStdDev * reportedStdDev),
+              innovationVariances[camIndex * 3 + i]);
+      s[i * 4] += r;
+    }
+
+    final double distanceSquared = mahalanobisSquared(s, innovation);
+    final boolean isConsistent = distanceSquared <= CHI_SQUARED_THRESHOLD;
+    final boolean accepted =
+        isConsistent || consecutiveRejections[camIndex] >= MAX_CONSECUTIVE_REJECTIONS;
+
+    if (accepted) {
+      acceptedCounts[camIndex]++;
+      consecutiveRejections[camIndex] = 0;
+    } else {
+      rejectedCounts[camIndex]++;
+      consecutiveRejections[camIndex]++;
+    }
+
+    // Only consistent innovations feed the statistics. Forced accepts after a burst of rejections
+    // are left out so that outliers cannot widen the gate.
+    if (isConsistent) {
+      for (int i = 0; i < 3; i++) {
+        final int index = camIndex * 3 + i;
+        final double delta = innovation[i] - innovationMeans[index];
+        innovationMeans[index] += INNOVATION_FILTER_ALPHA * delta;
+        innovationVariances[index] =
+            (1.0 - INNOVATION_FILTER_ALPHA)
+                * (innovationVariances[index] + INNOVATION_FILTER_ALPHA * delta * delta);
+      }
+    }
+
+    return accepted;
+  }
+
+  /**
+   * Calculates the squared Mahalanobis distance y^T * S^-1 * y in closed form, using the adjugate
+   * of S so that nothing is allocated
+   *
+   * @param s The row-major 3x3 innovation covariance
+   * @param y The innovation
+   * @return The squared distance, or infinity if S is singular
+   */
+  private static double mahalanobisSquared(double[] s, double[] y) {
+    final double a00 = s[4] * s[8] - s[5] * s[7];
+    final double a01 = s[2] * s[7] - s[1] * s[8];
+    final double a02 = s[1] * s[5] - s[2] * s[4];
+    final double a10 = s[5] * s[6] - s[3] * s[8];
+    final double a11 = s[0] * s[8] - s[2] * s[6];
+    final double a12 = s[2] * s[3] - s[0] * s[5];
+    final double a20 = s[3] * s[7] - s[4] * s[6];
+    final double a21 = s[1] * s[6] - s[0] * s[7];
+    final double a22 = s[0] * s[4] - s[1] * s[3];
+    final double det = s[0] * a00 + s[1] * a10 + s[2] * a20;
+    if (Math.abs(det) < 1e-18) {
+      return Double.POSITIVE_INFINITY;
+    }
+    final double quadratic =
+        y[0] * (a00 * y[0] + a01 * y[1] + a02 * y[2])
+            + y[1] * (a10 * y[0] + a11 * y[1] + a12 * y[2])
+            + y[2] * (a20 * y[0] + a21 * y[1] + a22 * y[2]);
+    return quadratic / det;
+  }
+
+  /**
+   * Gets the number of updates that have been rejected from a camera
+   *
+   * @param camIndex The index of the camera
+   * @return The total number of rejections
+   */
+  public long getRejectedCount(int camIndex) {
+    return rejectedCounts[camIndex];
+  }
+
+  /** Publishes the gate statistics to NetworkTables */
+  public void publish() {
+    final double[] stdDevs = new double[cameraCount * 3];
+    for (int i = 0; i < stdDevs.length; i++) {
+      stdDevs[i] = Math.sqrt(innovationVariances[i]);
+    }
+    rejectedPublisher.set(rejectedCounts);
+    acceptedPublisher.set(acceptedCounts);
+    innovationMeanPublisher.set(innovationMeans);
+    innovationStdDevPublisher.set(stdDevs);
+  }
+}
@@ -9,10 +9,40 @@ package frc.WorBots.subsystems.vision;
 
 public interface VisionIO {
   public static class VisionIOInputs {
-    public double[][] frames = new double[][] {};
-    public double timestamps[] = new double[] {};
+    /** The maximum number of frames that can be received in one update */
+    public static final int MAX_FRAMES = 16;
+
+    /** The maximum length of a single frame. Extra tag IDs past this are dropped */
+    public static final int MAX_FRAME_LENGTH = 64;
+
+    /** Reused frame buffers. Only the first frameCount are valid. See {@link VisionFrame} */
+    public final double[][] frames = new double[MAX_FRAMES][MAX_FRAME_LENGTH];
+
+    /** The number of valid values in each frame buffer */
+    public final int[] frameLengths = new int[MAX_FRAMES];
+
+    public final double[] timestamps = new double[MAX_FRAMES];
+    public int frameCount = 0;
     public double fps = 0.0;
     public boolean isConnected = false;
+
+    /**
+     * Copies a frame into the next free buffer. Frames past MAX_FRAMES are dropped.
+     *
+     * @param timestamp The timestamp of the frame in seconds
+     * @param values The frame values
+     * @param length The number of valid values in the frame
+     */
+    public void addFrame(double timestamp, double[] values, int length) {
+      if (frameCount >= MAX_FRAMES) {
+        return;
+      }
+      length = Math.min(length, MAX_FRAME_LENGTH);
+      System.arraycopy(values, 0, frames[frameCount], 0, length);
+      frameLengths[frameCount] = length;
+      timestamps[frameCount] = timestamp;
+      frameCount++;
+    }
   }
 
   /**
@@ -12,7 +12,9 @@ import edu.wpi.first.networktables.DoubleSubscriber;
 import edu.wpi.first.networktables.NetworkTable;
 import edu.wpi.first.networktables.NetworkTableInstance;
 import edu.wpi.first.networktables.PubSubOption;
+import edu.wpi.first.networktables.RawSubscriber;
 import edu.wpi.first.networktables.TimestampedDoubleArray;
+import edu.wpi.first.networktables.TimestampedRaw;
 import frc.WorBots.util.cache.Cache.TimeCache;
 
 /** Partial credit to team 6328. */
@@ -21,19 +23,52 @@ public class VisionIOCustom implements VisionIO {
   private final NetworkTable table;
   private final NetworkTable subTable;
   private final DoubleArraySubscriber data;
+  private final RawSubscriber rawData;
   private final DoubleSubscriber subFps;
 
+  /** Scratch buffer for decoding raw frames */
+  private final double[] rawScratch = new double[VisionIOInputs.MAX_FRAME_LENGTH];
+
   /** NT connection timeout after which to report a disconnect */
   private static final double CONNECTION_TIMEOUT = 1.5;
 
+  /**
+   * Creates a new VisionIOCustom that reads frames from the double array topic
+   *
+   * @param index The index of the coprocessor module
+   */
   public VisionIOCustom(int index) {
+    this(index, false);
+  }
+
+  /**
+   * Creates a new VisionIOCustom
+   *
+   * @param index The index of the coprocessor module
+   * @param useRawTopic Whether to read frames from the packed raw topic instead of the double array
+   *     topic. See {@link VisionFrame} for the layout.
+   */
+  public VisionIOCustom(int index, boolean useRawTopic) {
     table = defaultInstance.getTable("module" + index);
     subTable = table.getSubTable("output");
-    data =
-        subTable
-            .getDoubleArrayTopic("data")
-            .subscribe(
-                new double[] {}, PubSubOption.keepDuplicates(true), PubSubOption.sendAll(true));
+    if (useRawTopic) {
+      data = null;
+      rawData =
+          subTable
+              .getRawTopic("frame")
+              .subscribe(
+                  "raw",
+                  new byte[] {},
+                  PubSubOption.keepDuplicates(true),
+                  PubSubOption.sendAll(true));
+    } else {
+      data =
+          subTable
+              .getDoubleArrayTopic("data")
+              .subscribe(
+                  new double[] {}, PubSubOption.keepDuplicates(true), PubSubOption.sendAll(true));
+      rawData = null;
+    }
     subFps =
         subTable
             .getDoubleTopic("fps")
@@ -41,19 +76,48 @@ public class VisionIOCustom implements VisionIO {
   }
 
   public void updateInputs(VisionIOInputs inputs) {
-    TimestampedDoubleArray[] frames = data.readQueue();
-    final int length = frames.length;
-
-    inputs.timestamps = new double[length];
-    inputs.frames = new double[length][];
+    inputs.frameCount = 0;
 
-    for (int i = 0; i < length; i++) {
-      inputs.timestamps[i] = frames[i].timestamp / 1000000.0;
-      inputs.frames[i] = frames[i].value;
+    if (rawData != null) {
+      final TimestampedRaw[] frames = rawData.readQueue();
+      // Keep the newest frames if there are more than we can hold
+      for (int i = Math.max(0, frames.length - VisionIOInputs.MAX_FRAMES);
+          i < frames.length;
+          i++) {
+        final int length = decodeRaw(frames[i].value, rawScratch);
+        inputs.addFrame(frames[i].timestamp / 1000000.0, rawScratch, length);
+      }
+    } else {
+      final TimestampedDoubleArray[] frames = data.readQueue();
+      for (int i = Math.max(0, frames.length - VisionIOInputs.MAX_FRAMES);
+          i < frames.length;
+          i++) {
+        inputs.addFrame(frames[i].timestamp / 1000000.0, frames[i].value, frames[i].value.length);
+      }
     }
 
     inputs.fps = subFps.get();
     final double lastUpdate = subFps.getLastChange() / 1000000.0;
     inputs.isConnected = (TimeCache.getInstance().get() - lastUpdate < CONNECTION_TIMEOUT);
   }
+
+  /**
+   * Decodes packed little-endian doubles without allocating
+   *
+   * @param bytes The raw bytes
+   * @param out The output buffer
+   * @return The number of doubles decoded
+   */
+  private static int decodeRaw(byte[] bytes, double[] out) {
+    final int length = Math.min(bytes.length / Double.BYTES, out.length);
+    for (int i = 0; i < length; i++) {
+      final int offset = i * Double.BYTES;
+      long bits = 0;
+      for (int b = Double.BYTES - 1; b >= 0; b--) {
+        bits = (bits << 8) | (bytes[offset + b] & 0xFFL);
+      }
+      out[i] = Double.longBitsToDouble(bits);
+    }
+    return length;
+  }
 }
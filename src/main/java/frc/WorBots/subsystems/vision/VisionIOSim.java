@@ -0,0 +1,267 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.subsystems.vision;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Quaternion;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import edu.wpi.first.math.geometry.Twist2d;
+import edu.wpi.first.math.util.Units;
+import frc.WorBots.Constants;
+import frc.WorBots.FieldConstants;
+import frc.WorBots.util.cache.Cache.TimeCache;
+import frc.WorBots.util.math.PoseHistory;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Simulated AprilTag camera. Projects the field tag layout into the camera from the ground truth
+ * robot pose, culls tags outside of the field of view or range, corrupts the solved camera pose
+ * with noise derived from pixel error, and delivers frames in the same layout as {@link
+ * VisionIOCustom} at a set frame rate and latency.
+ */
+public class VisionIOSim implements VisionIO {
+  /** Horizontal field of view of the camera, in radians */
+  private static final double HORIZONTAL_FOV = Units.degreesToRadians(70.0);
+
+  /** Vertical field of view of the camera, in radians */
+  private static final double VERTICAL_FOV = Units.degreesToRadians(50.0);
+
+  /** Horizontal resolution of the camera, in pixels */
+  private static final double RESOLUTION_WIDTH = 1280.0;
+
+  /** Focal length of the camera, in pixels */
+  private static final double FOCAL_LENGTH =
+      RESOLUTION_WIDTH / 2.0 / Math.tan(HORIZONTAL_FOV / 2.0);
+
+  /** The maximum distance at which a tag can be detected, in meters */
+  private static final double MAX_DISTANCE = 6.0;
+
+  /** The maximum angle between the tag face normal and the camera at which it is detected */
+  private static final double MAX_VIEW_ANGLE = Units.degreesToRadians(70.0);
+
+  /** The side length of a tag, in meters */
+  private static final double TAG_SIZE = Units.inchesToMeters(6.5);
+
+  /** The length of ground truth history to keep for delayed frames, in seconds */
+  private static final double HISTORY_LENGTH = 1.0;
+
+  private final int camIndex;
+  private final Supplier<Pose2d> groundTruthSupplier;
+  private final double framePeriod;
+  private final double latency;
+  private final double pixelNoise;
+  private final Random random;
+  private final PoseHistory groundTruthHistory =
+      new PoseHistory(HISTORY_LENGTH, Constants.ROBOT_PERIOD);
+
+  /** Reused frame buffer */
+  private final double[] frame = new double[VisionIOInputs.MAX_FRAME_LENGTH];
+
+  /** Reused list of visible tags */
+  private final AprilTag[] visibleTags = new AprilTag[FieldConstants.aprilTags.getTags().size()];
+
+  /** The capture time of the next frame, in seconds */
+  private double nextCaptureTime = Double.NaN;
+
+  /**
+   * Creates a simulated camera with typical settings
+   *
+   * @param camIndex The index of the camera. Selects the camera transform used by {@link Vision}
+   * @param groundTruthSupplier Supplier for the true robot pose
+   */
+  public VisionIOSim(int camIndex, Supplier<Pose2d> groundTruthSupplier) {
+    this(camIndex, groundTruthSupplier, 30.0, 0.04, 0.3);
+  }
+
+  /**
+   * Creates a simulated camera
+   *
+   * @param camIndex The index of the camera. Selects the camera transform used by {@link Vision}
+   * @param groundTruthSupplier Supplier for the true robot pose
+   * @param fps The frame rate of the camera, in frames per second
+   * @param latency The time between capture and delivery of a frame, in seconds
+   * @param pixelNoise The standard deviation of corner detection noise, in pixels
+   */
+  public VisionIOSim(
+      int camIndex,
+      Supplier<Pose2d> groundTruthSupplier,
+      double fps,
+      double latency,
+      double pixelNoise) {
+    this.camIndex = camIndex;
+    this.groundTruthSupplier = groundTruthSupplier;
+    this.framePeriod = 1.0 / fps;
+    this.latency = latency;
+    this.pixelNoise = pixelNoise;
+    this.random = new Random(4145 + camIndex);
+  }
+
+  public void updateInputs(VisionIOInputs inputs) {
+    final double now = TimeCache.getInstance().get();
+    groundTruthHistory.addSample(now, groundTruthSupplier.get(), new Twist2d());
+
+    inputs.frameCount = 0;
+    if (Double.isNaN(nextCaptureTime)) {
+      nextCaptureTime = now;
+    }
+
+    // Deliver every frame whose latency has elapsed. Frames are stamped with their capture time
+    // like the real cameras, and the latency only delays when they become visible
+    while (nextCaptureTime + latency <= now) {
+      final int length = renderFrame(groundTruthHistory.getPoseAt(nextCaptureTime));
+      if (length > 0) {
+        inputs.addFrame(nextCaptureTime, frame, length);
+      }
+      nextCaptureTime += framePeriod;
+    }
+
+    inputs.fps = 1.0 / framePeriod;
+    inputs.isConnected = true;
+  }
+
+  /**
+   * Renders a frame for a robot pose into the frame buffer
+   *
+   * @param robotPose The true robot pose at capture time
+   * @return The length of the frame, or 0 if no tags were visible
+   */
+  private int renderFrame(Pose2d robotPose) {
+    final Transform3d cameraTransform = Vision.getCameraTransform(camIndex);
+    // Vision solves robot = camera + transform, so camera = robot - transform
+    final Pose3d cameraPose = new Pose3d(robotPose).transformBy(cameraTransform.inverse());
+
+    // Cull tags
+    int visibleCount = 0;
+    double nearestDistance = Double.POSITIVE_INFINITY;
+    for (AprilTag tag : FieldConstants.aprilTags.getTags()) {
+      final Translation3d tagInCamera = tag.pose.relativeTo(cameraPose).getTranslation();
+      final double distance = tagInCamera.getNorm();
+      if (tagInCamera.getX() <= 0.0 || distance > MAX_DISTANCE) {
+        continue;
+      }
+      if (Math.abs(Math.atan2(tagInCamera.getY(), tagInCamera.getX())) > HORIZONTAL_FOV / 2.0
+          || Math.abs(Math.atan2(tagInCamera.getZ(), tagInCamera.getX()))
+              > VERTICAL_FOV / 2.0) {
+        continue;
+      }
+
+      // The tag face points along its x axis, and must face the camera
+      final Translation3d cameraInTag = cameraPose.relativeTo(tag.pose).getTranslation();
+      final double viewAngle =
+          Math.acos(Math.min(1.0, cameraInTag.getX() / cameraInTag.getNorm()));
+      if (cameraInTag.getX() <= 0.0 || viewAngle > MAX_VIEW_ANGLE) {
+        continue;
+      }
+
+      visibleTags[visibleCount] = tag;
+      visibleCount++;
+      nearestDistance = Math.min(nearestDistance, distance);
+    }
+
+    if (visibleCount == 0) {
+      return 0;
+    }
+
+    // Pose error grows with the angular size of the tag shrinking, and averages out with more tags
+    final double angularNoise = pixelNoise / FOCAL_LENGTH;
+    final double tagCountFactor = 1.0 / Math.sqrt(visibleCount);
+    final double translationStdDev =
+        angularNoise * nearestDistance * nearestDistance / TAG_SIZE * tagCountFactor;
+    final double rotationStdDev = angularNoise * nearestDistance / TAG_SIZE * tagCountFactor;
+    final double error0 = Math.abs(pixelNoise * (1.0 + 0.25 * random.nextGaussian()));
+
+    final Pose3d noisyPose = addNoise(cameraPose, translationStdDev, rotationStdDev);
+    int length;
+    if (visibleCount > 1) {
+      frame[VisionFrame.MODE] = VisionFrame.MODE_MULTI_TAG;
+      frame[VisionFrame.ERROR_0] = error0;
+      writePose(noisyPose, VisionFrame.POSE_0);
+      length = VisionFrame.MULTI_TAG_IDS;
+    } else {
+      // A single tag has an ambiguous alternate solution mirrored about the tag normal. The
+      // alternate is less likely to win the further the tag is viewed off-axis
+      final Pose3d tagPose = visibleTags[0].pose;
+      final Pose3d cameraInTag = noisyPose.relativeTo(tagPose);
+      final Pose3d mirrored =
+          tagPose.transformBy(
+              new Transform3d(
+                  new Translation3d(
+                      cameraInTag.getX(), -cameraInTag.getY(), cameraInTag.getZ()),
+                  new Rotation3d(
+                      -cameraInTag.getRotation().getX(),
+                      cameraInTag.getRotation().getY(),
+                      -cameraInTag.getRotation().getZ())));
+      final double offAxis = Math.abs(Math.atan2(cameraInTag.getY(), cameraInTag.getX()));
+      final double error1 =
+          Math.abs(error0 * (1.0 + offAxis * 4.0) + pixelNoise * random.nextGaussian());
+
+      frame[VisionFrame.MODE] = VisionFrame.MODE_SINGLE_TAG;
+      frame[VisionFrame.ERROR_0] = error0;
+      writePose(noisyPose, VisionFrame.POSE_0);
+      frame[VisionFrame.ERROR_1] = error1;
+      writePose(mirrored, VisionFrame.POSE_1);
+      length = VisionFrame.SINGLE_TAG_IDS;
+    }
+
+    // Tag IDs
+    for (int i = 0; i < visibleCount && length < frame.length; i++) {
+      frame[length] = visibleTags[i].ID;
+      length++;
+    }
+
+    return length;
+  }
+
+  /**
+   * Adds gaussian noise to a pose
+   *
+   * @param pose The pose
+   * @param translationStdDev The translation noise in meters
+   * @param rotationStdDev The rotation noise in radians
+   * @return The noisy pose
+   */
+  private Pose3d addNoise(Pose3d pose, double translationStdDev, double rotationStdDev) {
+    return new Pose3d(
+        pose.getTranslation()
+            .plus(
+                new Translation3d(
+                    random.nextGaussian() * translationStdDev,
+                    random.nextGaussian() * translationStdDev,
+                    random.nextGaussian() * translationStdDev)),
+        pose.getRotation()
+            .plus(
+                new Rotation3d(
+                    random.nextGaussian() * rotationStdDev,
+                    random.nextGaussian() * rotationStdDev,
+                    random.nextGaussian() * rotationStdDev)));
+  }
+
+  /**
+   * Writes a pose block into the frame buffer
+   *
+   * @param pose The camera pose
+   * @param index The index of the pose block
+   */
+  private void writePose(Pose3d pose, int index) {
+    final Quaternion quaternion = pose.getRotation().getQuaternion();
+    final int t = index + VisionFrame.TRANSLATION_OFFSET;
+    final int q = index + VisionFrame.QUATERNION_OFFSET;
+    frame[t] = pose.getX();
+    frame[t + 1] = pose.getY();
+    frame[t + 2] = pose.getZ();
+    frame[q] = quaternion.getW();
+    frame[q + 1] = quaternion.getX();
+    frame[q + 2] = quaternion.getY();
+    frame[q + 3] = quaternion.getZ();
+  }
+}
@@ -0,0 +1,149 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.util;
+
+import edu.wpi.first.wpilibj.Timer;
+import frc.WorBots.util.debug.ErrorReporter;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Reads slow devices, such as the PDP and time of flight sensors, on a background thread at their
+ * own rates. Each reading is published as an immutable timestamped sample through a volatile
+ * reference, so the robot loop can get the latest sample and its age without ever blocking on the
+ * device. A device that stops being read keeps its last sample, so users should check its age.
+ */
+public class DeviceSampler {
+  private static DeviceSampler instance = new DeviceSampler();
+
+  public static DeviceSampler getInstance() {
+    return instance;
+  }
+
+  /** The shortest time between reports of a device failing to be read, in seconds */
+  private static final double ERROR_REPORT_INTERVAL = 5.0;
+
+  private final ScheduledExecutorService executor;
+
+  private DeviceSampler() {
+    executor =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              final Thread thread = new Thread(runnable, "Device Sampler");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /**
+   * Starts sampling a device
+   *
+   * @param <T> The type of the readings. Should be immutable
+   * @param name The name of the device, used for error reporting
+   * @param reader Reads the device. Only called on the sampler thread
+   * @param rateHz The rate to read the device at
+   * @return The latest samples of the device
+   */
+  public <T> Sampled<T> sample(String name, Supplier<T> reader, double rateHz) {
+    final Sampled<T> sampled = new Sampled<>();
+    schedule(
+        name, () -> sampled.latest = new Sample<>(reader.get(), Timer.getFPGATimestamp()), rateHz);
+    return sampled;
+  }
+
+  /**
+   * Starts sampling a device that reads a double
+   *
+   * @param name The name of the device, used for error reporting
+   * @param reader Reads the device. Only called on the sampler thread
+   * @param rateHz The rate to read the device at
+   * @return The latest samples of the device
+   */
+  public SampledDouble sampleDouble(String name, DoubleSupplier reader, double rateHz) {
+    final SampledDouble sampled = new SampledDouble();
+    schedule(
+        name,
+        () -> sampled.latest = new DoubleSample(reader.getAsDouble(), Timer.getFPGATimestamp()),
+        rateHz);
+    return sampled;
+  }
+
+  private void schedule(String name, Runnable read, double rateHz) {
+    final ErrorReporter errors =
+        new ErrorReporter("Failed to sample " + name + ": ", ERROR_REPORT_INTERVAL);
+    executor.scheduleAtFixedRate(
+        () -> {
+          try {
+            read.run();
+          } catch (RuntimeException exception) {
+            errors.report(exception);
+          }
+        },
+        0,
+        (long) (1e6 / rateHz),
+        TimeUnit.MICROSECONDS);
+  }
+
+  /**
+   * A reading from a device
+   *
+   * @param value The reading
+   * @param timestamp The FPGA timestamp when it was read, in seconds
+   */
+  public static record Sample<T>(T value, double timestamp) {
+    /** Gets how long ago the reading was taken, relative to the start of the current loop */
+    public double getAge() {
+      return Math.max(LoopContext.get().getTimestamp() - timestamp, 0.0);
+    }
+  }
+
+  /**
+   * A reading from a device that reads a double
+   *
+   * @param value The reading
+   * @param timestamp The FPGA timestamp when it was read, in seconds
+   */
+  public static record DoubleSample(double value, double timestamp) {
+    /** Gets how long ago the reading was taken, relative to the start of the current loop */
+    public double getAge() {
+      return Math.max(LoopContext.get().getTimestamp() - timestamp, 0.0);
+    }
+  }
+
+  /** The latest sample of a device */
+  public static class Sampled<T> {
+    private volatile Sample<T> latest = null;
+
+    /**
+     * Gets the latest sample
+     *
+     * @return The sample, or empty if the device hasn't been read yet
+     */
+    public Optional<Sample<T>> get() {
+      return Optional.ofNullable(latest);
+    }
+  }
+
+  /** The latest sample of a device that reads a double */
+  public static class SampledDouble {
+    private volatile DoubleSample latest = new DoubleSample(0.0, Double.NEGATIVE_INFINITY);
+
+    /**
+     * Gets the latest sample. Its age is infinite if the device hasn't been read yet
+     *
+     * @return The sample
+     */
+    public DoubleSample get() {
+      return latest;
+    }
+  }
+}
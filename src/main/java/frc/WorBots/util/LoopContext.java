@@ -0,0 +1,209 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.util;
+
+import edu.wpi.first.hal.ControlWord;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
+import frc.WorBots.Constants;
+import frc.WorBots.util.debug.DebugValue;
+import frc.WorBots.util.debug.DebugValue.DebugDouble;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A snapshot of the robot's state from the HAL and driver station, captured once at the start of
+ * every robot loop. Reading the timestamp, control word, and alliance directly each crosses JNI or
+ * takes the driver station lock, so subsystems and commands read them from here instead.
+ */
+public final class LoopContext {
+  /** The number of HAL and driver station calls made by each capture */
+  private static final int HAL_CALLS_PER_CAPTURE = 5;
+
+  /** Context used before the first capture, which keeps the robot disabled */
+  private static volatile LoopContext current =
+      new LoopContext(0.0, new ControlWord(), Optional.empty(), -1.0, 12.0);
+
+  /** Control word that is reused between captures */
+  private static final ControlWord controlWord = new ControlWord();
+
+  /**
+   * The number of reads from the context since the last capture. Only counted when {@link
+   * Constants#COUNT_LOOP_CONTEXT_READS} is on
+   */
+  private static final LongAdder reads = new LongAdder();
+
+  private static DebugDouble readsPublisher = null;
+  private static DebugDouble halCallsPublisher = null;
+
+  private final double timestamp;
+  private final boolean enabled;
+  private final boolean autonomous;
+  private final boolean test;
+  private final boolean eStopped;
+  private final boolean dsAttached;
+  private final boolean fmsAttached;
+  private final Optional<Alliance> alliance;
+  private final double matchTime;
+  private final double batteryVoltage;
+
+  private LoopContext(
+      double timestamp,
+      ControlWord word,
+      Optional<Alliance> alliance,
+      double matchTime,
+      double batteryVoltage) {
+    this.timestamp = timestamp;
+    this.enabled = word.getEnabled();
+    this.autonomous = word.getAutonomous();
+    this.test = word.getTest();
+    this.eStopped = word.getEStop();
+    this.dsAttached = word.getDSAttached();
+    this.fmsAttached = word.getFMSAttached();
+    this.alliance = alliance;
+    this.matchTime = matchTime;
+    this.batteryVoltage = batteryVoltage;
+  }
+
+  /**
+   * Captures a new context from the HAL and driver station. Should be called at the start of
+   * robotPeriodic, before anything reads the context.
+   *
+   * @return The new context
+   */
+  public static LoopContext capture() {
+    if (Constants.COUNT_LOOP_CONTEXT_READS) {
+      publishCallCounts();
+    }
+
+    DriverStation.refreshControlWordFromCache(controlWord);
+    current =
+        new LoopContext(
+            Timer.getFPGATimestamp(),
+            controlWord,
+            DriverStation.getAlliance(),
+            DriverStation.getMatchTime(),
+            RobotController.getBatteryVoltage());
+    return current;
+  }
+
+  /**
+   * Gets the context of the current robot loop. Safe to call from other threads.
+   *
+   * @return The latest captured context
+   */
+  public static LoopContext get() {
+    return current;
+  }
+
+  /** Gets the FPGA timestamp at the start of the loop, in seconds */
+  public double getTimestamp() {
+    countRead();
+    return timestamp;
+  }
+
+  /** Gets whether the robot is enabled */
+  public boolean isEnabled() {
+    countRead();
+    return enabled;
+  }
+
+  /** Gets whether the robot is disabled */
+  public boolean isDisabled() {
+    countRead();
+    return !enabled;
+  }
+
+  /** Gets whether the robot is in autonomous mode */
+  public boolean isAutonomous() {
+    countRead();
+    return autonomous;
+  }
+
+  /** Gets whether the robot is enabled in autonomous mode */
+  public boolean isAutonomousEnabled() {
+    countRead();
+    return autonomous && enabled;
+  }
+
+  /** Gets whether the robot is in teleop mode */
+  public boolean isTeleop() {
+    countRead();
+    return !autonomous && !test;
+  }
+
+  /** Gets whether the robot is enabled in teleop mode */
+  public boolean isTeleopEnabled() {
+    countRead();
+    return !autonomous && !test && enabled;
+  }
+
+  /** Gets whether the robot is in test mode */
+  public boolean isTest() {
+    countRead();
+    return test;
+  }
+
+  /** Gets whether the robot is emergency stopped */
+  public boolean isEStopped() {
+    countRead();
+    return eStopped;
+  }
+
+  /** Gets whether the driver station is attached */
+  public boolean isDSAttached() {
+    countRead();
+    return dsAttached;
+  }
+
+  /** Gets whether the FMS is attached */
+  public boolean isFMSAttached() {
+    countRead();
+    return fmsAttached;
+  }
+
+  /** Gets the alliance reported by the driver station */
+  public Optional<Alliance> getAlliance() {
+    countRead();
+    return alliance;
+  }
+
+  /** Gets the match time reported by the driver station, in seconds */
+  public double getMatchTime() {
+    countRead();
+    return matchTime;
+  }
+
+  /** Gets the battery voltage */
+  public double getBatteryVoltage() {
+    countRead();
+    return batteryVoltage;
+  }
+
+  /** Counts a read from the context if counting is enabled */
+  private static void countRead() {
+    if (Constants.COUNT_LOOP_CONTEXT_READS) {
+      reads.increment();
+    }
+  }
+
+  /**
+   * Publishes how many reads the last loop made from the context, which would each have been a HAL
+   * or driver station call without it, against the calls made to capture it
+   */
+  private static void publishCallCounts() {
+    if (readsPublisher == null) {
+      readsPublisher = DebugValue.compDouble("System", "Loop Context Reads");
+      halCallsPublisher = DebugValue.compDouble("System", "Loop Context HAL Calls");
+    }
+    readsPublisher.set(reads.sumThenReset());
+    halCallsPublisher.set(HAL_CALLS_PER_CAPTURE);
+  }
+}
@@ -7,9 +7,6 @@
 
 package frc.WorBots.util;
 
-import edu.wpi.first.wpilibj.DriverStation;
-import edu.wpi.first.wpilibj.Timer;
-
 /**
  * A wrapper utility that gets the time remaining in the current match period, even if no FMS is
  * attached
@@ -29,22 +26,23 @@ public class MatchTime {
 
   /** Starts the timer in teleop */
   public void startTeleop() {
-    startTime = Timer.getFPGATimestamp();
+    startTime = LoopContext.get().getTimestamp();
     sectionTime = 135.0;
   }
 
   /** Starts the timer in auto */
   public void startAuto() {
-    startTime = Timer.getFPGATimestamp();
+    startTime = LoopContext.get().getTimestamp();
     sectionTime = 15.0;
   }
 
   /** Gets the amount of time remaining in the current match period (auto or teleop) */
   public double getTimeRemaining() {
-    if (DriverStation.isFMSAttached()) {
-      return DriverStation.getMatchTime();
+    final LoopContext context = LoopContext.get();
+    if (context.isFMSAttached()) {
+      return context.getMatchTime();
     }
 
-    return sectionTime - (Timer.getFPGATimestamp() - startTime);
+    return sectionTime - (context.getTimestamp() - startTime);
   }
 }
@@ -10,17 +10,16 @@ package frc.WorBots.util;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.util.Units;
-import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.RobotBase;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import frc.WorBots.FieldConstants;
+import frc.WorBots.subsystems.drive.SwerveChassisSim;
 import frc.WorBots.subsystems.superstructure.Superstructure;
 import frc.WorBots.util.StateMachine.State;
 import frc.WorBots.util.math.AllianceFlipUtil;
 import frc.WorBots.util.math.GeomUtil;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
 import java.util.function.Supplier;
 
 /** Global simulator for robot functions */
@@ -37,17 +36,26 @@ public class RobotSimulator {
   /** The state of indexing the game piece in the system */
   private final StateMachine<RobotSimulator> indexState;
 
+  // Indices of the index states, in the order they are registered
+  private static final int EMPTY = 0;
+  private static final int INTAKE = 1;
+  private static final int SHOOTER = 2;
+
   // Data interfaces
   private Superstructure superstructure;
+  private SwerveChassisSim chassis;
   private Supplier<Pose2d> drivePose = () -> new Pose2d();
   private double intakeVolts = 0.0;
   private double feederVolts = 0.0;
   private double shooterVolts = 0.0;
 
+  /** The number of game pieces shot since the last reset */
+  private int shotCount = 0;
+
   private RobotSimulator() {
     isEnabled = RobotBase.isSimulation();
     if (isEnabled) {
-      indexState = new StateMachine<>(emptyState);
+      indexState = new StateMachine<>(emptyState, intakeState, shooterState);
     } else {
       indexState = null;
     }
@@ -61,6 +69,10 @@ public class RobotSimulator {
     this.drivePose = supplier;
   }
 
+  public void setChassis(SwerveChassisSim chassis) {
+    this.chassis = chassis;
+  }
+
   public void setIntakeVolts(double volts) {
     this.intakeVolts = volts;
   }
@@ -73,6 +85,19 @@ public class RobotSimulator {
     this.shooterVolts = volts;
   }
 
+  /**
+   * Gets the true pose of the simulated robot, which simulated sensors should observe instead of
+   * the pose estimate. Falls back to the drive pose when there is no chassis simulation.
+   *
+   * @return The ground truth robot pose
+   */
+  public Pose2d getGroundTruthPose() {
+    if (chassis == null) {
+      return drivePose.get();
+    }
+    return chassis.getPose();
+  }
+
   /** Periodic function for the simulator */
   public void periodic() {
     if (!isEnabled) {
@@ -83,6 +108,29 @@ public class RobotSimulator {
     SmartDashboard.putString("Simulator Index State", indexState.getState().getName());
   }
 
+  /** Clears the game piece from the robot and resets the shot count */
+  public void reset() {
+    if (!isEnabled) {
+      return;
+    }
+
+    indexState.setState(EMPTY);
+    shotCount = 0;
+  }
+
+  /**
+   * Gets the number of game pieces shot since the last reset
+   *
+   * @return The number of shots
+   */
+  public int getShotCount() {
+    return shotCount;
+  }
+
+  public double getFeederVolts() {
+    return feederVolts;
+  }
+
   /** Loads a game piece into the robot at the shooter, for the beginning of auto */
   public void loadGamePiece() {
     if (!isEnabled) {
@@ -90,7 +138,7 @@ public class RobotSimulator {
     }
 
     shooterState.setPosition(0.8);
-    indexState.setState(shooterState);
+    indexState.setState(SHOOTER);
   }
 
   /** Checks if the intake TOF is triggered in the simulation */
@@ -99,7 +147,7 @@ public class RobotSimulator {
       return false;
     }
 
-    return (indexState.isInState(intakeState.getClass()) && intakeState.atTof());
+    return (indexState.isInState(INTAKE) && intakeState.atTof());
   }
 
   /** Checks if the shooter TOF is triggered in the simulation */
@@ -108,43 +156,48 @@ public class RobotSimulator {
       return false;
     }
 
-    return (indexState.isInState(shooterState.getClass()) && shooterState.atTof());
+    return (indexState.isInState(SHOOTER) && shooterState.atTof());
   }
 
   /** State for when there is no note in the system */
   private final class EmptyState extends State<RobotSimulator> {
-    public Optional<State<RobotSimulator>> run(RobotSimulator sim) {
+    /** The floor game pieces on both sides of the field */
+    private final List<Translation2d> piecePoses = new ArrayList<>();
+
+    public EmptyState() {
+      for (Translation2d piece : FieldConstants.GamePieces.wingPieces) {
+        piecePoses.add(piece);
+        piecePoses.add(AllianceFlipUtil.applyAgnostic(piece));
+      }
+      for (Translation2d piece : FieldConstants.GamePieces.centerPieces) {
+        piecePoses.add(piece);
+        piecePoses.add(AllianceFlipUtil.applyAgnostic(piece));
+      }
+    }
+
+    @Override
+    public int runIndexed(StateMachine<RobotSimulator> machine, RobotSimulator sim) {
       // If we are intaking
       if (sim.intakeVolts > 0) {
-        if (DriverStation.isAutonomousEnabled()) {
+        if (LoopContext.get().isAutonomousEnabled()) {
           // Check if we are near a floor game piece during auto simulation
-          final Pose2d pose = sim.drivePose.get();
+          final Pose2d pose = sim.getGroundTruthPose();
           final double threshold = Units.inchesToMeters(20);
 
-          List<Translation2d> piecePoses = new ArrayList<>();
-          for (Translation2d piece : FieldConstants.GamePieces.wingPieces) {
-            piecePoses.add(piece);
-            piecePoses.add(AllianceFlipUtil.apply(piece));
-          }
-          for (Translation2d piece : FieldConstants.GamePieces.centerPieces) {
-            piecePoses.add(piece);
-            piecePoses.add(AllianceFlipUtil.apply(piece));
-          }
-
           for (Translation2d piecePose : piecePoses) {
             if (GeomUtil.isTranslation2dNear(pose.getTranslation(), piecePose, threshold)) {
               intakeState.setPosition(0.0);
-              return Optional.of(intakeState);
+              return INTAKE;
             }
           }
         } else {
           // Assume that intake was successful in teleop
           intakeState.setPosition(0.0);
-          return Optional.of(intakeState);
+          return INTAKE;
         }
       }
 
-      return Optional.empty();
+      return StateMachine.NO_TRANSITION;
     }
 
     public String getName() {
@@ -158,25 +211,26 @@ public class RobotSimulator {
   private final class IntakeState extends State<RobotSimulator> {
     private double position = 0.0;
 
-    public Optional<State<RobotSimulator>> run(RobotSimulator sim) {
+    @Override
+    public int runIndexed(StateMachine<RobotSimulator> machine, RobotSimulator sim) {
       position += intakeVolts / 90.0;
       SmartDashboard.putNumber("Simulator Index Position", position);
       // Spit
       if (position < 0.0) {
-        return Optional.of(emptyState);
+        return EMPTY;
       }
       if (position >= 0.9) {
         // Handoff to shooter
         if (superstructure.inHandoff()) {
           shooterState.setPosition(0.0);
-          return Optional.of(shooterState);
+          return SHOOTER;
         }
       }
       if (position > 1.0) {
         // Spit out top of intake
-        return Optional.of(emptyState);
+        return EMPTY;
       }
-      return Optional.empty();
+      return StateMachine.NO_TRANSITION;
     }
 
     public void setPosition(double position) {
@@ -198,7 +252,8 @@ public class RobotSimulator {
   private final class ShooterState extends State<RobotSimulator> {
     private double position = 0.0;
 
-    public Optional<State<RobotSimulator>> run(RobotSimulator sim) {
+    @Override
+    public int runIndexed(StateMachine<RobotSimulator> machine, RobotSimulator sim) {
       position += feederVolts / 14.0;
       SmartDashboard.putNumber("Simulator Index Position", position);
       // Spit
@@ -206,19 +261,20 @@ public class RobotSimulator {
         // Handoff to intake
         if (superstructure.inHandoff()) {
           intakeState.setPosition(1.0);
-          return Optional.of(intakeState);
+          return INTAKE;
         } else {
           // Spit out back of shooter
-          return Optional.of(emptyState);
+          return EMPTY;
         }
       }
       if (position > 1.0) {
         // Shoot
         if (sim.shooterVolts > 0.0) {
-          return Optional.of(emptyState);
+          sim.shotCount++;
+          return EMPTY;
         }
       }
-      return Optional.empty();
+      return StateMachine.NO_TRANSITION;
     }
 
     public void setPosition(double position) {
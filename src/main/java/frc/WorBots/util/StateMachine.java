@@ -7,22 +7,79 @@
 
 package frc.WorBots.util;
 
+import frc.WorBots.util.cache.Cache.TimeCache;
+import java.util.Arrays;
 import java.util.Optional;
 
 /**
  * A simple state machine that runs state interfaces and switches between them for more complex
- * behavior
+ * behavior.
+ *
+ * <p>States are indexed in the order that they are registered, and each state's transitions are
+ * compiled into a table when it is registered. States and transitions can override {@link
+ * State#runIndexed} and {@link StateTransition#getTransitionIndex} to return the index of the next
+ * state, or {@link #NO_TRANSITION}, so that running the machine never allocates. States that only
+ * implement the {@link Optional} methods still work, and the states that they return are registered
+ * the first time that they are transitioned to, up to {@link #MAX_STATES} states in total.
  */
 public class StateMachine<Inputs> {
-  private State<Inputs> state;
+  /** The index returned by states and transitions to keep the current state */
+  public static final int NO_TRANSITION = -1;
+
+  /**
+   * The most states that a state machine can have, so that code that creates a new state object
+   * for every transition fails instead of growing the machine forever
+   */
+  public static final int MAX_STATES = 64;
+
+  /** The registered states, indexed in the order they were registered */
+  private State<Inputs>[] states;
+
+  /** The transitions of each state, indexed by the state index */
+  private StateTransition<Inputs>[][] transitionTable;
+
+  private int stateCount = 0;
+  private int currentIndex = NO_TRANSITION;
+
+  /** Ring buffer of the recent transitions, or null if tracing is disabled */
+  private int[] traceFrom = null;
+
+  private int[] traceTo = null;
+  private double[] traceTimes = null;
+  private int traceHead = 0;
+  private int traceSize = 0;
 
   /**
    * Constructs a new StateMachine with a given initial state
    *
    * @param initialState The initial state for the state machine
    */
+  @SuppressWarnings("unchecked")
   public StateMachine(State<Inputs> initialState) {
-    setState(initialState);
+    this(new State[] {initialState});
+  }
+
+  /**
+   * Constructs a new StateMachine with all of its states. The states are indexed in the order that
+   * they are given, and the machine starts in the first one.
+   *
+   * @param states The states of the state machine
+   * @throws IllegalArgumentException If there are no states
+   * @throws IllegalStateException If a state is given twice or belongs to another state machine,
+   *     or there are more than {@link #MAX_STATES} states
+   */
+  @SafeVarargs
+  @SuppressWarnings("unchecked")
+  public StateMachine(State<Inputs>... states) {
+    if (states.length == 0) {
+      throw new IllegalArgumentException("State machines need at least one state");
+    }
+    this.states = new State[states.length];
+    this.transitionTable = new StateTransition[this.states.length][];
+    for (State<Inputs> state : states) {
+      register(state);
+    }
+    setState(0);
   }
 
   /**
@@ -31,26 +88,49 @@ public class StateMachine<Inputs> {
    * @param inputs The inputs for the states to read from
    */
   public void run(Inputs inputs) {
-    final Optional<State<Inputs>> transitionState = state.checkTransitions(inputs);
-    if (transitionState.isPresent()) {
-      this.setState(transitionState.get());
-      return;
+    final StateTransition<Inputs>[] transitions = transitionTable[currentIndex];
+    for (int i = 0; i < transitions.length; i++) {
+      final int next = transitions[i].getTransitionIndex(this, inputs);
+      if (next != NO_TRANSITION) {
+        setState(next);
+        return;
+      }
     }
 
-    final Optional<State<Inputs>> nextState = state.run(inputs);
-    nextState.ifPresent(this::setState);
+    final int next = states[currentIndex].runIndexed(this, inputs);
+    if (next != NO_TRANSITION) {
+      setState(next);
+    }
   }
 
   /**
    * Sets and initializes the state of the state machine
    *
    * @param state The state to set
+   * @throws IllegalStateException If the state can't be registered, as in {@link #indexOf}
    */
   public void setState(State<Inputs> state) {
-    if (!state.equals(this.state)) {
-      this.state = state;
-      this.state.initialize();
+    setState(indexOf(state));
+  }
+
+  /**
+   * Sets and initializes the state of the state machine
+   *
+   * @param index The index of the state to set
+   */
+  public void setState(int index) {
+    if (index == currentIndex) {
+      return;
+    }
+    if (traceFrom != null) {
+      traceFrom[traceHead] = currentIndex;
+      traceTo[traceHead] = index;
+      traceTimes[traceHead] = TimeCache.getInstance().get();
+      traceHead = (traceHead + 1) % traceFrom.length;
+      traceSize = Math.min(traceSize + 1, traceFrom.length);
     }
+    currentIndex = index;
+    states[index].initialize();
   }
 
   /**
@@ -59,7 +139,31 @@ public class StateMachine<Inputs> {
    * @return The current state
    */
   public State<Inputs> getState() {
-    return this.state;
+    return states[currentIndex];
+  }
+
+  /**
+   * Gets the index of the current state of the state machine
+   *
+   * @return The index of the current state
+   */
+  public int getStateIndex() {
+    return currentIndex;
+  }
+
+  /**
+   * Gets the index of a state, registering it with the state machine if it hasn't been already
+   *
+   * @param state The state
+   * @return The index of the state
+   * @throws IllegalStateException If the state belongs to another state machine, or the state
+   *     machine already has {@link #MAX_STATES} states
+   */
+  public int indexOf(State<Inputs> state) {
+    if (state.owner != this) {
+      register(state);
+    }
+    return state.index;
   }
 
   /**
@@ -73,7 +177,7 @@ public class StateMachine<Inputs> {
   @SuppressWarnings("unchecked")
   public <T> Optional<T> query(Class<T> desired) {
     if (isInState(desired)) {
-      return Optional.of((T) this.state);
+      return Optional.of((T) getState());
     }
     return Optional.empty();
   }
@@ -86,7 +190,7 @@ public class StateMachine<Inputs> {
    * @return If the state machine is running that state class
    */
   public <T> boolean isInState(Class<T> state) {
-    return getState().getClass().isAssignableFrom(state);
+    return state.isInstance(getState());
   }
 
   /**
@@ -96,7 +200,17 @@ public class StateMachine<Inputs> {
    * @return If the state machine is running that specific state
    */
   public boolean isInState(State<Inputs> state) {
-    return getState().getName().equals(state.getName());
+    return state.owner == this && state.index == currentIndex;
+  }
+
+  /**
+   * Checks if the state machine is in a state
+   *
+   * @param index The index of the state to check
+   * @return If the state machine is running that state
+   */
+  public boolean isInState(int index) {
+    return currentIndex == index;
   }
 
   /**
@@ -107,17 +221,82 @@ public class StateMachine<Inputs> {
    */
   public void runTransitions(StateTransition<Inputs>[] transitions, Inputs inputs) {
     for (var transition : transitions) {
-      final var newState = transition.getTransition(inputs);
-      if (newState.isPresent()) {
-        setState(newState.get());
+      final int next = transition.getTransitionIndex(this, inputs);
+      if (next != NO_TRANSITION) {
+        setState(next);
       }
     }
   }
 
+  /**
+   * Starts recording transitions into a ring buffer for debugging
+   *
+   * @param capacity The number of recent transitions to keep
+   */
+  public void enableTracing(int capacity) {
+    traceFrom = new int[capacity];
+    traceTo = new int[capacity];
+    traceTimes = new double[capacity];
+    traceHead = 0;
+    traceSize = 0;
+  }
+
+  /**
+   * Gets the recorded transitions, oldest first. Only meant for debugging, as it allocates
+   *
+   * @return The transitions, or an empty array if tracing is disabled
+   */
+  public String[] getTrace() {
+    final String[] out = new String[traceSize];
+    for (int i = 0; i < traceSize; i++) {
+      final int entry = Math.floorMod(traceHead - traceSize + i, traceFrom.length);
+      out[i] =
+          String.format(
+              "%.3f: %s -> %s",
+              traceTimes[entry], getStateName(traceFrom[entry]), getStateName(traceTo[entry]));
+    }
+    return out;
+  }
+
+  private String getStateName(int index) {
+    return index == NO_TRANSITION ? "None" : states[index].getName();
+  }
+
+  /** Adds a state to the state machine and compiles its transitions into the table */
+  private void register(State<Inputs> state) {
+    if (state.owner != null) {
+      throw new IllegalStateException(
+          "State " + state.getName() + " already belongs to a state machine");
+    }
+    if (stateCount == MAX_STATES) {
+      throw new IllegalStateException(
+          "State machine already has "
+              + MAX_STATES
+              + " states, so "
+              + state.getName()
+              + " can't be added. Reuse state objects instead of creating new ones");
+    }
+    if (stateCount == states.length) {
+      final int capacity = Math.min(stateCount * 2, MAX_STATES);
+      states = Arrays.copyOf(states, capacity);
+      transitionTable = Arrays.copyOf(transitionTable, capacity);
+    }
+    state.owner = this;
+    state.index = stateCount;
+    states[stateCount] = state;
+    transitionTable[stateCount] = state.transitions.clone();
+    stateCount++;
+  }
+
   /** A single state of the state machine. Should be subclassed for custom states. */
   public static class State<Inputs> {
     protected StateTransition<Inputs>[] transitions;
 
+    /** The state machine that the state is registered with */
+    private StateMachine<Inputs> owner = null;
+
+    private int index = NO_TRANSITION;
+
     /** Create this state with no transitions */
     @SuppressWarnings("unchecked")
     public State() {
@@ -161,6 +340,20 @@ public class StateMachine<Inputs> {
       return Optional.empty();
     }
 
+    /**
+     * Runs this state and gets the index of the next state. Override this instead of {@link #run}
+     * to avoid allocating.
+     *
+     * @param machine The state machine that is running the state
+     * @param inputs The inputs to the state machine
+     * @return The index of the next state, or {@link StateMachine#NO_TRANSITION} to keep using
+     *     this state
+     */
+    public int runIndexed(StateMachine<Inputs> machine, Inputs inputs) {
+      final Optional<State<Inputs>> next = run(inputs);
+      return next.isPresent() ? machine.indexOf(next.get()) : NO_TRANSITION;
+    }
+
     /** Finishes the state when the state machine deselects it */
     public void finish() {}
   }
@@ -173,5 +366,18 @@ public class StateMachine<Inputs> {
     public default Optional<State<Inputs>> getTransition(Inputs inputs) {
       return Optional.empty();
     }
+
+    /**
+     * Gets the index of the state to transition to. Override this instead of {@link
+     * #getTransition} to avoid allocating.
+     *
+     * @param machine The state machine that is running the transition
+     * @param inputs The inputs to the state machine
+     * @return The index of the next state, or {@link StateMachine#NO_TRANSITION} to not transition
+     */
+    public default int getTransitionIndex(StateMachine<Inputs> machine, Inputs inputs) {
+      final Optional<State<Inputs>> next = getTransition(inputs);
+      return next.isPresent() ? machine.indexOf(next.get()) : NO_TRANSITION;
+    }
   }
 }
@@ -7,9 +7,8 @@
 
 package frc.WorBots.util.cache;
 
-import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.DriverStation.Alliance;
-import edu.wpi.first.wpilibj.Timer;
+import frc.WorBots.util.LoopContext;
 import java.util.Optional;
 import java.util.function.Supplier;
 
@@ -40,8 +39,8 @@ public class Cache<T> {
   }
 
   /**
-   * A global cache for the FPGA timestamp. Should be updated in robotPeriodic. Should not be used
-   * for readings that require accuracy
+   * A global cache for the FPGA timestamp from the loop context. Should be updated in
+   * robotPeriodic. Should not be used for readings that require accuracy
    */
   public static class TimeCache extends Cache<Double> {
     private static TimeCache instance = new TimeCache();
@@ -51,7 +50,7 @@ public class Cache<T> {
     }
 
     private TimeCache() {
-      super(() -> Timer.getFPGATimestamp());
+      super(() -> LoopContext.get().getTimestamp());
     }
   }
 
@@ -64,7 +63,7 @@ public class Cache<T> {
     }
 
     private AllianceCache() {
-      super(() -> DriverStation.getAlliance());
+      super(() -> LoopContext.get().getAlliance());
     }
   }
 }
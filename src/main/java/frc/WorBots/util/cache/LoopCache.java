@@ -0,0 +1,157 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.util.cache;
+
+import frc.WorBots.util.debug.DebugValue;
+import frc.WorBots.util.debug.DebugValue.DebugDouble;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * A cache that computes its value at most once per robot loop. The loop epoch is advanced at the
+ * start of every loop in robotPeriodic, which invalidates every loop cache at once. Values that can
+ * change in the middle of a loop should call {@link #invalidate()} when they do.
+ *
+ * <p>Loop caches are only meant to be used from the main robot thread.
+ */
+public class LoopCache<T> extends Cache<T> {
+  /** The current loop epoch, incremented every robot loop */
+  private static long epoch = 0;
+
+  /** The caches that were given names, whose counts are published every loop */
+  private static final List<LoopCache<?>> namedCaches = new ArrayList<>();
+
+  private long cachedEpoch = -1;
+  private long hits = 0;
+  private long misses = 0;
+
+  private DebugDouble hitsPublisher = null;
+  private DebugDouble missesPublisher = null;
+
+  public LoopCache(Supplier<T> supplier) {
+    super(supplier);
+  }
+
+  /**
+   * Constructs a LoopCache that publishes its hit and miss counts under a name
+   *
+   * @param name The name to publish the counts under
+   * @param supplier The supplier of the value
+   */
+  public LoopCache(String name, Supplier<T> supplier) {
+    super(supplier);
+    hitsPublisher = DebugValue.compDouble("System", "Loop Cache/" + name + " Hits");
+    missesPublisher = DebugValue.compDouble("System", "Loop Cache/" + name + " Misses");
+    namedCaches.add(this);
+  }
+
+  /**
+   * Advances the loop epoch, invalidating every loop cache, and publishes the counts of the named
+   * caches. Should be called in robotPeriodic
+   */
+  public static void advanceEpoch() {
+    epoch++;
+    for (int i = 0; i < namedCaches.size(); i++) {
+      final LoopCache<?> cache = namedCaches.get(i);
+      cache.hitsPublisher.set(cache.hits);
+      cache.missesPublisher.set(cache.misses);
+    }
+  }
+
+  /**
+   * Gets the current loop epoch
+   *
+   * @return The number of loops that have started
+   */
+  public static long getEpoch() {
+    return epoch;
+  }
+
+  /**
+   * Gets the cached value, computing it if it hasn't been this loop
+   *
+   * @return The cached value
+   */
+  @Override
+  public T get() {
+    if (cachedEpoch != epoch) {
+      misses++;
+      update();
+    } else {
+      hits++;
+    }
+    return super.get();
+  }
+
+  @Override
+  public void update() {
+    super.update();
+    cachedEpoch = epoch;
+  }
+
+  /** Invalidates the cached value so that it is computed again the next time it is used */
+  public void invalidate() {
+    cachedEpoch = -1;
+  }
+
+  /** Gets the number of times the cached value was used without computing it */
+  public long getHits() {
+    return hits;
+  }
+
+  /** Gets the number of times the value had to be computed */
+  public long getMisses() {
+    return misses;
+  }
+
+  /** A loop cache for a double that doesn't box the value */
+  public static class OfDouble {
+    private final DoubleSupplier supplier;
+    private double cachedValue;
+    private long cachedEpoch = -1;
+    private long hits = 0;
+    private long misses = 0;
+
+    public OfDouble(DoubleSupplier supplier) {
+      this.supplier = supplier;
+    }
+
+    /**
+     * Gets the cached value, computing it if it hasn't been this loop
+     *
+     * @return The cached value
+     */
+    public double get() {
+      if (cachedEpoch != epoch) {
+        misses++;
+        cachedValue = supplier.getAsDouble();
+        cachedEpoch = epoch;
+      } else {
+        hits++;
+      }
+      return cachedValue;
+    }
+
+    /** Invalidates the cached value so that it is computed again the next time it is used */
+    public void invalidate() {
+      cachedEpoch = -1;
+    }
+
+    /** Gets the number of times the cached value was used without computing it */
+    public long getHits() {
+      return hits;
+    }
+
+    /** Gets the number of times the value had to be computed */
+    public long getMisses() {
+      return misses;
+    }
+  }
+}
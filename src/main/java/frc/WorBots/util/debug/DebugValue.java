@@ -14,7 +14,7 @@ import edu.wpi.first.util.datalog.BooleanLogEntry;
 import edu.wpi.first.util.datalog.DoubleLogEntry;
 import edu.wpi.first.wpilibj.DataLogManager;
 import edu.wpi.first.wpilibj.DriverStation;
-import edu.wpi.first.wpilibj.Timer;
+import frc.WorBots.util.LoopContext;
 
 public class DebugValue {
   /** A debug value that is logged either to NT or the log file */
@@ -33,7 +33,7 @@ public class DebugValue {
     public void set(double value) {
       if (publisher == null) {
         if (logEntry != null) {
-          logEntry.append(value, (long) (Timer.getFPGATimestamp() * 1000000.0));
+          logEntry.append(value, (long) (LoopContext.get().getTimestamp() * 1000000.0));
         }
       } else {
         publisher.set(value);
@@ -58,7 +58,7 @@ public class DebugValue {
     public void set(boolean value) {
       if (publisher == null) {
         if (logEntry != null) {
-          logEntry.append(value, (long) (Timer.getFPGATimestamp() * 1000000.0));
+          logEntry.append(value, (long) (LoopContext.get().getTimestamp() * 1000000.0));
         }
       } else {
         publisher.set(value);
@@ -0,0 +1,55 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.util.debug;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Reports errors to the driver station at most once per interval, so that something that fails
+ * every cycle doesn't flood the console. The number of errors that were held back is added to the
+ * next report. Each reporter should only be used from one thread.
+ */
+public class ErrorReporter {
+  private final String prefix;
+  private final double interval;
+
+  private double lastReportTime = Double.NEGATIVE_INFINITY;
+  private int suppressedCount = 0;
+
+  /**
+   * Constructs a new ErrorReporter
+   *
+   * @param prefix The text to start every report with
+   * @param interval The shortest time between reports, in seconds
+   */
+  public ErrorReporter(String prefix, double interval) {
+    this.prefix = prefix;
+    this.interval = interval;
+  }
+
+  /**
+   * Reports an exception, unless another was reported too recently
+   *
+   * @param exception The exception
+   */
+  public void report(Exception exception) {
+    final double now = Timer.getFPGATimestamp();
+    if (now - lastReportTime < interval) {
+      suppressedCount++;
+      return;
+    }
+    String message = prefix + exception;
+    if (suppressedCount > 0) {
+      message += " (" + suppressedCount + " more since the last report)";
+    }
+    DriverStation.reportError(message, exception.getStackTrace());
+    lastReportTime = now;
+    suppressedCount = 0;
+  }
+}
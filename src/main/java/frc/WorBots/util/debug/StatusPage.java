@@ -10,7 +10,10 @@ package frc.WorBots.util.debug;
 import edu.wpi.first.hal.HAL;
 import edu.wpi.first.hal.PowerDistributionFaults;
 import edu.wpi.first.networktables.GenericEntry;
+import edu.wpi.first.networktables.IntegerPublisher;
+import edu.wpi.first.networktables.NetworkTable;
 import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringArrayPublisher;
 import edu.wpi.first.util.datalog.DataLog;
 import edu.wpi.first.util.datalog.IntegerLogEntry;
 import edu.wpi.first.util.datalog.StringLogEntry;
@@ -18,167 +21,287 @@ import edu.wpi.first.wpilibj.DataLogManager;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.PowerDistribution;
 import edu.wpi.first.wpilibj.shuffleboard.Shuffleboard;
-import edu.wpi.first.wpilibj.shuffleboard.ShuffleboardTab;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import frc.WorBots.util.BuildConstants;
+import frc.WorBots.util.DeviceSampler;
+import frc.WorBots.util.DeviceSampler.Sample;
+import frc.WorBots.util.DeviceSampler.Sampled;
+import frc.WorBots.util.LoopContext;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-/** A utility class which shows the status of systems on the robot to NetworkTables */
+/**
+ * A utility class which shows the status of systems on the robot to NetworkTables.
+ *
+ * <p>Systems are registered by name and reported by the integer ID that registration returns. The
+ * statuses are kept in the bits of a single long, which can be reported and read from any thread.
+ * They are published from the main loop only when they change, as one packed integer along with
+ * the names of the systems, and to a boolean on the Status tab for each system.
+ */
 public class StatusPage {
-  private ShuffleboardTab tab = Shuffleboard.getTab("Status");
-  private HashMap<String, GenericEntry> entries = new HashMap<>();
+  /** The most systems that can be registered, one for each bit of the packed statuses */
+  public static final int MAX_SYSTEMS = Long.SIZE;
+
+  /** How often the common statuses are reported on the background thread, in seconds */
+  private static final double PERIODIC_PERIOD = 0.25;
+
+  // Registered systems
+  private static final Map<String, Integer> ids = new HashMap<>();
+  private static final String[] names = new String[MAX_SYSTEMS];
+  private static volatile int systemCount = 0;
+
+  /** The status of every system, with the bit at a system's ID set if it is up */
+  private static final AtomicLong statuses = new AtomicLong();
+
+  // Publishing state, only used on the main thread
+  private static final NetworkTable table = NetworkTableInstance.getDefault().getTable("Status");
+  private static final IntegerPublisher statusesPublisher =
+      table.getIntegerTopic("Statuses").publish();
+  private static final StringArrayPublisher namesPublisher =
+      table.getStringArrayTopic("Names").publish();
+  private static final GenericEntry[] entries = new GenericEntry[MAX_SYSTEMS];
+  private static long publishedStatuses = 0;
+  private static int publishedCount = 0;
+
+  private static ScheduledExecutorService periodicExecutor = null;
+
+  /** The rate that the PDP is read at, in Hz */
+  private static final double PDP_RATE = 10.0;
+
+  /** Readings from the PDP, sampled in the background */
+  private static Sampled<PowerReadings> powerReadings = null;
   private static boolean hasBeenStarted = false;
 
-  // System name constants
-  public static final String AUTOS = "Autos";
-  public static final String ALL_AUTO_QUESTIONS = "All Auto Questions";
-  public static final String AUTO_CHOSEN = "Auto Chosen";
-  public static final String ROBOT_CODE = "Robot Code";
-  public static final String DRIVE_CONTROLLER = "Drive Controller";
-  public static final String SUPERSTRUCTURE_SUBSYSTEM = "Superstructure Subsystem";
-  public static final String DRIVE_SUBSYSTEM = "Drive Subsystem";
-  public static final String INTAKE_SUBSYSTEM = "Intake Subsystem";
-  public static final String LIGHTS_SUBSYSTEM = "Lights Subsystem";
-  public static final String VISION_SUBSYSTEM = "Vision Subsystem";
-  public static final String SHOOTER_SUBSYSTEM = "Shooter Subsystem";
-  public static final String SHOOTER_CONNECTED = "Shooter Connected";
-  public static final String PIVOT_CONNECTED = "Pivot Connected";
-  public static final String ELEVATOR_CONNECTED = "Elevator Connected";
-  public static final String GYROSCOPE = "Gyroscope";
-  public static final String SMODULE_PREFIX = "SModule";
-  public static final String NETWORK_TABLES = "Network Tables";
-  public static final String DRIVER_STATION = "Driver Station";
-  public static final String FMS = "FMS";
-  public static final String BATTERY = "Battery";
-  public static final String IDEAL_BATTERY = "Ideal Battery";
-  public static final String INTAKE_CONNECTED = "Intake Connected";
-  public static final String BROWNOUT = "Brownout";
-  public static final String OPERATOR_CONTROLLER = "Operator Controller";
-  public static final String NOT_ESTOPPED = "Not EStopped";
-  public static final String PDP_BREAKERS = "PDP Breakers";
-  public static final String CAN_WARNING = "CAN Warning";
-  public static final String PDP_HARDWARE = "PDP Hardware";
+  // Systems, sorted in order of priority from highest to lowest, since the lights show the
+  // statuses in the order that the systems were registered
+  public static final int AUTOS = register("Autos");
+  public static final int AUTO_CHOSEN = register("Auto Chosen");
+  public static final int DRIVE_CONTROLLER = register("Drive Controller");
+  public static final int OPERATOR_CONTROLLER = register("Operator Controller");
+  public static final int SHOOTER_CONNECTED = register("Shooter Connected");
+  public static final int ALL_AUTO_QUESTIONS = register("All Auto Questions");
+  public static final int PIVOT_CONNECTED = register("Pivot Connected");
+  public static final int ELEVATOR_CONNECTED = register("Elevator Connected");
+  public static final int INTAKE_CONNECTED = register("Intake Connected");
+  public static final int GYROSCOPE = register("Gyroscope");
   public static final String CAM_PREFIX = "Cam";
-  public static final String LAUNCHPAD = "Launchpad";
-  public static final String DRIVER_CAM = "Driver Cam";
-
-  // Sort in order of priority, from highest to lowest
-  /** All systems that the StatusPage reports */
-  public static final String[] ALL_SYSTEMS = {
-    AUTOS,
-    AUTO_CHOSEN,
-    DRIVE_CONTROLLER,
-    OPERATOR_CONTROLLER,
-    SHOOTER_CONNECTED,
-    ALL_AUTO_QUESTIONS,
-    PIVOT_CONNECTED,
-    ELEVATOR_CONNECTED,
-    INTAKE_CONNECTED,
-    GYROSCOPE,
-    CAM_PREFIX + "0",
-    CAM_PREFIX + "1",
-    BATTERY,
-    IDEAL_BATTERY,
-    NETWORK_TABLES,
-    SMODULE_PREFIX + "0",
-    SMODULE_PREFIX + "1",
-    SMODULE_PREFIX + "2",
-    SMODULE_PREFIX + "3",
-    ROBOT_CODE,
-    SUPERSTRUCTURE_SUBSYSTEM,
-    DRIVE_SUBSYSTEM,
-    INTAKE_SUBSYSTEM,
-    VISION_SUBSYSTEM,
-    SHOOTER_SUBSYSTEM,
-    DRIVER_CAM,
-    DRIVER_STATION,
-    FMS,
-    BROWNOUT,
-    PDP_BREAKERS,
-    CAN_WARNING,
-    PDP_HARDWARE,
-    LAUNCHPAD,
-    LIGHTS_SUBSYSTEM,
-    NOT_ESTOPPED,
-  };
-
-  private StatusPage() {
-    // Start with all systems down
-    for (String system : ALL_SYSTEMS) {
-      GenericEntry entry = getEntry(system);
-      entry.setBoolean(false);
-    }
-  }
+  public static final int CAM_0 = register(CAM_PREFIX + "0");
+  public static final int CAM_1 = register(CAM_PREFIX + "1");
+  public static final int BATTERY = register("Battery");
+  public static final int IDEAL_BATTERY = register("Ideal Battery");
+  public static final int NETWORK_TABLES = register("Network Tables");
+  public static final String SMODULE_PREFIX = "SModule";
+  public static final int SMODULE_0 = register(SMODULE_PREFIX + "0");
+  public static final int SMODULE_1 = register(SMODULE_PREFIX + "1");
+  public static final int SMODULE_2 = register(SMODULE_PREFIX + "2");
+  public static final int SMODULE_3 = register(SMODULE_PREFIX + "3");
+  public static final int ROBOT_CODE = register("Robot Code");
+  public static final int SUPERSTRUCTURE_SUBSYSTEM = register("Superstructure Subsystem");
+  public static final int DRIVE_SUBSYSTEM = register("Drive Subsystem");
+  public static final int INTAKE_SUBSYSTEM = register("Intake Subsystem");
+  public static final int VISION_SUBSYSTEM = register("Vision Subsystem");
+  public static final int SHOOTER_SUBSYSTEM = register("Shooter Subsystem");
+  public static final int DRIVER_CAM = register("Driver Cam");
+  public static final int DRIVER_STATION = register("Driver Station");
+  public static final int FMS = register("FMS");
+  public static final int BROWNOUT = register("Brownout");
+  public static final int PDP_BREAKERS = register("PDP Breakers");
+  public static final int CAN_WARNING = register("CAN Warning");
+  public static final int PDP_HARDWARE = register("PDP Hardware");
+  public static final int LAUNCHPAD = register("Launchpad");
+  public static final int LIGHTS_SUBSYSTEM = register("Lights Subsystem");
+  public static final int NOT_ESTOPPED = register("Not EStopped");
 
-  private static StatusPage instance = new StatusPage();
+  private StatusPage() {}
 
   /**
-   * Get the singleton instance of the StatusPage. This shouldn't be necessary as most methods work
-   * on the singleton anyways
+   * Registers a system, starting it as down. Registering a name that is already registered returns
+   * the same ID.
+   *
+   * @param name The name of the system
+   * @return The ID of the system, used to report its status
+   * @throws IllegalStateException If there are already {@link #MAX_SYSTEMS} systems
    */
-  public static StatusPage getInstance() {
-    return instance;
+  public static int register(String name) {
+    synchronized (ids) {
+      final Integer existing = ids.get(name);
+      if (existing != null) {
+        return existing;
+      }
+      if (systemCount == MAX_SYSTEMS) {
+        throw new IllegalStateException("Too many systems on the status page to add " + name);
+      }
+      final int id = systemCount;
+      names[id] = name;
+      ids.put(name, id);
+      systemCount = id + 1;
+      return id;
+    }
   }
 
   /**
-   * Report the status of a system
+   * Report the status of a system. Safe to call from any thread
    *
-   * @param system The system to report. One of the static constants provided by this class should
-   *     be used
+   * @param system The ID of the system to report. One of the static constants provided by this
+   *     class or an ID from {@link #register} should be used
    * @param status The status of the system to set. True represents a working system
    */
-  public static void reportStatus(String system, boolean status) {
-    StatusPage instance = getInstance();
-    GenericEntry entry = instance.getEntry(system);
-    entry.setBoolean(status);
+  public static void reportStatus(int system, boolean status) {
+    final long mask = 1L << system;
+    long previous;
+    long next;
+    do {
+      previous = statuses.get();
+      next = status ? previous | mask : previous & ~mask;
+      if (next == previous) {
+        return;
+      }
+    } while (!statuses.compareAndSet(previous, next));
   }
 
   /**
-   * Get the current status of a system from NetworkTables
+   * Get the current status of a system
    *
-   * @param system The system to check. Should be one of the system constants
+   * @param system The ID of the system to check
    * @return Whether the system is up or down
    */
-  public static boolean getStatus(String system) {
-    StatusPage instance = getInstance();
-    GenericEntry entry = instance.getEntry(system);
-    return entry.getBoolean(false);
+  public static boolean getStatus(int system) {
+    return (statuses.get() & (1L << system)) != 0;
+  }
+
+  /**
+   * Gets the status of every system at once
+   *
+   * @return The statuses, with the bit at each system's ID set if it is up
+   */
+  public static long getStatuses() {
+    return statuses.get();
+  }
+
+  /**
+   * Gets the number of registered systems
+   *
+   * @return The number of systems, which is one more than the highest ID
+   */
+  public static int getSystemCount() {
+    return systemCount;
   }
 
   /**
-   * Periodic method to run from the robot base to report common statuses
+   * Publishes the statuses if they have changed since they were last published. Should be called
+   * from the main loop in robotPeriodic.
+   */
+  public static void publish() {
+    final int count = systemCount;
+    if (count != publishedCount) {
+      final String[] registered;
+      synchronized (ids) {
+        registered = Arrays.copyOf(names, count);
+      }
+      final var tab = Shuffleboard.getTab("Status");
+      for (int i = publishedCount; i < count; i++) {
+        entries[i] = tab.add(registered[i], (publishedStatuses & (1L << i)) != 0).getEntry();
+      }
+      namesPublisher.set(registered);
+      publishedCount = count;
+    }
+
+    final long current = statuses.get();
+    final long changed = current ^ publishedStatuses;
+    if (changed == 0) {
+      return;
+    }
+    for (int i = 0; i < publishedCount; i++) {
+      if ((changed & (1L << i)) != 0) {
+        entries[i].setBoolean((current & (1L << i)) != 0);
+      }
+    }
+    statusesPublisher.set(current);
+    publishedStatuses = current;
+  }
+
+  /**
+   * Starts reporting the common statuses on a background thread at a slow rate, so that the main
+   * loop doesn't wait on the PDP and driver station. The PDP is read by the {@link DeviceSampler}.
    *
    * @param pdp The PowerDistribution panel
    */
-  public static void periodic(PowerDistribution pdp) {
+  public static void startPeriodic(PowerDistribution pdp) {
+    if (periodicExecutor != null) {
+      return;
+    }
+    powerReadings =
+        DeviceSampler.getInstance()
+            .sample(
+                "PDP",
+                () ->
+                    new PowerReadings(
+                        pdp.getVoltage(),
+                        pdp.getTotalCurrent(),
+                        pdp.getTemperature(),
+                        pdp.getFaults()),
+                PDP_RATE);
+    periodicExecutor =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              final Thread thread = new Thread(runnable, "Status Page");
+              thread.setDaemon(true);
+              thread.setPriority(Thread.MIN_PRIORITY);
+              return thread;
+            });
+    periodicExecutor.scheduleAtFixedRate(
+        StatusPage::periodicSafely, 0, (long) (PERIODIC_PERIOD * 1e6), TimeUnit.MICROSECONDS);
+  }
+
+  /** Runs the periodic method, reporting errors instead of stopping the background thread */
+  private static void periodicSafely() {
+    try {
+      periodic();
+    } catch (RuntimeException exception) {
+      DriverStation.reportError("Status page failed: " + exception, exception.getStackTrace());
+    }
+  }
+
+  /**
+   * Periodic method to report common statuses. Runs on the background thread started by {@link
+   * #startPeriodic}
+   */
+  public static void periodic() {
     // Connection of main robot systems
     StatusPage.reportStatus(
         StatusPage.NETWORK_TABLES, NetworkTableInstance.getDefault().isConnected());
-    StatusPage.reportStatus(StatusPage.DRIVER_STATION, DriverStation.isDSAttached());
-    StatusPage.reportStatus(StatusPage.FMS, DriverStation.isFMSAttached());
+    final LoopContext context = LoopContext.get();
+    StatusPage.reportStatus(StatusPage.DRIVER_STATION, context.isDSAttached());
+    StatusPage.reportStatus(StatusPage.FMS, context.isFMSAttached());
 
     // Power
-    StatusPage.reportStatus(StatusPage.BATTERY, pdp.getVoltage() > 11.9);
-    StatusPage.reportStatus(StatusPage.IDEAL_BATTERY, pdp.getVoltage() > 12.4);
     StatusPage.reportStatus(StatusPage.BROWNOUT, !HAL.getBrownedOut());
 
     // Controllers
-    StatusPage.reportStatus(
-        StatusPage.DRIVE_CONTROLLER,
-        DriverStation.isJoystickConnected(0) && DriverStation.getJoystickIsXbox(0));
-    StatusPage.reportStatus(
-        StatusPage.OPERATOR_CONTROLLER,
-        DriverStation.isJoystickConnected(1) && DriverStation.getJoystickIsXbox(1));
-    StatusPage.reportStatus(StatusPage.NOT_ESTOPPED, !DriverStation.isEStopped());
+    StatusPage.reportStatus(StatusPage.DRIVE_CONTROLLER, DriverStation.isJoystickConnected(0));
+    StatusPage.reportStatus(StatusPage.OPERATOR_CONTROLLER, DriverStation.isJoystickConnected(1));
+    StatusPage.reportStatus(StatusPage.NOT_ESTOPPED, !context.isEStopped());
 
-    // PDP
-    final PowerDistributionFaults pdpFaults = pdp.getFaults();
-    StatusPage.reportStatus(StatusPage.PDP_HARDWARE, !pdpFaults.HardwareFault);
+    // PDP, if it has been read
+    final Optional<Sample<PowerReadings>> power = powerReadings.get();
+    if (power.isPresent()) {
+      final PowerReadings readings = power.get().value();
+      StatusPage.reportStatus(StatusPage.BATTERY, readings.voltage() > 11.9);
+      StatusPage.reportStatus(StatusPage.IDEAL_BATTERY, readings.voltage() > 12.4);
+      StatusPage.reportStatus(StatusPage.PDP_HARDWARE, !readings.faults().HardwareFault);
 
-    // Robot information
-    SmartDashboard.putNumber("System/Battery Voltage", pdp.getVoltage());
-    SmartDashboard.putNumber("System/PDP Current", pdp.getTotalCurrent());
-    SmartDashboard.putNumber("System/PDP Temperature", pdp.getTemperature());
+      // Robot information
+      SmartDashboard.putNumber("System/Battery Voltage", readings.voltage());
+      SmartDashboard.putNumber("System/PDP Current", readings.totalCurrent());
+      SmartDashboard.putNumber("System/PDP Temperature", readings.temperature());
+      SmartDashboard.putNumber("System/PDP Reading Age", power.get().getAge());
+    }
 
     // Report metadata
     StatusPage.reportMetadata();
@@ -225,13 +348,7 @@ public class StatusPage {
     hasBeenStarted = true;
   }
 
-  /**
-   * Gets the entry for a status
-   *
-   * @param system The name of the system
-   * @return The system's entry, created if it does not exist
-   */
-  private GenericEntry getEntry(String system) {
-    return entries.computeIfAbsent(system, k -> tab.add(system, false).getEntry());
-  }
+  /** Readings from the PDP */
+  private static record PowerReadings(
+      double voltage, double totalCurrent, double temperature, PowerDistributionFaults faults) {}
 }
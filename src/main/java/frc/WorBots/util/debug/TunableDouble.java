@@ -8,17 +8,35 @@
 package frc.WorBots.util.debug;
 
 import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableEvent;
 import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.NetworkTableListenerPoller;
 import frc.WorBots.Constants;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Simple utility that allows you to have a double value that is modifiable at runtime using the
  * dashboard.
+ *
+ * <p>All tunables share one NetworkTables listener, which is polled once per loop by {@link
+ * #pollChanges()}. Only the tunables that were changed on the dashboard are updated, so reading a
+ * tunable is just a field load. Tuning can be compiled out with {@link Constants#ENABLE_TUNING}.
  */
 public class TunableDouble {
-  // Set this to false to disable tuning and improve performance.
-  // All tunables will just use their default value
-  private static final boolean ENABLE_TUNING = !Constants.IS_COMP && true;
+  /** Listener for remote changes to every tunable */
+  private static NetworkTableListenerPoller poller = null;
+
+  /** The tunables, by the handle of their NT topic. More than one tunable can share a topic */
+  private static final Map<Integer, List<TunableDouble>> tunables = new HashMap<>();
+
+  /** The NT subtables that the poller is listening to */
+  private static final Set<String> listenedPrefixes = new HashSet<>();
 
   private double value;
   // We have to keep this around since we need to supply a default
@@ -26,6 +44,9 @@ public class TunableDouble {
   private double defaultValue;
   private NetworkTableEntry entry;
 
+  /** Incremented every time the value changes */
+  private int version = 0;
+
   /**
    * Creates a new TunableDouble with a name and the value set to 0.0
    *
@@ -49,36 +70,66 @@ public class TunableDouble {
   public TunableDouble(String table, String subtable, String name, double defaultValue) {
     value = defaultValue;
     this.defaultValue = defaultValue;
-    if (ENABLE_TUNING) {
-      entry =
-          NetworkTableInstance.getDefault().getTable(table).getSubTable(subtable).getEntry(name);
+    if (Constants.ENABLE_TUNING) {
+      final NetworkTableInstance instance = NetworkTableInstance.getDefault();
+      entry = instance.getTable(table).getSubTable(subtable).getEntry(name);
       this.set(defaultValue);
+      synchronized (tunables) {
+        if (poller == null) {
+          poller = new NetworkTableListenerPoller(instance);
+        }
+        // Only listen to the tunables' subtables so that other values don't fill the queue
+        final String prefix = "/" + table + "/" + subtable + "/";
+        if (listenedPrefixes.add(prefix)) {
+          poller.addListener(
+              new String[] {prefix}, EnumSet.of(NetworkTableEvent.Kind.kValueRemote));
+        }
+        tunables.computeIfAbsent(entry.getTopic().getHandle(), k -> new ArrayList<>()).add(this);
+      }
     }
   }
 
-  /** Update the value to the latest version and log that value */
-  public void update() {
-    if (ENABLE_TUNING) {
-      value = entry.getDouble(defaultValue);
-    } else {
-      value = defaultValue;
+  /**
+   * Applies the changes that were made to tunables on the dashboard since the last poll. Should be
+   * called once per loop in robotPeriodic.
+   */
+  public static void pollChanges() {
+    if (Constants.ENABLE_TUNING) {
+      synchronized (tunables) {
+        if (poller == null) {
+          return;
+        }
+        for (NetworkTableEvent event : poller.readQueue()) {
+          if (event.valueData == null) {
+            continue;
+          }
+          final List<TunableDouble> topicTunables =
+              tunables.get(event.valueData.topic.getHandle());
+          if (topicTunables == null) {
+            continue;
+          }
+          for (TunableDouble tunable : topicTunables) {
+            tunable.value = tunable.entry.getDouble(tunable.defaultValue);
+            tunable.version++;
+          }
+        }
+      }
     }
   }
 
   /**
-   * Update the current value and then get it.
+   * Get the current value. Changes from the dashboard are applied once per loop.
    *
-   * @return The latest updated value from NetworkTables
+   * @return The latest value from NetworkTables
    */
   public double get() {
-    update();
     return value;
   }
 
   /**
-   * Get the current value without updating
+   * Get the current value. Same as {@link #get()}
    *
-   * @return The value from the last update
+   * @return The latest value from NetworkTables
    */
   public double getCurrent() {
     return value;
@@ -91,7 +142,11 @@ public class TunableDouble {
    */
   public void set(double value) {
     defaultValue = value;
-    if (ENABLE_TUNING) {
+    if (this.value != value) {
+      this.value = value;
+      version++;
+    }
+    if (Constants.ENABLE_TUNING) {
       entry.setDouble(value);
     }
   }
@@ -104,4 +159,14 @@ public class TunableDouble {
   public double getDefault() {
     return defaultValue;
   }
+
+  /**
+   * Gets the version of the value, which changes every time the value does. Used to only apply
+   * values when they change.
+   *
+   * @return The version
+   */
+  public int getVersion() {
+    return version;
+  }
 }
@@ -14,11 +14,14 @@ import frc.WorBots.Constants;
 
 /**
  * A PIDController that can be tuned by the dashboard. It will hold a TunablePIDGains object and
- * updates gains to the PID every time it updates.
+ * updates gains to the PID when they have changed.
  */
 public class TunablePIDController {
   private TunablePIDGains gains;
 
+  /** The version of the gains that were last applied to the PID */
+  private int appliedVersion = -1;
+
   /**
    * The PIDController that is used. This can be safely accessed to run methods on it, however, you
    * should use the update method of the tunable controller to ensure gains are updated
@@ -52,8 +55,13 @@ public class TunablePIDController {
             gains.kP.getDefault(), gains.kI.getDefault(), gains.kD.getDefault(), gains.period);
   }
 
-  /** Update gains to the latest tuned value */
+  /** Update gains to the latest tuned value, if they have changed */
   public void update() {
+    final int version = this.gains.getVersion();
+    if (version == appliedVersion) {
+      return;
+    }
+    appliedVersion = version;
     final double kP = this.gains.kP.get();
     final double kD = this.gains.kD.get();
     final double kI = this.gains.kI.get();
@@ -67,6 +75,7 @@ public class TunablePIDController {
    */
   public void setGains(TunablePIDGains gains) {
     this.gains = gains;
+    this.appliedVersion = -1;
     this.update();
   }
 
@@ -142,6 +151,15 @@ public class TunablePIDController {
       this.kD.set(kD);
       this.kI.set(kI);
     }
+
+    /**
+     * Gets the version of the gains, which changes every time one of them does
+     *
+     * @return The version
+     */
+    public int getVersion() {
+      return kP.getVersion() + kD.getVersion() + kI.getVersion();
+    }
   }
 
   public static class TunableProfiledPIDController {
@@ -149,6 +167,11 @@ public class TunablePIDController {
     private TunableTrapezoidConstraints constraints;
     public ProfiledPIDController pid;
 
+    /** The versions of the gains and constraints that were last applied to the PID */
+    private int appliedGainsVersion = -1;
+
+    private int appliedConstraintsVersion = -1;
+
     /**
      * Initialize controller with gains
      *
@@ -194,14 +217,22 @@ public class TunablePIDController {
               this.gains.period);
     }
 
-    /** Update gains and constraints to the latest tuned value */
+    /** Update gains and constraints to the latest tuned value, if they have changed */
     public void update() {
-      final double kP = this.gains.kP.get();
-      final double kD = this.gains.kD.get();
-      final double kI = this.gains.kI.get();
-      pid.setPID(kP, kI, kD);
-      final Constraints constraints = this.constraints.makeConstraints();
-      pid.setConstraints(constraints);
+      final int gainsVersion = this.gains.getVersion();
+      if (gainsVersion != appliedGainsVersion) {
+        appliedGainsVersion = gainsVersion;
+        final double kP = this.gains.kP.get();
+        final double kD = this.gains.kD.get();
+        final double kI = this.gains.kI.get();
+        pid.setPID(kP, kI, kD);
+      }
+      final int constraintsVersion = this.constraints.getVersion();
+      if (constraintsVersion != appliedConstraintsVersion) {
+        appliedConstraintsVersion = constraintsVersion;
+        final Constraints constraints = this.constraints.makeConstraints();
+        pid.setConstraints(constraints);
+      }
     }
 
     /**
@@ -211,6 +242,7 @@ public class TunablePIDController {
      */
     public void setGains(TunablePIDGains gains) {
       this.gains = gains;
+      this.appliedGainsVersion = -1;
       this.update();
     }
 
@@ -233,6 +265,7 @@ public class TunablePIDController {
      */
     public void setConstraints(TunableTrapezoidConstraints constraints) {
       this.constraints = constraints;
+      this.appliedConstraintsVersion = -1;
       this.update();
     }
 
@@ -296,5 +329,14 @@ public class TunablePIDController {
     public Constraints makeConstraints() {
       return new Constraints(maxVelocity.get(), maxAcceleration.get());
     }
+
+    /**
+     * Gets the version of the constraints, which changes every time one of them does
+     *
+     * @return The version
+     */
+    public int getVersion() {
+      return maxVelocity.getVersion() + maxAcceleration.getVersion();
+    }
   }
 }
@@ -11,9 +11,9 @@ import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.trajectory.Trajectory;
-import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.DriverStation.Alliance;
 import frc.WorBots.FieldConstants;
+import frc.WorBots.util.LoopContext;
 import frc.WorBots.util.trajectory.RotationSequence;
 
 /**
@@ -167,7 +167,7 @@ public class AllianceFlipUtil {
 
   /** Gets whether alliance-relative x-values should be flipped, for the red side */
   public static boolean shouldFlip() {
-    final var alliance = DriverStation.getAlliance();
+    final var alliance = LoopContext.get().getAlliance();
     return alliance.isPresent() && alliance.get() == Alliance.Red;
   }
 }
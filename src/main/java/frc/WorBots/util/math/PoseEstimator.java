@@ -12,11 +12,11 @@ import edu.wpi.first.math.Matrix;
 import edu.wpi.first.math.Nat;
 import edu.wpi.first.math.VecBuilder;
 import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Twist2d;
 import edu.wpi.first.math.numbers.N1;
 import edu.wpi.first.math.numbers.N3;
 import edu.wpi.first.math.util.Units;
-import edu.wpi.first.wpilibj.Timer;
 import frc.WorBots.Constants;
 import frc.WorBots.FieldConstants;
 import java.util.ArrayList;
@@ -30,6 +30,11 @@ import java.util.TreeMap;
  * A class to estimate the absolute position and rotation of the robot on the field using a
  * combination of robot odometry and vision data. Used for both real operation and simulation.
  *
+ * <p>Two engines are available and are selected at construction. The steady-state engine applies
+ * vision with a fixed gain calculated from the state and vision standard deviations. The extended
+ * Kalman engine calculates its gain from the covariance of the estimate instead. Both engines track
+ * the covariance, which grows with distance driven and wheel slip and shrinks with vision updates.
+ *
  * <p>Modified from team 6328.
  */
 public class PoseEstimator {
@@ -42,22 +47,66 @@ public class PoseEstimator {
   /** The amount of anti-jitter to apply. Lower values increase the effect. */
   private static final double ANTI_JITTER_FACTOR = 0.20;
 
+  /** Translational process noise added per meter driven, in meters */
+  private static final double TRANSLATION_NOISE_PER_METER = 0.02;
+
+  /** Rotational process noise added per radian turned, in radians */
+  private static final double ROTATION_NOISE_PER_RADIAN = 0.01;
+
+  /** Translational process noise added per meter of measured wheel slip, in meters */
+  private static final double SLIP_NOISE_GAIN = 1.0;
+
+  /** The standard deviations of the estimate after a pose reset, in meters and radians */
+  private static final double[] RESET_STD_DEVS = new double[] {0.01, 0.01, 0.005};
+
+  /** The different estimation engines that can be used */
+  public enum EstimatorType {
+    /** Fixed steady-state gain calculated from the standard deviations */
+    STEADY_STATE,
+    /** Extended Kalman filter with covariance tracking */
+    EXTENDED_KALMAN,
+  }
+
+  private final EstimatorType type;
   private Pose2d basePose = new Pose2d();
   private Pose2d latestPose = new Pose2d();
   private final NavigableMap<Double, PoseUpdate> updates = new TreeMap<>();
   private final Matrix<N3, N1> q = new Matrix<>(Nat.N3(), Nat.N1());
 
+  /** Row-major 3x3 covariance of the base pose */
+  private final double[] baseCovariance = new double[9];
+
+  /** Row-major 3x3 covariance of the latest pose */
+  private final double[] latestCovariance = new double[9];
+
+  /** Scratch matrices for the Kalman engine's vision corrections, reused between updates */
+  private final KalmanWorkspace workspace = new KalmanWorkspace();
+
   private boolean enableVisionUpdates = true;
 
   /**
-   * Create a PoseEstimator with standard deviation noise
+   * Create a steady-state PoseEstimator with standard deviation noise
    *
    * @param stateStdDevs A matrix of the standard deviation parameters
    */
   public PoseEstimator(Matrix<N3, N1> stateStdDevs) {
+    this(stateStdDevs, EstimatorType.STEADY_STATE);
+  }
+
+  /**
+   * Create a PoseEstimator with standard deviation noise and an estimation engine
+   *
+   * @param stateStdDevs A matrix of the standard deviation parameters. For the Kalman engine these
+   *     are the base process noise applied on every drive update.
+   * @param type The estimation engine to use
+   */
+  public PoseEstimator(Matrix<N3, N1> stateStdDevs, EstimatorType type) {
+    this.type = type;
     for (int i = 0; i < 3; ++i) {
       q.set(i, 0, stateStdDevs.get(i, 0) * stateStdDevs.get(i, 0));
     }
+    resetCovariance(baseCovariance);
+    System.arraycopy(baseCovariance, 0, latestCovariance, 0, 9);
   }
 
   /**
@@ -69,6 +118,39 @@ public class PoseEstimator {
     return latestPose;
   }
 
+  /**
+   * Gets the estimation engine this estimator was created with
+   *
+   * @return The engine type
+   */
+  public EstimatorType getType() {
+    return type;
+  }
+
+  /**
+   * Returns the covariance of the latest pose. For the steady-state engine this is the covariance
+   * that results from its fixed gain.
+   *
+   * @return The 3x3 covariance of x, y, and theta
+   */
+  public Matrix<N3, N3> getLatestCovariance() {
+    return getLatestCovariance(new Matrix<>(Nat.N3(), Nat.N3()));
+  }
+
+  /**
+   * Copies the covariance of the latest pose into an existing matrix, so that it can be read every
+   * loop without allocating
+   *
+   * @param out The matrix to fill
+   * @return The filled matrix
+   */
+  public Matrix<N3, N3> getLatestCovariance(Matrix<N3, N3> out) {
+    for (int i = 0; i < 9; i++) {
+      out.set(i / 3, i % 3, latestCovariance[i]);
+    }
+    return out;
+  }
+
   /**
    * Resets the odometry to a known pose.
    *
@@ -76,6 +158,7 @@ public class PoseEstimator {
    */
   public void resetPose(Pose2d pose) {
     basePose = pose;
+    resetCovariance(baseCovariance);
     updates.clear();
     update();
   }
@@ -92,7 +175,19 @@ public class PoseEstimator {
    * @param twist The twist of the robot that represents the movement
    */
   public void addDriveData(double timestamp, Twist2d twist) {
-    updates.put(timestamp, new PoseUpdate(twist, new ArrayList<>()));
+    addDriveData(timestamp, twist, 0.0);
+  }
+
+  /**
+   * Records a new drive movement along with how much the wheels disagreed with it.
+   *
+   * @param timestamp The timestamp in seconds where the event occurred
+   * @param twist The twist of the robot that represents the movement
+   * @param slipMeters The RMS disagreement between the wheel movements and the twist, in meters.
+   *     Used to increase the process noise of the covariance.
+   */
+  public void addDriveData(double timestamp, Twist2d twist, double slipMeters) {
+    updates.put(timestamp, new PoseUpdate(twist, new ArrayList<>(), slipMeters));
     update();
   }
 
@@ -138,9 +233,17 @@ public class PoseEstimator {
         final ArrayList<VisionUpdate> newVisionUpdates = new ArrayList<VisionUpdate>();
         newVisionUpdates.add(visionUpdate);
         newVisionUpdates.sort(VisionUpdate.compareDescStdDev);
-        updates.put(timestamp, new PoseUpdate(twist0, newVisionUpdates));
+        final double slip = nextUpdate.getValue().slipMeters();
+        updates.put(
+            timestamp,
+            new PoseUpdate(
+                twist0, newVisionUpdates, slip * (timestamp - prevUpdate.getKey()) / dt));
         updates.put(
-            nextUpdate.getKey(), new PoseUpdate(twist1, nextUpdate.getValue().visionUpdates()));
+            nextUpdate.getKey(),
+            new PoseUpdate(
+                twist1,
+                nextUpdate.getValue().visionUpdates(),
+                slip * (nextUpdate.getKey() - timestamp) / dt));
       }
     }
 
@@ -150,27 +253,63 @@ public class PoseEstimator {
 
   /** Clears old data and calculates the latest pose. */
   private void update() {
-    // Clear old data and update base pose
-    while (updates.size() > 1 && updates.firstKey() < Timer.getFPGATimestamp() - HISTORY_LENGTH) {
+    // Clear data older than the history length relative to the newest update and update base
+    // pose
+    while (updates.size() > 1 && updates.firstKey() < updates.lastKey() - HISTORY_LENGTH) {
       final Entry<Double, PoseUpdate> update = updates.pollFirstEntry();
-      basePose = update.getValue().apply(basePose, q);
+      if (type == EstimatorType.EXTENDED_KALMAN) {
+        basePose = update.getValue().applyKalman(basePose, baseCovariance, q, workspace);
+      } else {
+        basePose = update.getValue().apply(basePose, baseCovariance, q);
+      }
     }
 
     // Update latest pose
     latestPose = basePose;
-    for (Entry<Double, PoseUpdate> updateEntry : updates.entrySet()) {
-      latestPose = updateEntry.getValue().apply(latestPose, q);
+    System.arraycopy(baseCovariance, 0, latestCovariance, 0, 9);
+    if (type == EstimatorType.EXTENDED_KALMAN) {
+      for (Entry<Double, PoseUpdate> updateEntry : updates.entrySet()) {
+        latestPose = updateEntry.getValue().applyKalman(latestPose, latestCovariance, q, workspace);
+      }
+    } else {
+      for (Entry<Double, PoseUpdate> updateEntry : updates.entrySet()) {
+        latestPose = updateEntry.getValue().apply(latestPose, latestCovariance, q);
+      }
+    }
+  }
+
+  /**
+   * Resets a covariance to the initial uncertainty after a pose reset
+   *
+   * @param covariance The row-major 3x3 covariance to reset
+   */
+  private static void resetCovariance(double[] covariance) {
+    for (int i = 0; i < 9; i++) {
+      covariance[i] = 0.0;
+    }
+    for (int i = 0; i < 3; i++) {
+      covariance[i * 4] = RESET_STD_DEVS[i] * RESET_STD_DEVS[i];
     }
   }
 
   /**
-   * Represents a sequential update to a pose estimate, with a twist (drive movement) and list of
-   * vision updates.
+   * Represents a sequential update to a pose estimate, with a twist (drive movement), list of
+   * vision updates, and the amount of wheel slip measured during the movement.
    */
-  private static record PoseUpdate(Twist2d twist, ArrayList<VisionUpdate> visionUpdates) {
-    public Pose2d apply(Pose2d lastPose, Matrix<N3, N1> q) {
+  private static record PoseUpdate(
+      Twist2d twist, ArrayList<VisionUpdate> visionUpdates, double slipMeters) {
+    /**
+     * Applies this update using the steady-state gain
+     *
+     * @param lastPose The pose before this update
+     * @param p The row-major 3x3 covariance before this update. Will be modified in place.
+     * @param q The base process noise variances
+     * @return The pose after this update
+     */
+    public Pose2d apply(Pose2d lastPose, double[] p, Matrix<N3, N1> q) {
       // Apply drive twist
       Pose2d pose = lastPose.exp(twist);
+      predictCovariance(lastPose, pose, p, q);
 
       // Apply vision updates
       for (VisionUpdate visionUpdate : visionUpdates) {
@@ -213,6 +352,103 @@ public class PoseEstimator {
         pose =
             pose.exp(
                 new Twist2d(twistMatrix.get(0, 0), twistMatrix.get(1, 0), twistMatrix.get(2, 0)));
+
+        // P = (I - K) * P * (I - K)^T + K * R * K^T, which holds for any gain. The gain is
+        // diagonal, so this only scales each element.
+        final double k0 = visionK.get(0, 0) * scaleFactor;
+        final double k1 = visionK.get(1, 1) * scaleFactor;
+        final double k2 = visionK.get(2, 2);
+        for (int row = 0; row < 3; row++) {
+          final double rowScale = 1.0 - (row == 0 ? k0 : row == 1 ? k1 : k2);
+          for (int col = 0; col < 3; col++) {
+            final double colScale = 1.0 - (col == 0 ? k0 : col == 1 ? k1 : k2);
+            p[row * 3 + col] *= rowScale * colScale;
+          }
+        }
+        p[0] += k0 * k0 * r[0];
+        p[4] += k1 * k1 * r[1];
+        p[8] += k2 * k2 * r[2];
+      }
+
+      // Clamp the pose within the field bounds
+      pose = clampPose(pose);
+
+      return pose;
+    }
+
+    /**
+     * Applies this update using the extended Kalman filter
+     *
+     * @param lastPose The pose before this update
+     * @param p The row-major 3x3 covariance before this update. Will be modified in place.
+     * @param q The base process noise variances
+     * @param workspace Scratch matrices to use for the vision corrections
+     * @return The pose after this update
+     */
+    public Pose2d applyKalman(
+        Pose2d lastPose, double[] p, Matrix<N3, N1> q, KalmanWorkspace workspace) {
+      // Predict: apply drive twist
+      Pose2d pose = lastPose.exp(twist);
+      predictCovariance(lastPose, pose, p, q);
+
+      // Correct: apply vision updates with a direct pose measurement model (H = I)
+      final double[] s = workspace.s;
+      final double[] sInverse = workspace.sInverse;
+      final double[] k = workspace.k;
+      for (VisionUpdate visionUpdate : visionUpdates) {
+        // S = P + R
+        System.arraycopy(p, 0, s, 0, 9);
+        for (int i = 0; i < 3; i++) {
+          final double stdDev = visionUpdate.stdDevs().get(i, 0);
+          s[i * 4] += stdDev * stdDev;
+        }
+        if (!invert3x3(s, sInverse)) {
+          continue;
+        }
+
+        // K = P * S^-1
+        multiply3x3(p, sInverse, k);
+
+        // Scale innovations that are within a distance down to reduce jitter
+        final double innovationX = visionUpdate.pose().getX() - pose.getX();
+        final double innovationY = visionUpdate.pose().getY() - pose.getY();
+        final double innovationTheta =
+            MathUtil.angleModulus(
+                visionUpdate.pose().getRotation().getRadians() - pose.getRotation().getRadians());
+        double scaleFactor = 1.0;
+        if (Math.hypot(innovationX, innovationY) < ANTI_JITTER_THRESHOLD) {
+          scaleFactor = ANTI_JITTER_FACTOR;
+        }
+        final double yx = innovationX * scaleFactor;
+        final double yy = innovationY * scaleFactor;
+
+        pose =
+            new Pose2d(
+                pose.getX() + k[0] * yx + k[1] * yy + k[2] * innovationTheta,
+                pose.getY() + k[3] * yx + k[4] * yy + k[5] * innovationTheta,
+                new Rotation2d(
+                    pose.getRotation().getRadians()
+                        + k[6] * yx
+                        + k[7] * yy
+                        + k[8] * innovationTheta));
+
+        // P = (I - K) * P
+        final double[] ikp = s;
+        for (int row = 0; row < 3; row++) {
+          for (int col = 0; col < 3; col++) {
+            double sum = p[row * 3 + col];
+            for (int i = 0; i < 3; i++) {
+              sum -= k[row * 3 + i] * p[i * 3 + col];
+            }
+            ikp[row * 3 + col] = sum;
+          }
+        }
+        // Keep the covariance symmetric
+        for (int row = 0; row < 3; row++) {
+          for (int col = 0; col < 3; col++) {
+            p[row * 3 + col] = 0.5 * (ikp[row * 3 + col] + ikp[col * 3 + row]);
+          }
+        }
       }
 
       // Clamp the pose within the field bounds
@@ -220,6 +456,101 @@ public class PoseEstimator {
 
       return pose;
     }
+
+    /**
+     * Propagates the covariance through the drive movement of this update and adds process noise
+     *
+     * @param lastPose The pose before the movement
+     * @param pose The pose after the movement
+     * @param p The row-major 3x3 covariance. Will be modified in place.
+     * @param q The base process noise variances
+     */
+    private void predictCovariance(Pose2d lastPose, Pose2d pose, double[] p, Matrix<N3, N1> q) {
+      // Jacobian of the motion model with respect to the state. Only the heading couples into
+      // the translation, since the twist is applied in the robot frame
+      final double dxField = pose.getX() - lastPose.getX();
+      final double dyField = pose.getY() - lastPose.getY();
+
+      // P = F * P * F^T with F = [[1, 0, -dy], [0, 1, dx], [0, 0, 1]]
+      final double p00 = p[0] - dyField * (p[6] + p[2]) + dyField * dyField * p[8];
+      final double p01 = p[1] + dxField * p[2] - dyField * p[7] - dyField * dxField * p[8];
+      final double p02 = p[2] - dyField * p[8];
+      final double p11 = p[4] + dxField * (p[5] + p[7]) + dxField * dxField * p[8];
+      final double p12 = p[5] + dxField * p[8];
+      p[0] = p00;
+      p[1] = p01;
+      p[2] = p02;
+      p[3] = p01;
+      p[4] = p11;
+      p[5] = p12;
+      p[6] = p02;
+      p[7] = p12;
+
+      // Process noise grows with distance travelled and measured wheel slip
+      final double distance = Math.hypot(twist.dx, twist.dy);
+      final double translationStdDev =
+          TRANSLATION_NOISE_PER_METER * distance + SLIP_NOISE_GAIN * slipMeters;
+      final double rotationStdDev = ROTATION_NOISE_PER_RADIAN * Math.abs(twist.dtheta);
+      p[0] += q.get(0, 0) + translationStdDev * translationStdDev;
+      p[4] += q.get(1, 0) + translationStdDev * translationStdDev;
+      p[8] += q.get(2, 0) + rotationStdDev * rotationStdDev;
+    }
+  }
+
+  /** Row-major 3x3 scratch matrices for the Kalman engine, so that updates don't allocate */
+  private static class KalmanWorkspace {
+    /** The innovation covariance */
+    private final double[] s = new double[9];
+
+    /** The inverse of the innovation covariance */
+    private final double[] sInverse = new double[9];
+
+    /** The Kalman gain */
+    private final double[] k = new double[9];
+  }
+
+  /**
+   * Multiplies two row-major 3x3 matrices
+   *
+   * @param a The left matrix
+   * @param b The right matrix
+   * @param out The output matrix. Must not be the same array as either input.
+   */
+  private static void multiply3x3(double[] a, double[] b, double[] out) {
+    for (int row = 0; row < 3; row++) {
+      for (int col = 0; col < 3; col++) {
+        out[row * 3 + col] =
+            a[row * 3] * b[col] + a[row * 3 + 1] * b[3 + col] + a[row * 3 + 2] * b[6 + col];
+      }
+    }
+  }
+
+  /**
+   * Inverts a row-major 3x3 matrix
+   *
+   * @param m The matrix to invert
+   * @param out The output matrix. Must not be the same array as the input.
+   * @return False if the matrix is singular and could not be inverted
+   */
+  private static boolean invert3x3(double[] m, double[] out) {
+    final double c00 = m[4] * m[8] - m[5] * m[7];
+    final double c01 = m[5] * m[6] - m[3] * m[8];
+    final double c02 = m[3] * m[7] - m[4] * m[6];
+    final double det = m[0] * c00 + m[1] * c01 + m[2] * c02;
+    if (Math.abs(det) < 1e-18) {
+      return false;
+    }
+    final double invDet = 1.0 / det;
+    out[0] = c00 * invDet;
+    out[1] = (m[2] * m[7] - m[1] * m[8]) * invDet;
+    out[2] = (m[1] * m[5] - m[2] * m[4]) * invDet;
+    out[3] = c01 * invDet;
+    out[4] = (m[0] * m[8] - m[2] * m[6]) * invDet;
+    out[5] = (m[2] * m[3] - m[0] * m[5]) * invDet;
+    out[6] = c02 * invDet;
+    out[7] = (m[1] * m[6] - m[0] * m[7]) * invDet;
+    out[8] = (m[0] * m[4] - m[1] * m[3]) * invDet;
+    return true;
   }
 
   /** Represents a single vision pose with associated standard deviations. */
@@ -0,0 +1,173 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.util.math;
+
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import edu.wpi.first.math.util.Units;
+import frc.WorBots.Constants;
+import frc.WorBots.util.math.PoseEstimator.EstimatorType;
+import frc.WorBots.util.math.PoseEstimator.TimestampedVisionUpdate;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the CPU cost and accuracy of the pose estimator engines on a deterministic synthetic
+ * drive. Odometry is corrupted with noise and slip bursts, and vision is delivered late and noisy,
+ * with a window where vision is disabled like during note alignment.
+ */
+public class PoseEstimatorBenchmark {
+  /** The length of the simulated drive in seconds */
+  private static final double DURATION = 20.0;
+
+  /** The rate at which vision frames arrive, in Hz */
+  private static final double VISION_RATE = 30.0;
+
+  /** The latency of vision frames, in seconds */
+  private static final double VISION_LATENCY = 0.05;
+
+  /** The standard deviation of vision translation noise, in meters */
+  private static final double VISION_XY_NOISE = 0.03;
+
+  /** The standard deviation of vision rotation noise, in radians */
+  private static final double VISION_THETA_NOISE = Units.degreesToRadians(1.0);
+
+  /** The time window in which vision updates are disabled, in seconds */
+  private static final double[] VISION_DISABLED_WINDOW = new double[] {8.0, 12.0};
+
+  /** The time window in which the wheels slip, in seconds */
+  private static final double[] SLIP_WINDOW = new double[] {5.0, 6.0};
+
+  /** Results of benchmarking one engine */
+  public static record Result(
+      EstimatorType type, double averageMicros, double rmsErrorMeters, double maxErrorMeters) {
+    @Override
+    public String toString() {
+      return String.format(
+          "%s: %.2f us/update, RMS error %.4f m, max error %.4f m",
+          type, averageMicros, rmsErrorMeters, maxErrorMeters);
+    }
+  }
+
+  /**
+   * Runs the benchmark on every engine and prints the results
+   *
+   * @return The results for each engine
+   */
+  public static Result[] run() {
+    final EstimatorType[] types = EstimatorType.values();
+    final Result[] results = new Result[types.length];
+    for (int i = 0; i < types.length; i++) {
+      // Run once to warm up the JIT before measuring
+      runEngine(types[i]);
+      results[i] = runEngine(types[i]);
+      System.out.println("Pose estimator benchmark " + results[i]);
+    }
+    return results;
+  }
+
+  /**
+   * Runs the synthetic drive through a single engine
+   *
+   * @param type The engine to benchmark
+   * @return The results
+   */
+  private static Result runEngine(EstimatorType type) {
+    final Random random = new Random(4145);
+    final PoseEstimator estimator =
+        new PoseEstimator(VecBuilder.fill(0.003, 0.003, 0.0002), type);
+    final Pose2d startPose = new Pose2d(3.0, 4.0, new Rotation2d());
+    estimator.resetPose(startPose);
+
+    // Truth poses are kept so that late vision frames can be generated from the past
+    final PoseHistory truthHistory = new PoseHistory(1.0, Constants.ROBOT_PERIOD);
+    Pose2d truePose = startPose;
+    final double dt = Constants.ROBOT_PERIOD;
+    double nextVisionTime = VISION_LATENCY;
+    long totalNanos = 0;
+    int updateCount = 0;
+    double sumSquaredError = 0.0;
+    double maxError = 0.0;
+    int samples = 0;
+
+    for (double time = dt; time <= DURATION; time += dt) {
+      // Figure eight with a slowly rotating heading
+      final double vx = 1.5 * Math.cos(time * 0.6);
+      final double vy = 1.5 * Math.sin(time * 1.2);
+      final double omega = 0.8 * Math.sin(time * 0.4);
+      final Twist2d fieldTwist = new Twist2d(vx * dt, vy * dt, omega * dt);
+      final Twist2d trueTwist =
+          new Twist2d(
+              fieldTwist.dx * truePose.getRotation().getCos()
+                  + fieldTwist.dy * truePose.getRotation().getSin(),
+              -fieldTwist.dx * truePose.getRotation().getSin()
+                  + fieldTwist.dy * truePose.getRotation().getCos(),
+              fieldTwist.dtheta);
+      truePose = truePose.exp(trueTwist);
+      truthHistory.addSample(time, truePose, new Twist2d(vx, vy, omega));
+
+      // Corrupt odometry
+      final boolean slipping = time >= SLIP_WINDOW[0] && time <= SLIP_WINDOW[1];
+      final double slipScale = slipping ? 1.25 : 1.0;
+      final double slipMeters =
+          slipping ? 0.25 * Math.hypot(trueTwist.dx, trueTwist.dy) : 0.0002 * random.nextDouble();
+      final Twist2d measuredTwist =
+          new Twist2d(
+              trueTwist.dx * slipScale + random.nextGaussian() * 0.0005,
+              trueTwist.dy * slipScale + random.nextGaussian() * 0.0005,
+              trueTwist.dtheta + random.nextGaussian() * 0.0002);
+
+      long start = System.nanoTime();
+      estimator.addDriveData(time, measuredTwist, slipMeters);
+      totalNanos += System.nanoTime() - start;
+      updateCount++;
+
+      // Deliver late vision frames
+      final boolean visionEnabled =
+          time < VISION_DISABLED_WINDOW[0] || time > VISION_DISABLED_WINDOW[1];
+      estimator.enableVisionUpdates(visionEnabled);
+      if (time >= nextVisionTime) {
+        final double captureTime = time - VISION_LATENCY;
+        final Pose2d capturedPose = truthHistory.getPoseAt(captureTime);
+        final Pose2d visionPose =
+            new Pose2d(
+                capturedPose.getX() + random.nextGaussian() * VISION_XY_NOISE,
+                capturedPose.getY() + random.nextGaussian() * VISION_XY_NOISE,
+                capturedPose
+                    .getRotation()
+                    .plus(new Rotation2d(random.nextGaussian() * VISION_THETA_NOISE)));
+        final List<TimestampedVisionUpdate> updates =
+            List.of(
+                new TimestampedVisionUpdate(
+                    captureTime,
+                    visionPose,
+                    VecBuilder.fill(VISION_XY_NOISE, VISION_XY_NOISE, VISION_THETA_NOISE)));
+        start = System.nanoTime();
+        estimator.addVisionData(updates);
+        totalNanos += System.nanoTime() - start;
+        updateCount++;
+        nextVisionTime += 1.0 / VISION_RATE;
+      }
+
+      // Record error
+      final double error =
+          estimator.getLatestPose().getTranslation().getDistance(truePose.getTranslation());
+      sumSquaredError += error * error;
+      maxError = Math.max(maxError, error);
+      samples++;
+    }
+
+    return new Result(
+        type,
+        totalNanos / 1000.0 / updateCount,
+        Math.sqrt(sumSquaredError / samples),
+        maxError);
+  }
+}
@@ -0,0 +1,229 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.util.math;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Twist2d;
+
+/**
+ * A fixed-size ring buffer of timestamped robot poses and field velocities. Samples are stored in
+ * primitive arrays so that recording a new sample never allocates. Queries binary search for the
+ * surrounding samples and linearly interpolate between them, which lets consumers find where the
+ * robot was when a sensor reading was actually taken.
+ */
+public class PoseHistory {
+  private final int capacity;
+  private final double[] timestamps;
+  private final double[] x;
+  private final double[] y;
+  private final double[] theta;
+  private final double[] vx;
+  private final double[] vy;
+  private final double[] omega;
+
+  /** The index of the oldest sample in the buffer */
+  private int head = 0;
+
+  /** The number of valid samples in the buffer */
+  private int size = 0;
+
+  /**
+   * Constructs a new PoseHistory
+   *
+   * @param historyLengthSecs The length of time to keep samples for, in seconds
+   * @param period The expected time between samples, in seconds
+   */
+  public PoseHistory(double historyLengthSecs, double period) {
+    this((int) Math.ceil(historyLengthSecs / period) + 1);
+  }
+
+  /**
+   * Constructs a new PoseHistory
+   *
+   * @param capacity The maximum number of samples to store
+   */
+  public PoseHistory(int capacity) {
+    this.capacity = capacity;
+    timestamps = new double[capacity];
+    x = new double[capacity];
+    y = new double[capacity];
+    theta = new double[capacity];
+    vx = new double[capacity];
+    vy = new double[capacity];
+    omega = new double[capacity];
+  }
+
+  /**
+   * Records a new sample. Samples must be added in increasing timestamp order, and samples that are
+   * older than the latest one are ignored.
+   *
+   * @param timestamp The timestamp of the sample in seconds
+   * @param pose The field-relative pose of the robot
+   * @param velocity The field-relative velocity of the robot
+   */
+  public void addSample(double timestamp, Pose2d pose, Twist2d velocity) {
+    if (size > 0 && timestamp <= timestamps[physicalIndex(size - 1)]) {
+      return;
+    }
+
+    final int index;
+    if (size < capacity) {
+      index = physicalIndex(size);
+      size++;
+    } else {
+      // Overwrite the oldest sample
+      index = head;
+      head = (head + 1) % capacity;
+    }
+
+    timestamps[index] = timestamp;
+    x[index] = pose.getX();
+    y[index] = pose.getY();
+    theta[index] = pose.getRotation().getRadians();
+    vx[index] = velocity.dx;
+    vy[index] = velocity.dy;
+    omega[index] = velocity.dtheta;
+  }
+
+  /** Clears all samples from the history */
+  public void clear() {
+    head = 0;
+    size = 0;
+  }
+
+  /**
+   * Gets the number of samples currently stored
+   *
+   * @return The number of samples
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Gets the timestamp of the oldest sample in the history
+   *
+   * @return The timestamp in seconds, or NaN if the history is empty
+   */
+  public double getOldestTimestamp() {
+    return size == 0 ? Double.NaN : timestamps[head];
+  }
+
+  /**
+   * Gets the timestamp of the newest sample in the history
+   *
+   * @return The timestamp in seconds, or NaN if the history is empty
+   */
+  public double getLatestTimestamp() {
+    return size == 0 ? Double.NaN : timestamps[physicalIndex(size - 1)];
+  }
+
+  /**
+   * Gets the interpolated pose of the robot at a timestamp. Timestamps outside of the stored range
+   * are clamped to the oldest or newest sample.
+   *
+   * @param timestamp The timestamp in seconds
+   * @return The pose at that time, or null if the history is empty
+   */
+  public Pose2d getPoseAt(double timestamp) {
+    if (size == 0) {
+      return null;
+    }
+    final int lower = findLower(timestamp);
+    final int i0 = physicalIndex(lower);
+    if (lower == size - 1) {
+      return new Pose2d(x[i0], y[i0], new Rotation2d(theta[i0]));
+    }
+    final int i1 = physicalIndex(lower + 1);
+    final double t = interpolationFactor(timestamp, i0, i1);
+    final double angleDelta = MathUtil.angleModulus(theta[i1] - theta[i0]);
+    return new Pose2d(
+        x[i0] + (x[i1] - x[i0]) * t,
+        y[i0] + (y[i1] - y[i0]) * t,
+        new Rotation2d(theta[i0] + angleDelta * t));
+  }
+
+  /**
+   * Gets the interpolated field-relative velocity of the robot at a timestamp. Timestamps outside
+   * of the stored range are clamped to the oldest or newest sample.
+   *
+   * @param timestamp The timestamp in seconds
+   * @return The velocity at that time as a twist, or null if the history is empty
+   */
+  public Twist2d getVelocityAt(double timestamp) {
+    if (size == 0) {
+      return null;
+    }
+    final int lower = findLower(timestamp);
+    final int i0 = physicalIndex(lower);
+    if (lower == size - 1) {
+      return new Twist2d(vx[i0], vy[i0], omega[i0]);
+    }
+    final int i1 = physicalIndex(lower + 1);
+    final double t = interpolationFactor(timestamp, i0, i1);
+    return new Twist2d(
+        vx[i0] + (vx[i1] - vx[i0]) * t,
+        vy[i0] + (vy[i1] - vy[i0]) * t,
+        omega[i0] + (omega[i1] - omega[i0]) * t);
+  }
+
+  /**
+   * Binary searches for the logical index of the newest sample at or before a timestamp
+   *
+   * @param timestamp The timestamp to search for
+   * @return The logical index, clamped to the range of the buffer
+   */
+  private int findLower(double timestamp) {
+    int low = 0;
+    int high = size - 1;
+    if (timestamp <= timestamps[physicalIndex(low)]) {
+      return low;
+    }
+    if (timestamp >= timestamps[physicalIndex(high)]) {
+      return high;
+    }
+    // Invariant: timestamps[low] <= timestamp < timestamps[high]
+    while (high - low > 1) {
+      final int mid = (low + high) >>> 1;
+      if (timestamps[physicalIndex(mid)] <= timestamp) {
+        low = mid;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Gets the interpolation factor for a timestamp between two samples
+   *
+   * @param timestamp The timestamp to interpolate at
+   * @param i0 The physical index of the lower sample
+   * @param i1 The physical index of the upper sample
+   * @return The factor from 0-1
+   */
+  private double interpolationFactor(double timestamp, int i0, int i1) {
+    final double dt = timestamps[i1] - timestamps[i0];
+    if (dt <= 0.0) {
+      return 0.0;
+    }
+    return MathUtil.clamp((timestamp - timestamps[i0]) / dt, 0.0, 1.0);
+  }
+
+  /**
+   * Converts a logical index (0 is the oldest sample) to an index into the arrays
+   *
+   * @param logicalIndex The logical index
+   * @return The physical index
+   */
+  private int physicalIndex(int logicalIndex) {
+    return (head + logicalIndex) % capacity;
+  }
+}
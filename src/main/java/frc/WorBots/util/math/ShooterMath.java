@@ -17,6 +17,7 @@ import edu.wpi.first.wpilibj.DriverStation.Alliance;
 import frc.WorBots.Constants;
 import frc.WorBots.FieldConstants;
 import frc.WorBots.util.cache.Cache.AllianceCache;
+import frc.WorBots.util.cache.LoopCache;
 import frc.WorBots.util.debug.TunableDouble;
 import java.util.Optional;
 
@@ -26,6 +27,15 @@ public class ShooterMath {
   /** The amount to adjust the goal position away from the wall */
   private static final double GOAL_ADJUSTMENT = Units.inchesToMeters(0.0);
 
+  /** The location of the blue goal, with the adjustment applied */
+  private static final Translation2d BLUE_GOAL =
+      FieldConstants.Speaker.position.plus(new Translation2d(GOAL_ADJUSTMENT, 0.0));
+
+  /** The location of the red goal, with the adjustment applied */
+  private static final Translation2d RED_GOAL =
+      FieldConstants.Speaker.position.plus(
+          new Translation2d(FieldConstants.fieldLength - GOAL_ADJUSTMENT, 0.0));
+
   // Confidence calculation constants
 
   /** The maximum distance the robot can reliably shoot, in meters */
@@ -141,14 +151,39 @@ public class ShooterMath {
   public static record ShotData(
       double rpm, double pivotAngle, Rotation2d robotAngle, ShotConfidence confidence) {}
 
+  // The last calculated shot and what it was calculated from, reused when the same shot is
+  // calculated again in the same loop
+  private static ShotData lastShot = null;
+  private static double lastShotX = 0.0;
+  private static double lastShotY = 0.0;
+  private static double lastShotTheta = 0.0;
+  private static double lastShotVx = 0.0;
+  private static double lastShotVy = 0.0;
+  private static double lastShotOmega = 0.0;
+  private static Optional<Alliance> lastShotAlliance = null;
+  private static long lastShotEpoch = -1;
+
   /**
-   * Calculates outputs for a shot based on robot position
+   * Calculates outputs for a shot based on robot position. The shot is only calculated once per
+   * loop when it is called again with the same pose and speeds.
    *
    * @param robot The robot pose
    * @param robotSpeeds The field-relative speeds of the robot
    * @return The output data for the shot
    */
   public static ShotData calculateShotData(Pose2d robot, ChassisSpeeds robotSpeeds) {
+    final Optional<Alliance> alliance = AllianceCache.getInstance().get();
+    if (lastShotEpoch == LoopCache.getEpoch()
+        && robot.getX() == lastShotX
+        && robot.getY() == lastShotY
+        && robot.getRotation().getRadians() == lastShotTheta
+        && robotSpeeds.vxMetersPerSecond == lastShotVx
+        && robotSpeeds.vyMetersPerSecond == lastShotVy
+        && robotSpeeds.omegaRadiansPerSecond == lastShotOmega
+        && alliance.equals(lastShotAlliance)) {
+      return lastShot;
+    }
+
     final double distance = getGoalDistance(robot);
     final Rotation2d goalToRobotAngle = getGoalToRobotAngle(robot);
     final Pose2d predicted = predictNextPose(robot, robotSpeeds);
@@ -161,7 +196,16 @@ public class ShooterMath {
     // final Rotation2d robotAngle = getGoalTheta(robot);
     final ShotConfidence confidence = calculateConfidence(distance, goalToRobotAngle, robotSpeeds);
 
-    return new ShotData(rpm, pivotAngle, robotAngle, confidence);
+    lastShot = new ShotData(rpm, pivotAngle, robotAngle, confidence);
+    lastShotX = robot.getX();
+    lastShotY = robot.getY();
+    lastShotTheta = robot.getRotation().getRadians();
+    lastShotVx = robotSpeeds.vxMetersPerSecond;
+    lastShotVy = robotSpeeds.vyMetersPerSecond;
+    lastShotOmega = robotSpeeds.omegaRadiansPerSecond;
+    lastShotAlliance = alliance;
+    lastShotEpoch = LoopCache.getEpoch();
+    return lastShot;
   }
 
   /**
@@ -349,15 +393,11 @@ public class ShooterMath {
    * @return The translation of the goal
    */
   public static Translation2d getGoal() {
-    Optional<Alliance> currentAlliance = AllianceCache.getInstance().get();
-    Translation2d out = FieldConstants.Speaker.position;
-    double adjustment = GOAL_ADJUSTMENT;
+    final Optional<Alliance> currentAlliance = AllianceCache.getInstance().get();
     if (currentAlliance.isPresent() && currentAlliance.get() == Alliance.Red) {
-      out = out.plus(new Translation2d(FieldConstants.fieldLength, 0.0));
-      adjustment *= -1;
+      return RED_GOAL;
     }
-    out = out.plus(new Translation2d(adjustment, 0.0));
-    return out;
+    return BLUE_GOAL;
   }
 
   /**
@@ -0,0 +1,537 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.util.trajectory;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.util.Units;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import frc.WorBots.Constants;
+import frc.WorBots.FieldConstants;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Plans collision-free paths around the field elements. The field is rasterized into a grid at
+ * startup with the distance from each cell to the nearest wall, stage foot, subwoofer, or amp.
+ * Paths are found with A* over the grid, penalizing cells that are close to obstacles, and then
+ * shortened to the fewest waypoints that still have clear lines between them. Planning and
+ * trajectory generation run on a worker thread so that they never stall the command scheduler.
+ */
+public class FieldPlanner {
+  private static FieldPlanner instance = new FieldPlanner();
+
+  public static FieldPlanner getInstance() {
+    return instance;
+  }
+
+  /** The side length of a grid cell, in meters */
+  private static final double RESOLUTION = 0.15;
+
+  /** The radius of the robot, including bumpers and a margin, in meters */
+  private static final double ROBOT_RADIUS =
+      Math.hypot(Constants.ROBOT_LENGTH, Constants.ROBOT_WIDTH) / 2.0 + Units.inchesToMeters(4.0);
+
+  /** The clearance from obstacles that paths try to keep beyond the robot radius, in meters */
+  private static final double PREFERRED_CLEARANCE = 0.5;
+
+  /** How much to penalize cells within the preferred clearance, as a multiple of their length */
+  private static final double CLEARANCE_COST = 2.0;
+
+  /** The distance between points checked along a straight line, in meters */
+  private static final double LINE_CHECK_STEP = RESOLUTION / 2.0;
+
+  /**
+   * How much closer to an obstacle the cell of a point can be than the point itself, from the
+   * distance field only being known at cell centers, in meters
+   */
+  private static final double CELL_DIAGONAL = RESOLUTION * Math.sqrt(2.0);
+
+  /** The radius of the circle around each stage foot, in meters */
+  public static final double STAGE_FOOT_RADIUS = FieldConstants.Stage.footWidth / Math.sqrt(2.0);
+
+  /** How far the amp sticks out from the wall, in meters */
+  private static final double AMP_DEPTH = Units.inchesToMeters(4.0);
+
+  private static final int[] NEIGHBOR_DX = new int[] {1, -1, 0, 0, 1, 1, -1, -1};
+  private static final int[] NEIGHBOR_DY = new int[] {0, 0, 1, -1, 1, -1, 1, -1};
+  private static final double[] NEIGHBOR_LENGTH =
+      new double[] {
+        1.0, 1.0, 1.0, 1.0, Math.sqrt(2.0), Math.sqrt(2.0), Math.sqrt(2.0), Math.sqrt(2.0)
+      };
+
+  private final int width;
+  private final int height;
+
+  /** Distance from each cell center to the nearest obstacle, in meters */
+  private final double[] distanceField;
+
+  // A* working state, reused between searches
+  private final double[] gScore;
+  private final int[] parent;
+  private final int[] visitedSearch;
+  private final int[] closedSearch;
+  private final int[] heapNodes;
+  private final double[] heapKeys;
+  private int heapSize = 0;
+  private int searchId = 0;
+
+  private final ExecutorService worker =
+      Executors.newSingleThreadExecutor(
+          runnable -> {
+            final Thread thread = new Thread(runnable, "Field Planner");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final NetworkTable table = NetworkTableInstance.getDefault().getTable("Field Planner");
+  private final DoublePublisher planTimePublisher =
+      table.getDoubleTopic("Plan Time Micros").publish();
+  private final DoublePublisher expandedPublisher =
+      table.getDoubleTopic("Expanded Cells").publish();
+
+  private FieldPlanner() {
+    width = (int) Math.ceil(FieldConstants.fieldLength / RESOLUTION);
+    height = (int) Math.ceil(FieldConstants.fieldWidth / RESOLUTION);
+    final int cells = width * height;
+    distanceField = new double[cells];
+    gScore = new double[cells];
+    parent = new int[cells];
+    visitedSearch = new int[cells];
+    closedSearch = new int[cells];
+    heapNodes = new int[cells * NEIGHBOR_DX.length + 1];
+    heapKeys = new double[cells * NEIGHBOR_DX.length + 1];
+
+    for (int cy = 0; cy < height; cy++) {
+      for (int cx = 0; cx < width; cx++) {
+        distanceField[cy * width + cx] = calculateDistance(getCellX(cx), getCellY(cy));
+      }
+    }
+  }
+
+  /**
+   * Runs a task on the planning worker thread
+   *
+   * @param <T> The type of the result
+   * @param task The task
+   * @return A future that completes with the result
+   */
+  public <T> CompletableFuture<T> submit(Supplier<T> task) {
+    return CompletableFuture.supplyAsync(task, worker);
+  }
+
+  /**
+   * Plans the shortest collision-free path between two poses. The start and goal are allowed to be
+   * closer to obstacles than the robot radius, in which case the path leaves or enters open space
+   * by the nearest route.
+   *
+   * @param start The start pose
+   * @param goal The goal pose
+   * @return The waypoints of the path, starting with the start pose and ending with the goal pose
+   * @throws IllegalArgumentException If there is no collision-free path between the poses
+   */
+  public synchronized List<Waypoint> plan(Pose2d start, Pose2d goal) {
+    final long startNanos = System.nanoTime();
+    final List<Waypoint> waypoints = new ArrayList<>();
+    waypoints.add(Waypoint.fromHolonomicPose(start));
+
+    // Nothing in the way
+    if (isLineClear(start.getX(), start.getY(), goal.getX(), goal.getY(), ROBOT_RADIUS)) {
+      waypoints.add(Waypoint.fromHolonomicPose(goal));
+      planTimePublisher.set((System.nanoTime() - startNanos) / 1000.0);
+      expandedPublisher.set(0);
+      return waypoints;
+    }
+
+    final int startCell = findNearestFreeCell(getCell(start.getX(), start.getY()));
+    final int goalCell = findNearestFreeCell(getCell(goal.getX(), goal.getY()));
+    final int expanded = search(startCell, goalCell);
+    if (expanded < 0) {
+      planTimePublisher.set((System.nanoTime() - startNanos) / 1000.0);
+      expandedPublisher.set(0);
+      throw new IllegalArgumentException(
+          "No collision-free path from " + start.getTranslation() + " to " + goal.getTranslation());
+    }
+
+    // Walk back from the goal
+    final List<Integer> cellPath = new ArrayList<>();
+    for (int cell = goalCell; cell != startCell; cell = parent[cell]) {
+      cellPath.add(cell);
+    }
+    cellPath.add(startCell);
+
+    // Shorten the path by skipping to the furthest cell with a clear line
+    double anchorX = start.getX();
+    double anchorY = start.getY();
+    int index = cellPath.size() - 1;
+    while (index > 0 && !isLineClear(anchorX, anchorY, goal.getX(), goal.getY(), ROBOT_RADIUS)) {
+      int next = index - 1;
+      for (int i = 0; i < index; i++) {
+        final int cell = cellPath.get(i);
+        if (isLineClear(
+            anchorX, anchorY, getCellX(cell % width), getCellY(cell / width), ROBOT_RADIUS)) {
+          next = i;
+          break;
+        }
+      }
+      final int cell = cellPath.get(next);
+      anchorX = getCellX(cell % width);
+      anchorY = getCellY(cell / width);
+      waypoints.add(new Waypoint(new Translation2d(anchorX, anchorY)));
+      index = next;
+    }
+    waypoints.add(Waypoint.fromHolonomicPose(goal));
+
+    planTimePublisher.set((System.nanoTime() - startNanos) / 1000.0);
+    expandedPublisher.set(expanded);
+    return waypoints;
+  }
+
+  /**
+   * Checks whether the robot could drive in a straight line between two points without hitting
+   * anything
+   *
+   * @param start The start point
+   * @param end The end point
+   * @return True if the line is clear
+   */
+  public boolean isLineClear(Translation2d start, Translation2d end) {
+    return isLineClear(start.getX(), start.getY(), end.getX(), end.getY(), ROBOT_RADIUS);
+  }
+
+  /**
+   * Gets the distance from a point to the nearest field element or wall
+   *
+   * @param point The point
+   * @return The distance in meters, or 0 if the point is off of the field
+   */
+  public double getClearance(Translation2d point) {
+    final int cell = getCell(point.getX(), point.getY());
+    return cell < 0 ? 0.0 : distanceField[cell];
+  }
+
+  /**
+   * Runs A* between two cells
+   *
+   * @param startCell The start cell
+   * @param goalCell The goal cell
+   * @return The number of cells expanded, or -1 if there is no path
+   */
+  private int search(int startCell, int goalCell) {
+    searchId++;
+    heapSize = 0;
+    final int goalX = goalCell % width;
+    final int goalY = goalCell / width;
+
+    visitedSearch[startCell] = searchId;
+    gScore[startCell] = 0.0;
+    parent[startCell] = startCell;
+    push(startCell, heuristic(startCell % width, startCell / width, goalX, goalY));
+
+    int expanded = 0;
+    while (heapSize > 0) {
+      final int cell = pop();
+      if (closedSearch[cell] == searchId) {
+        continue;
+      }
+      closedSearch[cell] = searchId;
+      expanded++;
+      if (cell == goalCell) {
+        return expanded;
+      }
+
+      final int cx = cell % width;
+      final int cy = cell / width;
+      for (int i = 0; i < NEIGHBOR_DX.length; i++) {
+        final int nx = cx + NEIGHBOR_DX[i];
+        final int ny = cy + NEIGHBOR_DY[i];
+        if (nx < 0 || ny < 0 || nx >= width || ny >= height) {
+          continue;
+        }
+        final int neighbor = ny * width + nx;
+        if (closedSearch[neighbor] == searchId || distanceField[neighbor] < ROBOT_RADIUS) {
+          continue;
+        }
+        // Don't cut corners diagonally past obstacles
+        if (i >= 4
+            && (distanceField[cy * width + nx] < ROBOT_RADIUS
+                || distanceField[ny * width + cx] < ROBOT_RADIUS)) {
+          continue;
+        }
+
+        final double cost = gScore[cell] + NEIGHBOR_LENGTH[i] * getCellCost(neighbor);
+        if (visitedSearch[neighbor] != searchId || cost < gScore[neighbor]) {
+          visitedSearch[neighbor] = searchId;
+          gScore[neighbor] = cost;
+          parent[neighbor] = cell;
+          push(neighbor, cost + heuristic(nx, ny, goalX, goalY));
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Gets the cost multiplier for moving through a cell. Cells close to obstacles cost more so that
+   * paths keep some clearance when they can
+   *
+   * @param cell The cell
+   * @return The cost multiplier, at least 1
+   */
+  private double getCellCost(int cell) {
+    final double closeness =
+        MathUtil.clamp(
+            (ROBOT_RADIUS + PREFERRED_CLEARANCE - distanceField[cell]) / PREFERRED_CLEARANCE,
+            0.0,
+            1.0);
+    return 1.0 + closeness * CLEARANCE_COST;
+  }
+
+  /** Octile distance heuristic, in cells */
+  private static double heuristic(int x0, int y0, int x1, int y1) {
+    final int dx = Math.abs(x1 - x0);
+    final int dy = Math.abs(y1 - y0);
+    return Math.max(dx, dy) + (Math.sqrt(2.0) - 1.0) * Math.min(dx, dy);
+  }
+
+  /**
+   * Finds the nearest cell that the robot fits in by searching outwards in rings
+   *
+   * @param cell The cell to start from
+   * @return The nearest free cell, or the original cell if there are none
+   */
+  private int findNearestFreeCell(int cell) {
+    if (cell < 0) {
+      cell = 0;
+    }
+    if (distanceField[cell] >= ROBOT_RADIUS) {
+      return cell;
+    }
+    final int cx = cell % width;
+    final int cy = cell / width;
+    for (int radius = 1; radius < Math.max(width, height); radius++) {
+      int best = -1;
+      double bestDistance = Double.POSITIVE_INFINITY;
+      for (int y = cy - radius; y <= cy + radius; y++) {
+        for (int x = cx - radius; x <= cx + radius; x++) {
+          // Only check the ring
+          if (Math.abs(x - cx) != radius && Math.abs(y - cy) != radius) {
+            continue;
+          }
+          if (x < 0 || y < 0 || x >= width || y >= height) {
+            continue;
+          }
+          final int candidate = y * width + x;
+          final double distance = Math.hypot(x - cx, y - cy);
+          if (distanceField[candidate] >= ROBOT_RADIUS && distance < bestDistance) {
+            best = candidate;
+            bestDistance = distance;
+          }
+        }
+      }
+      if (best >= 0) {
+        return best;
+      }
+    }
+    return cell;
+  }
+
+  /**
+   * Checks whether every point along a line is at least a distance from any obstacle. Lines that
+   * start or end inside of the clearance are allowed to be that close only near the ends, where
+   * they could be moving straight out into open space, and need the full clearance elsewhere
+   */
+  private boolean isLineClear(double x0, double y0, double x1, double y1, double clearance) {
+    final double length = Math.hypot(x1 - x0, y1 - y0);
+    final int steps = Math.max(1, (int) Math.ceil(length / LINE_CHECK_STEP));
+    final int startCell = getCell(x0, y0);
+    final double startDistance = startCell < 0 ? 0.0 : distanceField[startCell];
+    final int endCell = getCell(x1, y1);
+    final double endDistance = endCell < 0 ? 0.0 : distanceField[endCell];
+    for (int i = 0; i <= steps; i++) {
+      final double t = (double) i / steps;
+      final int cell = getCell(x0 + (x1 - x0) * t, y0 + (y1 - y0) * t);
+      if (cell < 0) {
+        return false;
+      }
+      // Near an end, the line can't be any closer to an obstacle than it would be from moving
+      // directly away from it
+      final double fromStart = startDistance + length * t - CELL_DIAGONAL;
+      final double fromEnd = endDistance + length * (1.0 - t) - CELL_DIAGONAL;
+      if (distanceField[cell] < Math.min(clearance, Math.min(fromStart, fromEnd))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Gets the cell that contains a point
+   *
+   * @return The index of the cell, or -1 if the point is off of the field
+   */
+  private int getCell(double x, double y) {
+    final int cx = (int) Math.floor(x / RESOLUTION);
+    final int cy = (int) Math.floor(y / RESOLUTION);
+    if (cx < 0 || cy < 0 || cx >= width || cy >= height) {
+      return -1;
+    }
+    return cy * width + cx;
+  }
+
+  private static double getCellX(int cx) {
+    return (cx + 0.5) * RESOLUTION;
+  }
+
+  private static double getCellY(int cy) {
+    return (cy + 0.5) * RESOLUTION;
+  }
+
+  /**
+   * Calculates the distance from a point to the nearest obstacle on either side of the field
+   *
+   * @param x The x coordinate
+   * @param y The y coordinate
+   * @return The distance in meters
+   */
+  private static double calculateDistance(double x, double y) {
+    // Walls
+    double distance =
+        Math.min(
+            Math.min(x, FieldConstants.fieldLength - x),
+            Math.min(y, FieldConstants.fieldWidth - y));
+
+    // Check both alliances by mirroring the point onto the blue side
+    for (double px : new double[] {x, FieldConstants.fieldLength - x}) {
+      // Stage feet
+      for (Translation2d foot :
+          Arrays.asList(
+              FieldConstants.Stage.foot1Center,
+              FieldConstants.Stage.foot2Center,
+              FieldConstants.Stage.foot3Center)) {
+        distance =
+            Math.min(distance, Math.hypot(px - foot.getX(), y - foot.getY()) - STAGE_FOOT_RADIUS);
+      }
+
+      // Subwoofer, with the corners in order around the outside
+      final Translation2d[] subwoofer = FieldConstants.Speaker.regionCorners;
+      distance =
+          Math.min(
+              distance,
+              polygonDistance(
+                  px,
+                  y,
+                  new Translation2d[] {subwoofer[2], subwoofer[0], subwoofer[1], subwoofer[3]}));
+
+      // Amp
+      distance =
+          Math.min(
+              distance,
+              rectangleDistance(
+                  px,
+                  y,
+                  FieldConstants.Amp.faceStartX,
+                  FieldConstants.fieldWidth - AMP_DEPTH,
+                  FieldConstants.Amp.openingEndX + Units.inchesToMeters(11),
+                  FieldConstants.fieldWidth));
+    }
+
+    return Math.max(distance, 0.0);
+  }
+
+  /** Distance from a point to an axis-aligned rectangle, 0 if inside */
+  private static double rectangleDistance(
+      double x, double y, double minX, double minY, double maxX, double maxY) {
+    final double dx = Math.max(Math.max(minX - x, 0.0), x - maxX);
+    final double dy = Math.max(Math.max(minY - y, 0.0), y - maxY);
+    return Math.hypot(dx, dy);
+  }
+
+  /** Distance from a point to a convex polygon, 0 if inside */
+  private static double polygonDistance(double x, double y, Translation2d[] corners) {
+    boolean inside = true;
+    double sign = 0.0;
+    double distance = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < corners.length; i++) {
+      final Translation2d a = corners[i];
+      final Translation2d b = corners[(i + 1) % corners.length];
+      final double abx = b.getX() - a.getX();
+      final double aby = b.getY() - a.getY();
+      final double apx = x - a.getX();
+      final double apy = y - a.getY();
+
+      // The point is inside if it is on the same side of every edge
+      final double cross = abx * apy - aby * apx;
+      if (sign == 0.0) {
+        sign = Math.signum(cross);
+      } else if (Math.signum(cross) != sign && cross != 0.0) {
+        inside = false;
+      }
+
+      final double t = MathUtil.clamp((apx * abx + apy * aby) / (abx * abx + aby * aby), 0.0, 1.0);
+      distance = Math.min(distance, Math.hypot(apx - abx * t, apy - aby * t));
+    }
+    return inside ? 0.0 : distance;
+  }
+
+  private void push(int node, double key) {
+    int i = heapSize++;
+    heapNodes[i] = node;
+    heapKeys[i] = key;
+    while (i > 0) {
+      final int up = (i - 1) / 2;
+      if (heapKeys[up] <= heapKeys[i]) {
+        break;
+      }
+      swap(i, up);
+      i = up;
+    }
+  }
+
+  private int pop() {
+    final int top = heapNodes[0];
+    heapSize--;
+    heapNodes[0] = heapNodes[heapSize];
+    heapKeys[0] = heapKeys[heapSize];
+    int i = 0;
+    while (true) {
+      final int left = i * 2 + 1;
+      final int right = left + 1;
+      int smallest = i;
+      if (left < heapSize && heapKeys[left] < heapKeys[smallest]) {
+        smallest = left;
+      }
+      if (right < heapSize && heapKeys[right] < heapKeys[smallest]) {
+        smallest = right;
+      }
+      if (smallest == i) {
+        break;
+      }
+      swap(i, smallest);
+      i = smallest;
+    }
+    return top;
+  }
+
+  private void swap(int a, int b) {
+    final int node = heapNodes[a];
+    heapNodes[a] = heapNodes[b];
+    heapNodes[b] = node;
+    final double key = heapKeys[a];
+    heapKeys[a] = heapKeys[b];
+    heapKeys[b] = key;
+  }
+}
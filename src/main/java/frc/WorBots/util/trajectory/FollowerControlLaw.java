@@ -0,0 +1,213 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.util.trajectory;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.controller.LinearQuadraticRegulator;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.numbers.N1;
+import edu.wpi.first.math.system.LinearSystem;
+import frc.WorBots.Constants;
+
+/**
+ * A control law for a {@link TrajectoryFollower} that turns the reference and the robot pose into
+ * field-relative velocities. Implementations must not allocate when calculating.
+ */
+public interface FollowerControlLaw {
+  /**
+   * Calculates the field-relative velocities to drive at
+   *
+   * @param trajectory The reference being followed
+   * @param time The current time along the reference, in seconds
+   * @param setpoint The reference sampled at the current time
+   * @param pose The current pose of the robot
+   * @param output The array to write the x, y, and angular velocities to
+   */
+  void calculate(
+      ReferenceTrajectory trajectory,
+      double time,
+      ReferenceTrajectory.State setpoint,
+      Pose2d pose,
+      double[] output);
+
+  /**
+   * Time-indexed feedforward plus proportional feedback on each axis, the same as the holonomic
+   * drive controller from team 6328
+   */
+  public static class TimeIndexed implements FollowerControlLaw {
+    private final double translationGain;
+    private final double rotationGain;
+    private final double translationFeedforward;
+    private final double rotationFeedforward;
+
+    /**
+     * Constructs a new time-indexed control law
+     *
+     * @param translationGain The proportional gain on translation error
+     * @param rotationGain The proportional gain on rotation error
+     * @param translationFeedforward The coefficient for the translation feedforward
+     * @param rotationFeedforward The coefficient for the rotation feedforward
+     */
+    public TimeIndexed(
+        double translationGain,
+        double rotationGain,
+        double translationFeedforward,
+        double rotationFeedforward) {
+      this.translationGain = translationGain;
+      this.rotationGain = rotationGain;
+      this.translationFeedforward = translationFeedforward;
+      this.rotationFeedforward = rotationFeedforward;
+    }
+
+    public void calculate(
+        ReferenceTrajectory trajectory,
+        double time,
+        ReferenceTrajectory.State setpoint,
+        Pose2d pose,
+        double[] output) {
+      output[0] =
+          setpoint.vx * translationFeedforward + (setpoint.x - pose.getX()) * translationGain;
+      output[1] =
+          setpoint.vy * translationFeedforward + (setpoint.y - pose.getY()) * translationGain;
+      output[2] =
+          setpoint.omega * rotationFeedforward
+              + MathUtil.angleModulus(setpoint.theta - pose.getRotation().getRadians())
+                  * rotationGain;
+    }
+  }
+
+  /**
+   * Lookahead pursuit. The feedforward is taken from a point ahead on the reference so that the
+   * drivetrain starts turning and braking before its response lag would leave it behind, and the
+   * feedback is split into along-track and cross-track components so that staying on the path can
+   * be weighted higher than staying on time.
+   */
+  public static class Lookahead implements FollowerControlLaw {
+    private final double lookaheadTime;
+    private final double alongTrackGain;
+    private final double crossTrackGain;
+    private final double rotationGain;
+
+    /** Reused state for sampling the lookahead point */
+    private final ReferenceTrajectory.State lookaheadState = new ReferenceTrajectory.State();
+
+    /**
+     * Constructs a new lookahead control law
+     *
+     * @param lookaheadTime How far ahead on the reference to take the feedforward from, in seconds
+     * @param alongTrackGain The proportional gain on error along the direction of travel
+     * @param crossTrackGain The proportional gain on error across the direction of travel
+     * @param rotationGain The proportional gain on rotation error
+     */
+    public Lookahead(
+        double lookaheadTime, double alongTrackGain, double crossTrackGain, double rotationGain) {
+      this.lookaheadTime = lookaheadTime;
+      this.alongTrackGain = alongTrackGain;
+      this.crossTrackGain = crossTrackGain;
+      this.rotationGain = rotationGain;
+    }
+
+    public void calculate(
+        ReferenceTrajectory trajectory,
+        double time,
+        ReferenceTrajectory.State setpoint,
+        Pose2d pose,
+        double[] output) {
+      trajectory.sample(time + lookaheadTime, lookaheadState);
+
+      // Direction of travel, or the field x axis when stopped
+      final double speed = Math.hypot(setpoint.vx, setpoint.vy);
+      final double ux = speed > 1e-3 ? setpoint.vx / speed : 1.0;
+      final double uy = speed > 1e-3 ? setpoint.vy / speed : 0.0;
+
+      final double xError = setpoint.x - pose.getX();
+      final double yError = setpoint.y - pose.getY();
+      final double alongFeedback = (xError * ux + yError * uy) * alongTrackGain;
+      final double crossFeedback = (-xError * uy + yError * ux) * crossTrackGain;
+
+      output[0] = lookaheadState.vx + alongFeedback * ux - crossFeedback * uy;
+      output[1] = lookaheadState.vy + alongFeedback * uy + crossFeedback * ux;
+      output[2] =
+          lookaheadState.omega
+              + MathUtil.angleModulus(setpoint.theta - pose.getRotation().getRadians())
+                  * rotationGain;
+    }
+  }
+
+  /**
+   * Linear-quadratic regulator. Each axis of a holonomic drive is modeled as an integrator of the
+   * commanded velocity, so the optimal feedback is a constant gain per axis that can be solved for
+   * once from the allowed error and effort, and compensated for the latency of the drivetrain.
+   */
+  public static class Lqr implements FollowerControlLaw {
+    private final double translationGain;
+    private final double rotationGain;
+
+    /**
+     * Constructs a new LQR control law
+     *
+     * @param translationTolerance The allowed translation error, in meters
+     * @param translationEffort The allowed translation correction velocity, in meters per second
+     * @param rotationTolerance The allowed rotation error, in radians
+     * @param rotationEffort The allowed rotation correction velocity, in radians per second
+     * @param latency The delay between commanding and achieving a velocity, in seconds
+     */
+    public Lqr(
+        double translationTolerance,
+        double translationEffort,
+        double rotationTolerance,
+        double rotationEffort,
+        double latency) {
+      translationGain = calculateGain(translationTolerance, translationEffort, latency);
+      rotationGain = calculateGain(rotationTolerance, rotationEffort, latency);
+    }
+
+    public void calculate(
+        ReferenceTrajectory trajectory,
+        double time,
+        ReferenceTrajectory.State setpoint,
+        Pose2d pose,
+        double[] output) {
+      output[0] = setpoint.vx + (setpoint.x - pose.getX()) * translationGain;
+      output[1] = setpoint.vy + (setpoint.y - pose.getY()) * translationGain;
+      output[2] =
+          setpoint.omega
+              + MathUtil.angleModulus(setpoint.theta - pose.getRotation().getRadians())
+                  * rotationGain;
+    }
+
+    /**
+     * Solves for the LQR gain of an integrator
+     *
+     * @param stateTolerance The allowed state error
+     * @param inputTolerance The allowed input
+     * @param latency The input latency to compensate for, in seconds
+     * @return The gain
+     */
+    private static double calculateGain(
+        double stateTolerance, double inputTolerance, double latency) {
+      final LinearSystem<N1, N1, N1> plant =
+          new LinearSystem<>(
+              VecBuilder.fill(0.0),
+              VecBuilder.fill(1.0),
+              VecBuilder.fill(1.0),
+              VecBuilder.fill(0.0));
+      final LinearQuadraticRegulator<N1, N1, N1> regulator =
+          new LinearQuadraticRegulator<>(
+              plant,
+              VecBuilder.fill(stateTolerance),
+              VecBuilder.fill(inputTolerance),
+              Constants.ROBOT_PERIOD);
+      if (latency > 0.0) {
+        regulator.latencyCompensate(plant, Constants.ROBOT_PERIOD, latency);
+      }
+      return regulator.getK().get(0, 0);
+    }
+  }
+}
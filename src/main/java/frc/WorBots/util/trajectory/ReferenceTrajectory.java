@@ -0,0 +1,308 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.util.trajectory;
+
+import com.pathplanner.lib.path.PathPlannerTrajectory;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.trajectory.Trajectory;
+import frc.WorBots.Constants;
+import java.util.List;
+
+/**
+ * A trajectory that has been resampled at a fixed rate into primitive arrays of field-relative
+ * poses and velocities. The trajectory source is only sampled once when it is created, so following
+ * it never allocates. Headings are unwrapped so that they can be linearly interpolated.
+ */
+public class ReferenceTrajectory {
+  /** A sampled state of the reference. Reused by callers to avoid allocating */
+  public static class State {
+    /** Field-relative x position, in meters */
+    public double x;
+
+    /** Field-relative y position, in meters */
+    public double y;
+
+    /** Unwrapped holonomic heading, in radians */
+    public double theta;
+
+    /** Field-relative x velocity, in meters per second */
+    public double vx;
+
+    /** Field-relative y velocity, in meters per second */
+    public double vy;
+
+    /** Angular velocity, in radians per second */
+    public double omega;
+
+    /**
+     * Converts the state to a pose. Allocates, so should only be used for logging
+     *
+     * @return The pose
+     */
+    public Pose2d toPose() {
+      return new Pose2d(x, y, new Rotation2d(theta));
+    }
+  }
+
+  /** The time between samples, in seconds */
+  private final double period;
+
+  /** The total time of the trajectory, in seconds */
+  private final double totalTime;
+
+  private final int length;
+  private final double[] x;
+  private final double[] y;
+  private final double[] theta;
+  private final double[] vx;
+  private final double[] vy;
+  private final double[] omega;
+  private final Pose2d[] loggablePoses;
+
+  /**
+   * Allocates a reference. Sources fill in the arrays
+   *
+   * @param totalTime The total time of the trajectory
+   * @param period The time between samples
+   * @param loggablePoses The poses of the source trajectory for logging
+   */
+  private ReferenceTrajectory(double totalTime, double period, Pose2d[] loggablePoses) {
+    this.period = period;
+    this.totalTime = totalTime;
+    this.length = totalTime > 0.0 ? (int) Math.ceil(totalTime / period) + 1 : 0;
+    this.x = new double[length];
+    this.y = new double[length];
+    this.theta = new double[length];
+    this.vx = new double[length];
+    this.vy = new double[length];
+    this.omega = new double[length];
+    this.loggablePoses = loggablePoses;
+  }
+
+  /**
+   * Creates a reference with no samples, for when generation fails
+   *
+   * @return The reference, which is not valid
+   */
+  public static ReferenceTrajectory empty() {
+    return new ReferenceTrajectory(0.0, Constants.ROBOT_PERIOD, new Pose2d[] {});
+  }
+
+  /**
+   * Creates a reference from a WPILib trajectory and a holonomic rotation sequence, such as those
+   * from {@link CustomTrajectoryGenerator}
+   *
+   * @param driveTrajectory The drive trajectory
+   * @param rotationSequence The holonomic rotation sequence
+   * @return The reference
+   */
+  public static ReferenceTrajectory fromTrajectory(
+      Trajectory driveTrajectory, RotationSequence rotationSequence) {
+    final List<Trajectory.State> states = driveTrajectory.getStates();
+    final Pose2d[] loggablePoses = new Pose2d[states.size()];
+    for (int i = 0; i < states.size(); i++) {
+      loggablePoses[i] = states.get(i).poseMeters;
+    }
+    final double totalTime = states.size() > 1 ? driveTrajectory.getTotalTimeSeconds() : 0.0;
+    final ReferenceTrajectory reference =
+        new ReferenceTrajectory(totalTime, Constants.ROBOT_PERIOD, loggablePoses);
+
+    for (int i = 0; i < reference.length; i++) {
+      final double time = reference.getSampleTime(i);
+      final Trajectory.State driveState = driveTrajectory.sample(time);
+      final RotationSequence.State rotationState = rotationSequence.sample(time);
+      final Rotation2d heading = driveState.poseMeters.getRotation();
+      reference.x[i] = driveState.poseMeters.getX();
+      reference.y[i] = driveState.poseMeters.getY();
+      reference.vx[i] = driveState.velocityMetersPerSecond * heading.getCos();
+      reference.vy[i] = driveState.velocityMetersPerSecond * heading.getSin();
+      reference.setUnwrappedTheta(i, rotationState.position.getRadians());
+      reference.omega[i] = rotationState.velocityRadiansPerSec;
+    }
+
+    return reference;
+  }
+
+  /**
+   * Creates a reference from a PathPlanner trajectory, such as those from {@link
+   * CustomPathGenerator}
+   *
+   * @param trajectory The trajectory
+   * @return The reference
+   */
+  public static ReferenceTrajectory fromPathPlanner(PathPlannerTrajectory trajectory) {
+    final List<PathPlannerTrajectory.State> states = trajectory.getStates();
+    final Pose2d[] loggablePoses = new Pose2d[states.size()];
+    for (int i = 0; i < states.size(); i++) {
+      loggablePoses[i] = new Pose2d(states.get(i).positionMeters, new Rotation2d());
+    }
+    final double totalTime = states.size() > 1 ? trajectory.getTotalTimeSeconds() : 0.0;
+    final ReferenceTrajectory reference =
+        new ReferenceTrajectory(totalTime, Constants.ROBOT_PERIOD, loggablePoses);
+
+    for (int i = 0; i < reference.length; i++) {
+      final PathPlannerTrajectory.State state = trajectory.sample(reference.getSampleTime(i));
+      reference.x[i] = state.positionMeters.getX();
+      reference.y[i] = state.positionMeters.getY();
+      reference.vx[i] = state.velocityMps * state.heading.getCos();
+      reference.vy[i] = state.velocityMps * state.heading.getSin();
+      reference.setUnwrappedTheta(i, state.targetHolonomicRotation.getRadians());
+    }
+
+    // PathPlanner does not always provide the holonomic velocity, so differentiate the headings
+    for (int i = 0; i < reference.length - 1; i++) {
+      final double dt = reference.getSampleTime(i + 1) - reference.getSampleTime(i);
+      if (dt > 0.0) {
+        reference.omega[i] = (reference.theta[i + 1] - reference.theta[i]) / dt;
+      }
+    }
+
+    return reference;
+  }
+
+  /**
+   * Creates a reference from timed samples, such as those from {@link SwerveTrajectoryGenerator}.
+   * The samples are linearly interpolated to the fixed rate.
+   *
+   * @param times The time of each sample, increasing
+   * @param x The x positions
+   * @param y The y positions
+   * @param theta The headings, unwrapped
+   * @param vx The x velocities
+   * @param vy The y velocities
+   * @param omega The angular velocities
+   * @param loggablePoses The poses of the path for logging
+   * @return The reference
+   */
+  public static ReferenceTrajectory fromSamples(
+      double[] times,
+      double[] x,
+      double[] y,
+      double[] theta,
+      double[] vx,
+      double[] vy,
+      double[] omega,
+      Pose2d[] loggablePoses) {
+    final double totalTime = times.length > 1 ? times[times.length - 1] : 0.0;
+    final ReferenceTrajectory reference =
+        new ReferenceTrajectory(totalTime, Constants.ROBOT_PERIOD, loggablePoses);
+
+    int j = 0;
+    for (int i = 0; i < reference.length; i++) {
+      final double time = reference.getSampleTime(i);
+      while (j < times.length - 2 && times[j + 1] < time) {
+        j++;
+      }
+      final double span = times[j + 1] - times[j];
+      final double t = span > 0.0 ? MathUtil.clamp((time - times[j]) / span, 0.0, 1.0) : 1.0;
+      reference.x[i] = MathUtil.interpolate(x[j], x[j + 1], t);
+      reference.y[i] = MathUtil.interpolate(y[j], y[j + 1], t);
+      reference.theta[i] = MathUtil.interpolate(theta[j], theta[j + 1], t);
+      reference.vx[i] = MathUtil.interpolate(vx[j], vx[j + 1], t);
+      reference.vy[i] = MathUtil.interpolate(vy[j], vy[j + 1], t);
+      reference.omega[i] = MathUtil.interpolate(omega[j], omega[j + 1], t);
+    }
+
+    return reference;
+  }
+
+  /**
+   * Checks whether the reference has enough samples to follow
+   *
+   * @return True if the reference is valid
+   */
+  public boolean isValid() {
+    return length > 1;
+  }
+
+  /**
+   * Gets the total time of the trajectory
+   *
+   * @return The time in seconds
+   */
+  public double getTotalTime() {
+    return totalTime;
+  }
+
+  /**
+   * Gets the poses of the source trajectory for logging
+   *
+   * @return The poses
+   */
+  public Pose2d[] getLoggablePoses() {
+    return loggablePoses;
+  }
+
+  /**
+   * Samples the reference at a time by interpolating between the stored samples. Times outside of
+   * the trajectory are clamped to the start or end. The end of the trajectory always has zero
+   * velocity so that the follower settles there.
+   *
+   * @param time The time in seconds
+   * @param out The state to write to
+   */
+  public void sample(double time, State out) {
+    if (length == 0) {
+      out.x = 0.0;
+      out.y = 0.0;
+      out.theta = 0.0;
+      out.vx = 0.0;
+      out.vy = 0.0;
+      out.omega = 0.0;
+      return;
+    }
+    if (time >= totalTime || length == 1) {
+      final int last = length - 1;
+      out.x = x[last];
+      out.y = y[last];
+      out.theta = theta[last];
+      out.vx = 0.0;
+      out.vy = 0.0;
+      out.omega = 0.0;
+      return;
+    }
+
+    final int i0 = MathUtil.clamp((int) (Math.max(time, 0.0) / period), 0, length - 2);
+    final int i1 = i0 + 1;
+    final double t0 = getSampleTime(i0);
+    final double t = MathUtil.clamp((time - t0) / (getSampleTime(i1) - t0), 0.0, 1.0);
+    out.x = x[i0] + (x[i1] - x[i0]) * t;
+    out.y = y[i0] + (y[i1] - y[i0]) * t;
+    out.theta = theta[i0] + (theta[i1] - theta[i0]) * t;
+    out.vx = vx[i0] + (vx[i1] - vx[i0]) * t;
+    out.vy = vy[i0] + (vy[i1] - vy[i0]) * t;
+    out.omega = omega[i0] + (omega[i1] - omega[i0]) * t;
+  }
+
+  /**
+   * Gets the time of a sample. The last sample is at the end of the trajectory, which may be closer
+   * than one period to the sample before it
+   *
+   * @param index The index of the sample
+   * @return The time in seconds
+   */
+  private double getSampleTime(int index) {
+    return Math.min(index * period, totalTime);
+  }
+
+  /**
+   * Sets the heading of a sample, unwrapping it relative to the previous sample
+   *
+   * @param index The index of the sample
+   * @param angle The wrapped angle in radians
+   */
+  private void setUnwrappedTheta(int index, double angle) {
+    if (index == 0) {
+      theta[index] = angle;
+    } else {
+      theta[index] = theta[index - 1] + MathUtil.angleModulus(angle - theta[index - 1]);
+    }
+  }
+}
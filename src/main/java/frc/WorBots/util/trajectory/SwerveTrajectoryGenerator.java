@@ -0,0 +1,602 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.util.trajectory;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.math.trajectory.Trajectory;
+import edu.wpi.first.math.trajectory.TrajectoryConfig;
+import edu.wpi.first.math.trajectory.constraint.TrajectoryConstraint;
+import frc.WorBots.Constants;
+import java.util.List;
+
+/**
+ * Generates time-optimal holonomic trajectories for a swerve drive. The path shape comes from
+ * {@link CustomTrajectoryGenerator}, but the timing is solved for here, jointly for translation and
+ * rotation, so that no module ever has to go faster than its wheel speed limit or accelerate harder
+ * than its motor and tire allow. Heading is interpolated smoothly between the holonomic waypoints
+ * by distance along the path, so turning slows the path down only where the modules actually need
+ * it.
+ *
+ * <p>The timing is found with the usual forward and backward passes over the path: the forward
+ * pass accelerates as hard as possible from the start, and the backward pass brakes as hard as
+ * possible into the end and into every point with a lower velocity limit.
+ */
+public class SwerveTrajectoryGenerator {
+  /** The spacing of points along the path when solving for timing, in meters */
+  private static final double STEP = 0.02;
+
+  /** The number of bisection iterations used to find velocity limits */
+  private static final int BISECTION_ITERATIONS = 20;
+
+  /** Small value under which module velocity ratios are treated as zero */
+  private static final double EPSILON = 1e-9;
+
+  /**
+   * The limits of a single swerve module
+   *
+   * @param maxWheelSpeed The maximum wheel speed to plan with, in meters per second
+   * @param maxTractionAcceleration The acceleration at which the tire slips, in meters per second
+   *     squared
+   * @param driveMotor The drive motor, with the gear reduction to the wheel
+   * @param wheelRadius The radius of the wheel, in meters
+   * @param moduleMass The share of the robot mass carried by each module, in kilograms
+   * @param supplyCurrentLimit The supply current limit of the drive motor, in amps
+   * @param supplyVoltage The voltage available to the motor controller, in volts
+   * @param margin The fraction of the available acceleration to plan with, leaving the rest for
+   *     feedback
+   */
+  public static record ModuleLimits(
+      double maxWheelSpeed,
+      double maxTractionAcceleration,
+      DCMotor driveMotor,
+      double wheelRadius,
+      double moduleMass,
+      double supplyCurrentLimit,
+      double supplyVoltage,
+      double margin) {
+    /**
+     * Gets the maximum acceleration of a module along the ground. The motor torque falls off with
+     * speed from back EMF, and at low speeds is capped by the supply current limit, which allows
+     * more stator current the lower the applied voltage is. Braking is treated the same as
+     * accelerating, which is conservative.
+     *
+     * @param wheelSpeed The speed of the wheel, in meters per second
+     * @return The maximum acceleration, in meters per second squared
+     */
+    public double getMaxAcceleration(double wheelSpeed) {
+      final double backEmf = Math.abs(wheelSpeed) / wheelRadius / driveMotor.KvRadPerSecPerVolt;
+      final double resistance = driveMotor.rOhms;
+
+      // Stator current with the full supply voltage applied
+      final double voltageLimited = Math.max((supplyVoltage - backEmf) / resistance, 0.0);
+      // Stator current where I * (I * R + back EMF) equals the supply power limit
+      final double supplyLimited =
+          (-backEmf
+                  + Math.sqrt(
+                      backEmf * backEmf + 4.0 * resistance * supplyCurrentLimit * supplyVoltage))
+              / (2.0 * resistance);
+
+      final double current = Math.min(voltageLimited, supplyLimited);
+      final double force = driveMotor.getTorque(current) / wheelRadius;
+      return Math.min(force / moduleMass, maxTractionAcceleration) * margin;
+    }
+  }
+
+  private final Translation2d[] moduleTranslations;
+  private final ModuleLimits limits;
+
+  /**
+   * Constructs a new SwerveTrajectoryGenerator
+   *
+   * @param moduleTranslations The positions of the modules relative to the robot center
+   * @param limits The limits of each module
+   */
+  public SwerveTrajectoryGenerator(Translation2d[] moduleTranslations, ModuleLimits limits) {
+    this.moduleTranslations = moduleTranslations;
+    this.limits = limits;
+  }
+
+  /**
+   * Generates a time-optimal trajectory through a series of waypoints. Waypoints that are too close
+   * together to drive between give a trajectory that turns in place instead
+   *
+   * @param waypoints The waypoints
+   * @param constraints Additional constraints, which are applied to the speed and acceleration
+   *     along the path
+   * @param startVelocity The speed along the path at the start, in meters per second
+   * @param endVelocity The speed along the path at the end, in meters per second
+   * @return The trajectory
+   * @throws IllegalArgumentException If a path could not be made through the waypoints
+   */
+  public ReferenceTrajectory generate(
+      List<Waypoint> waypoints,
+      List<TrajectoryConstraint> constraints,
+      double startVelocity,
+      double endVelocity) {
+    final Path path = createPath(waypoints);
+    if (path == null) {
+      return generateInPlace(waypoints);
+    }
+    final int count = path.s.length;
+    final int modules = moduleTranslations.length;
+
+    // Calculate how each module moves relative to the path at each point. The module velocity is
+    // the path speed times A, and the module acceleration is the path acceleration times A plus the
+    // path speed squared times B
+    final double[] ax = new double[count * modules];
+    final double[] ay = new double[count * modules];
+    final double[] bx = new double[count * modules];
+    final double[] by = new double[count * modules];
+    final Pose2d[] poses = new Pose2d[count];
+    for (int i = 0; i < count; i++) {
+      final double cosHeading = Math.cos(path.theta[i]);
+      final double sinHeading = Math.sin(path.theta[i]);
+      final double tx = Math.cos(path.driveAngle[i]);
+      final double ty = Math.sin(path.driveAngle[i]);
+      for (int j = 0; j < modules; j++) {
+        final Translation2d module = moduleTranslations[j];
+        final double qx = module.getX() * cosHeading - module.getY() * sinHeading;
+        final double qy = module.getX() * sinHeading + module.getY() * cosHeading;
+        final int index = i * modules + j;
+        ax[index] = tx - path.dTheta[i] * qy;
+        ay[index] = ty + path.dTheta[i] * qx;
+        bx[index] =
+            -path.curvature[i] * ty - path.ddTheta[i] * qy - path.dTheta[i] * path.dTheta[i] * qx;
+        by[index] =
+            path.curvature[i] * tx + path.ddTheta[i] * qx - path.dTheta[i] * path.dTheta[i] * qy;
+      }
+      poses[i] = new Pose2d(path.x[i], path.y[i], new Rotation2d(path.driveAngle[i]));
+    }
+
+    final Limiter limiter = new Limiter(modules, ax, ay, bx, by, poses, path, constraints);
+
+    // Velocity limits from wheel speed, constraints, and the part of the module acceleration that
+    // the path acceleration can't cancel out
+    final double[] velocity = new double[count];
+    for (int i = 0; i < count; i++) {
+      velocity[i] = limiter.getMaxVelocity(i);
+    }
+
+    // Forward pass
+    final double[] bounds = new double[2];
+    velocity[0] = Math.min(velocity[0], Math.max(startVelocity, 0.0));
+    for (int i = 0; i < count - 1; i++) {
+      final double ds = path.s[i + 1] - path.s[i];
+      limiter.getAccelerationBounds(i, velocity[i], bounds);
+      final double reachable = velocity[i] * velocity[i] + 2.0 * bounds[1] * ds;
+      velocity[i + 1] = Math.min(velocity[i + 1], Math.sqrt(Math.max(reachable, 0.0)));
+    }
+
+    // Backward pass
+    velocity[count - 1] = Math.min(velocity[count - 1], Math.max(endVelocity, 0.0));
+    for (int i = count - 1; i > 0; i--) {
+      final double ds = path.s[i] - path.s[i - 1];
+      limiter.getAccelerationBounds(i, velocity[i], bounds);
+      final double reachable = velocity[i] * velocity[i] - 2.0 * bounds[0] * ds;
+      velocity[i - 1] = Math.min(velocity[i - 1], Math.sqrt(Math.max(reachable, 0.0)));
+    }
+
+    // Integrate time and convert to field velocities
+    final double[] times = new double[count];
+    final double[] vx = new double[count];
+    final double[] vy = new double[count];
+    final double[] omega = new double[count];
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        final double ds = path.s[i] - path.s[i - 1];
+        final double averageVelocity = (velocity[i] + velocity[i - 1]) / 2.0;
+        double dt = 0.0;
+        if (averageVelocity > EPSILON) {
+          dt = ds / averageVelocity;
+        } else if (ds > 0.0) {
+          limiter.getAccelerationBounds(i - 1, 0.0, bounds);
+          dt = Math.sqrt(2.0 * ds / Math.max(bounds[1], 1e-3));
+        }
+        times[i] = times[i - 1] + dt;
+      }
+      vx[i] = velocity[i] * Math.cos(path.driveAngle[i]);
+      vy[i] = velocity[i] * Math.sin(path.driveAngle[i]);
+      omega[i] = velocity[i] * path.dTheta[i];
+    }
+
+    return ReferenceTrajectory.fromSamples(
+        times, path.x, path.y, path.theta, vx, vy, omega, path.loggablePoses);
+  }
+
+  /**
+   * Generates a trajectory for waypoints that are too close together to drive between. The robot
+   * holds the last waypoint and turns from the first heading to the last one as fast as the modules
+   * allow, or just holds still for one loop if there is no turn to make.
+   *
+   * @param waypoints The waypoints
+   * @return The trajectory
+   */
+  private ReferenceTrajectory generateInPlace(List<Waypoint> waypoints) {
+    final Translation2d position = waypoints.get(waypoints.size() - 1).getTranslation();
+    double startHeading = 0.0;
+    double endHeading = 0.0;
+    boolean hasHeading = false;
+    for (Waypoint waypoint : waypoints) {
+      if (waypoint.getHolonomicRotation().isEmpty()) {
+        continue;
+      }
+      final double angle = waypoint.getHolonomicRotation().get().getRadians();
+      if (!hasHeading) {
+        startHeading = angle;
+        hasHeading = true;
+      }
+      endHeading = angle;
+    }
+    final double change = MathUtil.angleModulus(endHeading - startHeading);
+    final double distance = Math.abs(change);
+
+    // Trapezoidal turn, limited by the module farthest from the center
+    double radius = EPSILON;
+    for (Translation2d module : moduleTranslations) {
+      radius = Math.max(radius, module.getNorm());
+    }
+    final double maxOmega = limits.maxWheelSpeed() / radius;
+    final double maxAlpha =
+        Math.max(limits.getMaxAcceleration(limits.maxWheelSpeed()), 1e-3) / radius;
+    final double peakOmega = Math.min(maxOmega, Math.sqrt(distance * maxAlpha));
+    final double accelTime = peakOmega / maxAlpha;
+    final double cruiseTime = peakOmega > EPSILON ? distance / peakOmega - accelTime : 0.0;
+    final double totalTime = Math.max(2.0 * accelTime + cruiseTime, Constants.ROBOT_PERIOD);
+
+    final int count = (int) Math.ceil(totalTime / Constants.ROBOT_PERIOD) + 1;
+    final double[] times = new double[count];
+    final double[] x = new double[count];
+    final double[] y = new double[count];
+    final double[] theta = new double[count];
+    final double[] vx = new double[count];
+    final double[] vy = new double[count];
+    final double[] omega = new double[count];
+    for (int i = 0; i < count; i++) {
+      final double t = totalTime * i / (count - 1);
+      final double remaining = totalTime - t;
+      double turned;
+      double speed;
+      if (t < accelTime) {
+        speed = maxAlpha * t;
+        turned = 0.5 * maxAlpha * t * t;
+      } else if (remaining < accelTime) {
+        speed = maxAlpha * remaining;
+        turned = distance - 0.5 * maxAlpha * remaining * remaining;
+      } else {
+        speed = peakOmega;
+        turned = 0.5 * peakOmega * accelTime + peakOmega * (t - accelTime);
+      }
+      times[i] = t;
+      x[i] = position.getX();
+      y[i] = position.getY();
+      theta[i] = startHeading + Math.copySign(MathUtil.clamp(turned, 0.0, distance), change);
+      omega[i] = Math.copySign(speed, change);
+    }
+
+    return ReferenceTrajectory.fromSamples(
+        times,
+        x,
+        y,
+        theta,
+        vx,
+        vy,
+        omega,
+        new Pose2d[] {new Pose2d(position, new Rotation2d(startHeading))});
+  }
+
+  /** A path sampled evenly by distance, with the derivatives of heading by distance */
+  private static class Path {
+    double[] s;
+    double[] x;
+    double[] y;
+    double[] driveAngle;
+    double[] curvature;
+    double[] theta;
+    double[] dTheta;
+    double[] ddTheta;
+    Pose2d[] loggablePoses;
+  }
+
+  /**
+   * Creates the shape of the path and interpolates the heading along it
+   *
+   * @param waypoints The waypoints
+   * @return The path, or null if it is too short to sample
+   */
+  private Path createPath(List<Waypoint> waypoints) {
+    // Only the shape matters, so the limits here don't affect the result
+    final CustomTrajectoryGenerator generator = new CustomTrajectoryGenerator();
+    generator.generate(
+        new TrajectoryConfig(limits.maxWheelSpeed(), limits.maxTractionAcceleration()), waypoints);
+    final List<Trajectory.State> states = generator.getDriveTrajectory().getStates();
+    if (states.size() < 2) {
+      throw new IllegalArgumentException("Could not fit splines through the waypoints");
+    }
+
+    // Distance along the path of each spline state
+    final double[] stateDistances = new double[states.size()];
+    for (int i = 1; i < states.size(); i++) {
+      stateDistances[i] =
+          stateDistances[i - 1]
+              + states
+                  .get(i)
+                  .poseMeters
+                  .getTranslation()
+                  .getDistance(states.get(i - 1).poseMeters.getTranslation());
+    }
+    final double length = stateDistances[states.size() - 1];
+    if (length < STEP) {
+      return null;
+    }
+
+    // Distance and unwrapped heading of each holonomic waypoint
+    final double[] headingDistances = new double[waypoints.size()];
+    final double[] headings = new double[waypoints.size()];
+    int headingCount = 0;
+    int stateIndex = 0;
+    for (int i = 0; i < waypoints.size(); i++) {
+      double distance;
+      if (i == 0) {
+        distance = 0.0;
+      } else if (i == waypoints.size() - 1) {
+        distance = length;
+      } else {
+        stateIndex = findState(states, waypoints.get(i).getTranslation(), stateIndex);
+        distance = stateDistances[stateIndex];
+      }
+      if (waypoints.get(i).getHolonomicRotation().isEmpty()) {
+        continue;
+      }
+      final double angle = waypoints.get(i).getHolonomicRotation().get().getRadians();
+      if (headingCount > 0 && distance - headingDistances[headingCount - 1] < STEP) {
+        // Can't turn in place along a path, so the later heading wins
+        headings[headingCount - 1] =
+            headingCount > 1
+                ? headings[headingCount - 2]
+                    + MathUtil.angleModulus(angle - headings[headingCount - 2])
+                : angle;
+        continue;
+      }
+      headingDistances[headingCount] = distance;
+      headings[headingCount] =
+          headingCount > 0
+              ? headings[headingCount - 1]
+                  + MathUtil.angleModulus(angle - headings[headingCount - 1])
+              : angle;
+      headingCount++;
+    }
+
+    // Resample evenly
+    final int count = (int) Math.ceil(length / STEP) + 1;
+    final Path path = new Path();
+    path.s = new double[count];
+    path.x = new double[count];
+    path.y = new double[count];
+    path.driveAngle = new double[count];
+    path.curvature = new double[count];
+    path.theta = new double[count];
+    path.dTheta = new double[count];
+    path.ddTheta = new double[count];
+    path.loggablePoses = new Pose2d[states.size()];
+    for (int i = 0; i < states.size(); i++) {
+      path.loggablePoses[i] = states.get(i).poseMeters;
+    }
+
+    int j = 0;
+    int m = 0;
+    for (int i = 0; i < count; i++) {
+      final double s = length * i / (count - 1);
+      path.s[i] = s;
+
+      while (j < states.size() - 2 && stateDistances[j + 1] < s) {
+        j++;
+      }
+      final double span = stateDistances[j + 1] - stateDistances[j];
+      final double t = span > 0.0 ? MathUtil.clamp((s - stateDistances[j]) / span, 0.0, 1.0) : 1.0;
+      final Trajectory.State start = states.get(j);
+      final Trajectory.State end = states.get(j + 1);
+      path.x[i] = MathUtil.interpolate(start.poseMeters.getX(), end.poseMeters.getX(), t);
+      path.y[i] = MathUtil.interpolate(start.poseMeters.getY(), end.poseMeters.getY(), t);
+      path.driveAngle[i] =
+          start
+              .poseMeters
+              .getRotation()
+              .interpolate(end.poseMeters.getRotation(), t)
+              .getRadians();
+      path.curvature[i] =
+          MathUtil.interpolate(start.curvatureRadPerMeter, end.curvatureRadPerMeter, t);
+
+      // Smoothstep the heading between holonomic waypoints
+      if (headingCount == 0) {
+        continue;
+      }
+      while (m < headingCount - 1 && headingDistances[m + 1] < s) {
+        m++;
+      }
+      if (s <= headingDistances[0]) {
+        path.theta[i] = headings[0];
+      } else if (m == headingCount - 1) {
+        path.theta[i] = headings[headingCount - 1];
+      } else {
+        final double segment = headingDistances[m + 1] - headingDistances[m];
+        final double u = (s - headingDistances[m]) / segment;
+        final double change = headings[m + 1] - headings[m];
+        path.theta[i] = headings[m] + change * u * u * (3.0 - 2.0 * u);
+        path.dTheta[i] = change * 6.0 * u * (1.0 - u) / segment;
+        path.ddTheta[i] = change * (6.0 - 12.0 * u) / (segment * segment);
+      }
+    }
+
+    return path;
+  }
+
+  /**
+   * Finds the spline state at a waypoint
+   *
+   * @param states The spline states
+   * @param translation The position of the waypoint
+   * @param startIndex The index to start searching from
+   * @return The index of the state at the waypoint, or the closest one if none match exactly
+   */
+  private static int findState(
+      List<Trajectory.State> states, Translation2d translation, int startIndex) {
+    int closest = startIndex;
+    double closestDistance = Double.POSITIVE_INFINITY;
+    for (int i = startIndex; i < states.size(); i++) {
+      final double distance = states.get(i).poseMeters.getTranslation().getDistance(translation);
+      if (distance < 1e-4) {
+        return i;
+      }
+      if (distance < closestDistance) {
+        closest = i;
+        closestDistance = distance;
+      }
+    }
+    return closest;
+  }
+
+  /** Calculates the velocity and acceleration limits at each point along a path */
+  private class Limiter {
+    private final int modules;
+    private final double[] ax;
+    private final double[] ay;
+    private final double[] bx;
+    private final double[] by;
+    private final Pose2d[] poses;
+    private final Path path;
+    private final List<TrajectoryConstraint> constraints;
+
+    private Limiter(
+        int modules,
+        double[] ax,
+        double[] ay,
+        double[] bx,
+        double[] by,
+        Pose2d[] poses,
+        Path path,
+        List<TrajectoryConstraint> constraints) {
+      this.modules = modules;
+      this.ax = ax;
+      this.ay = ay;
+      this.bx = bx;
+      this.by = by;
+      this.poses = poses;
+      this.path = path;
+      this.constraints = constraints;
+    }
+
+    /**
+     * Gets the maximum speed along the path at a point
+     *
+     * @param i The index of the point
+     * @return The speed in meters per second
+     */
+    private double getMaxVelocity(int i) {
+      double maxVelocity = Double.POSITIVE_INFINITY;
+      for (int j = 0; j < modules; j++) {
+        final int index = i * modules + j;
+        final double ratio = Math.hypot(ax[index], ay[index]);
+        if (ratio > EPSILON) {
+          maxVelocity = Math.min(maxVelocity, limits.maxWheelSpeed() / ratio);
+        }
+      }
+      for (TrajectoryConstraint constraint : constraints) {
+        maxVelocity =
+            Math.min(
+                maxVelocity,
+                constraint.getMaxVelocityMetersPerSecond(
+                    poses[i], path.curvature[i], maxVelocity));
+      }
+      if (Double.isInfinite(maxVelocity)) {
+        maxVelocity = limits.maxWheelSpeed();
+      }
+
+      // Bisect for the highest speed that the modules can still hold the path at
+      if (isHoldable(i, maxVelocity)) {
+        return maxVelocity;
+      }
+      double low = 0.0;
+      double high = maxVelocity;
+      for (int k = 0; k < BISECTION_ITERATIONS; k++) {
+        final double middle = (low + high) / 2.0;
+        if (isHoldable(i, middle)) {
+          low = middle;
+        } else {
+          high = middle;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * Checks whether every module can make the acceleration needed to stay on the path at a speed.
+     * Only the part of the module acceleration perpendicular to its velocity counts, since the
+     * rest can be cancelled out by speeding up or slowing down.
+     */
+    private boolean isHoldable(int i, double velocity) {
+      final double velocitySquared = velocity * velocity;
+      for (int j = 0; j < modules; j++) {
+        final int index = i * modules + j;
+        final double ratio = Math.hypot(ax[index], ay[index]);
+        final double required =
+            ratio > EPSILON
+                ? Math.abs(ax[index] * by[index] - ay[index] * bx[index]) / ratio
+                : Math.hypot(bx[index], by[index]);
+        if (velocitySquared * required > limits.getMaxAcceleration(velocity * ratio)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Gets the range of path accelerations that keep every module within its limits
+     *
+     * @param i The index of the point
+     * @param velocity The speed along the path
+     * @param bounds Array to write the minimum and maximum accelerations to
+     */
+    private void getAccelerationBounds(int i, double velocity, double[] bounds) {
+      double min = Double.NEGATIVE_INFINITY;
+      double max = Double.POSITIVE_INFINITY;
+      final double velocitySquared = velocity * velocity;
+      for (int j = 0; j < modules; j++) {
+        final int index = i * modules + j;
+        final double aa = ax[index] * ax[index] + ay[index] * ay[index];
+        if (aa < EPSILON) {
+          continue;
+        }
+        final double ab = ax[index] * bx[index] + ay[index] * by[index];
+        final double bb = bx[index] * bx[index] + by[index] * by[index];
+        final double maxAcceleration = limits.getMaxAcceleration(velocity * Math.sqrt(aa));
+
+        // Solve |accel * A + v^2 * B| <= max acceleration for accel
+        final double center = -velocitySquared * ab / aa;
+        final double discriminant =
+            velocitySquared * velocitySquared * (ab * ab - aa * bb)
+                + aa * maxAcceleration * maxAcceleration;
+        final double halfWidth = discriminant > 0.0 ? Math.sqrt(discriminant) / aa : 0.0;
+        min = Math.max(min, center - halfWidth);
+        max = Math.min(max, center + halfWidth);
+      }
+      for (TrajectoryConstraint constraint : constraints) {
+        final TrajectoryConstraint.MinMax minMax =
+            constraint.getMinMaxAccelerationMetersPerSecondSq(
+                poses[i], path.curvature[i], velocity);
+        min = Math.max(min, minMax.minAccelerationMetersPerSecondSq);
+        max = Math.min(max, minMax.maxAccelerationMetersPerSecondSq);
+      }
+      bounds[0] = min;
+      bounds[1] = max;
+    }
+  }
+}
@@ -0,0 +1,125 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.util.trajectory;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+/**
+ * Follows a {@link ReferenceTrajectory} with a pluggable {@link FollowerControlLaw}. All of the
+ * working state is preallocated, so calculating never allocates.
+ */
+public class TrajectoryFollower {
+  private final FollowerControlLaw controlLaw;
+  private final double translationTolerance;
+  private final double rotationTolerance;
+
+  private ReferenceTrajectory trajectory = null;
+  private final ReferenceTrajectory.State setpoint = new ReferenceTrajectory.State();
+  private final double[] fieldSpeeds = new double[3];
+  private final double[] errors = new double[3];
+
+  /** Reused output. Callers that keep it across cycles should copy it */
+  private final ChassisSpeeds speeds = new ChassisSpeeds();
+
+  /**
+   * Constructs a new TrajectoryFollower
+   *
+   * @param controlLaw The control law to follow with
+   * @param translationTolerance The allowed error on each translation axis, in meters
+   * @param rotationTolerance The allowed rotation error, in radians
+   */
+  public TrajectoryFollower(
+      FollowerControlLaw controlLaw, double translationTolerance, double rotationTolerance) {
+    this.controlLaw = controlLaw;
+    this.translationTolerance = translationTolerance;
+    this.rotationTolerance = rotationTolerance;
+  }
+
+  /**
+   * Sets the reference to follow
+   *
+   * @param trajectory The reference
+   */
+  public void setTrajectory(ReferenceTrajectory trajectory) {
+    this.trajectory = trajectory;
+    errors[0] = Double.POSITIVE_INFINITY;
+    errors[1] = Double.POSITIVE_INFINITY;
+    errors[2] = Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Gets the reference being followed
+   *
+   * @return The reference, or null if none has been set
+   */
+  public ReferenceTrajectory getTrajectory() {
+    return trajectory;
+  }
+
+  /**
+   * Calculates the robot-relative speeds to drive at
+   *
+   * @param pose The current pose of the robot
+   * @param time The time since starting the reference, in seconds
+   * @return The speeds. The same instance is returned every call
+   */
+  public ChassisSpeeds calculate(Pose2d pose, double time) {
+    if (trajectory == null || !trajectory.isValid()) {
+      speeds.vxMetersPerSecond = 0.0;
+      speeds.vyMetersPerSecond = 0.0;
+      speeds.omegaRadiansPerSecond = 0.0;
+      return speeds;
+    }
+
+    trajectory.sample(time, setpoint);
+    errors[0] = setpoint.x - pose.getX();
+    errors[1] = setpoint.y - pose.getY();
+    errors[2] = MathUtil.angleModulus(setpoint.theta - pose.getRotation().getRadians());
+
+    controlLaw.calculate(trajectory, time, setpoint, pose, fieldSpeeds);
+
+    // Convert to robot relative
+    final double cos = pose.getRotation().getCos();
+    final double sin = pose.getRotation().getSin();
+    speeds.vxMetersPerSecond = fieldSpeeds[0] * cos + fieldSpeeds[1] * sin;
+    speeds.vyMetersPerSecond = -fieldSpeeds[0] * sin + fieldSpeeds[1] * cos;
+    speeds.omegaRadiansPerSecond = fieldSpeeds[2];
+    return speeds;
+  }
+
+  /**
+   * Gets the reference state from the last calculation
+   *
+   * @return The setpoint
+   */
+  public ReferenceTrajectory.State getSetpoint() {
+    return setpoint;
+  }
+
+  /**
+   * Gets the field-relative x, y, and rotation errors from the last calculation
+   *
+   * @return The errors. The same array is returned every call
+   */
+  public double[] getErrors() {
+    return errors;
+  }
+
+  /**
+   * Returns whether the robot was within tolerance of the reference at the last calculation
+   *
+   * @return True if the robot is at the reference
+   */
+  public boolean atReference() {
+    return Math.abs(errors[0]) < translationTolerance
+        && Math.abs(errors[1]) < translationTolerance
+        && Math.abs(errors[2]) < rotationTolerance;
+  }
+}
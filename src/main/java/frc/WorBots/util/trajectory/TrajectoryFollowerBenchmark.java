@@ -0,0 +1,248 @@
+// Copyright (c) 2024 FRC 4145
+// https://github.com/Worthington-Robotics
+//
+// Use of this source code is governed by an MIT-style
+// license that can be found in the LICENSE file at
+// the root directory of this project.
+
+package frc.WorBots.util.trajectory;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.trajectory.TrajectoryConfig;
+import edu.wpi.first.math.trajectory.constraint.CentripetalAccelerationConstraint;
+import frc.WorBots.Constants;
+import frc.WorBots.commands.DriveTrajectory;
+import frc.WorBots.commands.DriveTrajectory.ControlLawType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the CPU cost and tracking error of the trajectory follower control laws on a
+ * deterministic simulated drivetrain. The drivetrain responds to commanded velocities with a delay,
+ * a first-order lag, and an acceleration limit, and is pushed around by noise, so that the control
+ * laws have something realistic to correct. Each law follows references from both trajectory
+ * sources.
+ */
+public class TrajectoryFollowerBenchmark {
+  /** The time constant of the drivetrain velocity response, in seconds */
+  private static final double VELOCITY_TIME_CONSTANT = 0.1;
+
+  /** The maximum acceleration of the drivetrain, in meters per second squared */
+  private static final double MAX_ACCELERATION = 6.0;
+
+  /** The maximum angular acceleration of the drivetrain, in radians per second squared */
+  private static final double MAX_ANGULAR_ACCELERATION = 20.0;
+
+  /** The number of cycles between commanding and applying a velocity */
+  private static final int COMMAND_DELAY_CYCLES = 1;
+
+  /** The standard deviation of velocity disturbances, in meters per second */
+  private static final double VELOCITY_NOISE = 0.02;
+
+  /** How long to wait for the robot to settle after the reference ends, in seconds */
+  private static final double SETTLE_TIMEOUT = 2.0;
+
+  /** The source of a reference */
+  public enum Source {
+    /** WPILib trajectory with a rotation sequence and fixed chassis limits */
+    WPILIB,
+    /** PathPlanner trajectory from {@link CustomPathGenerator} */
+    PATHPLANNER
+  }
+
+  /** Results of benchmarking one control law on one source */
+  public static record Result(
+      ControlLawType law,
+      Source source,
+      double averageMicros,
+      double rmsErrorMeters,
+      double maxErrorMeters,
+      double settleTime) {
+    @Override
+    public String toString() {
+      return String.format(
+          "%s on %s: %.2f us/update, RMS error %.4f m, max error %.4f m, settled in %.2f s",
+          law, source, averageMicros, rmsErrorMeters, maxErrorMeters, settleTime);
+    }
+  }
+
+  /**
+   * Runs the benchmark on every control law and source and prints the results
+   *
+   * @return The results for each combination
+   */
+  public static Result[] run() {
+    final List<List<Waypoint>> paths = createPaths();
+    final ControlLawType[] laws = ControlLawType.values();
+    final Source[] sources = Source.values();
+    final Result[] results = new Result[laws.length * sources.length];
+    for (int i = 0; i < laws.length; i++) {
+      for (int j = 0; j < sources.length; j++) {
+        final List<ReferenceTrajectory> references = new ArrayList<>();
+        for (List<Waypoint> path : paths) {
+          references.add(createReference(path, sources[j]));
+        }
+        // Run once to warm up the JIT before measuring
+        runLaw(laws[i], sources[j], references);
+        final Result result = runLaw(laws[i], sources[j], references);
+        results[i * sources.length + j] = result;
+        System.out.println("Trajectory follower benchmark " + result);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Follows every reference with a control law
+   *
+   * @param law The control law
+   * @param source The source the references were made from
+   * @param references The references to follow
+   * @return The combined results
+   */
+  private static Result runLaw(
+      ControlLawType law, Source source, List<ReferenceTrajectory> references) {
+    final Random random = new Random(4145);
+    final TrajectoryFollower follower = DriveTrajectory.createFollower(law);
+    final double dt = Constants.ROBOT_PERIOD;
+    final double[][] commandQueue = new double[COMMAND_DELAY_CYCLES + 1][3];
+    final ReferenceTrajectory.State start = new ReferenceTrajectory.State();
+
+    long totalNanos = 0;
+    int updateCount = 0;
+    double sumSquaredError = 0.0;
+    double maxError = 0.0;
+    int samples = 0;
+    double totalSettleTime = 0.0;
+
+    for (ReferenceTrajectory reference : references) {
+      follower.setTrajectory(reference);
+      reference.sample(0.0, start);
+      double x = start.x;
+      double y = start.y;
+      double theta = start.theta;
+      double vx = 0.0;
+      double vy = 0.0;
+      double omega = 0.0;
+      for (double[] command : commandQueue) {
+        command[0] = 0.0;
+        command[1] = 0.0;
+        command[2] = 0.0;
+      }
+
+      double settleTime = SETTLE_TIMEOUT;
+      for (double time = 0.0; time <= reference.getTotalTime() + SETTLE_TIMEOUT; time += dt) {
+        final Pose2d pose = new Pose2d(x, y, new Rotation2d(theta));
+        final long startNanos = System.nanoTime();
+        final ChassisSpeeds speeds = follower.calculate(pose, time);
+        totalNanos += System.nanoTime() - startNanos;
+        updateCount++;
+
+        // Record error against where the reference says the robot should be
+        final double error = Math.hypot(follower.getErrors()[0], follower.getErrors()[1]);
+        if (time <= reference.getTotalTime()) {
+          sumSquaredError += error * error;
+          maxError = Math.max(maxError, error);
+          samples++;
+        } else if (follower.atReference()) {
+          settleTime = time - reference.getTotalTime();
+          break;
+        }
+
+        // Queue the field-relative command behind the delayed ones
+        final double appliedVx = commandQueue[0][0];
+        final double appliedVy = commandQueue[0][1];
+        final double appliedOmega = commandQueue[0][2];
+        for (int i = 0; i < COMMAND_DELAY_CYCLES; i++) {
+          System.arraycopy(commandQueue[i + 1], 0, commandQueue[i], 0, 3);
+        }
+        final double cos = Math.cos(theta);
+        final double sin = Math.sin(theta);
+        final double[] newest = commandQueue[COMMAND_DELAY_CYCLES];
+        newest[0] = speeds.vxMetersPerSecond * cos - speeds.vyMetersPerSecond * sin;
+        newest[1] = speeds.vxMetersPerSecond * sin + speeds.vyMetersPerSecond * cos;
+        newest[2] = speeds.omegaRadiansPerSecond;
+
+        // Respond to the oldest command
+        final double maxDeltaV = MAX_ACCELERATION * dt;
+        final double maxDeltaOmega = MAX_ANGULAR_ACCELERATION * dt;
+        final double lag = dt / VELOCITY_TIME_CONSTANT;
+        vx += MathUtil.clamp((appliedVx - vx) * lag, -maxDeltaV, maxDeltaV);
+        vy += MathUtil.clamp((appliedVy - vy) * lag, -maxDeltaV, maxDeltaV);
+        omega += MathUtil.clamp((appliedOmega - omega) * lag, -maxDeltaOmega, maxDeltaOmega);
+        vx += random.nextGaussian() * VELOCITY_NOISE;
+        vy += random.nextGaussian() * VELOCITY_NOISE;
+
+        x += vx * dt;
+        y += vy * dt;
+        theta += omega * dt;
+      }
+      totalSettleTime += settleTime;
+    }
+
+    return new Result(
+        law,
+        source,
+        totalNanos / 1000.0 / updateCount,
+        Math.sqrt(sumSquaredError / samples),
+        maxError,
+        totalSettleTime / references.size());
+  }
+
+  /**
+   * Creates a reference from a path
+   *
+   * @param waypoints The waypoints of the path
+   * @param source The source to generate the trajectory with
+   * @return The reference
+   */
+  private static ReferenceTrajectory createReference(List<Waypoint> waypoints, Source source) {
+    final TrajectoryConfig config =
+        new TrajectoryConfig(DriveTrajectory.MAX_VELOCITY, DriveTrajectory.MAX_ACCELERATION)
+            .setStartVelocity(0.0)
+            .setEndVelocity(0.0)
+            .addConstraint(
+                new CentripetalAccelerationConstraint(
+                    DriveTrajectory.MAX_CENTRIPETAL_ACCELERATION));
+    switch (source) {
+      case PATHPLANNER:
+        final CustomPathGenerator pathGenerator = new CustomPathGenerator();
+        pathGenerator.generate(config, waypoints);
+        return ReferenceTrajectory.fromPathPlanner(pathGenerator.getDriveTrajectory());
+      case WPILIB:
+      default:
+        final CustomTrajectoryGenerator generator = new CustomTrajectoryGenerator();
+        generator.generate(config, waypoints);
+        return ReferenceTrajectory.fromTrajectory(
+            generator.getDriveTrajectory(), generator.getHolonomicRotationSequence());
+    }
+  }
+
+  /**
+   * Creates paths similar to those driven in autos
+   *
+   * @return The paths
+   */
+  private static List<List<Waypoint>> createPaths() {
+    return List.of(
+        // Subwoofer out to a wing note and back
+        List.of(
+            Waypoint.fromHolonomicPose(new Pose2d(1.4, 5.55, new Rotation2d())),
+            Waypoint.fromHolonomicPose(new Pose2d(2.9, 7.0, Rotation2d.fromDegrees(30.0))),
+            Waypoint.fromHolonomicPose(new Pose2d(2.2, 5.9, Rotation2d.fromDegrees(-20.0)))),
+        // Long S-curve out to the center line while turning around
+        List.of(
+            Waypoint.fromHolonomicPose(new Pose2d(2.5, 6.5, new Rotation2d())),
+            new Waypoint(new Translation2d(5.2, 6.4)),
+            Waypoint.fromHolonomicPose(new Pose2d(8.2, 5.8, Rotation2d.fromDegrees(180.0)))),
+        // Sideways strafe along the wing
+        List.of(
+            Waypoint.fromHolonomicPose(new Pose2d(2.9, 7.0, Rotation2d.fromDegrees(90.0))),
+            Waypoint.fromHolonomicPose(new Pose2d(2.9, 4.1, Rotation2d.fromDegrees(90.0)))));
+  }
+}